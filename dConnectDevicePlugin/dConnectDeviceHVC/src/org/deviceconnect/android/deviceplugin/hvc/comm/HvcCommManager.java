@@ -366,7 +366,7 @@ public class HvcCommManager {
                             if (!checkDetectResult(detectKind, intent)) {
                                 continue;
                             }
-                            mContext.sendBroadcast(intent);
+                            EventManager.INSTANCE.sendEvent(mContext, intent);
                             if (DEBUG) {
                                 Log.d(TAG, "<EVENT> send event. attribute:" + attribute);
                             }
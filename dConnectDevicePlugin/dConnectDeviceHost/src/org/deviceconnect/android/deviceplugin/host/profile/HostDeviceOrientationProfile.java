@@ -352,7 +352,7 @@ public class HostDeviceOrientationProfile extends DeviceOrientationProfile imple
                 Intent intent = EventManager.createEventMessage(event);
                 intent.putExtra(DeviceOrientationProfile.PARAM_ORIENTATION,
                         orientation);
-                getContext().sendBroadcast(intent);
+                EventManager.INSTANCE.sendEvent(getContext(), intent);
             }
 
             mAccelStartTime = System.currentTimeMillis();
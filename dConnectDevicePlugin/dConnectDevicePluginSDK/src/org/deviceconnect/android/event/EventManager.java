@@ -13,7 +13,9 @@ import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.message.DConnectMessage;
 
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
 
 /**
  * イベント管理クラス. イベントの登録、解除、送信などはこのクラスを通すことで一元管理される。
@@ -28,10 +30,30 @@ public enum EventManager {
      */
     INSTANCE;
 
+    /**
+     * イベントの送信間隔(ミリ秒)を指定するリクエストのパラメータ名.
+     * <p>
+     * イベント登録時に指定すると、{@link #sendEvent(Context, Intent)}で送信するイベントは
+     * 指定した間隔毎に最新のものだけが送信される。<br>
+     * 各プロファイルが定義するintervalなどのパラメータと衝突しないように、先頭に_を付けている。
+     * </p>
+     */
+    public static final String EXTRA_INTERVAL = "_eventInterval";
+
     /** 
      * キャッシュコントローラー.
      */
     private EventCacheController mController;
+
+    /**
+     * イベントの送信間隔を制限するクラス.
+     */
+    private final EventRateLimiter mRateLimiter = new EventRateLimiter();
+
+    /**
+     * 不正な送信間隔が指定されたイベント登録をエラーにするフラグ.
+     */
+    private volatile boolean mIntervalValidationEnabled;
     
     /**
      * キャッシュの操作クラスを設定する.
@@ -43,6 +65,20 @@ public enum EventManager {
         mController = controller;
     }
     
+    /**
+     * 不正な送信間隔が指定されたイベント登録をエラーにするかを設定する.
+     * <p>
+     * デフォルトではfalseで、{@link #EXTRA_INTERVAL}に数値以外や負の値が指定された場合は
+     * 送信間隔が指定されていないものとしてイベントを登録する。<br>
+     * trueを設定した場合は、{@link #addEvent(Intent)}が{@link EventError#INVALID_PARAMETER}を返す。
+     * </p>
+     * 
+     * @param enabled エラーにする場合はtrue、無視する場合はfalse
+     */
+    public void setIntervalValidationEnabled(final boolean enabled) {
+        mIntervalValidationEnabled = enabled;
+    }
+    
     /**
      * コントローラーの設定状況を確認し、異常な場合は例外を投げる.
      */
@@ -96,7 +132,39 @@ public enum EventManager {
      */
     public EventError addEvent(final Intent request) {
         Event event = createEvent(request);
-        return mController.addEvent(event);
+        long interval = getInterval(request);
+        if (interval < 0) {
+            if (mIntervalValidationEnabled) {
+                return EventError.INVALID_PARAMETER;
+            }
+            interval = 0;
+        }
+        EventError error = mController.addEvent(event);
+        if (error == EventError.NONE) {
+            mRateLimiter.setInterval(event, interval);
+        }
+        return error;
+    }
+
+    /**
+     * イベント登録用のリクエストから送信間隔を取得する.
+     * 
+     * @param request イベント登録リクエスト
+     * @return 送信間隔(ミリ秒)。指定されていない場合は0、不正な値の場合は-1
+     */
+    private static long getInterval(final Intent request) {
+        Bundle extras = request.getExtras();
+        Object value = (extras != null) ? extras.get(EXTRA_INTERVAL) : null;
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return Math.max(((Number) value).longValue(), -1);
+        }
+        try {
+            return Math.max(Long.parseLong(value.toString()), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
     
     /**
@@ -107,6 +175,7 @@ public enum EventManager {
      */
     public EventError removeEvent(final Intent request) {
         Event event = createEvent(request);
+        mRateLimiter.remove(event);
         return mController.removeEvent(event);
     }
     
@@ -118,6 +187,7 @@ public enum EventManager {
      */
     public boolean removeEvents(final String sessionKey) {
         checkState();
+        mRateLimiter.removeSession(sessionKey);
         return mController.removeEvents(sessionKey);
     }
     
@@ -128,6 +198,7 @@ public enum EventManager {
      */
     public boolean removeAll() {
         checkState();
+        mRateLimiter.removeAll();
         return mController.removeAll();
     }
     
@@ -179,6 +250,21 @@ public enum EventManager {
         return getEventList(profile, null, attribute);
     }
     
+    /**
+     * イベントメッセージを送信する.
+     * <p>
+     * イベント登録時に{@link #EXTRA_INTERVAL}で送信間隔が指定されている場合は、
+     * 前回の送信から間隔が経過するまで送信せずに最新のイベントだけを保持し、間隔が経過した時点で送信する。<br>
+     * 送信間隔が指定されていない場合は、すぐにブロードキャストする。
+     * </p>
+     * 
+     * @param context コンテキスト
+     * @param message {@link #createEventMessage(Event)}で生成したイベントメッセージ
+     */
+    public void sendEvent(final Context context, final Intent message) {
+        mRateLimiter.send(context, message);
+    }
+
     /**
      * イベントデータからイベントメッセージ用のIntentを生成する.
      * 取得したIntentに適宜イベントオブジェクトを設定し送信すること。
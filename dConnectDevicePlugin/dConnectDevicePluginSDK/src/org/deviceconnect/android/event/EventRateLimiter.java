@@ -0,0 +1,242 @@
+/*
+ EventRateLimiter.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.message.DConnectMessage;
+
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * イベントの送信間隔を制限するクラス.
+ * <p>
+ * 送信間隔が指定されたイベントは、前回の送信から間隔が経過するまで送信せずに最新のイベントだけを保持し、
+ * 間隔が経過した時点で保持しているイベントを送信する。<br>
+ * 保持したイベントの送信は、全てのイベントで共有する1つのスレッドで行う。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class EventRateLimiter {
+
+    /** キーの区切り文字. */
+    private static final char KEY_SEPARATOR = '\n';
+
+    /** 1ミリ秒あたりのナノ秒. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** キーをキーにした送信間隔が指定された送信先. */
+    private final Map<String, Subscriber> mSubscribers = new ConcurrentHashMap<String, Subscriber>();
+
+    /** 保持したイベントを送信するスケジューラ. */
+    private ScheduledThreadPoolExecutor mScheduler;
+
+    /**
+     * イベントの送信間隔を設定する.
+     * @param event イベント
+     * @param interval 送信間隔(ミリ秒)。0以下の場合は制限を解除する
+     */
+    void setInterval(final Event event, final long interval) {
+        String key = createKey(event.getSessionKey(), event.getServiceId(),
+                event.getProfile(), event.getInterface(), event.getAttribute());
+        Subscriber old;
+        if (interval > 0) {
+            old = mSubscribers.put(key, new Subscriber(event.getSessionKey(), interval));
+        } else {
+            old = mSubscribers.remove(key);
+        }
+        if (old != null) {
+            old.mRemoved = true;
+        }
+    }
+
+    /**
+     * イベントの送信間隔の制限を解除する.
+     * @param event イベント
+     */
+    void remove(final Event event) {
+        setInterval(event, 0);
+    }
+
+    /**
+     * 指定されたセッションキーの送信間隔の制限を全て解除する.
+     * @param sessionKey セッションキー
+     */
+    void removeSession(final String sessionKey) {
+        Iterator<Subscriber> it = mSubscribers.values().iterator();
+        while (it.hasNext()) {
+            Subscriber subscriber = it.next();
+            if (sessionKey == null ? subscriber.mSessionKey == null : sessionKey.equals(subscriber.mSessionKey)) {
+                subscriber.mRemoved = true;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 全ての送信間隔の制限を解除する.
+     */
+    void removeAll() {
+        for (Subscriber subscriber : mSubscribers.values()) {
+            subscriber.mRemoved = true;
+        }
+        mSubscribers.clear();
+    }
+
+    /**
+     * イベントを送信する.
+     * <p>
+     * 送信間隔が指定されていない場合や、前回の送信から間隔が経過している場合はすぐに送信する。<br>
+     * それ以外の場合は最新のイベントとして保持し、間隔が経過した時点で送信する。
+     * </p>
+     * @param context コンテキスト
+     * @param message イベントメッセージ
+     */
+    void send(final Context context, final Intent message) {
+        Subscriber subscriber = mSubscribers.isEmpty() ? null : mSubscribers.get(createKey(message));
+        if (subscriber == null) {
+            context.sendBroadcast(message);
+            return;
+        }
+
+        long now = System.nanoTime() / NANOS_PER_MILLI;
+        long delay;
+        synchronized (subscriber) {
+            if (!subscriber.mScheduled && now - subscriber.mLastSentTime >= subscriber.mInterval) {
+                subscriber.mLastSentTime = now;
+                delay = -1;
+            } else {
+                subscriber.mContext = context;
+                subscriber.mPending = message;
+                if (subscriber.mScheduled) {
+                    // 送信予定のイベントを最新のものに置き換えた
+                    return;
+                }
+                subscriber.mScheduled = true;
+                delay = subscriber.mLastSentTime + subscriber.mInterval - now;
+            }
+        }
+        if (delay < 0) {
+            context.sendBroadcast(message);
+        } else {
+            getScheduler().schedule(subscriber, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 保持したイベントを送信するスケジューラを取得する.
+     * <p>
+     * 送信間隔が指定されたイベントが無いプラグインではスレッドを作らないように、初めて使う時に生成する。
+     * </p>
+     * @return スケジューラ
+     */
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (mScheduler == null) {
+            mScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("Event Rate Limiter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return mScheduler;
+    }
+
+    /**
+     * イベントメッセージから送信先を特定するキーを作成する.
+     * <p>
+     * プラグインによっては送信前にレシーバーを書き換えるので、レシーバーはキーに含めない。
+     * </p>
+     * @param message イベントメッセージ
+     * @return キー
+     */
+    private static String createKey(final Intent message) {
+        return createKey(message.getStringExtra(DConnectMessage.EXTRA_SESSION_KEY),
+                message.getStringExtra(DConnectMessage.EXTRA_SERVICE_ID),
+                message.getStringExtra(DConnectMessage.EXTRA_PROFILE),
+                message.getStringExtra(DConnectMessage.EXTRA_INTERFACE),
+                message.getStringExtra(DConnectMessage.EXTRA_ATTRIBUTE));
+    }
+
+    /**
+     * 送信先を特定するキーを作成する.
+     * @param values キーに含める値
+     * @return キー
+     */
+    private static String createKey(final String... values) {
+        StringBuilder key = new StringBuilder();
+        for (String value : values) {
+            if (value != null) {
+                key.append(value);
+            }
+            key.append(KEY_SEPARATOR);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 送信間隔が指定された送信先.
+     */
+    private static final class Subscriber implements Runnable {
+        /** セッションキー. */
+        private final String mSessionKey;
+
+        /** 送信間隔(ミリ秒). */
+        private final long mInterval;
+
+        /** 前回送信した時刻(ミリ秒). */
+        private long mLastSentTime = Long.MIN_VALUE / 2;
+
+        /** 送信を予定しているイベント. */
+        private Intent mPending;
+
+        /** 送信に使うコンテキスト. */
+        private Context mContext;
+
+        /** 送信を予定している場合はtrue. */
+        private boolean mScheduled;
+
+        /** 送信間隔の制限が解除された場合はtrue. 予定していたイベントは送信しない. */
+        private volatile boolean mRemoved;
+
+        /**
+         * コンストラクタ.
+         * @param sessionKey セッションキー
+         * @param interval 送信間隔(ミリ秒)
+         */
+        Subscriber(final String sessionKey, final long interval) {
+            mSessionKey = sessionKey;
+            mInterval = interval;
+        }
+
+        @Override
+        public void run() {
+            Intent message;
+            Context context;
+            synchronized (this) {
+                message = mPending;
+                context = mContext;
+                mPending = null;
+                mContext = null;
+                mScheduled = false;
+                mLastSentTime = System.nanoTime() / NANOS_PER_MILLI;
+            }
+            if (message != null && !mRemoved) {
+                context.sendBroadcast(message);
+            }
+        }
+    }
+}
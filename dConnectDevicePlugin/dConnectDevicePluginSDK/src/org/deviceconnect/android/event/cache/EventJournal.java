@@ -0,0 +1,500 @@
+/*
+ EventJournal.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.deviceconnect.android.event.Event;
+
+/**
+ * イベントの追加・削除操作を追記していくジャーナルファイル.
+ * <p>
+ * ファイルの先頭にはマジックナンバーを置き、その後にレコードを並べる。<br>
+ * レコードは「操作種別(1byte)、データ長(4byte)、データ、CRC32(4byte)」の形式とする。
+ * </p>
+ * <p>
+ * 書き込み途中で終了した場合には末尾のレコードが壊れるので、読み込み時にCRCを検証し、
+ * 壊れたレコード以降を切り捨てる。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class EventJournal {
+
+    /** ファイル先頭のマジックナンバー("DCJ1"). */
+    private static final int MAGIC = 0x44434A31;
+
+    /** マジックナンバーのサイズ. */
+    private static final int MAGIC_SIZE = 4;
+
+    /** レコードのヘッダーサイズ(操作種別+データ長). */
+    private static final int HEADER_SIZE = 5;
+
+    /** レコードのCRCのサイズ. */
+    private static final int CRC_SIZE = 4;
+
+    /** 1レコードのデータ長の上限. */
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    /** CRC32の値をintに収めるためのマスク. */
+    private static final long CRC_MASK = 0xFFFFFFFFL;
+
+    /** 操作種別: イベントの追加. */
+    private static final byte OP_ADD = 1;
+
+    /** 操作種別: イベントの削除. */
+    private static final byte OP_REMOVE = 2;
+
+    /** 操作種別: セッションキーに紐づくイベントの削除. */
+    private static final byte OP_REMOVE_EVENTS = 3;
+
+    /** 操作種別: 全イベントの削除. */
+    private static final byte OP_REMOVE_ALL = 4;
+
+    /**
+     * ジャーナルのレコードを受け取るハンドラー.
+     */
+    interface Handler {
+        /**
+         * イベントの追加レコードを受け取る.
+         * @param event イベントデータ
+         */
+        void onAdd(Event event);
+
+        /**
+         * イベントの削除レコードを受け取る.
+         * @param event イベントデータ
+         */
+        void onRemove(Event event);
+
+        /**
+         * セッションキーに紐づくイベントの削除レコードを受け取る.
+         * @param sessionKey セッションキー
+         */
+        void onRemoveEvents(String sessionKey);
+
+        /**
+         * 全イベントの削除レコードを受け取る.
+         */
+        void onRemoveAll();
+    }
+
+    /** ロガー. */
+    private final Logger mLogger = Logger.getLogger("org.deviceconnect.dplugin");
+
+    /** ジャーナルファイル. */
+    private final File mFile;
+
+    /** レコードのデータを組み立てるバッファ. */
+    private final ByteArrayOutputStream mPayload = new ByteArrayOutputStream();
+
+    /** レコード全体を組み立てるバッファ. */
+    private final ByteArrayOutputStream mRecord = new ByteArrayOutputStream();
+
+    /** CRCの計算に使用するオブジェクト. */
+    private final CRC32 mCrc = new CRC32();
+
+    /** 追記用のストリーム. */
+    private OutputStream mOut;
+
+    /** ファイル中のレコード数. */
+    private int mRecordCount;
+
+    /**
+     * コンストラクタ.
+     * @param file ジャーナルファイル
+     */
+    EventJournal(final File file) {
+        mFile = file;
+    }
+
+    /**
+     * ジャーナルファイルが存在するか確認する.
+     * @return 存在する場合はtrue、それ以外はfalse
+     */
+    boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * ファイル中のレコード数を取得する.
+     * @return レコード数
+     */
+    int getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * ジャーナルファイルを読み込み、レコードをハンドラーに通知する.
+     * <p>
+     * 壊れたレコードを検出した場合は、そのレコード以降をファイルから切り捨てる。
+     * </p>
+     * @param handler ハンドラー
+     * @throws IOException ファイルの読み込みに失敗した場合
+     */
+    void replay(final Handler handler) throws IOException {
+        close();
+        mRecordCount = 0;
+        if (!mFile.exists()) {
+            return;
+        }
+
+        long length = mFile.length();
+        long offset = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            if (length < MAGIC_SIZE || in.readInt() != MAGIC) {
+                mLogger.warning("EventJournal: unknown file format. " + mFile.getName());
+            } else {
+                offset = MAGIC_SIZE;
+                byte[] data = new byte[0];
+                while (length - offset >= HEADER_SIZE + CRC_SIZE) {
+                    byte op = in.readByte();
+                    int size = in.readInt();
+                    if (size < 0 || size > MAX_RECORD_SIZE
+                            || size > length - offset - HEADER_SIZE - CRC_SIZE) {
+                        break;
+                    }
+                    if (data.length < size) {
+                        data = new byte[size];
+                    }
+                    in.readFully(data, 0, size);
+                    int crc = in.readInt();
+                    if (crc != crc(op, data, size) || !apply(handler, op, data, size)) {
+                        break;
+                    }
+                    offset += HEADER_SIZE + size + CRC_SIZE;
+                    mRecordCount++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        if (offset != length) {
+            mLogger.warning("EventJournal: truncated a broken record. " + mFile.getName()
+                    + " offset=" + offset + " length=" + length);
+            truncate(offset);
+        }
+    }
+
+    /**
+     * イベントの追加を記録する.
+     * @param event イベントデータ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void appendAdd(final Event event) throws IOException {
+        DataOutputStream out = beginPayload();
+        writeEvent(out, event);
+        append(OP_ADD);
+    }
+
+    /**
+     * イベントの削除を記録する.
+     * @param event イベントデータ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void appendRemove(final Event event) throws IOException {
+        DataOutputStream out = beginPayload();
+        writeEventKey(out, event);
+        append(OP_REMOVE);
+    }
+
+    /**
+     * セッションキーに紐づくイベントの削除を記録する.
+     * @param sessionKey セッションキー
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void appendRemoveEvents(final String sessionKey) throws IOException {
+        DataOutputStream out = beginPayload();
+        writeString(out, sessionKey);
+        append(OP_REMOVE_EVENTS);
+    }
+
+    /**
+     * 全イベントの削除を記録する.
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void appendRemoveAll() throws IOException {
+        beginPayload();
+        append(OP_REMOVE_ALL);
+    }
+
+    /**
+     * 指定されたイベントのみを持つジャーナルファイルに作り直す.
+     * <p>
+     * 一時ファイルに書き出してから置き換えるので、途中で終了した場合でも元のファイルは壊れない。
+     * </p>
+     * @param events イベント一覧
+     * @throws IOException 書き込みに失敗した場合
+     */
+    void rewrite(final Collection<Event> events) throws IOException {
+        close();
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            mOut = new BufferedOutputStream(fos);
+            writeMagic();
+            for (Event event : events) {
+                appendAdd(event);
+            }
+            mOut.flush();
+            fos.getFD().sync();
+        } finally {
+            mOut = null;
+            fos.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp.getName() + " to " + mFile.getName());
+        }
+        mRecordCount = events.size();
+    }
+
+    /**
+     * 追記用のストリームを閉じる.
+     */
+    void close() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                mLogger.warning("EventJournal: failed to close. " + e.getMessage());
+            }
+            mOut = null;
+        }
+    }
+
+    /**
+     * ファイルを指定されたサイズに切り詰める.
+     * @param length サイズ
+     * @throws IOException 切り詰めに失敗した場合
+     */
+    private void truncate(final long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            if (length < MAGIC_SIZE) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+            } else {
+                raf.setLength(length);
+            }
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * マジックナンバーを書き込む.
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private void writeMagic() throws IOException {
+        new DataOutputStream(mOut).writeInt(MAGIC);
+    }
+
+    /**
+     * レコードのデータの書き込みを開始する.
+     * @return データを書き込むストリーム
+     */
+    private DataOutputStream beginPayload() {
+        mPayload.reset();
+        return new DataOutputStream(mPayload);
+    }
+
+    /**
+     * 組み立てたデータをレコードとしてファイルに追記する.
+     * <p>
+     * レコードは1回の書き込みで出力する。
+     * </p>
+     * @param op 操作種別
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private void append(final byte op) throws IOException {
+        if (mOut == null) {
+            boolean empty = mFile.length() == 0;
+            mOut = new FileOutputStream(mFile, true);
+            if (empty) {
+                writeMagic();
+            }
+        }
+
+        byte[] data = mPayload.toByteArray();
+        mRecord.reset();
+        DataOutputStream out = new DataOutputStream(mRecord);
+        out.writeByte(op);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt(crc(op, data, data.length));
+        mRecord.writeTo(mOut);
+        mRecordCount++;
+    }
+
+    /**
+     * レコードのCRCを計算する.
+     * @param op 操作種別
+     * @param data データ
+     * @param size データ長
+     * @return CRC
+     */
+    private int crc(final byte op, final byte[] data, final int size) {
+        mCrc.reset();
+        mCrc.update(op);
+        mCrc.update(data, 0, size);
+        return (int) (mCrc.getValue() & CRC_MASK);
+    }
+
+    /**
+     * レコードをハンドラーに通知する.
+     * @param handler ハンドラー
+     * @param op 操作種別
+     * @param data データ
+     * @param size データ長
+     * @return 通知できた場合はtrue、不明なレコードの場合はfalse
+     * @throws IOException データの解析に失敗した場合
+     */
+    private boolean apply(final Handler handler, final byte op, final byte[] data, final int size)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, size));
+        switch (op) {
+        case OP_ADD:
+            handler.onAdd(readEvent(in));
+            return true;
+        case OP_REMOVE:
+            handler.onRemove(readEventKey(in));
+            return true;
+        case OP_REMOVE_EVENTS:
+            handler.onRemoveEvents(readString(in));
+            return true;
+        case OP_REMOVE_ALL:
+            handler.onRemoveAll();
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * イベントを識別する項目を書き込む.
+     * @param out 出力先
+     * @param event イベントデータ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeEventKey(final DataOutputStream out, final Event event) throws IOException {
+        writeString(out, event.getServiceId());
+        writeString(out, event.getProfile());
+        writeString(out, event.getInterface());
+        writeString(out, event.getAttribute());
+        writeString(out, event.getSessionKey());
+        writeString(out, event.getReceiverName());
+    }
+
+    /**
+     * イベントの全項目を書き込む.
+     * @param out 出力先
+     * @param event イベントデータ
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeEvent(final DataOutputStream out, final Event event) throws IOException {
+        writeEventKey(out, event);
+        writeString(out, event.getAccessToken());
+        writeTimestamp(out, event.getCreateDate());
+        writeTimestamp(out, event.getUpdateDate());
+    }
+
+    /**
+     * イベントを識別する項目を読み込む.
+     * @param in 入力元
+     * @return イベントデータ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Event readEventKey(final DataInputStream in) throws IOException {
+        Event event = new Event();
+        event.setServiceId(readString(in));
+        event.setProfile(readString(in));
+        event.setInterface(readString(in));
+        event.setAttribute(readString(in));
+        event.setSessionKey(readString(in));
+        event.setReceiverName(readString(in));
+        return event;
+    }
+
+    /**
+     * イベントの全項目を読み込む.
+     * @param in 入力元
+     * @return イベントデータ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Event readEvent(final DataInputStream in) throws IOException {
+        Event event = readEventKey(in);
+        event.setAccessToken(readString(in));
+        event.setCreateDate(readTimestamp(in));
+        event.setUpdateDate(readTimestamp(in));
+        return event;
+    }
+
+    /**
+     * nullを許容して文字列を書き込む.
+     * @param out 出力先
+     * @param value 文字列
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * nullを許容して文字列を読み込む.
+     * @param in 入力元
+     * @return 文字列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * nullを許容して日時を書き込む.
+     * @param out 出力先
+     * @param value 日時
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeTimestamp(final DataOutputStream out, final Timestamp value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getTime());
+        }
+    }
+
+    /**
+     * nullを許容して日時を読み込む.
+     * @param in 入力元
+     * @return 日時
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Timestamp readTimestamp(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Timestamp(in.readLong()) : null;
+    }
+}
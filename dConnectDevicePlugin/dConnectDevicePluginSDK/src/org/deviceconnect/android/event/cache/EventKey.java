@@ -0,0 +1,117 @@
+/*
+ EventKey.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.event.cache;
+
+import org.deviceconnect.android.event.Event;
+
+/**
+ * イベントの種類を識別するキー.
+ * <p>
+ * サービスID、プロファイル、インターフェース、属性の組み合わせでイベントの種類を識別する。<br>
+ * ハッシュ値は生成時に計算しておき、検索の度に文字列を連結しないようにする。<br>
+ * キャッシュコントローラーがイベントの索引のキーとして使用する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class EventKey {
+
+    /** ハッシュ値の計算に使用する係数. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** サービスID. */
+    private final String mServiceId;
+
+    /** プロファイル. */
+    private final String mProfile;
+
+    /** インターフェース. */
+    private final String mInterface;
+
+    /** 属性. */
+    private final String mAttribute;
+
+    /** ハッシュ値. */
+    private final int mHash;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param serviceId サービスID
+     * @param profile プロファイル
+     * @param inter インターフェース
+     * @param attribute 属性
+     */
+    public EventKey(final String serviceId, final String profile, final String inter, final String attribute) {
+        mServiceId = serviceId;
+        mProfile = profile;
+        mInterface = inter;
+        mAttribute = attribute;
+
+        int hash = hashCode(serviceId);
+        hash = hash * HASH_MULTIPLIER + hashCode(profile);
+        hash = hash * HASH_MULTIPLIER + hashCode(inter);
+        hash = hash * HASH_MULTIPLIER + hashCode(attribute);
+        mHash = hash;
+    }
+
+    /**
+     * イベントデータからキーを生成する.
+     *
+     * @param event イベントデータ
+     */
+    public EventKey(final Event event) {
+        this(event.getServiceId(), event.getProfile(), event.getInterface(), event.getAttribute());
+    }
+
+    /**
+     * 文字列のハッシュ値を取得する.
+     *
+     * @param value 文字列
+     * @return ハッシュ値。nullの場合は0
+     */
+    private static int hashCode(final String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    /**
+     * 文字列が等しいか比較する.
+     *
+     * @param a 文字列
+     * @param b 文字列
+     * @return 等しい場合はtrue、それ以外はfalse
+     */
+    private static boolean equals(final String a, final String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EventKey)) {
+            return false;
+        }
+        EventKey other = (EventKey) o;
+        return mHash == other.mHash
+                && equals(mAttribute, other.mAttribute)
+                && equals(mProfile, other.mProfile)
+                && equals(mInterface, other.mInterface)
+                && equals(mServiceId, other.mServiceId);
+    }
+
+    @Override
+    public String toString() {
+        return mServiceId + ":" + mProfile + "/" + mInterface + "/" + mAttribute;
+    }
+}
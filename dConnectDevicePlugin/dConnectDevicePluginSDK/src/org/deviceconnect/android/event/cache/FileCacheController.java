@@ -6,13 +6,13 @@
  */
 package org.deviceconnect.android.event.cache;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.StreamCorruptedException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -24,7 +24,11 @@ import android.content.Context;
 
 /**
  * イベントデータをファイルに保存し、キャッシュの操作機能を提供する. データはメモリにキャッシュし、flushすることでファイルに書き出す。
- * 
+ * <p>
+ * ファイルには追加・削除の操作を追記していく({@link EventJournal})。
+ * 自動フラッシュが有効な場合は操作の度に1レコードを追記し、レコードが増えた場合は登録中のイベントのみで作り直す。
+ * flush()を呼び出した場合も登録中のイベントのみで作り直す。
+ * </p>
  * 
  * @author NTT DOCOMO, INC.
  */
@@ -36,10 +40,21 @@ public class FileCacheController extends MemoryCacheController {
     private Context mContext;
 
     /**
-     * キャッシュファイル名.
+     * 旧形式のキャッシュファイル名.
+     * 読み込み時にジャーナルファイルに移行する。
      */
     private static final String CACHE_FILE_NAME = "org_deviceconnect_android_event_cache.dat";
 
+    /**
+     * ジャーナルファイル名.
+     */
+    private static final String JOURNAL_FILE_NAME = "org_deviceconnect_android_event_cache.journal";
+
+    /**
+     * ジャーナルファイルを作り直すレコード数の最小値.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
     /**
      * ロガー.
      */
@@ -50,6 +65,22 @@ public class FileCacheController extends MemoryCacheController {
      */
     private boolean mAutoFlush;
 
+    /**
+     * ジャーナルファイル.
+     */
+    private EventJournal mJournal;
+
+    /**
+     * ジャーナルファイルを作り直すレコード数.
+     */
+    private int mCompactionRecords = MIN_COMPACTION_RECORDS;
+
+    /**
+     * ジャーナルファイルへの追記に失敗したかを示すフラグ.
+     * trueの場合は、次の操作でジャーナルファイルを作り直す。
+     */
+    private boolean mJournalBroken;
+
     /**
      * 自動フラッシュフラグを指定してFileCacheControllerのインスタンスを生成する.
      * 
@@ -64,6 +95,7 @@ public class FileCacheController extends MemoryCacheController {
         }
         mContext = context;
         mAutoFlush = autoFlush;
+        mJournal = new EventJournal(new File(mContext.getFilesDir(), JOURNAL_FILE_NAME));
         load();
     }
     
@@ -79,45 +111,113 @@ public class FileCacheController extends MemoryCacheController {
     
     @Override
     public synchronized void flush() {
-        
-        FileOutputStream fos = null;
-        ObjectOutputStream oos = null;
+        compact();
+    }
+
+    /**
+     * ジャーナルファイルを登録中のイベントのみで作り直す.
+     */
+    private void compact() {
+        List<Event> events = new ArrayList<Event>();
+        for (Map<String, List<Event>> map : getCache().values()) {
+            for (List<Event> list : map.values()) {
+                events.addAll(list);
+            }
+        }
         try {
-            fos = mContext.openFileOutput(CACHE_FILE_NAME, Context.MODE_PRIVATE);
-            oos = new ObjectOutputStream(fos);
-            oos.writeObject(getCache());
-        } catch (FileNotFoundException e) {
-            mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
+            mJournal.rewrite(events);
+            mJournalBroken = false;
         } catch (IOException e) {
             mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
-        } finally {
+            mJournalBroken = true;
+        }
+        mCompactionRecords = Math.max(MIN_COMPACTION_RECORDS, events.size() * 2);
+    }
+
+    /**
+     * ジャーナルファイルへの記録に失敗した場合の処理を行う.
+     * 
+     * @param e 発生した例外
+     */
+    private void onJournalError(final IOException e) {
+        mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
+        mJournal.close();
+        mJournalBroken = true;
+    }
+
+    /**
+     * 必要な場合はジャーナルファイルを作り直す.
+     */
+    private void compactIfNeeded() {
+        if (mJournalBroken || mJournal.getRecordCount() >= mCompactionRecords) {
+            compact();
+        }
+    }
+
+    /**
+     * データをファイルからロードする.
+     */
+    private void load() {
+        if (mJournal.exists()) {
             try {
-                if (oos != null) {
-                    oos.close();
-                } else if (fos != null) {
-                    fos.close();
-                }
+                mJournal.replay(new EventJournal.Handler() {
+                    @Override
+                    public void onAdd(final Event event) {
+                        FileCacheController.super.addEvent(event);
+                        Event e = getEvent(event.getServiceId(), event.getProfile(), event.getInterface(),
+                                event.getAttribute(), event.getSessionKey(), event.getReceiverName());
+                        if (e != null) {
+                            // 登録時の日時を復元する
+                            e.setCreateDate(event.getCreateDate());
+                            e.setUpdateDate(event.getUpdateDate());
+                        }
+                    }
+
+                    @Override
+                    public void onRemove(final Event event) {
+                        FileCacheController.super.removeEvent(event);
+                    }
+
+                    @Override
+                    public void onRemoveEvents(final String sessionKey) {
+                        FileCacheController.super.removeEvents(sessionKey);
+                    }
+
+                    @Override
+                    public void onRemoveAll() {
+                        FileCacheController.super.removeAll();
+                    }
+                });
             } catch (IOException e) {
                 mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
+                mJournalBroken = true;
             }
+            mCompactionRecords = Math.max(MIN_COMPACTION_RECORDS, mJournal.getRecordCount() * 2);
+        } else if (loadLegacyCache()) {
+            compact();
+            mContext.deleteFile(CACHE_FILE_NAME);
         }
     }
 
     /**
-     * データをファイルからロードする.
+     * 旧形式のキャッシュファイルからデータをロードする.
+     * 
+     * @return ロードできた場合はtrue、それ以外はfalse
      */
     @SuppressWarnings("unchecked")
-    private void load() {
+    private boolean loadLegacyCache() {
         Map<String, Map<String, List<Event>>> cache = null;
         FileInputStream fis = null;
         ObjectInputStream ois = null;
+        boolean result = false;
         try {
             fis = mContext.openFileInput(CACHE_FILE_NAME);
             ois = new ObjectInputStream(fis);
             cache = (Map<String, Map<String, List<Event>>>) ois.readObject();
             setCache(cache);
+            result = true;
         } catch (FileNotFoundException e) {
-            mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
+            mLogger.info("Cache file is not found in FileCacheController. " + e.getMessage());
         } catch (StreamCorruptedException e) {
             mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
         } catch (IOException e) {
@@ -137,13 +237,22 @@ public class FileCacheController extends MemoryCacheController {
                 mLogger.severe("Exception occurred in FileCacheController. " + e.getMessage());
             }
         }
+        return result;
     }
     
     @Override
     public synchronized EventError addEvent(final Event event) {
         EventError error = super.addEvent(event);
         if (error == EventError.NONE && mAutoFlush) {
-            flush();
+            // 登録済みの場合はアクセストークンが上書きされているので、キャッシュ上のイベントを記録する
+            Event cached = getEvent(event.getServiceId(), event.getProfile(), event.getInterface(),
+                    event.getAttribute(), event.getSessionKey(), event.getReceiverName());
+            try {
+                mJournal.appendAdd(cached != null ? cached : event);
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+            compactIfNeeded();
         }
         return error;
     }
@@ -152,7 +261,12 @@ public class FileCacheController extends MemoryCacheController {
     public synchronized EventError removeEvent(final Event event) {
         EventError error = super.removeEvent(event);
         if (error == EventError.NONE && mAutoFlush) {
-            flush();
+            try {
+                mJournal.appendRemove(event);
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+            compactIfNeeded();
         }
         return error;
     }
@@ -161,7 +275,12 @@ public class FileCacheController extends MemoryCacheController {
     public synchronized boolean removeAll() {
         boolean result = super.removeAll();
         if (mAutoFlush) {
-            flush();
+            try {
+                mJournal.appendRemoveAll();
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+            compactIfNeeded();
         }
         return result;
     }
@@ -170,7 +289,12 @@ public class FileCacheController extends MemoryCacheController {
     public synchronized boolean removeEvents(final String sessionKey) {
         boolean result = super.removeEvents(sessionKey);
         if (mAutoFlush) {
-            flush();
+            try {
+                mJournal.appendRemoveEvents(sessionKey);
+            } catch (IOException e) {
+                onJournalError(e);
+            }
+            compactIfNeeded();
         }
         return result;
     }
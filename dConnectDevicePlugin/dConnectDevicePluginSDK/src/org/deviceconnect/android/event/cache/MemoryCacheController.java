@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.deviceconnect.android.event.Event;
@@ -18,18 +19,21 @@ import org.deviceconnect.android.event.EventError;
 
 /**
  * イベントデータをメモリにキャッシュし、キャッシュの操作機能を提供する.
- * 
+ * <p>
+ * イベントの種類({@link EventKey})をキーにした索引でイベント情報を管理する。<br>
+ * イベント一覧の取得はロックを取らずに行い、登録・解除はイベントの種類毎に分割したロックで排他する。
+ * </p>
  * 
  * @author NTT DOCOMO, INC.
  */
 public class MemoryCacheController extends BaseCacheController {
 
     /**
-     * イベントマップ. serviceId毎にイベントの種類をキーにイベント情報を管理する。
-     * 
+     * 登録・解除の排他に使用するロックの数.
+     * 2のべき乗であること。
      */
-    private Map<String, Map<String, List<Event>>> mEventMap;
-    
+    private static final int LOCK_STRIPES = 16;
+
     /** 
      * 空のサービスID用キー.
      */
@@ -39,14 +43,69 @@ public class MemoryCacheController extends BaseCacheController {
      * 空のレシーバー用キー.
      */
     private static final String NULL_RECEIVER_NAME = "";
+
+    /**
+     * イベントの索引. イベントの種類をキーにイベント情報を管理する。
+     */
+    private final ConcurrentHashMap<EventKey, CopyOnWriteArrayList<Event>> mIndex;
+
+    /**
+     * 登録・解除の排他に使用するロック.
+     */
+    private final Object[] mLocks;
     
     /**
      * メモリキャッシュコントローラーを生成する.
      */
     public MemoryCacheController() {
-        mEventMap = new HashMap<String, Map<String, List<Event>>>();
+        mIndex = new ConcurrentHashMap<EventKey, CopyOnWriteArrayList<Event>>();
+        mLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < mLocks.length; i++) {
+            mLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * イベントの種類に対応するロックを取得する.
+     * 
+     * @param key イベントの種類
+     * @return ロック
+     */
+    private Object getLock(final EventKey key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return mLocks[hash & (LOCK_STRIPES - 1)];
     }
     
+    /**
+     * 索引のキーを生成する.
+     * サービスIDが無い場合はnullを示す特殊な文字列に置き換える。
+     * 
+     * @param serviceId サービスID
+     * @param profile プロファイル
+     * @param inter インターフェース
+     * @param attribute 属性
+     * @return 索引のキー
+     */
+    private EventKey createKey(final String serviceId, final String profile, final String inter,
+            final String attribute) {
+        String tmpServiceId = serviceId;
+        if (tmpServiceId == null) {
+            tmpServiceId = NULL_SERVICE_ID;
+        }
+        return new EventKey(tmpServiceId, profile, inter, attribute);
+    }
+
+    /**
+     * イベント情報から索引のキーを生成する.
+     * 
+     * @param event イベントデータ
+     * @return 索引のキー
+     */
+    private EventKey createKey(final Event event) {
+        return createKey(event.getServiceId(), event.getProfile(), event.getInterface(), event.getAttribute());
+    }
+
     /**
      * イベント情報からサービスIDを取得する.
      * サービスIDが無い場合はnullを示す特殊な文字列を返す。
@@ -76,141 +135,102 @@ public class MemoryCacheController extends BaseCacheController {
         }
         return receiver;
     }
+
+    /**
+     * 一覧からセッションキーとレシーバー名が一致するイベントを探す.
+     * 
+     * @param eventList イベント一覧
+     * @param sessionKey セッションキー
+     * @param receiver レシーバー名
+     * @return 一致したイベント。無い場合はnull
+     */
+    private Event find(final List<Event> eventList, final String sessionKey, final String receiver) {
+        for (Event e : eventList) {
+            if (e.getSessionKey().equals(sessionKey) && getReceiverName(e).equals(receiver)) {
+                return e;
+            }
+        }
+        return null;
+    }
     
     @Override
-    public synchronized EventError addEvent(final Event event) {
+    public EventError addEvent(final Event event) {
         
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
         
-        String serviceId = getServiceId(event);
-        Map<String, List<Event>> events = mEventMap.get(serviceId);
-        
-        if (events == null) {
-            events = new HashMap<String, List<Event>>();
-            mEventMap.put(serviceId, events);
-        }
-        
-        String path = event.getProfile();
-        if (event.getInterface() != null) {
-            path += event.getInterface();
-        }
-        path += event.getAttribute();
-        
-        List<Event> eventList = events.get(path);
-        if (eventList == null) {
-            eventList = new CopyOnWriteArrayList<Event>();
-            events.put(path, eventList);
-        }
-        
-        String sessionKey = event.getSessionKey();
-        String receiver = getReceiverName(event);
-        for (Event e : eventList) {
-            if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
+        EventKey key = createKey(event);
+        synchronized (getLock(key)) {
+            CopyOnWriteArrayList<Event> eventList = mIndex.get(key);
+            if (eventList == null) {
+                eventList = new CopyOnWriteArrayList<Event>();
+                mIndex.put(key, eventList);
+            }
+
+            Event e = find(eventList, event.getSessionKey(), getReceiverName(event));
+            if (e != null) {
                 // 登録済みの場合はアクセストークンを上書きする
                 e.setAccessToken(event.getAccessToken());
                 e.setUpdateDate(Utils.getCurreTimestamp());
                 return EventError.NONE;
             }
+            event.setCreateDate(Utils.getCurreTimestamp());
+            event.setUpdateDate(Utils.getCurreTimestamp());
+            eventList.add(event);
         }
-        event.setCreateDate(Utils.getCurreTimestamp());
-        event.setUpdateDate(Utils.getCurreTimestamp());
-        eventList.add(event);
         
         return EventError.NONE;
     }
 
     @Override
-    public synchronized EventError removeEvent(final Event event) {
+    public EventError removeEvent(final Event event) {
         
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
         
-        String serviceId = getServiceId(event);
-        Map<String, List<Event>> events = mEventMap.get(serviceId);
-        
-        if (events == null) {
-            return EventError.NOT_FOUND;
-        }
+        EventKey key = createKey(event);
+        synchronized (getLock(key)) {
+            CopyOnWriteArrayList<Event> eventList = mIndex.get(key);
+            if (eventList == null) {
+                return EventError.NOT_FOUND;
+            }
 
-        String path = event.getProfile();
-        if (event.getInterface() != null) {
-            path += event.getInterface();
-        }
-        path += event.getAttribute();
-        
-        List<Event> eventList = events.get(path);
-        if (eventList == null) {
-            return EventError.NOT_FOUND;
-        }
-        
-        String sessionKey = event.getSessionKey();
-        String receiver = getReceiverName(event);
-        for (Event e : eventList) {
-            if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(receiver)) {
-                eventList.remove(e);
-                if (eventList.size() == 0) {
-                    events.remove(path);
-                }
-                return EventError.NONE;
+            Event e = find(eventList, event.getSessionKey(), getReceiverName(event));
+            if (e == null) {
+                return EventError.NOT_FOUND;
+            }
+            eventList.remove(e);
+            if (eventList.isEmpty()) {
+                mIndex.remove(key, eventList);
             }
         }
         
-        return EventError.NOT_FOUND;
+        return EventError.NONE;
     }
 
     @Override
-    public synchronized Event getEvent(final String serviceId, final String profile, final String inter, 
+    public Event getEvent(final String serviceId, final String profile, final String inter, 
             final String attribute, final String sessionKey, final String receiver) {
-        Event event = null;
         String tmpReceiver = receiver;
         if (tmpReceiver == null) {
             tmpReceiver = NULL_RECEIVER_NAME;
         }
-        
-        do {
-            List<Event> eventList = getEvents(serviceId, profile, inter, attribute);
-            if (eventList == null) {
-                break;
-            }
-            
-            for (Event e : eventList) {
-                if (e.getSessionKey().equals(sessionKey) && e.getReceiverName().equals(tmpReceiver)) {
-                    event = e;
-                    break;
-                }
-            }            
-        } while (false);
-        
-        return event;
+        List<Event> eventList = mIndex.get(createKey(serviceId, profile, inter, attribute));
+        if (eventList == null) {
+            return null;
+        }
+        return find(eventList, sessionKey, tmpReceiver);
     }
 
     @Override
-    public synchronized List<Event> getEvents(final String serviceId, final String profile, 
+    public List<Event> getEvents(final String serviceId, final String profile, 
             final String inter, final String attribute) {
-        
-        String tmpServiceId = serviceId;
-        if (serviceId == null) {
-            tmpServiceId = NULL_SERVICE_ID;
-        }
-        Map<String, List<Event>> events = mEventMap.get(tmpServiceId);
-        
-        if (events == null) {
-            return new ArrayList<Event>();
-        }
-
-        String path = profile;
-        if (inter != null) {
-            path += inter;
-        }
-        path += attribute;
-        List<Event> res = events.get(path);
+        List<Event> res = mIndex.get(createKey(serviceId, profile, inter, attribute));
         if (res == null) {
             return new ArrayList<Event>();
         }
-        
         return res;
     }
 
@@ -220,19 +240,46 @@ public class MemoryCacheController extends BaseCacheController {
     }
 
     @Override
-    public synchronized boolean removeAll() {
-        mEventMap.clear();
-        return mEventMap.size() == 0;
+    public boolean removeAll() {
+        mIndex.clear();
+        return mIndex.isEmpty();
     }
     
     /**
      * イベントデータのキャッシュオブジェクトを取得する.
      * Map&lt;serviceId, Map&lt;profile+interface+attribute, List&lt;Event&gt;&gt;&gt;。
+     * <p>
+     * 索引から作成したスナップショットを返すので、返り値を変更してもキャッシュには反映されない。
+     * </p>
      * 
      * @return キャッシュ
      */
-    protected synchronized Map<String, Map<String, List<Event>>> getCache() {
-        return mEventMap;
+    protected Map<String, Map<String, List<Event>>> getCache() {
+        Map<String, Map<String, List<Event>>> cache = new HashMap<String, Map<String, List<Event>>>();
+        for (List<Event> eventList : mIndex.values()) {
+            for (Event event : eventList) {
+                String serviceId = getServiceId(event);
+                Map<String, List<Event>> events = cache.get(serviceId);
+                if (events == null) {
+                    events = new HashMap<String, List<Event>>();
+                    cache.put(serviceId, events);
+                }
+
+                String path = event.getProfile();
+                if (event.getInterface() != null) {
+                    path += event.getInterface();
+                }
+                path += event.getAttribute();
+
+                List<Event> list = events.get(path);
+                if (list == null) {
+                    list = new CopyOnWriteArrayList<Event>();
+                    events.put(path, list);
+                }
+                list.add(event);
+            }
+        }
+        return cache;
     }
     
     /**
@@ -241,29 +288,49 @@ public class MemoryCacheController extends BaseCacheController {
      * 
      * @param cache キャッシュ
      */
-    protected synchronized void setCache(final Map<String, Map<String, List<Event>>> cache) {
-        if (cache != null) {
-            mEventMap = cache;
+    protected void setCache(final Map<String, Map<String, List<Event>>> cache) {
+        if (cache == null) {
+            return;
+        }
+        mIndex.clear();
+        for (Map<String, List<Event>> events : cache.values()) {
+            for (List<Event> eventList : events.values()) {
+                for (Event event : eventList) {
+                    EventKey key = createKey(event);
+                    synchronized (getLock(key)) {
+                        CopyOnWriteArrayList<Event> list = mIndex.get(key);
+                        if (list == null) {
+                            list = new CopyOnWriteArrayList<Event>();
+                            mIndex.put(key, list);
+                        }
+                        list.add(event);
+                    }
+                }
+            }
         }
     }
 
     @Override
-    public synchronized boolean removeEvents(final String sessionKey) {
+    public boolean removeEvents(final String sessionKey) {
         
         if (sessionKey == null) {
             throw new IllegalArgumentException("SessionKey is null.");
         }
         
-        for (Entry<String, Map<String, List<Event>>> entry : mEventMap.entrySet()) {
-            for (Entry<String, List<Event>> events : entry.getValue().entrySet()) {
+        for (Entry<EventKey, CopyOnWriteArrayList<Event>> entry : mIndex.entrySet()) {
+            CopyOnWriteArrayList<Event> eventList = entry.getValue();
+            synchronized (getLock(entry.getKey())) {
                 List<Event> removes = new ArrayList<Event>();
-                for (Event event : events.getValue()) {
+                for (Event event : eventList) {
                     if (sessionKey.equals(event.getSessionKey())) {
                         removes.add(event);
                     }
                 }
                 if (removes.size() != 0) {
-                    events.getValue().removeAll(removes);
+                    eventList.removeAll(removes);
+                    if (eventList.isEmpty()) {
+                        mIndex.remove(entry.getKey(), eventList);
+                    }
                 }
             }
         }
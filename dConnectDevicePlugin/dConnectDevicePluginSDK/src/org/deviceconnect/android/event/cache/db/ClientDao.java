@@ -23,6 +23,12 @@ import android.database.sqlite.SQLiteDatabase;
  */
 final class ClientDao implements ClientSchema {
 
+    /**
+     * APIのパスとサービスIDから送り先を検索するSQL文.
+     * 毎回組み立てずに、クラスのロード時に一度だけ作成する。
+     */
+    private static final String SELECT_BY_API_AND_SERVICE_ID = createSelectByAPIAndServiceId();
+
     /**
      * Clientテーブル情報クラス.
      * 
@@ -183,6 +189,40 @@ final class ClientDao implements ClientSchema {
     static Client[] getByAPIAndServiceId(final SQLiteDatabase db, final Event event) {
 
         Client[] result = null;
+        String inter = (event.getInterface() == null) ? "" : event.getInterface();
+        String serviceId = (event.getServiceId() == null) ? "" : event.getServiceId();
+        String[] params = {event.getProfile(), inter, event.getAttribute(), serviceId};
+        Cursor c = db.rawQuery(SELECT_BY_API_AND_SERVICE_ID, params);
+
+        if (c.moveToFirst()) {
+            int index = 0;
+            result = new Client[c.getCount()];
+            do {
+                 if (c.getColumnIndex(_ID) != -1) {
+                     Client data = new Client();
+                    data.mId = c.getLong(0);
+                    data.mSessionKey = c.getString(1);
+                    data.mAccessToken = c.getString(2);
+                    data.mReceiver = c.getString(3);
+                    long createTime = c.getLong(4);
+                    long updateTime = c.getLong(5);
+                    data.mESCreateDate = new Timestamp(createTime);
+                    data.mESUpdateDate = new Timestamp(updateTime);
+                    result[index++] = data;
+                }
+            } while (c.moveToNext());
+        }
+        c.close();
+
+        return result;
+    }
+
+    /**
+     * APIのパスとサービスIDから送り先を検索するSQL文を作成する.
+     * 
+     * @return SQL文
+     */
+    private static String createSelectByAPIAndServiceId() {
         StringBuilder sb = new StringBuilder();
         String join = " INNER JOIN ";
         String prepared = " = ? ";
@@ -255,31 +295,6 @@ final class ClientDao implements ClientSchema {
         sb.append(DeviceSchema.SERVICE_ID);
         sb.append(prepared);
 
-        String inter = (event.getInterface() == null) ? "" : event.getInterface();
-        String serviceId = (event.getServiceId() == null) ? "" : event.getServiceId();
-        String[] params = {event.getProfile(), inter, event.getAttribute(), serviceId};
-        Cursor c = db.rawQuery(sb.toString(), params);
-
-        if (c.moveToFirst()) {
-            int index = 0;
-            result = new Client[c.getCount()];
-            do {
-                 if (c.getColumnIndex(_ID) != -1) {
-                     Client data = new Client();
-                    data.mId = c.getLong(0);
-                    data.mSessionKey = c.getString(1);
-                    data.mAccessToken = c.getString(2);
-                    data.mReceiver = c.getString(3);
-                    long createTime = c.getLong(4);
-                    long updateTime = c.getLong(5);
-                    data.mESCreateDate = new Timestamp(createTime);
-                    data.mESUpdateDate = new Timestamp(updateTime);
-                    result[index++] = data;
-                }
-            } while (c.moveToNext());
-        }
-        c.close();
-
-        return result;
+        return sb.toString();
     }
 }
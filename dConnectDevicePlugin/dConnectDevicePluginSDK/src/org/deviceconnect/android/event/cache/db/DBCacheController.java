@@ -6,15 +6,18 @@
  */
 package org.deviceconnect.android.event.cache.db;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.deviceconnect.android.event.Event;
 import org.deviceconnect.android.event.EventError;
 import org.deviceconnect.android.event.cache.BaseCacheController;
+import org.deviceconnect.android.event.cache.EventKey;
 import org.deviceconnect.android.event.cache.db.ClientDao.Client;
-import org.deviceconnect.android.event.cache.db.EventSessionDao.EventSession;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
@@ -23,7 +26,12 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 /**
  * イベントデータをデータベースに保存し、キャッシュの操作機能を提供する. 
- * 
+ * <p>
+ * データベースは一度オープンしたら閉じずに使い続ける。
+ * 接続を使い続けることで、SQL文のコンパイル結果も接続のキャッシュから再利用される。<br>
+ * イベント一覧はイベントの種類毎にメモリ上にも保持し、2回目以降はデータベースを検索せずに返す。
+ * イベントの登録・解除を行った場合は、該当するイベント一覧をメモリ上から破棄する。
+ * </p>
  *
  * @author NTT DOCOMO, INC.
  */
@@ -43,6 +51,22 @@ public final class DBCacheController extends BaseCacheController {
      * DBヘルパー.
      */
     private EventDBOpenHelper mHelper;
+
+    /**
+     * データベース.
+     */
+    private SQLiteDatabase mDb;
+
+    /**
+     * データベース操作の排他に使用するロック.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * イベントの種類をキーにしたイベント一覧のキャッシュ.
+     */
+    private final ConcurrentHashMap<EventKey, List<Event>> mEventCache
+        = new ConcurrentHashMap<EventKey, List<Event>>();
     
     /**
      * 指定されたコンテキストでDBCacheControllerのインスタンスを生成する.
@@ -61,226 +85,292 @@ public final class DBCacheController extends BaseCacheController {
     
     /**
      * dbをオープンする.
+     * <p>
+     * オープン済みの場合は、そのデータベースオブジェクトを返す。
+     * </p>
      * 
      * @return データベースオブジェクト
      */
     private SQLiteDatabase openDB() {
-        // 安全性と利便性を取り、毎回open、closeすることとする。
-        SQLiteDatabase db;
+        if (mDb != null && mDb.isOpen()) {
+            return mDb;
+        }
         try {
-            db = mHelper.getWritableDatabase();
+            mDb = mHelper.getWritableDatabase();
         } catch (SQLiteException e) {
-            db = null;
+            mLogger.warning("DBCacheController#openDB(). Failed to open database. " + e.getMessage());
+            mDb = null;
         }
-        return db;
+        return mDb;
+    }
+
+    /**
+     * イベントの種類を示すキーを作成する.
+     * データベースと同様に、サービスIDとインターフェースのnullは空文字として扱う。
+     * 
+     * @param serviceId サービスID
+     * @param profile プロファイル
+     * @param inter インターフェース
+     * @param attribute 属性
+     * @return キー
+     */
+    private static EventKey createKey(final String serviceId, final String profile, final String inter, 
+            final String attribute) {
+        return new EventKey(serviceId == null ? "" : serviceId, profile, inter == null ? "" : inter, attribute);
     }
     
     @Override
-    public synchronized EventError addEvent(final Event event) {
+    public EventError addEvent(final Event event) {
         
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
         
-        EventError result = EventError.FAILED;
-        SQLiteDatabase db = openDB();
-        if (db == null) {
-            return EventError.FAILED;
-        }
-        
-        do {
-            db.beginTransaction();
-            long pId = ProfileDao.insert(db, event.getProfile());
-            if (pId < 0) {
-                break;
-            }
-            long iId = InterfaceDao.insert(db, event.getInterface(), pId);
-            if (iId < 0) {
-                break;
-            }
-            long aId = AttributeDao.insert(db, event.getAttribute(), iId);
-            if (aId < 0) {
-                break;
-            }
-            long dId = DeviceDao.insert(db, event.getServiceId());
-            if (dId < 0) {
-                break;
-            }
-            long edId = EventDeviceDao.insert(db, aId, dId);
-            if (edId < 0) {
-                break;
+        synchronized (mLock) {
+            SQLiteDatabase db = openDB();
+            if (db == null) {
+                return EventError.FAILED;
             }
-            long cId = ClientDao.insert(db, event);
-            if (cId < 0) {
-                break;
+
+            EventError result = EventError.FAILED;
+            db.beginTransaction();
+            try {
+                do {
+                    long pId = ProfileDao.insert(db, event.getProfile());
+                    if (pId < 0) {
+                        break;
+                    }
+                    long iId = InterfaceDao.insert(db, event.getInterface(), pId);
+                    if (iId < 0) {
+                        break;
+                    }
+                    long aId = AttributeDao.insert(db, event.getAttribute(), iId);
+                    if (aId < 0) {
+                        break;
+                    }
+                    long dId = DeviceDao.insert(db, event.getServiceId());
+                    if (dId < 0) {
+                        break;
+                    }
+                    long edId = EventDeviceDao.insert(db, aId, dId);
+                    if (edId < 0) {
+                        break;
+                    }
+                    long cId = ClientDao.insert(db, event);
+                    if (cId < 0) {
+                        break;
+                    }
+                    long esId = EventSessionDao.insert(db, edId, cId);
+                    if (esId < 0) {
+                        break;
+                    }
+                    result = EventError.NONE;
+                    db.setTransactionSuccessful();
+                } while (false);
+            } finally {
+                db.endTransaction();
             }
-            long esId = EventSessionDao.insert(db, edId, cId);
-            if (esId < 0) {
-                break;
+
+            if (result == EventError.NONE) {
+                // アクセストークンが更新されている場合もあるので、同じセッションキーのイベントは全て破棄する
+                mEventCache.clear();
             }
-            result = EventError.NONE;
-            db.setTransactionSuccessful();
-        } while (false);
-        db.endTransaction();
-        db.close();
-        
-        return result;
+            return result;
+        }
     }
 
     @Override
-    public synchronized EventError removeEvent(final Event event) {
+    public EventError removeEvent(final Event event) {
         if (!checkParameter(event)) {
             return EventError.INVALID_PARAMETER;
         }
         
-        SQLiteDatabase db = openDB();
-        if (db == null) {
-            return EventError.FAILED;
-        }
-        
-        db.beginTransaction();
-        EventError error = EventSessionDao.delete(db, event);
-        if (error == EventError.NONE || error == EventError.NOT_FOUND) {
-            db.setTransactionSuccessful();
+        synchronized (mLock) {
+            SQLiteDatabase db = openDB();
+            if (db == null) {
+                return EventError.FAILED;
+            }
+
+            EventError error;
+            db.beginTransaction();
+            try {
+                error = EventSessionDao.delete(db, event);
+                if (error == EventError.NONE || error == EventError.NOT_FOUND) {
+                    db.setTransactionSuccessful();
+                }
+            } finally {
+                db.endTransaction();
+            }
+
+            if (error == EventError.NONE) {
+                mEventCache.remove(createKey(event.getServiceId(), event.getProfile(), 
+                        event.getInterface(), event.getAttribute()));
+            }
+            return error;
         }
-        db.endTransaction();
-        db.close();
-        
-        return error;
     }
 
     @Override
-    public synchronized boolean removeAll() {
+    public boolean removeAll() {
         
-        SQLiteDatabase db = openDB();
-        if (db == null) {
-            return false;
-        }
-        boolean result;
-        db.beginTransaction();
-        try {
-            db.delete(EventDeviceSchema.TABLE_NAME, null, null);
-            db.delete(AttributeSchema.TABLE_NAME, null, null);
-            db.delete(InterfaceSchema.TABLE_NAME, null, null);
-            db.delete(ProfileSchema.TABLE_NAME, null, null);
-            db.delete(ClientSchema.TABLE_NAME, null, null);
-            db.delete(DeviceSchema.TABLE_NAME, null, null);
-            db.setTransactionSuccessful();
-            result = true;
-        } catch (SQLiteException e) {
-            // 失敗したらロールバックで巻き返す。
-            mLogger.severe("DBCacheController#removeAll(). Failed to remove all. " + e.getMessage());
-            result = false;
+        synchronized (mLock) {
+            SQLiteDatabase db = openDB();
+            if (db == null) {
+                return false;
+            }
+            boolean result;
+            db.beginTransaction();
+            try {
+                db.delete(EventDeviceSchema.TABLE_NAME, null, null);
+                db.delete(AttributeSchema.TABLE_NAME, null, null);
+                db.delete(InterfaceSchema.TABLE_NAME, null, null);
+                db.delete(ProfileSchema.TABLE_NAME, null, null);
+                db.delete(ClientSchema.TABLE_NAME, null, null);
+                db.delete(DeviceSchema.TABLE_NAME, null, null);
+                db.setTransactionSuccessful();
+                result = true;
+            } catch (SQLiteException e) {
+                // 失敗したらロールバックで巻き返す。
+                mLogger.severe("DBCacheController#removeAll(). Failed to remove all. " + e.getMessage());
+                result = false;
+            } finally {
+                db.endTransaction();
+            }
+            mEventCache.clear();
+            return result;
         }
-        db.endTransaction();
-        db.close();
-        return result;
     }
     
     @Override
-    public synchronized Event getEvent(final String serviceId, final String profile, final String inter, 
+    public Event getEvent(final String serviceId, final String profile, final String inter, 
             final String attribute, final String sessionKey, final String receiver) {
         
-        Event result = null;
-        SQLiteDatabase db = null;
-        do {
-            
-            db = openDB();
-            if (db == null) {
-                break;
-            }
-            
-            Event search = new Event();
-            search.setServiceId(serviceId);
-            search.setProfile(profile);
-            search.setInterface(inter);
-            search.setAttribute(attribute);
-            search.setSessionKey(sessionKey);
-            search.setReceiverName(receiver);
-            // checkParameterエラー回避用データの設定
-            search.setAccessToken("dammy");
-            
-            if (!checkParameter(search)) {
-                break;
-            }
-            
-            EventSession data = EventSessionDao.get(db, search);
-            if (data == null) {
-                break;
-            }
-            
-            Client client = ClientDao.getById(db, data.mCId);
-            if (client == null) {
-                break;
+        if (sessionKey == null) {
+            return null;
+        }
+        String tmpReceiver = receiver;
+        if (tmpReceiver == null) {
+            tmpReceiver = "";
+        }
+
+        for (Event event : loadEvents(serviceId, profile, inter, attribute)) {
+            if (sessionKey.equals(event.getSessionKey()) && tmpReceiver.equals(event.getReceiverName())) {
+                return copy(event);
             }
-            
-            search.setAccessToken(client.mAccessToken);
-            search.setCreateDate(data.mCreateDate);
-            search.setUpdateDate(data.mUpdateDate);
-            
-            result = search;
-            
-        } while (false);
-        
-        if (db != null) {
-            db.close();
         }
-        
-        return result;
+        return null;
     }
 
     @Override
-    public synchronized List<Event> getEvents(final String serviceId, final String profile, 
+    public List<Event> getEvents(final String serviceId, final String profile, 
             final String inter, final String attribute) {
-        
-        List<Event> result = new ArrayList<Event>();
-        SQLiteDatabase db = null;
-        do {
-            db = openDB();
+        List<Event> events = loadEvents(serviceId, profile, inter, attribute);
+        List<Event> result = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            result.add(copy(event));
+        }
+        return result;
+    }
+
+    /**
+     * キャッシュ上のイベントを複製する.
+     * <p>
+     * 呼び出し元がイベントを変更してもキャッシュに影響しないように、キャッシュ上のイベントは複製して返す。
+     * </p>
+     * 
+     * @param event キャッシュ上のイベント
+     * @return 複製したイベント
+     */
+    private static Event copy(final Event event) {
+        Event copy = new Event();
+        copy.setServiceId(event.getServiceId());
+        copy.setProfile(event.getProfile());
+        copy.setInterface(event.getInterface());
+        copy.setAttribute(event.getAttribute());
+        copy.setSessionKey(event.getSessionKey());
+        copy.setAccessToken(event.getAccessToken());
+        copy.setReceiverName(event.getReceiverName());
+        copy.setCreateDate(copy(event.getCreateDate()));
+        copy.setUpdateDate(copy(event.getUpdateDate()));
+        return copy;
+    }
+
+    /**
+     * 日時を複製する.
+     * 
+     * @param timestamp 日時
+     * @return 複製した日時。nullの場合はnull
+     */
+    private static Timestamp copy(final Timestamp timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        return (Timestamp) timestamp.clone();
+    }
+
+    /**
+     * イベント一覧をキャッシュから取得する.
+     * <p>
+     * キャッシュに無い場合はデータベースから読み込み、キャッシュに追加する。
+     * </p>
+     * 
+     * @param serviceId サービスID
+     * @param profile プロファイル
+     * @param inter インターフェース
+     * @param attribute 属性
+     * @return イベント一覧。変更不可。キャッシュ上のイベントそのものなので、外部には複製して返すこと。
+     */
+    private List<Event> loadEvents(final String serviceId, final String profile, 
+            final String inter, final String attribute) {
+
+        if (profile == null || attribute == null) {
+            return Collections.emptyList();
+        }
+
+        EventKey key = createKey(serviceId, profile, inter, attribute);
+        List<Event> events = mEventCache.get(key);
+        if (events != null) {
+            return events;
+        }
+
+        synchronized (mLock) {
+            events = mEventCache.get(key);
+            if (events != null) {
+                return events;
+            }
+
+            SQLiteDatabase db = openDB();
             if (db == null) {
-                break;
+                return Collections.emptyList();
             }
-            
+
             Event search = new Event();
             search.setServiceId(serviceId);
             search.setProfile(profile);
             search.setInterface(inter);
             search.setAttribute(attribute);
-            // checkParameterエラー回避用データの設定
-            search.setSessionKey("dammy");
-            search.setAccessToken("dammy");
-            search.setReceiverName("dammy");
-            
-            if (!checkParameter(search)) {
-                break;
-            }
-            
+
+            List<Event> result = new ArrayList<Event>();
             Client[] clients = ClientDao.getByAPIAndServiceId(db, search);
-            if (clients == null) {
-                break;
+            if (clients != null) {
+                for (Client client : clients) {
+                    Event event = new Event();
+                    event.setServiceId(serviceId);
+                    event.setProfile(profile);
+                    event.setInterface(inter);
+                    event.setAttribute(attribute);
+                    event.setSessionKey(client.mSessionKey);
+                    event.setAccessToken(client.mAccessToken);
+                    event.setReceiverName(client.mReceiver);
+                    event.setCreateDate(client.mESCreateDate);
+                    event.setUpdateDate(client.mESUpdateDate);
+                    result.add(event);
+                }
             }
-            
-            for (Client client : clients) {
-                Event event = new Event();
-                event.setServiceId(serviceId);
-                event.setProfile(profile);
-                event.setInterface(inter);
-                event.setAttribute(attribute);
-                event.setSessionKey(client.mSessionKey);
-                event.setAccessToken(client.mAccessToken);
-                event.setReceiverName(client.mReceiver);
-                event.setCreateDate(client.mESCreateDate);
-                event.setUpdateDate(client.mESUpdateDate);
-                result.add(event);
-            }
-            
-        } while (false);
-        
-        if (db != null) {
-            db.close();
+            events = Collections.unmodifiableList(result);
+            mEventCache.put(key, events);
+            return events;
         }
-        
-        return result;
     }
 
     @Override
@@ -289,46 +379,48 @@ public final class DBCacheController extends BaseCacheController {
     }
 
     @Override
-    public synchronized boolean removeEvents(final String sessionKey) {
+    public boolean removeEvents(final String sessionKey) {
         
         if (sessionKey == null) {
             throw new IllegalArgumentException("Session key is null.");
         }
         
-        boolean result = false;
-        SQLiteDatabase db = null;
-        do {
-            db = openDB();
+        synchronized (mLock) {
+            SQLiteDatabase db = openDB();
             if (db == null) {
-                break;
+                return false;
             }
+
+            boolean result = false;
             db.beginTransaction();
-            Client[] clients = ClientDao.getBySessionKey(db, sessionKey);
-            if (clients == null) {
-                break;
-            } else if (clients.length == 0) {
-                result = true;
-                break;
-            }
-            String[] ids = new String[clients.length];
-            int i = 0;
-            for (Client client : clients) {
-                ids[i++] = "" + client.mId;
+            try {
+                do {
+                    Client[] clients = ClientDao.getBySessionKey(db, sessionKey);
+                    if (clients == null) {
+                        break;
+                    } else if (clients.length == 0) {
+                        result = true;
+                        break;
+                    }
+                    String[] ids = new String[clients.length];
+                    int i = 0;
+                    for (Client client : clients) {
+                        ids[i++] = "" + client.mId;
+                    }
+                    EventError error = EventSessionDao.delete(db, ids);
+                    if (error == EventError.FAILED || error == EventError.INVALID_PARAMETER) {
+                        break;
+                    }
+                    db.setTransactionSuccessful();
+                    result = true;
+                } while (false);
+            } finally {
+                db.endTransaction();
             }
-            EventError error = EventSessionDao.delete(db, ids);
-            if (error == EventError.FAILED || error == EventError.INVALID_PARAMETER) {
-                break;
-            }
-            db.setTransactionSuccessful();
-            result = true;
-        } while (false);
-        
-        if (db != null) {
-            db.endTransaction();
-            db.close();
+
+            mEventCache.clear();
+            return result;
         }
-        
-        return result;
     }
     
     /**
@@ -347,7 +439,7 @@ public final class DBCacheController extends BaseCacheController {
         /** 
          * バージョン番号.
          */
-        private static final int DB_VERSION = 2;
+        private static final int DB_VERSION = 3;
         
         /**
          * DBオープンヘルパーを生成する.
@@ -365,6 +457,12 @@ public final class DBCacheController extends BaseCacheController {
 
         @Override
         public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+            if (oldVersion == 2) {
+                // バージョン2からはインデックスの追加のみなので、登録済みのイベントは残す。
+                createAllIndexes(db);
+                return;
+            }
+
             // バージョンが上がった場合はDBを初期化する。
             db.execSQL(ProfileSchema.DROP);
             db.execSQL(InterfaceSchema.DROP);
@@ -391,6 +489,17 @@ public final class DBCacheController extends BaseCacheController {
             db.execSQL(DeviceSchema.CREATE);
             db.execSQL(EventDeviceSchema.CREATE);
             db.execSQL(EventSessionSchema.CREATE);
+            createAllIndexes(db);
+        }
+
+        /**
+         * 検索に使用するインデックスをすべて作成する.
+         * 一意制約で作成されるインデックスで足りない検索条件のみ追加する。
+         * @param db データベース
+         */
+        private void createAllIndexes(final SQLiteDatabase db) {
+            db.execSQL(EventDeviceSchema.CREATE_INDEX);
+            db.execSQL(EventSessionSchema.CREATE_INDEX);
         }
     }
 
@@ -41,6 +41,14 @@ interface EventDeviceSchema extends BaseSchema {
             + D_ID + " INTEGER NOT NULL, "
             + CREATE_DATE + " INTEGER NOT NULL, "
             + UPDATE_DATE + " INTEGER NOT NULL, UNIQUE(" + A_ID + ", " + D_ID + "));";
+
+    /** 
+     * インデックスcreate文.
+     * デバイスからイベントを検索するために使用する。
+     */
+    String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + D_ID 
+            + " ON " + TABLE_NAME + " (" + D_ID + ");";
+
     /** 
      * テーブルdrop文.
      */
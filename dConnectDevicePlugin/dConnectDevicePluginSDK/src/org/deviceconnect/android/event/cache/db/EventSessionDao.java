@@ -25,6 +25,12 @@ import android.database.sqlite.SQLiteException;
  */
 final class EventSessionDao implements EventSessionSchema {
 
+    /**
+     * イベント情報からEventSessionを検索するSQL文.
+     * 毎回組み立てずに、クラスのロード時に一度だけ作成する。
+     */
+    private static final String SELECT_BY_EVENT = createSelectByEvent();
+
     /**
      * Utilityクラスなのでprivate.
      */
@@ -170,6 +176,47 @@ final class EventSessionDao implements EventSessionSchema {
     static EventSession get(final SQLiteDatabase db, final Event event) {
         
         EventSession result = null;
+        String inter = null2WhiteSpace(event.getInterface());
+        String serviceId =  null2WhiteSpace(event.getServiceId());
+        String receiver = null2WhiteSpace(event.getReceiverName());
+        
+        String[] params = {event.getProfile(), inter, event.getAttribute(), 
+                serviceId, event.getSessionKey(), receiver};
+        Cursor c = db.rawQuery(SELECT_BY_EVENT, params);
+        
+        if (c.moveToFirst()) {
+            result = new EventSession();
+            if (c.getColumnIndex(_ID) != -1) {
+                result.mId = c.getLong(0);
+                result.mEdId = c.getLong(1);
+                result.mCId = c.getLong(2);
+                long createTime = c.getLong(3);
+                long updateTime = c.getLong(4);
+                result.mCreateDate = new Timestamp(createTime);
+                result.mUpdateDate = new Timestamp(updateTime);
+            } 
+        }
+        c.close();
+        
+        return result;
+    }
+    
+    /**
+     * 文字列がnullの場合空文字を返す.
+     * 
+     * @param str 解析対象文字列
+     * @return nullの場合空文字、その他は引数の文字列をそのまま返す。
+     */
+    private static String null2WhiteSpace(final String str) {
+        return (str == null) ? "" : str;
+    }
+
+    /**
+     * イベント情報からEventSessionを検索するSQL文を作成する.
+     * 
+     * @return SQL文
+     */
+    private static String createSelectByEvent() {
         StringBuilder sb = new StringBuilder();
         String join = " INNER JOIN ";
         String prepared = " = ? ";
@@ -247,39 +294,7 @@ final class EventSessionDao implements EventSessionSchema {
         sb.append("c.");
         sb.append(ClientSchema.RECEIVER);
         sb.append(prepared);
-        
-        String inter = null2WhiteSpace(event.getInterface());
-        String serviceId =  null2WhiteSpace(event.getServiceId());
-        String receiver = null2WhiteSpace(event.getReceiverName());
-        
-        String[] params = {event.getProfile(), inter, event.getAttribute(), 
-                serviceId, event.getSessionKey(), receiver};
-        Cursor c = db.rawQuery(sb.toString(), params);
-        
-        if (c.moveToFirst()) {
-            result = new EventSession();
-            if (c.getColumnIndex(_ID) != -1) {
-                result.mId = c.getLong(0);
-                result.mEdId = c.getLong(1);
-                result.mCId = c.getLong(2);
-                long createTime = c.getLong(3);
-                long updateTime = c.getLong(4);
-                result.mCreateDate = new Timestamp(createTime);
-                result.mUpdateDate = new Timestamp(updateTime);
-            } 
-        }
-        c.close();
-        
-        return result;
-    }
-    
-    /**
-     * 文字列がnullの場合空文字を返す.
-     * 
-     * @param str 解析対象文字列
-     * @return nullの場合空文字、その他は引数の文字列をそのまま返す。
-     */
-    private static String null2WhiteSpace(final String str) {
-        return (str == null) ? "" : str;
+
+        return sb.toString();
     }
 }
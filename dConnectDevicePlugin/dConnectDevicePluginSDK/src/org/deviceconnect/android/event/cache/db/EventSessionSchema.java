@@ -42,6 +42,13 @@ interface EventSessionSchema extends BaseSchema {
             + CREATE_DATE + " INTEGER NOT NULL, "
             + UPDATE_DATE + " INTEGER NOT NULL, UNIQUE(" 
             + ED_ID + ", " + C_ID + "));";
+
+    /** 
+     * インデックスcreate文.
+     * セッションキー毎の一括削除でクライアントIDから検索するために使用する。
+     */
+    String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + C_ID 
+            + " ON " + TABLE_NAME + " (" + C_ID + ");";
     
     /** 
      * テーブルdrop文.
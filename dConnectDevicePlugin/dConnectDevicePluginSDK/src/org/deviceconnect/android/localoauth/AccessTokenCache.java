@@ -0,0 +1,195 @@
+/*
+ AccessTokenCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.localoauth;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.restlet.ext.oauth.internal.Scope;
+
+/**
+ * アクセストークンのチェック結果を求めるためのキャッシュ.
+ * <p>
+ * アクセストークン毎に、スコープ一覧とクライアントIDの有無をメモリ上に保持する。<br>
+ * トークンのアクセス日時の更新は、その都度DBに書き込まずに溜めておき、
+ * {@link #drainAccessDates()}でまとめて取り出してDBに書き込む。
+ * </p>
+ * <p>
+ * トークンやクライアントを更新・削除した場合には、{@link #clear()}でキャッシュを破棄すること。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+class AccessTokenCache {
+
+    /** キャッシュするトークン数の上限. */
+    private final int mMaxSize;
+
+    /** アクセストークンをキーにしたキャッシュ. */
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+
+    /** DBに書き込んでいないアクセス日時(トークンIDがキー). */
+    private final ConcurrentHashMap<Long, Long> mAccessDates = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * コンストラクタ.
+     * @param maxSize キャッシュするトークン数の上限
+     */
+    AccessTokenCache(final int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * キャッシュからトークン情報を取得する.
+     * @param accessToken アクセストークン
+     * @return トークン情報。キャッシュされていない場合はnull
+     */
+    Entry get(final String accessToken) {
+        return mEntries.get(accessToken);
+    }
+
+    /**
+     * トークン情報をキャッシュに追加する.
+     * <p>
+     * 上限を超える場合には、任意の1件をキャッシュから削除する。
+     * 削除されたトークン情報は次回アクセス時にDBから読み込み直される。
+     * </p>
+     * @param accessToken アクセストークン
+     * @param entry トークン情報
+     */
+    void put(final String accessToken, final Entry entry) {
+        if (mEntries.size() >= mMaxSize) {
+            Iterator<String> it = mEntries.keySet().iterator();
+            if (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        mEntries.put(accessToken, entry);
+    }
+
+    /**
+     * キャッシュを全て破棄する.
+     * <p>
+     * DBに書き込んでいないアクセス日時は破棄しないので、先に{@link #drainAccessDates()}で書き込んでおくこと。
+     * </p>
+     */
+    void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * トークンのアクセス日時を記録する.
+     * @param tokenId トークンID
+     * @param accessDate アクセス日時
+     */
+    void recordAccess(final long tokenId, final long accessDate) {
+        mAccessDates.put(tokenId, accessDate);
+    }
+
+    /**
+     * DBに書き込んでいないアクセス日時があるか確認する.
+     * @param tokenId トークンID
+     * @return 書き込んでいないアクセス日時がある場合はtrue、それ以外はfalse
+     */
+    boolean hasPendingAccess(final long tokenId) {
+        return mAccessDates.containsKey(tokenId);
+    }
+
+    /**
+     * DBに書き込んでいないアクセス日時を全て取り出す.
+     * @return トークンIDをキーにしたアクセス日時
+     */
+    Map<Long, Long> drainAccessDates() {
+        Map<Long, Long> dates = new HashMap<Long, Long>();
+        for (Map.Entry<Long, Long> e : mAccessDates.entrySet()) {
+            // 取り出している間に更新された値は次回に持ち越す
+            if (mAccessDates.remove(e.getKey(), e.getValue())) {
+                dates.put(e.getKey(), e.getValue());
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * キャッシュしたトークン情報.
+     */
+    static final class Entry {
+        /** トークンID. */
+        private final long mTokenId;
+        /** トークンの登録日時. */
+        private final long mRegistrationDate;
+        /** スコープ一覧. */
+        private final Scope[] mScopes;
+        /** トークンを発行したクライアントIDが存在するか. */
+        private final boolean mExistClientId;
+        /** まだアクセスされていないトークンか. */
+        private final AtomicBoolean mFirstAccess;
+
+        /**
+         * コンストラクタ.
+         * @param tokenId トークンID
+         * @param registrationDate トークンの登録日時
+         * @param scopes スコープ一覧
+         * @param existClientId トークンを発行したクライアントIDが存在する場合はtrue
+         * @param firstAccess まだアクセスされていないトークンの場合はtrue
+         */
+        Entry(final long tokenId, final long registrationDate, final Scope[] scopes,
+                final boolean existClientId, final boolean firstAccess) {
+            mTokenId = tokenId;
+            mRegistrationDate = registrationDate;
+            mScopes = scopes;
+            mExistClientId = existClientId;
+            mFirstAccess = new AtomicBoolean(firstAccess);
+        }
+
+        /**
+         * トークンIDを取得する.
+         * @return トークンID
+         */
+        long getTokenId() {
+            return mTokenId;
+        }
+
+        /**
+         * トークンの登録日時を取得する.
+         * @return トークンの登録日時
+         */
+        long getRegistrationDate() {
+            return mRegistrationDate;
+        }
+
+        /**
+         * スコープ一覧を取得する.
+         * @return スコープ一覧
+         */
+        Scope[] getScopes() {
+            return mScopes;
+        }
+
+        /**
+         * トークンを発行したクライアントIDが存在するか確認する.
+         * @return 存在する場合はtrue、それ以外はfalse
+         */
+        boolean isExistClientId() {
+            return mExistClientId;
+        }
+
+        /**
+         * アクセスされたことを記録し、それが初回アクセスだったかを返す.
+         * <p>
+         * 初回アクセスとして扱われるのは、同時にアクセスされた場合でも1回だけとなる。
+         * </p>
+         * @return 初回アクセスの場合はtrue、それ以外はfalse
+         */
+        boolean markAccessed() {
+            return mFirstAccess.getAndSet(false);
+        }
+    }
+}
@@ -33,12 +33,16 @@
 
 package org.deviceconnect.android.localoauth;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import org.deviceconnect.android.BuildConfig;
@@ -56,6 +60,7 @@ import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteToken;
 import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteTokenManager;
 import org.deviceconnect.android.localoauth.temp.RedirectRepresentation;
 import org.deviceconnect.android.localoauth.temp.ResultRepresentation;
+import org.deviceconnect.android.util.ProcessSharedCounter;
 import org.json.JSONException;
 import org.restlet.Context;
 import org.restlet.Request;
@@ -140,6 +145,27 @@ public final class LocalOAuth2Main {
     /** DBアクセス用Lockオブジェクト. */
     private static Object sLockForDbAccess = new Object();
 
+    /** アクセストークンのキャッシュ(更新する際はsLockForDbAccessでロックすること). */
+    private static AccessTokenCache sTokenCache = new AccessTokenCache(LocalOAuth2Settings.ACCESS_TOKEN_CACHE_SIZE);
+
+    /** トークンやクライアントの更新回数を保存するファイル名. */
+    static final String GENERATION_FILE_NAME = "localoauth_token_generation";
+
+    /** プロセス間で共有するトークンやクライアントの更新回数(開けなかった場合はnull). */
+    private static volatile ProcessSharedCounter sGeneration;
+
+    /** sTokenCacheを作った時のトークンやクライアントの更新回数. */
+    private static volatile long sCacheGeneration;
+
+    /** アクセス日時をDBに書き込むためのタイマー. */
+    private static Timer sFlushTimer;
+
+    /** アクセス日時の書き込みが予約済みか. */
+    private static AtomicBoolean sFlushScheduled = new AtomicBoolean();
+
+    /** タイマー用Lockオブジェクト. */
+    private static Object sLockForFlushTimer = new Object();
+
     /**
      * Bindフラグ.
      * <p>
@@ -228,6 +254,15 @@ public final class LocalOAuth2Main {
     public static void initialize(final android.content.Context context) {
         /* DB初期化処理 */
         sDbHelper = new LocalOAuthOpenHelper(context);
+        try {
+            sGeneration = ProcessSharedCounter.open(context, GENERATION_FILE_NAME);
+            sCacheGeneration = sGeneration.get();
+        } catch (IOException e) {
+            /* 他のプロセスでの更新を検知できないので、キャッシュを使わない */
+            sLogger.warning("initialize() - " + e.getMessage());
+            sGeneration = null;
+        }
+        sTokenCache.clear();
         
         /* 初期化処理 */
         sUserManager = new SampleUserManager();
@@ -243,6 +278,21 @@ public final class LocalOAuth2Main {
      */
     public static void destroy() {
         
+        /* DBに書き込んでいないアクセス日時を書き込む */
+        flushAccessDates();
+        synchronized (sLockForFlushTimer) {
+            if (sFlushTimer != null) {
+                sFlushTimer.cancel();
+                sFlushTimer = null;
+            }
+            sFlushScheduled.set(false);
+        }
+        sTokenCache.clear();
+        if (sGeneration != null) {
+            sGeneration.close();
+            sGeneration = null;
+        }
+        
         /* DBをまとめてクローズ */
         if (sDbHelper != null) {
             sDbHelper.close();
@@ -302,6 +352,9 @@ public final class LocalOAuth2Main {
                 /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                 sqliteTokenManager.setDb(db);
+
+                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
                 
                 /* ClientManagerにDBオブジェクトを設定 */
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
@@ -329,6 +382,8 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 
                 /* TokenManagerのDBオブジェクトをクリア設定 */
                 if (sqliteTokenManager != null) {
@@ -372,6 +427,9 @@ public final class LocalOAuth2Main {
                 /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                 sqliteTokenManager.setDb(db);
+
+                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
                 
                 /* ClientManagerにDBオブジェクトを設定 */
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
@@ -390,6 +448,8 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 
                 /* TokenManagerのDBオブジェクトをクリア設定 */
                 if (sqliteTokenManager != null) {
@@ -783,16 +843,93 @@ public final class LocalOAuth2Main {
             return new CheckAccessTokenResult(true, true, true, true);
         }
         
+        /* キャッシュに無ければDBから読み込む */
+        AccessTokenCache.Entry token = null;
+        if (accessToken != null) {
+            /* 他のプロセスでトークンやクライアントが更新されていればキャッシュを破棄する */
+            syncAccessTokenCache();
+            token = sTokenCache.get(accessToken);
+            if (token == null) {
+                token = loadAccessToken(accessToken);
+            }
+        }
+        
+        if (token != null) {
+            isExistAccessToken = true; /* アクセストークンあり */
+            isExistClientId = token.isExistClientId();
+            
+            /* 初回アクセスかどうかは、アクセス時間を更新する前に判定する */
+            boolean isFirstAccess = token.markAccessed();
+            for (Scope s : token.getScopes()) {
+                /* token.scopeに"*"が含まれていたら、どんなスコープにもアクセスできる */
+                if (BuildConfig.DEBUG && s.getScope().equals("*")) {
+                    isExistScope = true; /* スコープあり */
+                    isNotExpired = true; /* 有効期限 */
+                    break;
+                }
+                if (s.getScope().equals(scope)) {
+                    isExistScope = true; /* スコープあり */
+                    
+                    if (s.getExpirePeriod() == 0) {
+                        /* 有効期限0の場合は、トークン発行から1分以内の初回アクセスなら有効期限内とする */
+                        long t = System.currentTimeMillis() - token.getRegistrationDate();
+                        if (0 <= t
+                        && t <= (LocalOAuth2Settings.ACCESS_TOKEN_GRACE_TIME * LocalOAuth2Settings.MSEC)
+                        && isFirstAccess) {
+                            isNotExpired = true;
+                        }
+                    } else if (s.getExpirePeriod() > 0) {
+                        /* 有効期限1以上の場合は、トークン発行からの経過時間が有効期限内かを判定して返す */
+                        isNotExpired = !s.isExpired();
+                    } else {
+                        /* 有効期限にマイナス値が設定されていたら、有効期限切れとみなす */
+                        isNotExpired = false;
+                    }
+                    break;
+                }
+            }
+            
+            /* トークンのアクセス時間更新(DBへはまとめて書き込む) */
+            sTokenCache.recordAccess(token.getTokenId(), System.currentTimeMillis());
+            scheduleFlushAccessDates();
+        }
+        
+        CheckAccessTokenResult result = new CheckAccessTokenResult(isExistClientId, isExistAccessToken, isExistScope,
+                isNotExpired);
+        if (!result.checkResult()) {
+            sLogger.fine("checkAccessToken() - error.");
+            sLogger.fine(" - isExistClientId: " + isExistClientId);
+            sLogger.fine(" - isExistAccessToken: " + isExistAccessToken);
+            sLogger.fine(" - isExistScope:" + isExistScope);
+            sLogger.fine(" - isNotExpired:" + isNotExpired);
+            sLogger.fine(" - accessToken:" + accessToken);
+            sLogger.fine(" - scope:" + scope);
+        }
+        return result;
+    }
+
+    /**
+     * アクセストークンに対応するトークン情報をDBから読み込み、キャッシュに追加する.
+     * 
+     * @param accessToken アクセストークン
+     * @return not null: トークン情報 / null: アクセストークンに対応するトークンなし
+     */
+    private static AccessTokenCache.Entry loadAccessToken(final String accessToken) {
         SQLiteDatabase db = null;
         SQLiteClientManager sqliteClientManager = null;
         SQLiteTokenManager sqliteTokenManager = null;
         
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
+            /* 待っている間に他のスレッドが読み込んでいればそれを使う */
+            AccessTokenCache.Entry entry = sTokenCache.get(accessToken);
+            if (entry != null) {
+                return entry;
+            }
+            
             try {
                 /* DBオープン */
-                db = sDbHelper.getWritableDatabase();
-                db.beginTransaction();
+                db = sDbHelper.getReadableDatabase();
                 
                 /* ClientManagerにDBオブジェクトを設定 */
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
@@ -805,55 +942,21 @@ public final class LocalOAuth2Main {
                 /* アクセストークンを元にトークンを検索する */
                 SQLiteToken token = (SQLiteToken) sqliteTokenManager.findTokenByAccessToken(accessToken);
                 if (token != null) {
-                    isExistAccessToken = true; /* アクセストークンあり */
-                    Scope[] scopes = token.getScope();
-                    for (Scope s : scopes) {
-                        /* token.scopeに"*"が含まれていたら、どんなスコープにもアクセスできる */
-                        if (BuildConfig.DEBUG && s.getScope().equals("*")) {
-                            isExistScope = true; /* スコープあり */
-                            isNotExpired = true; /* 有効期限 */
-                            break;
-                        }
-                        if (s.getScope().equals(scope)) {
-                            isExistScope = true; /* スコープあり */
-                            
-                            if (s.getExpirePeriod() == 0) {
-                                /* 有効期限0の場合は、トークン発行から1分以内の初回アクセスなら有効期限内とする */
-                                long t = System.currentTimeMillis() - token.getRegistrationDate();
-                                if (0 <= t
-                                && t <= (LocalOAuth2Settings.ACCESS_TOKEN_GRACE_TIME * LocalOAuth2Settings.MSEC)
-                                && token.isFirstAccess()) {
-                                    isNotExpired = true;
-                                }
-                            } else if (s.getExpirePeriod() > 0) {
-                                /* 有効期限1以上の場合は、トークン発行からの経過時間が有効期限内かを判定して返す */
-                                isNotExpired = !s.isExpired();
-                            } else {
-                                /* 有効期限にマイナス値が設定されていたら、有効期限切れとみなす */
-                                isNotExpired = false;
-                            }
-                            break;
-                        }
-                    }
-    
                     /* このトークンを発行したクライアントIDが存在するかチェック */
-                    if (sqliteClientManager.findById(token.getClientId()) != null) {
-                        isExistClientId = true;
-                    }
-    
-                    /* トークンのアクセス時間更新 */
-                    SQLiteToken sqliteToken = (SQLiteToken) token;
-                    sqliteToken.dbUpdateTokenAccessTime(db);
+                    boolean isExistClientId = sqliteClientManager.findById(token.getClientId()) != null;
+                    
+                    /* DBに書き込んでいないアクセス日時があれば、初回アクセスではない */
+                    boolean isFirstAccess = token.isFirstAccess() && !sTokenCache.hasPendingAccess(token.getId());
+                    
+                    entry = new AccessTokenCache.Entry(token.getId(), token.getRegistrationDate(),
+                            token.getScope(), isExistClientId, isFirstAccess);
+                    sTokenCache.put(accessToken, entry);
                 }
                 
-                /* コミット */
-                db.setTransactionSuccessful();
-                
             } catch (SQLiteException e) {
                 throw new RuntimeException(e);
             } finally {
                 if (db != null) {
-                    db.endTransaction();
                     db.close();
                 }
                 /* TokenManagerのDBオブジェクトをクリア設定 */
@@ -865,20 +968,145 @@ public final class LocalOAuth2Main {
                     sqliteClientManager.setDb(null);
                 }
             }
+            return entry;
+        }
+    }
+
+    /**
+     * アクセス日時をDBにまとめて書き込むタイマーを予約する.
+     * <p>
+     * 既に予約済みの場合は何もしない。
+     * </p>
+     */
+    private static void scheduleFlushAccessDates() {
+        if (!sFlushScheduled.compareAndSet(false, true)) {
+            return;
         }
+        synchronized (sLockForFlushTimer) {
+            if (sFlushTimer == null) {
+                sFlushTimer = new Timer(true);
+            }
+            sFlushTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    sFlushScheduled.set(false);
+                    flushAccessDates();
+                }
+            }, LocalOAuth2Settings.ACCESS_DATE_FLUSH_INTERVAL * LocalOAuth2Settings.MSEC);
+        }
+    }
+
+    /**
+     * DBに書き込んでいないアクセス日時をまとめて書き込む.
+     */
+    private static void flushAccessDates() {
+        SQLiteDatabase db = null;
+        SQLiteTokenManager sqliteTokenManager = null;
         
-        CheckAccessTokenResult result = new CheckAccessTokenResult(isExistClientId, isExistAccessToken, isExistScope,
-                isNotExpired);
-        if (!result.checkResult()) {
-            sLogger.fine("checkAccessToken() - error.");
-            sLogger.fine(" - isExistClientId: " + isExistClientId);
-            sLogger.fine(" - isExistAccessToken: " + isExistAccessToken);
-            sLogger.fine(" - isExistScope:" + isExistScope);
-            sLogger.fine(" - isNotExpired:" + isNotExpired);
-            sLogger.fine(" - accessToken:" + accessToken);
-            sLogger.fine(" - scope:" + scope);
+        /* DBを同時アクセスさせない */
+        synchronized (sLockForDbAccess) {
+            if (sDbHelper == null) {
+                /* 終了済みの場合は次回の初期化後に書き込む */
+                return;
+            }
+            try {
+                /* DBオープン */
+                db = sDbHelper.getWritableDatabase();
+                db.beginTransaction();
+                
+                /* TokenManagerにDBオブジェクトを設定 */
+                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+                sqliteTokenManager.setDb(db);
+                
+                writeAccessDates(sqliteTokenManager);
+                
+                /* コミット */
+                db.setTransactionSuccessful();
+                
+            } catch (SQLiteException e) {
+                sLogger.warning("flushAccessDates() - " + e.getMessage());
+            } finally {
+                if (db != null) {
+                    db.endTransaction();
+                    db.close();
+                }
+                /* TokenManagerのDBオブジェクトをクリア設定 */
+                if (sqliteTokenManager != null) {
+                    sqliteTokenManager.setDb(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * DBに書き込んでいないアクセス日時を書き込む.
+     * <p>
+     * sLockForDbAccessでロックし、TokenManagerにDBオブジェクトを設定してから呼び出すこと。
+     * </p>
+     * @param sqliteTokenManager TokenManager
+     */
+    private static void writeAccessDates(final SQLiteTokenManager sqliteTokenManager) {
+        for (Map.Entry<Long, Long> e : sTokenCache.drainAccessDates().entrySet()) {
+            sqliteTokenManager.updateAccessDate(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * アクセストークンのキャッシュを破棄する.
+     * <p>
+     * 破棄する前に、DBに書き込んでいないアクセス日時を書き込む。<br>
+     * トークンやクライアントを更新・削除する場合に、sLockForDbAccessでロックし、
+     * TokenManagerにDBオブジェクトを設定してから呼び出すこと。
+     * </p>
+     * @param sqliteTokenManager TokenManager
+     */
+    private static void invalidateAccessTokenCache(final SQLiteTokenManager sqliteTokenManager) {
+        writeAccessDates(sqliteTokenManager);
+        sTokenCache.clear();
+    }
+
+    /**
+     * 他のプロセスでトークンやクライアントが更新されていれば、アクセストークンのキャッシュを破棄する.
+     * <p>
+     * 更新回数を取得できない場合は、常にキャッシュを破棄してDBから読み込ませる。
+     * </p>
+     */
+    private static void syncAccessTokenCache() {
+        ProcessSharedCounter generation = sGeneration;
+        if (generation != null && generation.get() == sCacheGeneration) {
+            return;
+        }
+        /* DBから読み込み中のスレッドがキャッシュに追加し終わってから破棄する */
+        synchronized (sLockForDbAccess) {
+            if (generation == null) {
+                sTokenCache.clear();
+                return;
+            }
+            long current = generation.get();
+            if (current != sCacheGeneration) {
+                sTokenCache.clear();
+                sCacheGeneration = current;
+            }
+        }
+    }
+
+    /**
+     * トークンやクライアントを更新したことを他のプロセスに通知する.
+     * <p>
+     * 他のプロセスは次のアクセストークン確認時にキャッシュを破棄する。<br>
+     * 他のプロセスが更新前のDBを読み込んでキャッシュしないように、トランザクションを終了してから呼び出すこと。
+     * </p>
+     */
+    private static void notifyAccessTokenChanged() {
+        ProcessSharedCounter generation = sGeneration;
+        if (generation == null) {
+            return;
+        }
+        try {
+            generation.increment();
+        } catch (IOException e) {
+            sLogger.warning("notifyAccessTokenChanged() - " + e.getMessage());
         }
-        return result;
     }
 
     /**
@@ -1002,6 +1230,9 @@ public final class LocalOAuth2Main {
                 /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                 sqliteTokenManager.setDb(db);
+
+                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
                 
                 Client client = sClientManager.findByPackageInfo(packageInfo);
                 sTokenManager.revokeAllTokens(client);
@@ -1022,6 +1253,8 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 /* ClientManagerのDBオブジェクトをクリア設定 */
                 if (sqliteClientManager != null) {
                     sqliteClientManager.setDb(null);
@@ -1209,6 +1442,9 @@ public final class LocalOAuth2Main {
                 /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                 sqliteTokenManager.setDb(db);
+
+                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
                 
                 sqliteTokenManager.revokeToken(tokenId);
                 
@@ -1222,6 +1458,8 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 /* TokenManagerのDBオブジェクトをクリア設定 */
                 if (sqliteTokenManager != null) {
                     sqliteTokenManager.setDb(null);
@@ -1249,6 +1487,9 @@ public final class LocalOAuth2Main {
                 /* TokenManagerにDBオブジェクトを設定 */
                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                 sqliteTokenManager.setDb(db);
+
+                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
                 
                 sqliteTokenManager.revokeAllTokens(SampleUser.USERNAME);
                 
@@ -1262,6 +1503,8 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 /* TokenManagerのDBオブジェクトをクリア設定 */
                 if (sqliteTokenManager != null) {
                     sqliteTokenManager.setDb(null);
@@ -1320,6 +1563,7 @@ public final class LocalOAuth2Main {
         
         SQLiteDatabase db = null;
         SQLiteClientManager sqliteClientManager = null;
+        SQLiteTokenManager sqliteTokenManager = null;
 
         /* DBを同時アクセスさせない */
         synchronized (sLockForDbAccess) {
@@ -1332,6 +1576,13 @@ public final class LocalOAuth2Main {
                 sqliteClientManager = (SQLiteClientManager) sClientManager;
                 sqliteClientManager.setDb(db);
                 
+                /* TokenManagerにDBオブジェクトを設定 */
+                sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
+                sqliteTokenManager.setDb(db);
+                
+                /* クライアントを削除するので、アクセストークンのキャッシュを破棄する */
+                invalidateAccessTokenCache(sqliteTokenManager);
+                
                 sqliteClientManager.cleanupClient(LocalOAuth2Settings.CLIENT_CLEANUP_TIME);
                 
                 /* 有効クライアント数を取得する */
@@ -1346,10 +1597,16 @@ public final class LocalOAuth2Main {
                     db.endTransaction();
                     db.close();
                 }
+                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                notifyAccessTokenChanged();
                 /* ClientManagerのDBオブジェクトをクリア設定 */
                 if (sqliteClientManager != null) {
                     sqliteClientManager.setDb(null);
                 }
+                /* TokenManagerのDBオブジェクトをクリア設定 */
+                if (sqliteTokenManager != null) {
+                    sqliteTokenManager.setDb(null);
+                }
             }
         }
         
@@ -1400,6 +1657,9 @@ public final class LocalOAuth2Main {
                                 /* TokenManagerにDBオブジェクトを設定 */
                                 sqliteTokenManager = (SQLiteTokenManager) sTokenManager;
                                 sqliteTokenManager.setDb(db);
+
+                                /* トークンやクライアントを更新するので、アクセストークンのキャッシュを破棄する */
+                                invalidateAccessTokenCache(sqliteTokenManager);
                                 
                                 /* アクセストークン発行する前に古い無効なトークン(クライアントIDが削除されて残っていたトークン)をクリーンアップする */
                                 sqliteTokenManager.cleanup();
@@ -1418,6 +1678,8 @@ public final class LocalOAuth2Main {
                                     db.endTransaction();
                                     db.close();
                                 }
+                                /* コミットしてから他のプロセスのキャッシュを破棄させる */
+                                notifyAccessTokenChanged();
                                 
                                 /* ClientManagerのDBオブジェクトをクリア設定 */
                                 if (sqliteClientManager != null) {
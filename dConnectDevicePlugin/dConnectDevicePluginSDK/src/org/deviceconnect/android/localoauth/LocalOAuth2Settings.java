@@ -40,6 +40,12 @@ public final class LocalOAuth2Settings {
     /** 有効期限0が設定されたときに、初回アクセスを「有効期限内」として返す猶予時間[秒]. */
     public static final long ACCESS_TOKEN_GRACE_TIME = 1 * MINUTE; /* 1分[秒] */
     
+    /** メモリ上にキャッシュするアクセストークン数の上限. */
+    public static final int ACCESS_TOKEN_CACHE_SIZE = 2 * CLIENT_MAX;
+    
+    /** トークンのアクセス日時をまとめてDBに書き込む間隔[秒]. */
+    public static final long ACCESS_DATE_FLUSH_INTERVAL = 10;
+    
     
     
     /**
@@ -50,6 +50,7 @@ import org.restlet.ext.oauth.internal.Client;
 import org.restlet.ext.oauth.internal.Scope;
 import org.restlet.ext.oauth.internal.Token;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -399,6 +400,22 @@ public class SQLiteTokenManager extends AbstractTokenManager {
         }
     }
 
+    /**
+     * トークンIDを指定してアクセス日時を更新する.
+     * 
+     * @param tokenId トークンID
+     * @param accessDate アクセス日時(1970/1/1 00:00:00 UTC からの経過ミリ秒)
+     */
+    public void updateAccessDate(final long tokenId, final long accessDate) {
+        if (mDb != null) {
+            ContentValues values = new ContentValues();
+            values.put(SQLiteToken.ACCESS_DATE_FIELD, accessDate);
+            mDb.update(LocalOAuthOpenHelper.TOKENS_TABLE, values, SQLiteToken.ID_FIELD + " = " + tokenId, null);
+        } else {
+            throw new SQLiteException("DBがオープンされていません。");
+        }
+    }
+
     /**
      * 古い無効なトークン(クライアントIDが削除されて残っていたトークン)をクリーンアップする.
      */
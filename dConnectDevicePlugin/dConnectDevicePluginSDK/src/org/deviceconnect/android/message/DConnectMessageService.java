@@ -10,13 +10,20 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.deviceconnect.android.BuildConfig;
+import org.deviceconnect.android.event.EventManager;
 import org.deviceconnect.android.localoauth.CheckAccessTokenResult;
 import org.deviceconnect.android.localoauth.LocalOAuth2Main;
 import org.deviceconnect.android.profile.AuthorizationProfile;
 import org.deviceconnect.android.profile.DConnectProfile;
+import org.deviceconnect.android.profile.DConnectProfile.ExecutionMode;
 import org.deviceconnect.android.profile.DConnectProfileProvider;
 import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
 import org.deviceconnect.android.profile.ServiceInformationProfile;
@@ -64,11 +71,27 @@ public abstract class DConnectMessageService extends Service implements DConnect
     /** プラグイン側のAuthorizationのアトリビュート名: {@value}. */
     private static final String ATTRIBUTE_REQUEST_ACCESS_TOKEN = "requestAccessToken";
 
+    /** ワーカースレッドの最大数. */
+    private static final int MAX_WORKER_THREADS = 4;
+
+    /** 待機中のワーカースレッドを終了するまでの時間(秒). */
+    private static final long WORKER_KEEP_ALIVE = 30;
+
     /**
      * ロガー.
      */
     private Logger mLogger = Logger.getLogger("org.deviceconnect.dplugin");
 
+    /**
+     * メインスレッド以外でリクエストを処理するためのスレッドプール.
+     */
+    private ThreadPoolExecutor mWorkerExecutor;
+
+    /**
+     * プロファイル名をキーにした、リクエストを1つずつ順番に処理するためのExecutor.
+     */
+    private final Map<String, Executor> mSerialExecutors = new HashMap<String, Executor>();
+
     /**
      * プロファイルインスタンスマップ.
      */
@@ -115,6 +138,11 @@ public abstract class DConnectMessageService extends Service implements DConnect
         // LocalOAuthの初期化
         LocalOAuth2Main.initialize(this);
 
+        // リクエストを処理するスレッドプールの作成
+        mWorkerExecutor = new ThreadPoolExecutor(MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                WORKER_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mWorkerExecutor.allowCoreThreadTimeOut(true);
+
         // 認証プロファイルの追加
         addProfile(new AuthorizationProfile(this));
         // 必須プロファイルの追加
@@ -126,6 +154,8 @@ public abstract class DConnectMessageService extends Service implements DConnect
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // 処理待ちのリクエストを破棄
+        mWorkerExecutor.shutdownNow();
         // LocalOAuthの後始末
         LocalOAuth2Main.destroy();
     }
@@ -215,6 +245,78 @@ public abstract class DConnectMessageService extends Service implements DConnect
             return;
         }
 
+        // プロファイルが指定したスレッドでリクエストを処理する
+        ExecutionMode mode = profile.getExecutionMode(request);
+        if (mode == null || mode == ExecutionMode.MAIN_THREAD) {
+            executeRequest(profile, request, response);
+        } else {
+            executeRequestAsync(getExecutor(profile, mode), profile, request, response);
+        }
+    }
+
+    /**
+     * メインスレッド以外でリクエストを処理する.
+     * <p>
+     * プロファイルで例外が発生した場合や、リクエストを受け付けられなかった場合にはエラーを返却する。
+     * </p>
+     * 
+     * @param executor リクエストを処理するExecutor
+     * @param profile リクエストを処理するプロファイル
+     * @param request リクエストパラメータ
+     * @param response レスポンスパラメータ
+     */
+    private void executeRequestAsync(final Executor executor, final DConnectProfile profile,
+            final Intent request, final Intent response) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        executeRequest(profile, request, response);
+                    } catch (RuntimeException e) {
+                        mLogger.warning("Failed to execute a request: " + e);
+                        MessageUtils.setUnknownError(response, e.getMessage());
+                        sendResponse(response);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            MessageUtils.setUnknownError(response, "Device plug-in is shutting down.");
+            sendResponse(response);
+        }
+    }
+
+    /**
+     * リクエストを処理するExecutorを取得する.
+     * 
+     * @param profile リクエストを処理するプロファイル
+     * @param mode スレッドの種類
+     * @return Executor
+     */
+    private Executor getExecutor(final DConnectProfile profile, final ExecutionMode mode) {
+        if (mode != ExecutionMode.SERIAL) {
+            return mWorkerExecutor;
+        }
+        synchronized (mSerialExecutors) {
+            Executor executor = mSerialExecutors.get(profile.getProfileName());
+            if (executor == null) {
+                executor = new SerialExecutor(mWorkerExecutor);
+                mSerialExecutors.put(profile.getProfileName(), executor);
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * アクセストークンを確認して、プロファイルでリクエストを処理する.
+     * 
+     * @param profile リクエストを処理するプロファイル
+     * @param request リクエストパラメータ
+     * @param response レスポンスパラメータ
+     */
+    private void executeRequest(final DConnectProfile profile, final Intent request, final Intent response) {
+        String profileName = profile.getProfileName();
+
         // 各プロファイルでリクエストを処理する
         boolean send = true;
         if (isUseLocalOAuth()) {
@@ -312,6 +414,9 @@ public abstract class DConnectMessageService extends Service implements DConnect
 
     /**
      * Device Connectにイベントを送信する.
+     * <p>
+     * イベント登録時に送信間隔が指定されている場合は、間隔毎に最新のイベントだけが送信される。
+     * </p>
      * 
      * @param event イベントパラメータ
      * @param accessToken 送り先のアクセストークン
@@ -332,7 +437,7 @@ public abstract class DConnectMessageService extends Service implements DConnect
             }
         }
 
-        getContext().sendBroadcast(event);
+        EventManager.INSTANCE.sendEvent(getContext(), event);
         return true;
     }
 
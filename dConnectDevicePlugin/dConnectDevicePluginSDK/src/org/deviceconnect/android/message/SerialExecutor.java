@@ -0,0 +1,96 @@
+/*
+ SerialExecutor.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.message;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * タスクを1つずつ順番に実行するExecutor.
+ * <p>
+ * スレッドは持たず、指定されたExecutorにタスクを1つずつ渡して実行する。<br>
+ * 前のタスクが終了するまで、次のタスクは実行しない。<br>
+ * 指定されたExecutorがタスクを受け付けなかった場合には、そのタスクを実行待ちの先頭に戻し、
+ * 次に{@link #execute(Runnable)}が呼び出された時に実行し直す。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class SerialExecutor implements Executor {
+
+    /** タスクを実行するExecutor. */
+    private final Executor mExecutor;
+
+    /** 実行待ちのタスク. */
+    private final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+
+    /** 実行中のタスク. */
+    private Runnable mActive;
+
+    /**
+     * コンストラクタ.
+     * @param executor タスクを実行するExecutor
+     */
+    SerialExecutor(final Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * タスクを実行待ちに追加する.
+     * <p>
+     * 指定されたExecutorがタスクを受け付けなかった場合には、追加したタスクを取り除いてから例外を投げる。
+     * </p>
+     * @param task タスク
+     * @throws RejectedExecutionException タスクを受け付けられなかった場合
+     */
+    @Override
+    public synchronized void execute(final Runnable task) {
+        Runnable serialTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    try {
+                        scheduleNext();
+                    } catch (RejectedExecutionException e) {
+                        // 次のexecute()で実行し直す
+                    }
+                }
+            }
+        };
+        mTasks.offer(serialTask);
+        if (mActive == null) {
+            try {
+                scheduleNext();
+            } catch (RejectedExecutionException e) {
+                mTasks.remove(serialTask);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 次のタスクを実行する.
+     * <p>
+     * 受け付けられなかった場合には、実行中のタスクを無くして、次のexecute()で実行し直せるようにする。
+     * </p>
+     * @throws RejectedExecutionException タスクを受け付けられなかった場合
+     */
+    private synchronized void scheduleNext() {
+        mActive = mTasks.poll();
+        if (mActive != null) {
+            try {
+                mExecutor.execute(mActive);
+            } catch (RejectedExecutionException e) {
+                mTasks.addFirst(mActive);
+                mActive = null;
+                throw e;
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import org.deviceconnect.profile.DConnectProfileConstants;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -41,6 +43,28 @@ public abstract class DConnectProfile implements DConnectProfileConstants {
      */
     protected Logger mLogger = Logger.getLogger("org.deviceconnect.dplugin");
 
+    /**
+     * インターフェース名と属性名をキーにしたリクエストの実行方法.
+     */
+    private final Map<String, ExecutionMode> mExecutionModes = new ConcurrentHashMap<String, ExecutionMode>();
+
+    /**
+     * 個別に指定されていないリクエストの実行方法.
+     */
+    private volatile ExecutionMode mDefaultExecutionMode = ExecutionMode.MAIN_THREAD;
+
+    /**
+     * リクエストを処理するスレッドの種類.
+     */
+    public enum ExecutionMode {
+        /** メインスレッドで処理する. */
+        MAIN_THREAD,
+        /** ワーカースレッドで他のリクエストと並列に処理する. */
+        WORKER,
+        /** ワーカースレッドで同じプロファイルのリクエストを1つずつ順番に処理する. */
+        SERIAL
+    }
+
     /**
      * プロファイル名を取得する.
      * 
@@ -48,6 +72,65 @@ public abstract class DConnectProfile implements DConnectProfileConstants {
      */
     public abstract String getProfileName();
 
+    /**
+     * 指定したAPIのリクエストを処理するスレッドの種類を設定する.
+     * <p>
+     * {@link ExecutionMode#WORKER}または{@link ExecutionMode#SERIAL}を指定した場合には、
+     * {@link #onRequest(Intent, Intent)}がメインスレッド以外から呼び出される。<br>
+     * 時間のかかる処理を行うAPIに指定することで、他のリクエストの処理を妨げないようにする。
+     * </p>
+     * 
+     * @param inter インターフェース名。インターフェースがない場合はnull
+     * @param attribute 属性名。属性がない場合はnull
+     * @param mode スレッドの種類
+     */
+    public void setExecutionMode(final String inter, final String attribute, final ExecutionMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode is null.");
+        }
+        mExecutionModes.put(createExecutionKey(inter, attribute), mode);
+    }
+
+    /**
+     * 個別に指定していないAPIのリクエストを処理するスレッドの種類を設定する.
+     * <p>
+     * デフォルトは{@link ExecutionMode#MAIN_THREAD}。
+     * </p>
+     * 
+     * @param mode スレッドの種類
+     */
+    public void setDefaultExecutionMode(final ExecutionMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode is null.");
+        }
+        mDefaultExecutionMode = mode;
+    }
+
+    /**
+     * リクエストを処理するスレッドの種類を取得する.
+     * <p>
+     * メソッド毎に切り替えたい場合には、このメソッドをオーバーライドすること。
+     * </p>
+     * 
+     * @param request リクエストパラメータ
+     * @return スレッドの種類
+     */
+    public ExecutionMode getExecutionMode(final Intent request) {
+        ExecutionMode mode = mExecutionModes.get(createExecutionKey(getInterface(request), getAttribute(request)));
+        return mode != null ? mode : mDefaultExecutionMode;
+    }
+
+    /**
+     * リクエストの実行方法を検索するためのキーを作成する.
+     * 
+     * @param inter インターフェース名
+     * @param attribute 属性名
+     * @return キー
+     */
+    private static String createExecutionKey(final String inter, final String attribute) {
+        return (inter == null ? "" : inter) + "/" + (attribute == null ? "" : attribute);
+    }
+
     /**
      * RESPONSEメソッドハンドラー.<br>
      * リクエストパラメータに応じてデバイスのサービスを提供し、その結果をレスポンスパラメータに格納する。
@@ -0,0 +1,111 @@
+/*
+ ProcessSharedCounter.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import android.content.Context;
+
+/**
+ * DBの更新回数をプロセス間で共有するカウンタ.
+ * <p>
+ * Device Connect Managerの設定画面やアクセストークン一覧画面はメインプロセス、
+ * DConnectServiceは別のプロセスで動作するため、DBの内容をstaticにキャッシュしても、
+ * 他のプロセスでの変更はキャッシュに反映されない。<br>
+ * DBを更新したプロセスは{@link #increment()}でカウンタを進め、キャッシュを使うプロセスは
+ * {@link #get()}の値がキャッシュを作った時から変わっていればキャッシュを作り直す。
+ * </p>
+ * <p>
+ * カウンタはアプリのファイル領域のファイルをメモリにマップして共有するので、
+ * {@link #get()}はファイルの読み込みを伴わない。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class ProcessSharedCounter {
+
+    /** カウンタのサイズ(byte). */
+    private static final int SIZE = 8;
+
+    /** カウンタのファイル. */
+    private final RandomAccessFile mFile;
+
+    /** カウンタのファイルのチャネル. */
+    private final FileChannel mChannel;
+
+    /** メモリにマップしたカウンタ. */
+    private final MappedByteBuffer mBuffer;
+
+    /**
+     * コンストラクタ.
+     * @param file カウンタのファイル
+     * @throws IOException ファイルを開けなかった場合
+     */
+    private ProcessSharedCounter(final File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mChannel = mFile.getChannel();
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * アプリのファイル領域にあるカウンタを開く.
+     * @param context コンテキスト
+     * @param fileName カウンタのファイル名
+     * @return カウンタ
+     * @throws IOException ファイルを開けなかった場合
+     */
+    public static ProcessSharedCounter open(final Context context, final String fileName)
+            throws IOException {
+        return new ProcessSharedCounter(new File(context.getFilesDir(), fileName));
+    }
+
+    /**
+     * 現在の値を取得する.
+     * @return 現在の値
+     */
+    public long get() {
+        return mBuffer.getLong(0);
+    }
+
+    /**
+     * 値を1つ進める.
+     * <p>
+     * 他のプロセスと同時に更新しないようにファイルをロックする。<br>
+     * DBの変更をコミットしてから呼び出すこと。
+     * </p>
+     * @throws IOException ファイルをロックできなかった場合
+     */
+    public synchronized void increment() throws IOException {
+        FileLock lock = mChannel.lock(0, SIZE, false);
+        try {
+            mBuffer.putLong(0, mBuffer.getLong(0) + 1);
+            mBuffer.force();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * ファイルを閉じる.
+     */
+    public synchronized void close() {
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            // 閉じられなくても次に開き直すので何もしない
+        }
+    }
+}
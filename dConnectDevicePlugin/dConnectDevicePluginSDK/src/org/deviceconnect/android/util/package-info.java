@@ -0,0 +1,10 @@
+/*
+ org.deviceconnect.android.util
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+/**
+ * ユーティリティパッケージ.
+ */
+package org.deviceconnect.android.util;
@@ -52,6 +52,8 @@ public class DeviceTestService extends DConnectMessageService {
     public void onCreate() {
         super.onCreate();
         EventManager.INSTANCE.setController(new DBCacheController(this));
+        // 不正な送信間隔を指定したイベント登録はエラーにする
+        EventManager.INSTANCE.setIntervalValidationEnabled(true);
         LocalOAuth2Main.initialize(getApplicationContext());
         addProfile(new TestNotificationProfile());
         addProfile(new TestFileProfile(new FileManager(getApplicationContext())));
@@ -9,6 +9,7 @@ package org.deviceconnect.android.deviceplugin.test.profile;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.deviceconnect.android.deviceplugin.test.DeviceTestService;
 import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.android.profile.DConnectProfileProvider;
 import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
@@ -67,6 +68,12 @@ public class TestServiceDiscoveryProfile extends ServiceDiscoveryProfile {
      */
     public static final String DEVICE_CONFIG = "test config";
 
+    /**
+     * レスポンスを遅延させる時間(ミリ秒)を指定するパラメータ: {@value} .
+     * 応答の遅いデバイスプラグインを再現するために使用する。
+     */
+    public static final String PARAM_DELAY = "delay";
+
     /**
      * セッションキーが空の場合のエラーを作成する.
      * @param response レスポンスを格納するIntent
@@ -101,10 +108,42 @@ public class TestServiceDiscoveryProfile extends ServiceDiscoveryProfile {
 
         setResult(response, DConnectMessage.RESULT_OK);
         setServices(response, services);
-        
+
+        final long delay = getDelay(request);
+        if (delay > 0) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ((DeviceTestService) getContext()).sendResponse(response);
+                }
+            }).start();
+            return false;
+        }
         return true;
     }
 
+    /**
+     * リクエストからレスポンスを遅延させる時間を取得する.
+     * @param request リクエスト
+     * @return 遅延させる時間(ミリ秒)。指定されていない場合は0
+     */
+    private static long getDelay(final Intent request) {
+        String delay = request.getStringExtra(PARAM_DELAY);
+        if (delay == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(delay);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     @Override
     protected boolean onPutOnServiceChange(final Intent request, final Intent response,
                                             final String serviceId, final String sessionKey) {
@@ -18,6 +18,7 @@ import org.deviceconnect.android.event.EventManager;
 import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.android.profile.DConnectProfile;
 import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.intent.impl.client.DefaultIntentClient;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
 
 import android.content.Intent;
@@ -50,11 +51,21 @@ public class TestUniqueProfile extends DConnectProfile {
      */
     public static final String ATTRIBUTE_HEAVY = "heavy";
 
+    /**
+     * 属性名: {@value} .
+     */
+    public static final String ATTRIBUTE_SLOW = "slow";
+
     /**
      * 属性名: {@value} .
      */
     public static final String ATTRIBUTE_EVENT = "event";
 
+    /**
+     * 属性名: {@value} .
+     */
+    public static final String ATTRIBUTE_BURST = "burst";
+
     /**
      * パラメータ: {@value}.
      */
@@ -70,11 +81,49 @@ public class TestUniqueProfile extends DConnectProfile {
      */
     public static final String PARAM_TIME = "time";
 
+    /**
+     * パラメータ: {@value}.
+     */
+    public static final String PARAM_COUNT = "count";
+
+    /**
+     * パラメータ: {@value}.
+     */
+    public static final String PARAM_SIZE = "size";
+
+    /**
+     * パラメータ: {@value}.
+     */
+    public static final String PARAM_INDEX = "index";
+
+    /**
+     * パラメータ: {@value}.
+     */
+    public static final String PARAM_DATA = "data";
+
+    /**
+     * パラメータ: {@value}.
+     */
+    public static final String PARAM_PERIOD = "period";
+
+    /**
+     * 時間のかかる処理を模擬する時間(ミリ秒).
+     */
+    private static final long SLOW_TIME = 1000;
+
     /**
      * イベントのタイマー.
      */
     private Timer mEventTimer;
 
+    /**
+     * コンストラクタ.
+     */
+    public TestUniqueProfile() {
+        // 時間のかかる処理はワーカースレッドで並列に処理する
+        setExecutionMode(null, ATTRIBUTE_SLOW, ExecutionMode.WORKER);
+    }
+
     @Override
     public String getProfileName() {
         return PROFILE_NAME;
@@ -125,6 +174,22 @@ public class TestUniqueProfile extends DConnectProfile {
                 MessageUtils.setUnknownAttributeError(response);
                 return true;
             }
+        } else if (inter == null && ATTRIBUTE_BURST.equals(attribute)) {
+            if (!IntentDConnectMessage.ACTION_POST.equals(action)) {
+                MessageUtils.setNotSupportActionError(response);
+                return true;
+            }
+            final int count = parseInt(request.getStringExtra(PARAM_COUNT));
+            final int size = parseInt(request.getStringExtra(PARAM_SIZE));
+            final String periodParam = request.getStringExtra(PARAM_PERIOD);
+            final int period = (periodParam == null) ? 0 : parseInt(periodParam);
+            if (count <= 0 || size < 0 || period < 0) {
+                MessageUtils.setInvalidRequestParameterError(response);
+                return true;
+            }
+            sendBurstEvents(serviceId, count, size, period);
+            setResult(response, DConnectMessage.RESULT_OK);
+            return true;
         } else if (inter == null && ATTRIBUTE_HEAVY.equals(attribute)) {
             if (key == null) {
                 MessageUtils.setInvalidRequestParameterError(response);
@@ -144,6 +209,20 @@ public class TestUniqueProfile extends DConnectProfile {
                 }
             }).start();
             return false;
+        } else if (inter == null && ATTRIBUTE_SLOW.equals(attribute)) {
+            if (key == null) {
+                MessageUtils.setInvalidRequestParameterError(response);
+                return true;
+            }
+            // ワーカースレッドで呼び出されるので、スレッドを作らずに待つ
+            try {
+                Thread.sleep(SLOW_TIME);
+                setResult(response, DConnectMessage.RESULT_OK);
+                response.putExtra(PARAM_KEY, key);
+            } catch (InterruptedException e) {
+                MessageUtils.setUnknownError(response, "thread is interrupted. key=" + key);
+            }
+            return true;
         } else if ((inter == null && attribute == null)
                 || (inter == null && ATTRIBUTE_PING.equals(attribute))
                 || (INTERFACE_TEST.equals(inter) && ATTRIBUTE_PING.equals(attribute))) {
@@ -184,6 +263,57 @@ public class TestUniqueProfile extends DConnectProfile {
         }
     }
 
+    /**
+     * 登録されているイベントの送信先に、大量のイベントを連続で送信する.
+     * @param serviceId serviceId
+     * @param count 送信するイベントの数
+     * @param size イベントに含めるデータのサイズ
+     * @param period イベントを送信する周期(ミリ秒)。0の場合は待たずに送信する
+     */
+    private void sendBurstEvents(final String serviceId, final int count, final int size, final int period) {
+        StringBuilder data = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            data.append('a');
+        }
+        final String payload = data.toString();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Event> events = EventManager.INSTANCE.getEventList(
+                        serviceId, getProfileName(), null, ATTRIBUTE_EVENT);
+                for (int i = 0; i < count; i++) {
+                    for (Event event : events) {
+                        Intent eventMsg = EventManager.createEventMessage(event);
+                        eventMsg.putExtra(PARAM_INDEX, i);
+                        eventMsg.putExtra(PARAM_DATA, payload);
+                        eventMsg.setComponent(DefaultIntentClient.DEFAULT_MESSAGE_RECEIVER);
+                        EventManager.INSTANCE.sendEvent(getContext(), eventMsg);
+                    }
+                    if (period > 0) {
+                        try {
+                            Thread.sleep(period);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * 文字列を数値に変換する.
+     * @param value 文字列
+     * @return 数値。変換できない場合は-1
+     */
+    private static int parseInt(final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Stop Event.
      */
@@ -11,6 +11,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
+import org.deviceconnect.android.manager.profile.DConnectBatchProfile;
 import org.deviceconnect.android.manager.profile.DConnectFilesProfile;
 import org.deviceconnect.profile.AuthorizationProfileConstants;
 import org.deviceconnect.profile.AvailabilityProfileConstants;
@@ -45,6 +46,7 @@ public class DConnectLocalOAuth {
         AvailabilityProfileConstants.PROFILE_NAME,
         SystemProfileConstants.PROFILE_NAME,
         DConnectFilesProfile.PROFILE_NAME,
+        DConnectBatchProfile.PROFILE_NAME,
     };
 
     /** ロガー. */
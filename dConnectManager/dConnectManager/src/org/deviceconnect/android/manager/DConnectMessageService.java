@@ -28,6 +28,7 @@ import org.deviceconnect.android.manager.policy.OriginParser;
 import org.deviceconnect.android.manager.policy.Whitelist;
 import org.deviceconnect.android.manager.profile.AuthorizationProfile;
 import org.deviceconnect.android.manager.profile.DConnectAvailabilityProfile;
+import org.deviceconnect.android.manager.profile.DConnectBatchProfile;
 import org.deviceconnect.android.manager.profile.DConnectDeliveryProfile;
 import org.deviceconnect.android.manager.profile.DConnectFilesProfile;
 import org.deviceconnect.android.manager.profile.DConnectServiceDiscoveryProfile;
@@ -113,6 +114,9 @@ public abstract class DConnectMessageService extends Service
     /** ホワイトリスト管理クラス. */
     private Whitelist mWhitelist;
 
+    /** 複数のリクエストをまとめて実行するプロファイル. */
+    private DConnectBatchProfile mBatchProfile;
+
     @Override
     public IBinder onBind(final Intent intent) {
         return null;
@@ -176,6 +180,8 @@ public abstract class DConnectMessageService extends Service
         addProfile(new DConnectServiceDiscoveryProfile(this, mPluginMgr));
         addProfile(new DConnectFilesProfile(this));
         addProfile(new DConnectSystemProfile(this, mPluginMgr));
+        mBatchProfile = new DConnectBatchProfile();
+        addProfile(mBatchProfile);
 
         // dConnect Managerで処理せず、登録されたデバイスプラグインに処理させるプロファイル
         setDeliveryProfile(new DConnectDeliveryProfile(mPluginMgr, mLocalOAuth));
@@ -230,6 +236,8 @@ public abstract class DConnectMessageService extends Service
             mPluginMgr.checkAndAddDevicePlugin(intent);
         } else if (Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
             mPluginMgr.checkAndRemoveDevicePlugin(intent);
+        } else if (Intent.ACTION_PACKAGE_CHANGED.equals(action)) {
+            mPluginMgr.checkAndUpdateDevicePlugin(intent);
         }
 
         return START_STICKY;
@@ -298,19 +306,7 @@ public abstract class DConnectMessageService extends Service
             if (result.checkResult()) {
                 executeRequest(request, response);
             } else {
-                if (accessToken == null) {
-                    MessageUtils.setEmptyAccessTokenError(response);
-                } else if (!result.isExistAccessToken()) {
-                    MessageUtils.setNotFoundClientId(response);
-                } else if (!result.isExistClientId()) {
-                    MessageUtils.setNotFoundClientId(response);
-                } else if (!result.isExistScope()) {
-                    MessageUtils.setScopeError(response);
-                } else if (!result.isNotExpired()) {
-                    MessageUtils.setExpiredAccessTokenError(response);
-                } else {
-                    MessageUtils.setAuthorizationError(response);
-                }
+                setAccessTokenError(response, accessToken, result);
                 sendResponse(request, response);
             }
         } else {
@@ -318,6 +314,64 @@ public abstract class DConnectMessageService extends Service
         }
     }
 
+    /**
+     * バッチリクエストにまとめられたリクエストを実行する.
+     * <p>
+     * オリジンはバッチリクエストで確認済みのため、アクセストークンの確認のみを行う。<br>
+     * まとめられたリクエスト毎にアクセストークンを指定できるので、
+     * アクセストークンの確認結果はアクセストークンとプロファイルの組み合わせ毎に使い回す。
+     * </p>
+     * @param request まとめられたリクエスト
+     * @param results アクセストークンとプロファイル名をキーにしたアクセストークンの確認結果
+     */
+    public void executeBatchItem(final Intent request, final Map<String, CheckAccessTokenResult> results) {
+        int requestCode = request.getIntExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, ERROR_CODE);
+        Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+        response.putExtra(DConnectMessage.EXTRA_RESULT, DConnectMessage.RESULT_ERROR);
+        response.putExtra(DConnectMessage.EXTRA_REQUEST_CODE, requestCode);
+
+        if (mSettings.isUseALocalOAuth()) {
+            String profileName = request.getStringExtra(DConnectMessage.EXTRA_PROFILE);
+            String accessToken = request.getStringExtra(AuthorizationProfile.PARAM_ACCESS_TOKEN);
+            String key = accessToken + "\n" + profileName;
+            CheckAccessTokenResult result = results.get(key);
+            if (result == null) {
+                result = LocalOAuth2Main.checkAccessToken(accessToken, profileName,
+                        DConnectLocalOAuth.IGNORE_PROFILE);
+                results.put(key, result);
+            }
+            if (!result.checkResult()) {
+                setAccessTokenError(response, accessToken, result);
+                sendResponse(request, response);
+                return;
+            }
+        }
+        executeRequest(request, response);
+    }
+
+    /**
+     * アクセストークンの確認結果に応じたエラーをレスポンスに設定する.
+     * @param response レスポンス
+     * @param accessToken アクセストークン
+     * @param result アクセストークンの確認結果
+     */
+    private void setAccessTokenError(final Intent response, final String accessToken,
+            final CheckAccessTokenResult result) {
+        if (accessToken == null) {
+            MessageUtils.setEmptyAccessTokenError(response);
+        } else if (!result.isExistAccessToken()) {
+            MessageUtils.setNotFoundClientId(response);
+        } else if (!result.isExistClientId()) {
+            MessageUtils.setNotFoundClientId(response);
+        } else if (!result.isExistScope()) {
+            MessageUtils.setScopeError(response);
+        } else if (!result.isNotExpired()) {
+            MessageUtils.setExpiredAccessTokenError(response);
+        } else {
+            MessageUtils.setAuthorizationError(response);
+        }
+    }
+
     /**
      * オリジンの正当性をチェックする.
      * <p>
@@ -712,7 +766,26 @@ public abstract class DConnectMessageService extends Service
      * @param response 返却するレスポンス
      */
     public void sendResponse(final Intent request, final Intent response) {
-        sendBroadcast(createResponseIntent(request, response));
+        Intent intent = createResponseIntent(request, response);
+        if (!deliverBatchItemResponse(request, intent)) {
+            sendBroadcast(intent);
+        }
+    }
+
+    /**
+     * バッチリクエストにまとめられたリクエストの場合には、レスポンスをバッチリクエストに渡す.
+     * @param request 送信元のリクエスト
+     * @param response 返却するレスポンス
+     * @return バッチリクエストにまとめられたリクエストの場合はtrue、それ以外はfalse
+     */
+    protected boolean deliverBatchItemResponse(final Intent request, final Intent response) {
+        if (DConnectService.INNER_TYPE_BATCH.equals(request.getStringExtra(DConnectService.EXTRA_INNER_TYPE))) {
+            if (!mBatchProfile.onBatchItemResponse(response)) {
+                mLogger.warning("No pending batch request for response.");
+            }
+            return true;
+        }
+        return false;
     }
 
     /**
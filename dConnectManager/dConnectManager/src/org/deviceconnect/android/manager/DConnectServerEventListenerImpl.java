@@ -19,7 +19,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.apache.james.mime4j.MimeException;
@@ -27,7 +26,9 @@ import org.apache.james.mime4j.descriptor.BodyDescriptor;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
 import org.apache.james.mime4j.parser.Field;
 import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.deviceconnect.android.manager.profile.DConnectBatchProfile;
 import org.deviceconnect.android.manager.profile.DConnectFilesProfile;
+import org.deviceconnect.android.manager.util.BundleJSONSerializer;
 import org.deviceconnect.android.manager.util.DConnectUtil;
 import org.deviceconnect.android.provider.FileManager;
 import org.deviceconnect.message.DConnectMessage;
@@ -38,12 +39,14 @@ import org.deviceconnect.server.DConnectServerEventListener;
 import org.deviceconnect.server.http.HttpRequest;
 import org.deviceconnect.server.http.HttpResponse;
 import org.deviceconnect.server.http.HttpResponse.StatusCode;
+import org.deviceconnect.utils.ResponseCorrelator;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 
 /**
@@ -53,9 +56,9 @@ import android.net.Uri;
 public class DConnectServerEventListenerImpl implements
         DConnectServerEventListener {
     /**
-     * HTTPサーバからリクエストのマップ.
+     * HTTPサーバからのリクエストとレスポンスを対応付けるクラス.
      */
-    private final Map<Integer, Intent> mRequestMap = new ConcurrentHashMap<Integer, Intent>();
+    private final ResponseCorrelator<Intent> mCorrelator = new ResponseCorrelator<Intent>();
 
     /** ロガー. */
     private final Logger mLogger = Logger.getLogger("dconnect.manager");
@@ -73,8 +76,6 @@ public class DConnectServerEventListenerImpl implements
     /** バッファサイズ. */
     private static final int BUF_SIZE = 4096;
 
-    /** ポーリング時間(ms). */
-    private static final int POLLING_WAIT_TIME = 10000;
     /** デフォルトのタイムアウト時間(ms). */
     private static final int DEFAULT_RESTFUL_TIMEOUT = 180000;
     /** タイムアウト時間. */
@@ -86,9 +87,6 @@ public class DConnectServerEventListenerImpl implements
     /** ファイルを管理するためのクラス. */
     private FileManager mFileMgr;
 
-    /** ロックオブジェクト. */
-    private final Object mLockObj = new Object();
-
     /**
      * コンストラクタ.
      * @param context このクラスが属するコンテキスト
@@ -113,10 +111,9 @@ public class DConnectServerEventListenerImpl implements
     public void onResponse(final Intent intent) {
         int requestCode = intent.getIntExtra(
                 IntentDConnectMessage.EXTRA_REQUEST_CODE, Integer.MIN_VALUE);
-        mRequestMap.put(requestCode, intent);
-        // レスポンスを受け取ったのでスレッドを再開
-        synchronized (mLockObj) {
-            mLockObj.notifyAll();
+        // レスポンスを待っているスレッドのみを再開
+        if (!mCorrelator.complete(requestCode, intent)) {
+            mLogger.warning("No pending request for response. requestCode=" + requestCode);
         }
     }
 
@@ -211,6 +208,8 @@ public class DConnectServerEventListenerImpl implements
         // Bodyの解析
         if (hasMultipart(contentType)) {
             parseMultipart(request, intent);
+        } else if (DConnectBatchProfile.PROFILE_NAME.equals(profile) && isJson(contentType)) {
+            parseBatchBody(request, intent);
         } else {
             parseBody(request, intent, isUrlEncoded(contentType));
         }
@@ -218,11 +217,19 @@ public class DConnectServerEventListenerImpl implements
         intent.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
         intent.putExtra(DConnectService.EXTRA_INNER_TYPE,
                 DConnectService.INNER_TYPE_HTTP);
+
+        // レスポンスを取りこぼさないように、送信前に待機用のハンドルを登録しておく
+        ResponseCorrelator.Pending<Intent> pending = mCorrelator.register(requestCode, mTimeout);
+        if (pending == null) {
+            mLogger.warning("Duplicated requestCode. requestCode=" + requestCode);
+            setErrorResponse(response);
+            return true;
+        }
         mContext.startService(intent);
 
         // レスポンスが返ってくるまで待つ
         // ただし、タイムアウト時間を設定しておき、永遠には待たない。
-        Intent resp = waitForResponse(requestCode);
+        Intent resp = waitForResponse(pending);
         try {
             if (resp == null) {
                 // ここのエラーはタイムアウトの場合のみ
@@ -244,22 +251,17 @@ public class DConnectServerEventListenerImpl implements
     /**
      * レスポンスが返ってくるまで待ちます.
      * ただし、タイムアウトなどを起こした場合にはnullが返却される。
-     * @param requestCode リクエストコード
+     * @param pending 待機用のハンドル
      * @return レスポンス用のIntent
      */
-    private Intent waitForResponse(final int requestCode) {
-        final long now = System.currentTimeMillis();
-        while (mRequestMap.get(requestCode) == null
-                && (System.currentTimeMillis() - now) < mTimeout) {
-            synchronized (mLockObj) {
-                try {
-                    mLockObj.wait(POLLING_WAIT_TIME);
-                } catch (InterruptedException e) {
-                    mLogger.warning("Exception ouccered in wait.");
-                }
-            }
+    private Intent waitForResponse(final ResponseCorrelator.Pending<Intent> pending) {
+        try {
+            return mCorrelator.await(pending);
+        } catch (InterruptedException e) {
+            mLogger.warning("Exception ouccered in wait.");
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return mRequestMap.remove(requestCode);
     }
 
     /**
@@ -354,6 +356,30 @@ public class DConnectServerEventListenerImpl implements
         return contentType != null && contentType.indexOf("application/x-www-form-urlencoded") != -1;
     }
 
+    /**
+     * 指定されたContent-TypeがJSONかチェックする.
+     * @param contentType コンテンツタイプ
+     * @return JSONの場合はtrue、それ以外はfalse
+     */
+    private boolean isJson(final String contentType) {
+        return contentType != null && contentType.indexOf("application/json") != -1;
+    }
+
+    /**
+     * バッチリクエストのBodyに格納されたJSONの配列を、リクエスト一覧としてIntentに格納する.
+     * @param request HTTPリクエスト
+     * @param intent リクエスト一覧を格納するIntent
+     */
+    private void parseBatchBody(final HttpRequest request, final Intent intent) {
+        if (request.getBody() != null) {
+            try {
+                intent.putExtra(DConnectBatchProfile.PARAM_REQUESTS, new String(request.getBody(), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                mLogger.warning("Exception in parseBatchBody");
+            }
+        }
+    }
+
     /**
      * HTTPリクエストヘッダからアプリケーションのオリジンを取得する.
      * @param request HTTPリクエスト
@@ -564,33 +590,69 @@ public class DConnectServerEventListenerImpl implements
         return baos.toByteArray();
     }
 
+    /**
+     * 指定されたコンテンツをストリームとしてレスポンスに設定する.
+     * <p>
+     * コンテンツのサイズが取得できた場合はContent-Lengthを付けて、
+     * 取得できない場合はchunked形式で送信される。
+     * </p>
+     * @param response 返答を格納するレスポンス
+     * @param contentUri コンテンツのURI
+     * @return コンテンツを開けた場合はtrue、それ以外はfalse
+     */
+    private boolean openContent(final HttpResponse response, final String contentUri) {
+        try {
+            AssetFileDescriptor afd = mContext.getContentResolver()
+                    .openAssetFileDescriptor(Uri.parse(contentUri), "r");
+            if (afd == null) {
+                return false;
+            }
+            long length = afd.getLength();
+            if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                length = HttpResponse.UNKNOWN_LENGTH;
+            }
+            response.setBody(afd.createInputStream(), length);
+            return true;
+        } catch (IOException e) {
+            mLogger.warning("Exception in openContent." + e.getMessage());
+            return false;
+        } catch (SecurityException e) {
+            mLogger.warning("Exception in openContent." + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * HTTPのレスポンスを組み立てる.
      * @param response 返答を格納するレスポンス
      * @param prof profile
      * @param att attribute
      * @param resp response用のIntent
-     * @throws JSONException JSONの解析に失敗した場合
-     * @throws UnsupportedEncodingException 文字列のエンコードに失敗した場合
+     * @throws JSONException JSONへの変換に失敗した場合
      */
     private void convertResponse(final HttpResponse response, final String prof,
-            final String att, final Intent resp) throws JSONException, UnsupportedEncodingException {
+            final String att, final Intent resp) throws JSONException {
         if (DConnectFilesProfile.PROFILE_NAME.equals(prof)) {
+            String contentUri = resp.getStringExtra(DConnectFilesProfile.PARAM_CONTENT_URI);
             byte[] data = resp.getByteArrayExtra(DConnectFilesProfile.PARAM_DATA);
-            if (data == null) {
-                response.setCode(StatusCode.NOT_FOUND);
-            } else {
-                String mimeType = resp.getStringExtra(DConnectFilesProfile.PARAM_MIME_TYPE);
-                if (mimeType != null) {
-                    response.setContentType(mimeType);
+            if (contentUri != null) {
+                if (!openContent(response, contentUri)) {
+                    response.setCode(StatusCode.NOT_FOUND);
+                    return;
                 }
+            } else if (data != null) {
                 response.setBody(data);
+            } else {
+                response.setCode(StatusCode.NOT_FOUND);
+                return;
+            }
+            String mimeType = resp.getStringExtra(DConnectFilesProfile.PARAM_MIME_TYPE);
+            if (mimeType != null) {
+                response.setContentType(mimeType);
             }
         } else {
-            JSONObject root = new JSONObject();
-            DConnectUtil.convertBundleToJSON(root, resp.getExtras());
             response.setContentType(CONTENT_TYPE_JSON);
-            response.setBody(root.toString().getBytes("UTF-8"));
+            response.setBody(BundleJSONSerializer.toJSONBytes(resp.getExtras()));
         }
     }
 }
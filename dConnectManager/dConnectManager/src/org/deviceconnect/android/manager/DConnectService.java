@@ -9,13 +9,12 @@ package org.deviceconnect.android.manager;
 import java.io.IOException;
 import java.util.ArrayList;
 
-import org.deviceconnect.android.manager.util.DConnectUtil;
+import org.deviceconnect.android.manager.util.BundleJSONSerializer;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.server.DConnectServer;
 import org.deviceconnect.server.DConnectServerConfig;
 import org.deviceconnect.server.nanohttpd.DConnectServerNanoHttpd;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import android.content.Intent;
 
@@ -28,6 +27,8 @@ public class DConnectService extends DConnectMessageService {
     public static final String EXTRA_INNER_TYPE = "_type";
     /** 通信タイプがHTTPであることを示す定数. */
     public static final String INNER_TYPE_HTTP = "http";
+    /** バッチリクエストにまとめられたリクエストであることを示す定数. */
+    public static final String INNER_TYPE_BATCH = "batch";
 
     /** 内部用: アプリケーションタイプを定義する. */
     public static final String EXTRA_INNER_APP_TYPE = "_app_type";
@@ -64,7 +65,7 @@ public class DConnectService extends DConnectMessageService {
         Intent intent = createResponseIntent(request, response);
         if (INNER_TYPE_HTTP.equals(request.getStringExtra(EXTRA_INNER_TYPE))) {
             mWebServerListener.onResponse(intent);
-        } else {
+        } else if (!deliverBatchItemResponse(request, intent)) {
             sendBroadcast(intent);
         }
     }
@@ -75,9 +76,8 @@ public class DConnectService extends DConnectMessageService {
             String key = event.getStringExtra(DConnectMessage.EXTRA_SESSION_KEY);
             try {
                 mLogger.fine("■ sendEvent: " + key + " extra: " + event.getExtras());
-                JSONObject root = new JSONObject();
-                DConnectUtil.convertBundleToJSON(root, event.getExtras());
-                mWebServer.sendEvent(key, root.toString());
+                mWebServer.sendEvent(key, BundleJSONSerializer.toJSONString(event.getExtras()),
+                        createEventKey(event));
             } catch (JSONException e) {
                 mLogger.warning("JSONException in sendEvent: " + e.toString());
             } catch (IOException e) {
@@ -88,6 +88,26 @@ public class DConnectService extends DConnectMessageService {
         }
     }
 
+    /**
+     * 送信待ちのイベントをまとめるためのイベントキーを作成する.
+     * <p>
+     * 同じサービスの同じAPIから送られてきたイベントは同じキーになる。
+     * </p>
+     * @param event イベント
+     * @return イベントキー
+     */
+    private String createEventKey(final Intent event) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(event.getStringExtra(DConnectMessage.EXTRA_SERVICE_ID));
+        builder.append("/");
+        builder.append(event.getStringExtra(DConnectMessage.EXTRA_PROFILE));
+        builder.append("/");
+        builder.append(event.getStringExtra(DConnectMessage.EXTRA_INTERFACE));
+        builder.append("/");
+        builder.append(event.getStringExtra(DConnectMessage.EXTRA_ATTRIBUTE));
+        return builder.toString();
+    }
+
     /**
      * HTTPサーバを開始する.
      */
@@ -11,8 +11,10 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
@@ -54,6 +56,9 @@ public class DevicePluginManager {
     /** イベントリスナー. */
     private DevicePluginEventListener mEventListener;
 
+    /** デバイスプラグインの検索結果のスナップショット. */
+    private final DevicePluginSnapshot mSnapshot;
+
     /**
      * コンストラクタ.
      * @param context このクラスが属するコンテキスト
@@ -61,6 +66,7 @@ public class DevicePluginManager {
      */
     public DevicePluginManager(final Context context, final String domain) {
         this.mContext = context;
+        this.mSnapshot = new DevicePluginSnapshot(context);
         setDConnectDomain(domain);
     }
     /**
@@ -79,21 +85,35 @@ public class DevicePluginManager {
     }
     /**
      * アプリ一覧からデバイスプラグイン一覧を作成する.
+     * <p>
+     * 前回から更新されていないパッケージはスナップショットの結果を使用し、
+     * 追加・更新されたパッケージのみ検索を行う。
+     * </p>
      */
     public void createDevicePluginList() {
+        mSnapshot.load();
+        // スナップショットが無い場合には、レシーバ情報もまとめて取得する
+        boolean full = mSnapshot.isEmpty();
         PackageManager pkgMgr = mContext.getPackageManager();
-        List<PackageInfo> pkgList = pkgMgr.getInstalledPackages(PackageManager.GET_RECEIVERS);
+        List<PackageInfo> pkgList = pkgMgr.getInstalledPackages(full ? PackageManager.GET_RECEIVERS : 0);
         if (pkgList != null) {
+            Set<String> packageNames = new HashSet<String>();
             for (PackageInfo pkg : pkgList) {
-                ActivityInfo[] receivers = pkg.receivers;
-                if (receivers != null) {
-                    for (int i = 0; i < receivers.length; i++) {
-                        String packageName = receivers[i].packageName;
-                        String className = receivers[i].name;
-                        checkAndAddDevicePlugin(new ComponentName(packageName, className));
+                packageNames.add(pkg.packageName);
+                DevicePluginSnapshot.Entry entry = mSnapshot.get(pkg);
+                if (entry == null) {
+                    entry = full ? scanPackage(pkg) : scanPackage(pkg.packageName);
+                    if (entry == null) {
+                        continue;
                     }
+                    mSnapshot.put(entry);
+                }
+                for (DevicePlugin plugin : entry.getPlugins()) {
+                    addDevicePlugin(plugin);
                 }
             }
+            mSnapshot.retain(packageNames);
+            mSnapshot.save();
         }
     }
 
@@ -114,22 +134,103 @@ public class DevicePluginManager {
         if (packageName == null) {
             throw new IllegalArgumentException("packageName is null.");
         }
+        DevicePluginSnapshot.Entry entry = scanPackage(packageName);
+        if (entry != null) {
+            for (DevicePlugin plugin : entry.getPlugins()) {
+                addDevicePlugin(plugin);
+            }
+            mSnapshot.put(entry);
+            mSnapshot.save();
+        }
+    }
+
+    /**
+     * 指定されたIntentのパッケージのデバイスプラグインを検索し直して、リストを更新する.
+     * @param intent 変更されたパッケージのIntent
+     */
+    public void checkAndUpdateDevicePlugin(final Intent intent) {
+        checkAndUpdateDevicePlugin(getPackageName(intent));
+    }
+
+    /**
+     * 指定されたパッケージのデバイスプラグインを検索し直して、リストを更新する.
+     * <p>
+     * パッケージ内のコンポーネントの有効・無効が切り替えられた場合に使用する。
+     * 見つからなくなったデバイスプラグインは削除し、新しく見つかったデバイスプラグインは追加する。
+     * </p>
+     * @param packageName パッケージ名
+     */
+    public void checkAndUpdateDevicePlugin(final String packageName) {
+        if (packageName == null) {
+            throw new IllegalArgumentException("packageName is null.");
+        }
+        DevicePluginSnapshot.Entry entry = scanPackage(packageName);
+        if (entry == null) {
+            checkAndRemoveDevicePlugin(packageName);
+            return;
+        }
+        Set<String> serviceIds = new HashSet<String>();
+        for (DevicePlugin plugin : entry.getPlugins()) {
+            serviceIds.add(plugin.getServiceId());
+            if (mPlugins.containsKey(plugin.getServiceId())) {
+                mPlugins.put(plugin.getServiceId(), plugin);
+            } else {
+                addDevicePlugin(plugin);
+            }
+        }
+        for (String key : mPlugins.keySet()) {
+            DevicePlugin plugin = mPlugins.get(key);
+            if (plugin.getPackageName().equals(packageName) && !serviceIds.contains(key)) {
+                mLogger.info("Removed DevicePlugin: [" + key + "]");
+                mLogger.info("    PackageName: " + packageName);
+                mLogger.info("    className: " + plugin.getClassName());
+                mPlugins.remove(key);
+                if (mEventListener != null) {
+                    mEventListener.onDeviceLost(plugin);
+                }
+            }
+        }
+        mSnapshot.put(entry);
+        mSnapshot.save();
+    }
+
+    /**
+     * 指定されたパッケージに含まれるデバイスプラグインを検索する.
+     * @param packageName パッケージ名
+     * @return 検索結果。パッケージが存在しない場合はnull
+     */
+    private DevicePluginSnapshot.Entry scanPackage(final String packageName) {
         PackageManager pkgMgr = mContext.getPackageManager();
         try {
             PackageInfo pkg = pkgMgr.getPackageInfo(packageName, PackageManager.GET_RECEIVERS);
-            if (pkg != null) {
-                ActivityInfo[] receivers = pkg.receivers;
-                if (receivers != null) {
-                    for (int i = 0; i < receivers.length; i++) {
-                        String pkgName = receivers[i].packageName;
-                        String className = receivers[i].name;
-                        checkAndAddDevicePlugin(new ComponentName(pkgName, className));
-                    }
-                }
+            if (pkg == null) {
+                return null;
             }
+            return scanPackage(pkg);
         } catch (NameNotFoundException e) {
-            return;
+            return null;
+        }
+    }
+
+    /**
+     * 指定されたパッケージのレシーバからデバイスプラグインを検索する.
+     * @param pkg レシーバ情報を含むパッケージ情報
+     * @return 検索結果
+     */
+    private DevicePluginSnapshot.Entry scanPackage(final PackageInfo pkg) {
+        List<DevicePlugin> plugins = new ArrayList<DevicePlugin>();
+        ActivityInfo[] receivers = pkg.receivers;
+        if (receivers != null) {
+            for (int i = 0; i < receivers.length; i++) {
+                String pkgName = receivers[i].packageName;
+                String className = receivers[i].name;
+                DevicePlugin plugin = createDevicePlugin(new ComponentName(pkgName, className));
+                if (plugin != null) {
+                    plugins.add(plugin);
+                }
+            }
         }
+        return new DevicePluginSnapshot.Entry(pkg, plugins);
     }
 
     /**
@@ -138,6 +239,18 @@ public class DevicePluginManager {
      * @param component コンポーネント
      */
     public void checkAndAddDevicePlugin(final ComponentName component) {
+        DevicePlugin plugin = createDevicePlugin(component);
+        if (plugin != null) {
+            addDevicePlugin(plugin);
+        }
+    }
+
+    /**
+     * コンポーネントがデバイスプラグインの場合には、デバイスプラグインの情報を作成する.
+     * @param component コンポーネント
+     * @return デバイスプラグイン。デバイスプラグインではない場合はnull
+     */
+    private DevicePlugin createDevicePlugin(final ComponentName component) {
         ActivityInfo receiverInfo = null;
         try {
             PackageManager pkgMgr = mContext.getPackageManager();
@@ -152,15 +265,6 @@ public class DevicePluginManager {
                     if (hash == null) {
                         throw new RuntimeException("Can't generate md5.");
                     }
-                    mLogger.info("Added DevicePlugin: [" + hash + "]");
-                    mLogger.info("    PackageName: " + packageName);
-                    mLogger.info("    className: " + className);
-                    // MEMO 既に同じ名前のデバイスプラグインが存在した場合の処理
-                    // 現在は警告を表示し、上書きする.
-                    if (mPlugins.containsKey(hash)) {
-                        mLogger.warning("DevicePlugin[" + hash + "] already exists.");
-                    }
-
                     DevicePlugin plugin = new DevicePlugin();
                     plugin.setClassName(className);
                     plugin.setPackageName(packageName);
@@ -168,14 +272,32 @@ public class DevicePluginManager {
                     plugin.setDeviceName(receiverInfo.applicationInfo.loadLabel(pkgMgr).toString());
                     plugin.setStartServiceClassName(startClassName);
                     plugin.setSupportProfiles(checkDevicePluginXML(receiverInfo));
-                    mPlugins.put(hash, plugin);
-                    if (mEventListener != null) {
-                        mEventListener.onDeviceFound(plugin);
-                    }
+                    return plugin;
                 }
             }
+            return null;
         } catch (NameNotFoundException e) {
-            return;
+            return null;
+        }
+    }
+
+    /**
+     * デバイスプラグインを一覧に追加する.
+     * @param plugin 追加するデバイスプラグイン
+     */
+    private void addDevicePlugin(final DevicePlugin plugin) {
+        String hash = plugin.getServiceId();
+        mLogger.info("Added DevicePlugin: [" + hash + "]");
+        mLogger.info("    PackageName: " + plugin.getPackageName());
+        mLogger.info("    className: " + plugin.getClassName());
+        // MEMO 既に同じ名前のデバイスプラグインが存在した場合の処理
+        // 現在は警告を表示し、上書きする.
+        if (mPlugins.containsKey(hash)) {
+            mLogger.warning("DevicePlugin[" + hash + "] already exists.");
+        }
+        mPlugins.put(hash, plugin);
+        if (mEventListener != null) {
+            mEventListener.onDeviceFound(plugin);
         }
     }
 
@@ -195,6 +317,8 @@ public class DevicePluginManager {
         if (packageName == null) {
             throw new IllegalArgumentException("packageName is null.");
         }
+        mSnapshot.remove(packageName);
+        mSnapshot.save();
         for (String key : mPlugins.keySet()) {
             DevicePlugin plugin = mPlugins.get(key);
             if (plugin.getPackageName().equals(packageName)) {
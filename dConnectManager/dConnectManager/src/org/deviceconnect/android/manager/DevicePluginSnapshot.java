@@ -0,0 +1,406 @@
+/*
+ DevicePluginSnapshot.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+
+/**
+ * デバイスプラグインの検索結果をパッケージ毎に保存するスナップショット.
+ * <p>
+ * パッケージの更新日時、バージョンコード、有効・無効の状態が前回と同じ場合には、
+ * PackageManagerへの問い合わせやdeviceplugin.xmlの解析を行わずに、保存した結果を使用する。<br>
+ * パッケージ内のコンポーネントの有効・無効が切り替えられた場合には更新日時が変わらないので、
+ * PACKAGE_CHANGEDを受け取った時に検索し直した結果で置き換える。<br>
+ * デバイスプラグインを含まないパッケージも保存しておき、次回の起動時に検索を省略する。<br>
+ * 端末の言語が変わった場合には、デバイスプラグイン名が変わるので全て破棄する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class DevicePluginSnapshot {
+    /** ファイル名. */
+    private static final String FILE_NAME = "deviceplugin_snapshot.dat";
+    /** プロセス間で書き込みを排他するためのロックファイル名. */
+    private static final String LOCK_FILE_NAME = "deviceplugin_snapshot.lock";
+    /** ファイルの先頭に書き込む識別子. */
+    private static final int MAGIC = 0x44435053;
+    /** ファイルのフォーマットのバージョン. */
+    private static final int VERSION = 2;
+    /** プロセス内でファイルの読み書きを排他するためのロック. */
+    private static final Object LOCK = new Object();
+
+    /** ロガー. */
+    private final Logger mLogger = Logger.getLogger("dconnect.manager");
+    /** 保存先のファイル. */
+    private final File mFile;
+    /** プロセス間で書き込みを排他するためのロックファイル. */
+    private final File mLockFile;
+    /** パッケージ名をキーにした検索結果. */
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+    /** ファイルの内容から変更されている場合はtrue. */
+    private boolean mModified;
+    /** ファイルから読み込み済みの場合はtrue. */
+    private boolean mLoaded;
+
+    /**
+     * コンストラクタ.
+     * @param context コンテキスト
+     */
+    DevicePluginSnapshot(final Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        mLockFile = new File(context.getFilesDir(), LOCK_FILE_NAME);
+    }
+
+    /**
+     * ファイルからスナップショットを読み込む.
+     * <p>
+     * ファイルが存在しない場合や、フォーマットや言語が異なる場合には空のスナップショットになる。
+     * </p>
+     */
+    synchronized void load() {
+        mEntries.clear();
+        mModified = false;
+        mLoaded = true;
+        synchronized (LOCK) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || !getLocale().equals(in.readUTF())) {
+                    mModified = true;
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Entry entry = readEntry(in);
+                    mEntries.put(entry.mPackageName, entry);
+                }
+            } catch (FileNotFoundException e) {
+                mModified = true;
+            } catch (IOException e) {
+                mLogger.warning("Failed to read the snapshot of device plugins: " + e.getMessage());
+                mEntries.clear();
+                mModified = true;
+            } finally {
+                close(in);
+            }
+        }
+    }
+
+    /**
+     * 変更されている場合にはスナップショットをファイルに保存する.
+     * <p>
+     * 一時ファイルに書き込んでから置き換えるので、書き込み中に終了しても以前の内容が残る。<br>
+     * 設定画面のプロセスとDConnectServiceのプロセスが同時に保存することがあるので、
+     * 一時ファイルはプロセス毎に別のファイルを作成し、置き換えが終わるまでロックファイルをロックする。
+     * </p>
+     */
+    synchronized void save() {
+        if (!mModified) {
+            return;
+        }
+        synchronized (LOCK) {
+            RandomAccessFile lockFile = null;
+            File tmp = null;
+            DataOutputStream out = null;
+            try {
+                lockFile = new RandomAccessFile(mLockFile, "rw");
+                // ロックはlockFileを閉じた時に解放される
+                lockFile.getChannel().lock();
+                tmp = File.createTempFile(FILE_NAME, ".tmp", mFile.getParentFile());
+                FileOutputStream fos = new FileOutputStream(tmp);
+                out = new DataOutputStream(new BufferedOutputStream(fos));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(getLocale());
+                out.writeInt(mEntries.size());
+                for (Entry entry : mEntries.values()) {
+                    writeEntry(out, entry);
+                }
+                out.flush();
+                fos.getFD().sync();
+                out.close();
+                out = null;
+                if (!tmp.renameTo(mFile)) {
+                    throw new IOException("Failed to rename " + tmp);
+                }
+                tmp = null;
+                mModified = false;
+            } catch (IOException e) {
+                mLogger.warning("Failed to write the snapshot of device plugins: " + e.getMessage());
+            } finally {
+                close(out);
+                if (tmp != null) {
+                    tmp.delete();
+                }
+                close(lockFile);
+            }
+        }
+    }
+
+    /**
+     * 検索結果が保存されていないか確認する.
+     * @return 保存されていない場合はtrue、それ以外はfalse
+     */
+    synchronized boolean isEmpty() {
+        loadIfNeeded();
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * 指定されたパッケージの保存した検索結果を取得する.
+     * <p>
+     * パッケージが更新されている場合や、有効・無効が切り替えられている場合にはnullを返却する。
+     * </p>
+     * @param pkg パッケージ情報
+     * @return 検索結果。保存されていない場合や更新されている場合はnull
+     */
+    synchronized Entry get(final PackageInfo pkg) {
+        loadIfNeeded();
+        Entry entry = mEntries.get(pkg.packageName);
+        if (entry != null && entry.mLastUpdateTime == pkg.lastUpdateTime
+                && entry.mVersionCode == pkg.versionCode && entry.mEnabled == isEnabled(pkg)) {
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * パッケージの検索結果を保存する.
+     * @param entry 検索結果
+     */
+    synchronized void put(final Entry entry) {
+        loadIfNeeded();
+        mEntries.put(entry.mPackageName, entry);
+        mModified = true;
+    }
+
+    /**
+     * 指定されたパッケージの検索結果を破棄する.
+     * @param packageName パッケージ名
+     */
+    synchronized void remove(final String packageName) {
+        loadIfNeeded();
+        if (mEntries.remove(packageName) != null) {
+            mModified = true;
+        }
+    }
+
+    /**
+     * 指定されたパッケージ以外の検索結果を破棄する.
+     * <p>
+     * アンインストールされたパッケージの検索結果を残さないようにするために使用する。
+     * </p>
+     * @param packageNames 残すパッケージ名の一覧
+     */
+    synchronized void retain(final Set<String> packageNames) {
+        loadIfNeeded();
+        if (mEntries.keySet().retainAll(packageNames)) {
+            mModified = true;
+        }
+    }
+
+    /**
+     * まだ読み込んでいない場合にはファイルからスナップショットを読み込む.
+     * <p>
+     * 読み込まずに保存して、他のパッケージの検索結果を消さないようにする。
+     * </p>
+     */
+    private void loadIfNeeded() {
+        if (!mLoaded) {
+            load();
+        }
+    }
+
+    /**
+     * スナップショットの言語を取得する.
+     * @return 言語
+     */
+    private static String getLocale() {
+        return Locale.getDefault().toString();
+    }
+
+    /**
+     * パッケージが有効になっているか確認する.
+     * @param pkg パッケージ情報
+     * @return 有効な場合はtrue、無効な場合はfalse
+     */
+    private static boolean isEnabled(final PackageInfo pkg) {
+        return pkg.applicationInfo == null || pkg.applicationInfo.enabled;
+    }
+
+    /**
+     * 検索結果を読み込む.
+     * @param in 入力ストリーム
+     * @return 検索結果
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static Entry readEntry(final DataInputStream in) throws IOException {
+        String packageName = in.readUTF();
+        long lastUpdateTime = in.readLong();
+        int versionCode = in.readInt();
+        boolean enabled = in.readBoolean();
+        int count = in.readInt();
+        List<DevicePlugin> plugins = new ArrayList<DevicePlugin>(count);
+        for (int i = 0; i < count; i++) {
+            DevicePlugin plugin = new DevicePlugin();
+            plugin.setPackageName(packageName);
+            plugin.setClassName(readString(in));
+            plugin.setServiceId(readString(in));
+            plugin.setDeviceName(readString(in));
+            plugin.setStartServiceClassName(readString(in));
+            int profileCount = in.readInt();
+            if (profileCount >= 0) {
+                List<String> profiles = new ArrayList<String>(profileCount);
+                for (int j = 0; j < profileCount; j++) {
+                    profiles.add(readString(in));
+                }
+                plugin.setSupportProfiles(profiles);
+            } else {
+                plugin.setSupportProfiles(null);
+            }
+            plugins.add(plugin);
+        }
+        return new Entry(packageName, lastUpdateTime, versionCode, enabled, plugins);
+    }
+
+    /**
+     * 検索結果を書き込む.
+     * @param out 出力ストリーム
+     * @param entry 検索結果
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeEntry(final DataOutputStream out, final Entry entry) throws IOException {
+        out.writeUTF(entry.mPackageName);
+        out.writeLong(entry.mLastUpdateTime);
+        out.writeInt(entry.mVersionCode);
+        out.writeBoolean(entry.mEnabled);
+        out.writeInt(entry.mPlugins.size());
+        for (DevicePlugin plugin : entry.mPlugins) {
+            writeString(out, plugin.getClassName());
+            writeString(out, plugin.getServiceId());
+            writeString(out, plugin.getDeviceName());
+            writeString(out, plugin.getStartServiceClassName());
+            List<String> profiles = plugin.getSupportProfiles();
+            if (profiles != null) {
+                out.writeInt(profiles.size());
+                for (String profile : profiles) {
+                    writeString(out, profile);
+                }
+            } else {
+                out.writeInt(-1);
+            }
+        }
+    }
+
+    /**
+     * nullを含む文字列を読み込む.
+     * @param in 入力ストリーム
+     * @return 文字列
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * nullを含む文字列を書き込む.
+     * @param out 出力ストリーム
+     * @param value 文字列
+     * @throws IOException 書き込みに失敗した場合
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * ストリームを閉じる.
+     * @param stream ストリーム
+     */
+    private static void close(final Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // do nothing.
+            }
+        }
+    }
+
+    /**
+     * パッケージ毎のデバイスプラグインの検索結果.
+     */
+    static final class Entry {
+        /** パッケージ名. */
+        private final String mPackageName;
+        /** パッケージの更新日時. */
+        private final long mLastUpdateTime;
+        /** パッケージのバージョンコード. */
+        private final int mVersionCode;
+        /** パッケージが有効な場合はtrue. */
+        private final boolean mEnabled;
+        /** パッケージに含まれるデバイスプラグイン一覧. */
+        private final List<DevicePlugin> mPlugins;
+
+        /**
+         * コンストラクタ.
+         * @param pkg パッケージ情報
+         * @param plugins パッケージに含まれるデバイスプラグイン一覧
+         */
+        Entry(final PackageInfo pkg, final List<DevicePlugin> plugins) {
+            this(pkg.packageName, pkg.lastUpdateTime, pkg.versionCode, isEnabled(pkg), plugins);
+        }
+
+        /**
+         * コンストラクタ.
+         * @param packageName パッケージ名
+         * @param lastUpdateTime パッケージの更新日時
+         * @param versionCode パッケージのバージョンコード
+         * @param enabled パッケージが有効な場合はtrue
+         * @param plugins パッケージに含まれるデバイスプラグイン一覧
+         */
+        private Entry(final String packageName, final long lastUpdateTime, final int versionCode,
+                final boolean enabled, final List<DevicePlugin> plugins) {
+            mPackageName = packageName;
+            mLastUpdateTime = lastUpdateTime;
+            mVersionCode = versionCode;
+            mEnabled = enabled;
+            mPlugins = Collections.unmodifiableList(plugins);
+        }
+
+        /**
+         * パッケージに含まれるデバイスプラグイン一覧を取得する.
+         * @return デバイスプラグイン一覧
+         */
+        List<DevicePlugin> getPlugins() {
+            return mPlugins;
+        }
+    }
+}
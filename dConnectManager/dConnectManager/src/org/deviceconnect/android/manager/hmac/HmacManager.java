@@ -6,12 +6,18 @@
  */
 package org.deviceconnect.android.manager.hmac;
 
+import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.deviceconnect.android.util.ProcessSharedCounter;
+
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -36,6 +42,81 @@ public final class HmacManager {
      */
     private static final String EMPTY = "";
 
+    /**
+     * The maximum number of origins whose keys are cached.
+     */
+    private static final int MAX_CACHED_KEYS = 1000;
+
+    /**
+     * The name of the file which shares the modification count of the database between processes.
+     */
+    static final String GENERATION_FILE_NAME = "__device_connect_hmac_generation";
+
+    /**
+     * The cached value for origins which do not use HMAC.
+     */
+    private static final CachedKey NO_KEY = new CachedKey(null);
+
+    /**
+     * The cache of HMAC keys.
+     * <p>
+     * It is shared by all instances in this process because they refer to the same database.
+     * Entries are added and removed only while {@link #LOCK_KEYS} is held, so that
+     * a key which is being updated is never cached with an old value.
+     * </p>
+     * <p>
+     * Keys are also updated by DConnectLaunchActivity in the main process, while they are used
+     * in the process of DConnectService. So the whole cache is cleared whenever the modification
+     * count shared between processes differs from the one the cache was filled at.
+     * </p>
+     */
+    private static final ConcurrentHashMap<String, CachedKey> KEYS = new ConcurrentHashMap<String, CachedKey>();
+
+    /**
+     * The modification count at which {@link #KEYS} was filled.
+     */
+    private static volatile long sKeysGeneration;
+
+    /**
+     * The modification count of the database shared between processes.
+     * <p>
+     * <code>null</code> if it could not be opened. In that case, keys are not cached.
+     * </p>
+     */
+    private static ProcessSharedCounter sGeneration;
+
+    /**
+     * Whether {@link #sGeneration} has been opened.
+     */
+    private static boolean sGenerationOpened;
+
+    /**
+     * The lock object for loading and updating HMAC keys.
+     */
+    private static final Object LOCK_KEYS = new Object();
+
+    /**
+     * Mac instances for each thread.
+     * <p>
+     * Mac instances are not thread-safe, and looking up the provider for each response is expensive.
+     * </p>
+     */
+    private static final ThreadLocal<MacHolder> MACS = new ThreadLocal<MacHolder>() {
+        @Override
+        protected MacHolder initialValue() {
+            try {
+                return new MacHolder(Mac.getInstance(HASH_ALGORITHM));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(HASH_ALGORITHM + " is not supported.");
+            }
+        }
+    };
+
+    /**
+     * The logger.
+     */
+    private final Logger mLogger = Logger.getLogger("dconnect.manager");
+
     /**
      * The HMAC key database.
      */
@@ -50,6 +131,26 @@ public final class HmacManager {
             throw new IllegalArgumentException("context is null.");
         }
         mCache = new HmacKeyDB(context);
+        openGeneration(context.getApplicationContext());
+    }
+
+    /**
+     * Opens the modification count shared between processes if it has not been opened yet.
+     * @param context Context
+     */
+    private void openGeneration(final Context context) {
+        synchronized (LOCK_KEYS) {
+            if (sGenerationOpened) {
+                return;
+            }
+            sGenerationOpened = true;
+            try {
+                sGeneration = ProcessSharedCounter.open(context, GENERATION_FILE_NAME);
+                sKeysGeneration = sGeneration.get();
+            } catch (IOException e) {
+                mLogger.log(Level.WARNING, "Failed to open the HMAC key generation.", e);
+            }
+        }
     }
 
     /**
@@ -69,10 +170,20 @@ public final class HmacManager {
             throw new IllegalArgumentException("key is null.");
         }
 
-        if (key.equals(EMPTY)) {
-            mCache.removeKey(origin);
-        } else {
-            mCache.addKey(origin, key);
+        synchronized (LOCK_KEYS) {
+            if (key.equals(EMPTY)) {
+                mCache.removeKey(origin);
+            } else {
+                mCache.addKey(origin, key);
+            }
+            KEYS.remove(origin);
+            if (sGeneration != null) {
+                try {
+                    sGeneration.increment();
+                } catch (IOException e) {
+                    mLogger.log(Level.WARNING, "Failed to update the HMAC key generation.", e);
+                }
+            }
         }
     }
 
@@ -86,7 +197,7 @@ public final class HmacManager {
         if (origin == null) {
             throw new IllegalArgumentException("origin is null.");
         }
-        return mCache.hasKey(origin);
+        return getKeySpec(origin) != null;
     }
 
     /**
@@ -103,24 +214,73 @@ public final class HmacManager {
         if (nonce == null) {
             throw new IllegalArgumentException("nonce is null.");
         }
-        HmacKey hmacKey = mCache.getKey(origin);
-        if (hmacKey == null) {
+        SecretKeySpec keySpec = getKeySpec(origin);
+        if (keySpec == null) {
             return null;
         }
         // HMAC generation with key and nonce.
         try {
-            Mac mac = Mac.getInstance(HASH_ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(toByteArray(hmacKey.getKey()), HASH_ALGORITHM);
-            mac.init(keySpec);
+            Mac mac = MACS.get().getMac(keySpec);
             byte[] hmac = mac.doFinal(toByteArray(nonce));
             return toHexString(hmac);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(HASH_ALGORITHM + " is not supported.");
         } catch (InvalidKeyException e) {
             throw new RuntimeException("keySpec is null.");
         }
     }
 
+    /**
+     * Gets the HMAC key for the specified origin.
+     * <p>
+     * The key is loaded from the database only when it is not cached, or when the database
+     * has been modified by any process since the cache was filled.
+     * </p>
+     * @param origin Origin of application
+     * @return the HMAC key, or <code>null</code> if the origin does not use HMAC
+     */
+    private SecretKeySpec getKeySpec(final String origin) {
+        ProcessSharedCounter generation = sGeneration;
+        if (generation == null) {
+            return loadKey(origin).mKeySpec;
+        }
+        CachedKey cached = null;
+        if (sKeysGeneration == generation.get()) {
+            cached = KEYS.get(origin);
+        }
+        if (cached == null) {
+            synchronized (LOCK_KEYS) {
+                // Read the count before loading, so that a modification during loading
+                // clears the cache again.
+                long current = generation.get();
+                if (sKeysGeneration != current) {
+                    KEYS.clear();
+                    sKeysGeneration = current;
+                }
+                cached = KEYS.get(origin);
+                if (cached == null) {
+                    cached = loadKey(origin);
+                    if (KEYS.size() >= MAX_CACHED_KEYS) {
+                        KEYS.clear();
+                    }
+                    KEYS.put(origin, cached);
+                }
+            }
+        }
+        return cached.mKeySpec;
+    }
+
+    /**
+     * Loads the HMAC key for the specified origin from the database.
+     * @param origin Origin of application
+     * @return the loaded key
+     */
+    private CachedKey loadKey(final String origin) {
+        HmacKey hmacKey = mCache.getKey(origin);
+        if (hmacKey == null) {
+            return NO_KEY;
+        }
+        return new CachedKey(new SecretKeySpec(toByteArray(hmacKey.getKey()), HASH_ALGORITHM));
+    }
+
     /**
      * Parse a hex string expression of a byte array to raw.
      * @param b a hex string expression of a byte array
@@ -160,6 +320,67 @@ public final class HmacManager {
         return str.toString();
     }
 
+    /**
+     * A cached HMAC key.
+     */
+    private static final class CachedKey {
+
+        /**
+         * The HMAC key, or <code>null</code> if the origin does not use HMAC.
+         */
+        private final SecretKeySpec mKeySpec;
+
+        /**
+         * Constructor.
+         * @param keySpec the HMAC key
+         */
+        CachedKey(final SecretKeySpec keySpec) {
+            mKeySpec = keySpec;
+        }
+    }
+
+    /**
+     * A Mac instance and the key it was last initialized with.
+     */
+    private static final class MacHolder {
+
+        /**
+         * The Mac instance.
+         */
+        private final Mac mMac;
+
+        /**
+         * The key which the Mac instance was last initialized with.
+         */
+        private SecretKeySpec mKeySpec;
+
+        /**
+         * Constructor.
+         * @param mac the Mac instance
+         */
+        MacHolder(final Mac mac) {
+            mMac = mac;
+        }
+
+        /**
+         * Gets the Mac instance initialized with the specified key.
+         * <p>
+         * Mac is reset to the initialized state after doFinal(), so
+         * it is initialized again only when the key is changed.
+         * </p>
+         * @param keySpec the HMAC key
+         * @return the Mac instance
+         * @throws InvalidKeyException if the key is invalid
+         */
+        Mac getMac(final SecretKeySpec keySpec) throws InvalidKeyException {
+            if (mKeySpec != keySpec) {
+                mMac.init(keySpec);
+                mKeySpec = keySpec;
+            }
+            return mMac;
+        }
+    }
+
     /**
      * HMAC key database.
      */
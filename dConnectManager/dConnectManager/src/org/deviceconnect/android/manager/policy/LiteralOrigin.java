@@ -27,6 +27,17 @@ class LiteralOrigin implements Origin {
         mOrigin = originExp;
     }
 
+    /**
+     * Gets the key for hash-based matching.
+     * <p>
+     * Origins which match each other have the same key.
+     * </p>
+     * @return the key
+     */
+    String getMatchingKey() {
+        return mOrigin;
+    }
+
     @Override
     public boolean matches(final Origin origin) {
         if (!(origin instanceof LiteralOrigin)) {
@@ -0,0 +1,81 @@
+/*
+ OriginMatcher.java
+ Copyright (c) 2015 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.policy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the whitelist which is compiled for fast lookups.
+ * <p>
+ * Web application origins and literal origins are looked up in hash sets,
+ * so that an origin can be checked without scanning all entries.
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class OriginMatcher {
+
+    /**
+     * The keys of web application origins.
+     */
+    private final Set<String> mWebAppKeys = new HashSet<String>();
+
+    /**
+     * The keys of literal origins.
+     */
+    private final Set<String> mLiteralKeys = new HashSet<String>();
+
+    /**
+     * Origins which can not be looked up in hash sets.
+     */
+    private final List<Origin> mOthers = new ArrayList<Origin>();
+
+    /**
+     * Constructor.
+     *
+     * @param origins the origins in the whitelist
+     */
+    OriginMatcher(final List<OriginInfo> origins) {
+        for (OriginInfo info : origins) {
+            Origin origin = info.getOrigin();
+            if (origin instanceof WebAppOrigin) {
+                mWebAppKeys.add(((WebAppOrigin) origin).getMatchingKey());
+            } else if (origin instanceof LiteralOrigin) {
+                mLiteralKeys.add(((LiteralOrigin) origin).getMatchingKey());
+            } else {
+                mOthers.add(origin);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the specified origin matches any origin in the whitelist.
+     *
+     * @param origin Origin of requests
+     * @return <code>true</code> if the specified origin matches, otherwise <code>false</code>.
+     */
+    boolean matches(final Origin origin) {
+        if (origin instanceof WebAppOrigin) {
+            if (mWebAppKeys.contains(((WebAppOrigin) origin).getMatchingKey())) {
+                return true;
+            }
+        } else if (origin instanceof LiteralOrigin) {
+            if (mLiteralKeys.contains(((LiteralOrigin) origin).getMatchingKey())) {
+                return true;
+            }
+        }
+        for (Origin other : mOthers) {
+            if (other.matches(origin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
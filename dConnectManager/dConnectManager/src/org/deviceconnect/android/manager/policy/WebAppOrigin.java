@@ -123,6 +123,17 @@ abstract class WebAppOrigin implements Origin {
      */
     protected abstract int getDefaultPort();
 
+    /**
+     * Gets the key for hash-based matching.
+     * <p>
+     * Origins which match each other have the same key.
+     * </p>
+     * @return the key
+     */
+    String getMatchingKey() {
+        return mScheme + SEP_HOST + mHost + SEP_PORT + getPort();
+    }
+
     @Override
     public boolean matches(final Origin origin) {
         if (!(origin instanceof WebAppOrigin)) {
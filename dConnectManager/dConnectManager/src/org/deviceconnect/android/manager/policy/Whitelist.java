@@ -6,8 +6,13 @@
  */
 package org.deviceconnect.android.manager.policy;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.deviceconnect.android.util.ProcessSharedCounter;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -24,6 +29,42 @@ import android.provider.BaseColumns;
  */
 public class Whitelist {
 
+    /**
+     * The name of the file which shares the modification count of the database between processes.
+     */
+    static final String GENERATION_FILE_NAME = "__device_connect_whitelist_generation";
+
+    /**
+     * The compiled snapshot of the whitelist.
+     * <p>
+     * It is shared by all instances in this process because they refer to the same database.
+     * The whitelist is edited by WhitelistActivity in the main process while it is checked
+     * in the process of DConnectService, so the snapshot is rebuilt whenever the modification
+     * count shared between processes differs from the one it was built at.
+     * </p>
+     */
+    private static volatile OriginMatcher sMatcher;
+
+    /** The modification count at which {@link #sMatcher} was built. */
+    private static volatile long sMatcherGeneration;
+
+    /**
+     * The modification count of the database shared between processes.
+     * <p>
+     * <code>null</code> if it could not be opened. In that case, the snapshot is rebuilt every time.
+     * </p>
+     */
+    private static ProcessSharedCounter sGeneration;
+
+    /** Whether {@link #sGeneration} has been opened. */
+    private static boolean sGenerationOpened;
+
+    /** The lock object for loading the snapshot. */
+    private static final Object LOCK_MATCHER = new Object();
+
+    /** The logger. */
+    private final Logger mLogger = Logger.getLogger("dconnect.manager");
+
     /** The origin database. */
     private final OriginDB mCache;
 
@@ -34,6 +75,25 @@ public class Whitelist {
      */
     public Whitelist(final Context context) {
         mCache = new OriginDB(context);
+        openGeneration(context.getApplicationContext());
+    }
+
+    /**
+     * Opens the modification count shared between processes if it has not been opened yet.
+     * @param context Context
+     */
+    private void openGeneration(final Context context) {
+        synchronized (LOCK_MATCHER) {
+            if (sGenerationOpened) {
+                return;
+            }
+            sGenerationOpened = true;
+            try {
+                sGeneration = ProcessSharedCounter.open(context, GENERATION_FILE_NAME);
+            } catch (IOException e) {
+                mLogger.log(Level.WARNING, "Failed to open the whitelist generation.", e);
+            }
+        }
     }
 
     /**
@@ -44,13 +104,60 @@ public class Whitelist {
      *      otherwise <code>false</code>.
      */
     public boolean allows(final Origin origin) {
-        List<OriginInfo> patterns = getOrigins();
-        for (OriginInfo p : patterns) {
-            if (p.matches(origin)) {
-                return true;
+        return getMatcher().matches(origin);
+    }
+
+    /**
+     * Returns the compiled snapshot of the whitelist.
+     * <p>
+     * The snapshot is loaded from the database only when the database has been modified
+     * by any process since the current snapshot was built.
+     * </p>
+     * @return the compiled snapshot
+     */
+    private OriginMatcher getMatcher() {
+        ProcessSharedCounter generation = sGeneration;
+        if (generation == null) {
+            return new OriginMatcher(mCache.getOrigins());
+        }
+        OriginMatcher matcher = sMatcher;
+        if (matcher == null || sMatcherGeneration != generation.get()) {
+            synchronized (LOCK_MATCHER) {
+                matcher = sMatcher;
+                long current = generation.get();
+                if (matcher == null || sMatcherGeneration != current) {
+                    // Read the count before loading, so that a modification during loading
+                    // causes another reload.
+                    matcher = new OriginMatcher(mCache.getOrigins());
+                    sMatcherGeneration = current;
+                    sMatcher = matcher;
+                }
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Notifies all processes that the database has been modified.
+     * <p>
+     * This method must be called after the database is modified.
+     * The snapshot of each process is rebuilt on its next use.
+     * </p>
+     */
+    private void notifyModified() {
+        ProcessSharedCounter generation = sGeneration;
+        if (generation == null) {
+            return;
+        }
+        try {
+            generation.increment();
+        } catch (IOException e) {
+            mLogger.log(Level.WARNING, "Failed to update the whitelist generation.", e);
+            synchronized (LOCK_MATCHER) {
+                // At least this process must not use the old snapshot.
+                sMatcher = null;
             }
         }
-        return false;
     }
 
     /**
@@ -67,13 +174,8 @@ public class Whitelist {
      * @param originExp a string expression of origin
      * @return <code>true</code> if origin is included, otherwise <code>false</code>
      */
-    public synchronized boolean hasOrigin(final String originExp) {
-        for (OriginInfo info : mCache.getOrigins()) {
-            if (info.matches(OriginParser.parse(originExp))) {
-                return true;
-            }
-        }
-        return false;
+    public boolean hasOrigin(final String originExp) {
+        return getMatcher().matches(OriginParser.parse(originExp));
     }
 
     /**
@@ -89,6 +191,7 @@ public class Whitelist {
         try {
             long date = System.currentTimeMillis();
             long id = mCache.addOrigin(origin, title, date);
+            notifyModified();
             return new OriginInfo(id, origin, title, date);
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to store origin: " + origin, e);
@@ -104,6 +207,7 @@ public class Whitelist {
     public synchronized void updateOrigin(final OriginInfo info) throws WhitelistException {
         try {
             mCache.updateOrigin(info);
+            notifyModified();
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to store origin: " + info.mOrigin, e);
         }
@@ -118,6 +222,7 @@ public class Whitelist {
     public synchronized void removeOrigin(final OriginInfo info) throws WhitelistException {
         try {
             mCache.removeOrigin(info);
+            notifyModified();
         } catch (OriginDBException e) {
             throw new WhitelistException("Failed to remove origin: " + info.mOrigin, e);
         }
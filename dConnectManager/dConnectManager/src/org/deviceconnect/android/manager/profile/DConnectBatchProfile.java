@@ -0,0 +1,391 @@
+/*
+ DConnectBatchProfile.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.profile;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.deviceconnect.android.localoauth.CheckAccessTokenResult;
+import org.deviceconnect.android.manager.DConnectMessageService;
+import org.deviceconnect.android.manager.DConnectService;
+import org.deviceconnect.android.manager.util.DConnectUtil;
+import org.deviceconnect.android.message.MessageUtils;
+import org.deviceconnect.android.profile.DConnectProfile;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Batch プロファイル.
+ * <p>
+ * 複数のリクエストを1つのリクエストにまとめて実行する。<br>
+ * オリジンの確認はまとめたリクエストに対して1度だけ行い、
+ * アクセストークンの確認はプロファイル毎に1度だけ行う。<br>
+ * まとめられたリクエストは並列に実行し、全てのレスポンスが揃った時点で、
+ * リクエストの順番に並べたレスポンスの配列を返却する。
+ * </p>
+ * <pre>
+ * POST /gotapi/batch
+ * requests=[{"method":"GET","path":"/gotapi/battery/level","params":{"serviceId":"xxx"}}, ...]
+ * </pre>
+ * @author NTT DOCOMO, INC.
+ */
+public class DConnectBatchProfile extends DConnectProfile {
+
+    /** プロファイル名: {@value}. */
+    public static final String PROFILE_NAME = "batch";
+
+    /** パラメータ: {@value}. */
+    public static final String PARAM_REQUESTS = "requests";
+
+    /** パラメータ: {@value}. */
+    public static final String PARAM_RESPONSES = "responses";
+
+    /** パラメータ: {@value}. */
+    public static final String PARAM_METHOD = "method";
+
+    /** パラメータ: {@value}. */
+    public static final String PARAM_PATH = "path";
+
+    /** パラメータ: {@value}. */
+    public static final String PARAM_PARAMS = "params";
+
+    /** 1度にまとめられるリクエストの最大数. */
+    public static final int MAX_REQUESTS = 50;
+
+    /** 全てのレスポンスが揃うまで待つ時間(ms). */
+    private static final int TIMEOUT = 60000;
+
+    /** パスのセグメント数(Profileのみ). */
+    private static final int SEGMENT_PROFILE = 2;
+    /** パスのセグメント数(ProfileとAttribute). */
+    private static final int SEGMENT_ATTRIBUTE = 3;
+    /** パスのセグメント数(ProfileとInterfaceとAttribute). */
+    private static final int SEGMENT_INTERFACES = 4;
+
+    /** リクエストコードをキーにした、レスポンス待ちのリクエスト一覧. */
+    private final ConcurrentHashMap<Integer, Item> mPendingItems = new ConcurrentHashMap<Integer, Item>();
+
+    /** タイムアウトを監視するハンドラ. */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public String getProfileName() {
+        return PROFILE_NAME;
+    }
+
+    @Override
+    protected boolean onGetRequest(final Intent request, final Intent response) {
+        MessageUtils.setNotSupportActionError(response);
+        ((DConnectService) getContext()).sendResponse(request, response);
+        return true;
+    }
+
+    @Override
+    protected boolean onPutRequest(final Intent request, final Intent response) {
+        MessageUtils.setNotSupportActionError(response);
+        ((DConnectService) getContext()).sendResponse(request, response);
+        return true;
+    }
+
+    @Override
+    protected boolean onDeleteRequest(final Intent request, final Intent response) {
+        MessageUtils.setNotSupportActionError(response);
+        ((DConnectService) getContext()).sendResponse(request, response);
+        return true;
+    }
+
+    @Override
+    protected boolean onPostRequest(final Intent request, final Intent response) {
+        if (getInterface(request) != null || getAttribute(request) != null) {
+            MessageUtils.setUnknownAttributeError(response);
+            ((DConnectService) getContext()).sendResponse(request, response);
+            return true;
+        }
+
+        JSONArray items = parseRequests(request.getStringExtra(PARAM_REQUESTS));
+        if (items == null) {
+            MessageUtils.setInvalidRequestParameterError(response,
+                    "requests must be a JSON array of 1 to " + MAX_REQUESTS + " requests.");
+            ((DConnectService) getContext()).sendResponse(request, response);
+            return true;
+        }
+
+        // レスポンスを取りこぼさないように、全て登録してから実行する
+        Batch batch = new Batch(request, response, items.length());
+        Intent[] subRequests = new Intent[items.length()];
+        for (int i = 0; i < items.length(); i++) {
+            Intent subRequest = createSubRequest(request, items.optJSONObject(i));
+            if (subRequest == null) {
+                Intent error = new Intent();
+                MessageUtils.setInvalidRequestParameterError(error, "Invalid request at index " + i + ".");
+                batch.complete(i, error.getExtras());
+            } else {
+                int requestCode = register(new Item(batch, i));
+                subRequest.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
+                subRequests[i] = subRequest;
+            }
+        }
+        batch.startTimer();
+
+        // アクセストークンの確認結果はアクセストークンとプロファイルの組み合わせ毎に使い回す
+        Map<String, CheckAccessTokenResult> results = new HashMap<String, CheckAccessTokenResult>();
+        DConnectMessageService service = (DConnectMessageService) getContext();
+        for (Intent subRequest : subRequests) {
+            if (subRequest != null) {
+                service.executeBatchItem(subRequest, results);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * まとめられたリクエストのレスポンスを受け取る.
+     *
+     * @param response レスポンス
+     * @return 対応するリクエストが存在した場合はtrue、それ以外はfalse
+     */
+    public boolean onBatchItemResponse(final Intent response) {
+        int requestCode = response.getIntExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, Integer.MIN_VALUE);
+        Item item = mPendingItems.remove(requestCode);
+        if (item == null) {
+            return false;
+        }
+        Bundle extras = response.getExtras();
+        extras.remove(IntentDConnectMessage.EXTRA_REQUEST_CODE);
+        extras.remove(IntentDConnectMessage.EXTRA_PRODUCT);
+        extras.remove(IntentDConnectMessage.EXTRA_VERSION);
+        item.mBatch.complete(item.mIndex, extras);
+        return true;
+    }
+
+    /**
+     * リクエスト一覧を解析する.
+     *
+     * @param requests リクエスト一覧のJSON
+     * @return リクエスト一覧。不正な場合はnull
+     */
+    private JSONArray parseRequests(final String requests) {
+        if (requests == null) {
+            return null;
+        }
+        try {
+            JSONArray items = new JSONArray(requests);
+            if (items.length() == 0 || items.length() > MAX_REQUESTS) {
+                return null;
+            }
+            return items;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * まとめられたリクエストから、実行するリクエストを作成する.
+     * <p>
+     * オリジンとアクセストークンはまとめたリクエストのものを引き継ぐ。
+     * </p>
+     *
+     * @param request まとめたリクエスト
+     * @param item まとめられたリクエスト
+     * @return 実行するリクエスト。不正なリクエストの場合はnull
+     */
+    private Intent createSubRequest(final Intent request, final JSONObject item) {
+        if (item == null) {
+            return null;
+        }
+        String method = item.optString(PARAM_METHOD, DConnectMessage.METHOD_GET);
+        String action = DConnectUtil.convertHttpMethod2DConnectMethod(method.toUpperCase(Locale.ENGLISH));
+        String path = item.optString(PARAM_PATH, null);
+        if (action == null || path == null) {
+            return null;
+        }
+
+        Uri uri = Uri.parse(path);
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() < SEGMENT_PROFILE || segments.size() > SEGMENT_INTERFACES
+                || !DConnectMessage.DEFAULT_API.equals(segments.get(0))) {
+            return null;
+        }
+        String profile = segments.get(1);
+        // バッチのネストとバイナリを返すファイルの取得はまとめられない
+        if (PROFILE_NAME.equals(profile) || DConnectFilesProfile.PROFILE_NAME.equals(profile)) {
+            return null;
+        }
+
+        Intent subRequest = new Intent(action);
+        subRequest.putExtra(IntentDConnectMessage.EXTRA_API, segments.get(0));
+        subRequest.putExtra(IntentDConnectMessage.EXTRA_PROFILE, profile);
+        if (segments.size() == SEGMENT_ATTRIBUTE) {
+            subRequest.putExtra(IntentDConnectMessage.EXTRA_ATTRIBUTE, segments.get(2));
+        } else if (segments.size() == SEGMENT_INTERFACES) {
+            subRequest.putExtra(IntentDConnectMessage.EXTRA_INTERFACE, segments.get(2));
+            subRequest.putExtra(IntentDConnectMessage.EXTRA_ATTRIBUTE, segments.get(3));
+        }
+        for (String key : uri.getQueryParameterNames()) {
+            subRequest.putExtra(key, uri.getQueryParameter(key));
+        }
+        JSONObject params = item.optJSONObject(PARAM_PARAMS);
+        if (params != null) {
+            Iterator<?> it = params.keys();
+            while (it.hasNext()) {
+                String key = (String) it.next();
+                subRequest.putExtra(key, params.optString(key));
+            }
+        }
+
+        // まとめたリクエストの情報を引き継ぐ
+        if (!subRequest.hasExtra(DConnectMessage.EXTRA_ACCESS_TOKEN)) {
+            subRequest.putExtra(DConnectMessage.EXTRA_ACCESS_TOKEN,
+                    request.getStringExtra(DConnectMessage.EXTRA_ACCESS_TOKEN));
+        }
+        subRequest.putExtra(IntentDConnectMessage.EXTRA_ORIGIN,
+                request.getStringExtra(IntentDConnectMessage.EXTRA_ORIGIN));
+        subRequest.putExtra(DConnectService.EXTRA_INNER_APP_TYPE,
+                request.getStringExtra(DConnectService.EXTRA_INNER_APP_TYPE));
+        subRequest.putExtra(DConnectService.EXTRA_INNER_TYPE, DConnectService.INNER_TYPE_BATCH);
+        return subRequest;
+    }
+
+    /**
+     * レスポンスを待つリクエストを登録する.
+     *
+     * @param item まとめられたリクエスト
+     * @return 割り当てたリクエストコード
+     */
+    private int register(final Item item) {
+        while (true) {
+            int requestCode = UUID.randomUUID().hashCode();
+            if (requestCode != Integer.MIN_VALUE && mPendingItems.putIfAbsent(requestCode, item) == null) {
+                return requestCode;
+            }
+        }
+    }
+
+    /**
+     * まとめられたリクエスト1件.
+     */
+    private static final class Item {
+        /** まとめたリクエスト. */
+        private final Batch mBatch;
+        /** まとめたリクエストの中での位置. */
+        private final int mIndex;
+
+        /**
+         * コンストラクタ.
+         * @param batch まとめたリクエスト
+         * @param index まとめたリクエストの中での位置
+         */
+        Item(final Batch batch, final int index) {
+            mBatch = batch;
+            mIndex = index;
+        }
+    }
+
+    /**
+     * まとめたリクエストのレスポンスを集めるクラス.
+     */
+    private final class Batch implements Runnable {
+        /** まとめたリクエスト. */
+        private final Intent mRequest;
+        /** まとめたリクエストのレスポンス. */
+        private final Intent mResponse;
+        /** リクエストの順番に並べたレスポンス. */
+        private final Bundle[] mResults;
+        /** まだレスポンスが揃っていないリクエスト数. */
+        private int mRemaining;
+        /** レスポンスを返却済みの場合はtrue. */
+        private boolean mDone;
+
+        /**
+         * コンストラクタ.
+         * @param request まとめたリクエスト
+         * @param response まとめたリクエストのレスポンス
+         * @param count まとめられたリクエスト数
+         */
+        Batch(final Intent request, final Intent response, final int count) {
+            mRequest = request;
+            mResponse = response;
+            mResults = new Bundle[count];
+            mRemaining = count;
+        }
+
+        /**
+         * タイムアウトの監視を開始する.
+         */
+        synchronized void startTimer() {
+            if (!mDone) {
+                mHandler.postDelayed(this, TIMEOUT);
+            }
+        }
+
+        /**
+         * まとめられたリクエストのレスポンスを設定する.
+         * @param index まとめたリクエストの中での位置
+         * @param result レスポンス
+         */
+        synchronized void complete(final int index, final Bundle result) {
+            if (mDone || mResults[index] != null) {
+                return;
+            }
+            mResults[index] = result;
+            mRemaining--;
+            if (mRemaining == 0) {
+                finish();
+            }
+        }
+
+        /**
+         * タイムアウトしたリクエストにエラーを設定して、レスポンスを返却する.
+         */
+        @Override
+        public synchronized void run() {
+            if (mDone) {
+                return;
+            }
+            Iterator<Map.Entry<Integer, Item>> it = mPendingItems.entrySet().iterator();
+            while (it.hasNext()) {
+                Item item = it.next().getValue();
+                if (item.mBatch == this) {
+                    it.remove();
+                }
+            }
+            for (int i = 0; i < mResults.length; i++) {
+                if (mResults[i] == null) {
+                    Intent error = new Intent();
+                    MessageUtils.setTimeoutError(error);
+                    mResults[i] = error.getExtras();
+                }
+            }
+            finish();
+        }
+
+        /**
+         * レスポンスを返却する.
+         */
+        private void finish() {
+            mDone = true;
+            mHandler.removeCallbacks(this);
+            mResponse.putExtra(DConnectMessage.EXTRA_RESULT, DConnectMessage.RESULT_OK);
+            mResponse.putExtra(PARAM_RESPONSES, mResults);
+            ((DConnectService) getContext()).sendResponse(mRequest, mResponse);
+        }
+    }
+}
@@ -43,6 +43,9 @@ public class DConnectFilesProfile extends DConnectProfile {
     /** 属性: {@value}. */
     public static final String PARAM_DATA = "data";
 
+    /** 属性: {@value}. */
+    public static final String PARAM_CONTENT_URI = "contentUri";
+
     /** 拡張子とMimetypeを持つマップ. */
     private final Map<String, String> mExtMap = new HashMap<String, String>();
 
@@ -69,6 +72,20 @@ public class DConnectFilesProfile extends DConnectProfile {
             @Override
             public void run() {
                 String uri = request.getStringExtra(DConnectProfileConstants.PARAM_URI);
+                if (DConnectService.INNER_TYPE_HTTP.equals(
+                        request.getStringExtra(DConnectService.EXTRA_INNER_TYPE))) {
+                    // HTTP経由の場合は、HTTPサーバがレスポンス送信時にストリームで読み込むので、
+                    // ここではデータを読み込まずにURIだけを返却する。
+                    if (uri == null) {
+                        MessageUtils.setInvalidRequestParameterError(response);
+                    } else {
+                        setResult(response, DConnectMessage.RESULT_OK);
+                        response.putExtra(PARAM_CONTENT_URI, uri);
+                        response.putExtra(PARAM_MIME_TYPE, getExtension(uri));
+                    }
+                    sendResponse(response);
+                    return;
+                }
                 byte[] buf = getContentData(uri);
                 if (buf == null) {
                     MessageUtils.setInvalidRequestParameterError(response);
@@ -11,6 +11,7 @@ import org.deviceconnect.android.event.EventManager;
 import org.deviceconnect.android.manager.DConnectMessageService;
 import org.deviceconnect.android.manager.DConnectService;
 import org.deviceconnect.android.manager.DevicePluginManager;
+import org.deviceconnect.android.manager.request.ServiceDiscoveryCache;
 import org.deviceconnect.android.manager.request.ServiceDiscoveryRequest;
 import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.android.profile.DConnectProfileProvider;
@@ -30,9 +31,24 @@ public class DConnectServiceDiscoveryProfile extends ServiceDiscoveryProfile {
      */
     private static final int TIMEOUT = 8000;
 
+    /**
+     * キャッシュを使用せずに全てのデバイスプラグインに問い合わせる場合に指定するパラメータ: {@value}.
+     * "true"を指定した場合に有効となる。
+     */
+    public static final String PARAM_REFRESH = "refresh";
+
+    /**
+     * キャッシュの結果を即座に返却する場合に指定するパラメータ: {@value}.
+     * "true"を指定した場合に有効となる。遅れて見つかったサービスはonservicechangeイベントで通知する。
+     */
+    public static final String PARAM_IMMEDIATE = "immediate";
+
     /** デバイスプラグイン管理クラス. */
     private DevicePluginManager mDevicePluginManager;
 
+    /** Service Discoveryの結果のキャッシュ. */
+    private final ServiceDiscoveryCache mCache = new ServiceDiscoveryCache();
+
     /**
      * コンストラクタ.
      * @param provider プロファイルプロバイダ
@@ -64,6 +80,9 @@ public class DConnectServiceDiscoveryProfile extends ServiceDiscoveryProfile {
         req.setRequest(request);
         req.setTimeout(TIMEOUT);
         req.setDevicePluginManager(mDevicePluginManager);
+        req.setDiscoveryCache(mCache);
+        req.setUseCache(!"true".equals(request.getStringExtra(PARAM_REFRESH)));
+        req.setImmediate("true".equals(request.getStringExtra(PARAM_IMMEDIATE)));
         ((DConnectMessageService) getContext()).addRequest(req);
 
         // 各デバイスプラグインに送信する場合にはfalseを返却、
@@ -0,0 +1,176 @@
+/*
+ ServiceDiscoveryCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.deviceconnect.android.manager.DevicePlugin;
+
+import android.os.Bundle;
+
+/**
+ * デバイスプラグイン毎のService Discoveryの結果を保持するキャッシュ.
+ * <p>
+ * 有効期限内の結果はデバイスプラグインに問い合わせずに返す。<br>
+ * 有効期限の半分を過ぎた結果は、返却した上でバックグラウンドで更新する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class ServiceDiscoveryCache {
+
+    /** デフォルトの有効期限(ミリ秒). */
+    public static final long DEFAULT_TTL = 30 * 1000;
+
+    /** 有効期限(ミリ秒). */
+    private final long mTtl;
+
+    /** デバイスプラグインIDをキーにした結果. */
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+
+    /** バックグラウンドで更新中のデバイスプラグインID. */
+    private final Set<String> mRefreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * デフォルトの有効期限でキャッシュを生成する.
+     */
+    public ServiceDiscoveryCache() {
+        this(DEFAULT_TTL);
+    }
+
+    /**
+     * 有効期限を指定してキャッシュを生成する.
+     * @param ttl 有効期限(ミリ秒)
+     */
+    public ServiceDiscoveryCache(final long ttl) {
+        mTtl = ttl;
+    }
+
+    /**
+     * デバイスプラグインの結果を取得する.
+     * @param plugin デバイスプラグイン
+     * @return 結果。キャッシュされていない場合はnull
+     */
+    public Entry get(final DevicePlugin plugin) {
+        return mEntries.get(plugin.getServiceId());
+    }
+
+    /**
+     * デバイスプラグインの結果を保存する.
+     * @param plugin デバイスプラグイン
+     * @param services 発見したサービス一覧。サービスIDにはデバイスプラグインIDを付加しておくこと。
+     */
+    public void put(final DevicePlugin plugin, final List<Bundle> services) {
+        mEntries.put(plugin.getServiceId(), new Entry(services, System.currentTimeMillis()));
+    }
+
+    /**
+     * デバイスプラグインの結果を破棄する.
+     * @param plugin デバイスプラグイン
+     */
+    public void remove(final DevicePlugin plugin) {
+        mEntries.remove(plugin.getServiceId());
+    }
+
+    /**
+     * 全ての結果を破棄する.
+     */
+    public void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 結果が有効期限内か確認する.
+     * @param entry 結果
+     * @return 有効期限内の場合はtrue、それ以外はfalse
+     */
+    public boolean isFresh(final Entry entry) {
+        return entry != null && entry.getAge() < mTtl;
+    }
+
+    /**
+     * 結果をバックグラウンドで更新すべきか確認する.
+     * @param entry 結果
+     * @return 更新すべき場合はtrue、それ以外はfalse
+     */
+    public boolean needsRefresh(final Entry entry) {
+        return entry == null || entry.getAge() >= mTtl / 2;
+    }
+
+    /**
+     * デバイスプラグインの更新を開始する.
+     * <p>
+     * 既に更新中の場合はfalseを返すので、その場合は更新を行わないこと。
+     * </p>
+     * @param plugin デバイスプラグイン
+     * @return 更新を開始できた場合はtrue、既に更新中の場合はfalse
+     */
+    boolean beginRefresh(final DevicePlugin plugin) {
+        return mRefreshing.add(plugin.getServiceId());
+    }
+
+    /**
+     * デバイスプラグインの更新を終了する.
+     * @param plugin デバイスプラグイン
+     */
+    void endRefresh(final DevicePlugin plugin) {
+        mRefreshing.remove(plugin.getServiceId());
+    }
+
+    /**
+     * キャッシュしたService Discoveryの結果.
+     */
+    public static final class Entry {
+        /** サービス一覧. */
+        private final List<Bundle> mServices;
+
+        /** 取得した時刻. */
+        private final long mTime;
+
+        /**
+         * コンストラクタ.
+         * @param services サービス一覧
+         * @param time 取得した時刻
+         */
+        Entry(final List<Bundle> services, final long time) {
+            mServices = copy(services);
+            mTime = time;
+        }
+
+        /**
+         * サービス一覧のコピーを取得する.
+         * @return サービス一覧
+         */
+        public List<Bundle> getServices() {
+            return copy(mServices);
+        }
+
+        /**
+         * 取得してからの経過時間を取得する.
+         * @return 経過時間(ミリ秒)
+         */
+        public long getAge() {
+            return System.currentTimeMillis() - mTime;
+        }
+
+        /**
+         * レスポンスに格納したBundleを変更されても影響しないように、サービス一覧をコピーする.
+         * @param services サービス一覧
+         * @return コピーしたサービス一覧
+         */
+        private static List<Bundle> copy(final List<Bundle> services) {
+            List<Bundle> result = new ArrayList<Bundle>(services.size());
+            for (Bundle b : services) {
+                result.add(new Bundle(b));
+            }
+            return result;
+        }
+    }
+}
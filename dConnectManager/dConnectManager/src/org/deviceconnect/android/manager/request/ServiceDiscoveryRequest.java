@@ -7,12 +7,21 @@
 package org.deviceconnect.android.manager.request;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Logger;
 
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventManager;
 import org.deviceconnect.android.manager.BuildConfig;
+import org.deviceconnect.android.manager.DConnectService;
 import org.deviceconnect.android.manager.DevicePlugin;
+import org.deviceconnect.android.message.MessageUtils;
 import org.deviceconnect.android.profile.ServiceDiscoveryProfile;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
@@ -31,6 +40,11 @@ import android.util.SparseArray;
  * になり、他方Network Service Discovery用リクエストでは登録されているデバイスプラグイン
  * の数だけレスポンスを受け取ったかどうかになっている.
  * </p>
+ * <p>
+ * {@link ServiceDiscoveryCache}が設定されている場合は、有効期限内の結果を持つデバイスプラグインには問い合わせない。
+ * 即時返却モードの場合は、キャッシュの結果だけを即座に返却し、デバイスプラグインへの問い合わせはバックグラウンドで行う。
+ * 遅れて見つかったサービス、および見つからなくなったサービスはonservicechangeイベントで通知する。
+ * </p>
  * @author NTT DOCOMO, INC.
  */
 public class ServiceDiscoveryRequest extends DConnectRequest {
@@ -40,11 +54,8 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
     /** プラグイン側のService Discoveryのプロファイル名: {@value}. */
     private static final String ATTRIBUTE_GET_NETWORK_SERVICES = "getNetworkServices";
 
-    /** レスポンスが返ってきた個数. */
-    private int mResponseCount;
-
-    /** リクエストコードを格納する配列. */
-    private SparseArray<DevicePlugin> mRequestCodeArray = new SparseArray<DevicePlugin>();
+    /** リクエストコードを格納する配列. レスポンスを待っているデバイスプラグインのみを格納する. */
+    private final SparseArray<DevicePlugin> mRequestCodeArray = new SparseArray<DevicePlugin>();
 
     /** 発見したサービスを一時的に格納しておくリスト. */
     private final List<Bundle> mServices = new ArrayList<Bundle>();
@@ -55,6 +66,55 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
     /** ロックオブジェクト. */
     private final Object mLockObj = new Object();
 
+    /** Service Discoveryの結果のキャッシュ. */
+    private ServiceDiscoveryCache mCache;
+
+    /** キャッシュの結果を使用するフラグ. */
+    private boolean mUseCache = true;
+
+    /** 即時返却モードのフラグ. */
+    private boolean mImmediate;
+
+    /** バックグラウンドで更新するデバイスプラグイン. バックグラウンド更新用のリクエストの場合のみ設定される. */
+    private List<DevicePlugin> mRefreshTargets;
+
+    /**
+     * 即時返却モードでアプリに返却済みのサービスID(デバイスプラグインIDがキー).
+     * 設定されている場合は、更新結果との差分をイベントで通知する.
+     */
+    private Map<String, Set<String>> mReturnedServiceIds;
+
+    /**
+     * Service Discoveryの結果のキャッシュを設定する.
+     * @param cache キャッシュ
+     */
+    public void setDiscoveryCache(final ServiceDiscoveryCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * キャッシュの結果を使用するかを設定する.
+     * <p>
+     * falseを設定した場合は全てのデバイスプラグインに問い合わせ、その結果でキャッシュを更新する。
+     * </p>
+     * @param useCache キャッシュの結果を使用する場合はtrue、それ以外はfalse
+     */
+    public void setUseCache(final boolean useCache) {
+        mUseCache = useCache;
+    }
+
+    /**
+     * 即時返却モードを設定する.
+     * <p>
+     * 即時返却モードではデバイスプラグインのレスポンスを待たずに、キャッシュの結果を返却する。
+     * キャッシュが設定されていない場合は無視される。
+     * </p>
+     * @param immediate 即時返却モードの場合はtrue、それ以外はfalse
+     */
+    public void setImmediate(final boolean immediate) {
+        mImmediate = immediate;
+    }
+
     @Override
     public void setResponse(final Intent response) {
         // リクエストコードを取得
@@ -65,20 +125,30 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
             return;
         }
 
+        DevicePlugin plugin;
+        synchronized (mLockObj) {
+            plugin = mRequestCodeArray.get(requestCode);
+            if (plugin == null) {
+                // 既にレスポンスを受け取ったか、タイムアウトしたデバイスプラグイン
+                return;
+            }
+            mRequestCodeArray.remove(requestCode);
+        }
+
         // エラーが返ってきた場合には、サービスには登録しない。
+        List<Bundle> services = new ArrayList<Bundle>();
         int result = response.getIntExtra(IntentDConnectMessage.EXTRA_RESULT, -1);
         if (result == IntentDConnectMessage.RESULT_OK) {
             // 送られてきたサービスIDにデバイスプラグインのIDを付加して保存
-            Parcelable[] services = response.getParcelableArrayExtra(
+            Parcelable[] array = response.getParcelableArrayExtra(
                     ServiceDiscoveryProfileConstants.PARAM_SERVICES);
-            if (services != null) {
-                DevicePlugin plugin = mRequestCodeArray.get(requestCode);
-                for (Parcelable p : services) {
+            if (array != null) {
+                for (Parcelable p : array) {
                     Bundle b = (Bundle) p;
                     String id = b.getString(ServiceDiscoveryProfile.PARAM_ID);
                     b.putString(ServiceDiscoveryProfile.PARAM_ID, 
                             mPluginMgr.appendServiceId(plugin, id));
-                    mServices.add(b);
+                    services.add(b);
 
                     if (BuildConfig.DEBUG) {
                         Object scopes = b.getStringArray(ServiceDiscoveryProfileConstants.PARAM_SCOPES);
@@ -90,13 +160,17 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
                         }
                     }
                 }
-                mRequestCodeArray.remove(requestCode);
+            }
+            if (mCache != null) {
+                mCache.put(plugin, services);
+            }
+            if (mReturnedServiceIds != null) {
+                notifyServiceChanges(plugin, services);
             }
         }
 
-        // レスポンス個数を追加
-        mResponseCount++;
         synchronized (mLockObj) {
+            mServices.addAll(services);
             mLockObj.notifyAll();
         }
     }
@@ -121,7 +195,9 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
 
     @Override
     public boolean hasRequestCode(final int requestCode) {
-        return mRequestCodeArray.get(requestCode) != null;
+        synchronized (mLockObj) {
+            return mRequestCodeArray.get(requestCode) != null;
+        }
     }
 
     @Override
@@ -134,7 +210,106 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
             throw new RuntimeException("mDevicePluginManager is null.");
         }
 
-        List<DevicePlugin> plugins = mPluginMgr.getDevicePlugins();
+        if (mRefreshTargets != null) {
+            // バックグラウンドでの更新なので、レスポンスは返却しない
+            try {
+                discover(mRefreshTargets);
+            } finally {
+                for (DevicePlugin plugin : mRefreshTargets) {
+                    mCache.endRefresh(plugin);
+                }
+            }
+            return;
+        }
+
+        boolean immediate = mImmediate && mCache != null;
+        Map<String, Set<String>> returned = immediate ? new HashMap<String, Set<String>>() : null;
+        List<DevicePlugin> targets = new ArrayList<DevicePlugin>();
+        List<DevicePlugin> refreshes = new ArrayList<DevicePlugin>();
+        for (DevicePlugin plugin : mPluginMgr.getDevicePlugins()) {
+            ServiceDiscoveryCache.Entry entry = null;
+            if (mCache != null && mUseCache) {
+                entry = mCache.get(plugin);
+            }
+            if (mCache != null && mCache.isFresh(entry)) {
+                addServices(plugin, entry.getServices(), returned);
+                if (mCache.needsRefresh(entry)) {
+                    refreshes.add(plugin);
+                }
+            } else if (immediate) {
+                addServices(plugin, entry != null ? entry.getServices() : new ArrayList<Bundle>(), returned);
+                refreshes.add(plugin);
+            } else {
+                targets.add(plugin);
+            }
+        }
+
+        List<DevicePlugin> timeouts = discover(targets);
+        if (mCache != null && mUseCache) {
+            // レスポンスが返ってこなかったデバイスプラグインは、期限切れのキャッシュで補う
+            for (DevicePlugin plugin : timeouts) {
+                ServiceDiscoveryCache.Entry entry = mCache.get(plugin);
+                if (entry != null) {
+                    addServices(plugin, entry.getServices(), null);
+                }
+            }
+        }
+        startRefresh(refreshes, returned);
+
+        // パラメータを設定する
+        List<Bundle> services;
+        synchronized (mLockObj) {
+            services = new ArrayList<Bundle>(mServices);
+        }
+        mResponse = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+        mResponse.putExtra(IntentDConnectMessage.EXTRA_RESULT,
+                IntentDConnectMessage.RESULT_OK);
+        mResponse.putExtra(ServiceDiscoveryProfile.PARAM_SERVICES,
+                services.toArray(new Bundle[services.size()]));
+
+        // レスポンスを返却する
+        sendResponse(mResponse);
+    }
+
+    @Override
+    protected void sendRuntimeException(final String message) {
+        if (mRefreshTargets != null) {
+            // バックグラウンドでの更新では、アプリに既にレスポンスを返却している
+            mLogger.warning("Failed to refresh services. " + message);
+            return;
+        }
+        super.sendRuntimeException(message);
+    }
+
+    /**
+     * 発見したサービスを追加する.
+     * @param plugin サービスを持つデバイスプラグイン
+     * @param services サービス一覧
+     * @param returned 返却するサービスIDを記録するマップ。記録しない場合はnull
+     */
+    private void addServices(final DevicePlugin plugin, final List<Bundle> services,
+            final Map<String, Set<String>> returned) {
+        if (returned != null) {
+            Set<String> ids = new HashSet<String>();
+            for (Bundle b : services) {
+                ids.add(b.getString(ServiceDiscoveryProfile.PARAM_ID));
+            }
+            returned.put(plugin.getServiceId(), ids);
+        }
+        synchronized (mLockObj) {
+            mServices.addAll(services);
+        }
+    }
+
+    /**
+     * デバイスプラグインにService Discoveryを送信し、レスポンスを待つ.
+     * @param plugins 送信先のデバイスプラグイン
+     * @return タイムアウトしたデバイスプラグイン
+     */
+    private List<DevicePlugin> discover(final List<DevicePlugin> plugins) {
+        if (plugins.isEmpty()) {
+            return Collections.emptyList();
+        }
 
         // 送信用のIntentを作成
         Intent request = createRequestMessage(mRequest, null);
@@ -143,52 +318,132 @@ public class ServiceDiscoveryRequest extends DConnectRequest {
         request.putExtra(DConnectMessage.EXTRA_PROFILE, PROFILE_NETWORK_SERVICE_DISCOVERY);
         request.putExtra(DConnectMessage.EXTRA_ATTRIBUTE, ATTRIBUTE_GET_NETWORK_SERVICES);
 
-        for (int i = 0; i < plugins.size(); i++) {
-            DevicePlugin plugin = plugins.get(i);
-
-            int requestCode = UUID.randomUUID().hashCode();
-            mRequestCodeArray.put(requestCode, plugin);
+        // レスポンスより先に全てのリクエストコードを登録しておく
+        int[] requestCodes = new int[plugins.size()];
+        synchronized (mLockObj) {
+            for (int i = 0; i < plugins.size(); i++) {
+                requestCodes[i] = UUID.randomUUID().hashCode();
+                mRequestCodeArray.put(requestCodes[i], plugins.get(i));
+            }
+        }
 
-            request.setComponent(plugin.getComponentName());
-            request.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCode);
+        for (int i = 0; i < plugins.size(); i++) {
+            request.setComponent(plugins.get(i).getComponentName());
+            request.putExtra(IntentDConnectMessage.EXTRA_REQUEST_CODE, requestCodes[i]);
             mContext.sendBroadcast(request);
         }
 
         // 各デバイスのレスポンスを待つ
-        long start = System.currentTimeMillis();
-        while (plugins.size() > 0 && mResponseCount < plugins.size()) {
-            synchronized (mLockObj) {
+        List<DevicePlugin> timeouts = new ArrayList<DevicePlugin>();
+        long deadline = System.currentTimeMillis() + mTimeout;
+        synchronized (mLockObj) {
+            while (mRequestCodeArray.size() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
                 try {
-                    mLockObj.wait(mTimeout);
+                    mLockObj.wait(remaining);
                 } catch (InterruptedException e) {
-                    // do nothing.
                     mLogger.warning("Exception ouccered in wait.");
+                    break;
                 }
             }
             // タイムアウトチェック
-            if (System.currentTimeMillis() - start > mTimeout) {
-                restartDevicePlugins();
-                break;
+            for (int i = 0; i < mRequestCodeArray.size(); i++) {
+                timeouts.add(mRequestCodeArray.valueAt(i));
             }
+            mRequestCodeArray.clear();
         }
+        restartDevicePlugins(timeouts);
+        return timeouts;
+    }
 
-        // パラメータを設定する
-        mResponse = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
-        mResponse.putExtra(IntentDConnectMessage.EXTRA_RESULT,
-                IntentDConnectMessage.RESULT_OK);
-        mResponse.putExtra(ServiceDiscoveryProfile.PARAM_SERVICES,
-                mServices.toArray(new Bundle[mServices.size()]));
+    /**
+     * バックグラウンドでデバイスプラグインの結果を更新する.
+     * <p>
+     * 既に更新中のデバイスプラグインは対象外とする。
+     * </p>
+     * @param plugins 更新するデバイスプラグイン
+     * @param returned 返却したサービスID。差分をイベントで通知しない場合はnull
+     */
+    private void startRefresh(final List<DevicePlugin> plugins, final Map<String, Set<String>> returned) {
+        List<DevicePlugin> targets = new ArrayList<DevicePlugin>();
+        for (DevicePlugin plugin : plugins) {
+            if (mCache.beginRefresh(plugin)) {
+                targets.add(plugin);
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
 
-        // レスポンスを返却する
-        sendResponse(mResponse);
+        ServiceDiscoveryRequest req = new ServiceDiscoveryRequest();
+        req.setContext(mContext);
+        req.setRequest(mRequest);
+        req.setTimeout(mTimeout);
+        req.setDevicePluginManager(mPluginMgr);
+        req.setDiscoveryCache(mCache);
+        req.mRefreshTargets = targets;
+        req.mReturnedServiceIds = returned;
+        mRequestMgr.addRequest(req);
+    }
+
+    /**
+     * 返却済みのサービスと更新結果の差分をonservicechangeイベントで通知する.
+     * @param plugin デバイスプラグイン
+     * @param services 更新結果のサービス一覧
+     */
+    private void notifyServiceChanges(final DevicePlugin plugin, final List<Bundle> services) {
+        Set<String> returned = mReturnedServiceIds.get(plugin.getServiceId());
+        if (returned == null) {
+            returned = Collections.emptySet();
+        }
+        Set<String> found = new HashSet<String>();
+        for (Bundle service : services) {
+            String id = service.getString(ServiceDiscoveryProfile.PARAM_ID);
+            found.add(id);
+            if (!returned.contains(id)) {
+                sendServiceChangeEvent(new Bundle(service), true);
+            }
+        }
+        for (String id : returned) {
+            if (!found.contains(id)) {
+                Bundle service = new Bundle();
+                ServiceDiscoveryProfile.setId(service, id);
+                sendServiceChangeEvent(service, false);
+            }
+        }
+    }
+
+    /**
+     * onservicechangeイベントを登録しているアプリにイベントを送信する.
+     * @param service サービス
+     * @param state サービスが見つかった場合はtrue、見つからなくなった場合はfalse
+     */
+    private void sendServiceChangeEvent(final Bundle service, final boolean state) {
+        ServiceDiscoveryProfile.setState(service, state);
+        Intent event = MessageUtils.createEventIntent();
+        event.putExtra(DConnectMessage.EXTRA_PROFILE, ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        event.putExtra(DConnectMessage.EXTRA_ATTRIBUTE, ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE);
+        ServiceDiscoveryProfile.setNetworkService(event, service);
+
+        List<Event> evts = EventManager.INSTANCE.getEventList(
+                ServiceDiscoveryProfileConstants.PROFILE_NAME,
+                ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE);
+        for (int i = 0; i < evts.size(); i++) {
+            Event evt = evts.get(i);
+            event.putExtra(DConnectMessage.EXTRA_SESSION_KEY, evt.getSessionKey());
+            ((DConnectService) getContext()).sendEvent(evt.getReceiverName(), event);
+        }
     }
     
     /**
      * Restart all device plugins that response did not come back.
+     * @param plugins device plugins that response did not come back
      */
-    private void restartDevicePlugins() {
-        for (int i = 0; i < mRequestCodeArray.size(); i++) {
-            DevicePlugin plugin = mRequestCodeArray.valueAt(i);
+    private void restartDevicePlugins(final List<DevicePlugin> plugins) {
+        for (DevicePlugin plugin : plugins) {
             if (plugin.getStartServiceClassName() != null) {
                 Intent service = new Intent();
                 service.setClassName(plugin.getPackageName(), 
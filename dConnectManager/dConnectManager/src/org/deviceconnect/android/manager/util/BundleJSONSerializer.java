@@ -0,0 +1,563 @@
+/*
+ BundleJSONSerializer.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.util;
+
+import java.util.List;
+
+import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.json.JSONException;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+/**
+ * BundleをJSON文字列に変換するクラス.
+ * <p>
+ * JSONObjectを組み立てずに、スレッド毎に使い回すバッファへ直接書き込む。<br>
+ * 出力は{@link org.deviceconnect.message.intent.util.JSONFactory#convertBundleToJSON(org.json.JSONObject, Bundle)}で
+ * 作成したJSONObjectのcontent://から始まるuriを変換して、toString()した結果と同じになるようにしている。
+ * そのため、数値の書式や文字列のエスケープ、uriを変換する範囲はorg.jsonの動作に合わせている。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class BundleJSONSerializer {
+
+    /** バッファの初期サイズ. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** 変換後も保持しておくバッファの最大サイズ. これより大きくなったバッファは破棄する. */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    /** 変換するuriのキー. */
+    private static final String KEY_URI = "uri";
+
+    /** 変換するuriのスキーム. */
+    private static final String CONTENT_SCHEME = "content://";
+
+    /** 16進数の文字. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** UTF-8に変換できない文字の代わりに出力するバイト. */
+    private static final byte REPLACEMENT_BYTE = '?';
+
+    /** スレッド毎のインスタンス. */
+    private static final ThreadLocal<BundleJSONSerializer> SERIALIZERS = new ThreadLocal<BundleJSONSerializer>() {
+        @Override
+        protected BundleJSONSerializer initialValue() {
+            return new BundleJSONSerializer();
+        }
+    };
+
+    /** JSONを書き込むバッファ. */
+    private StringBuilder mBuffer = new StringBuilder(INITIAL_CAPACITY);
+
+    /** UTF-8に変換する際に文字を取り出すバッファ. */
+    private char[] mChars = new char[INITIAL_CAPACITY];
+
+    /**
+     * コンストラクタ.
+     * {@link #toJSONString(Bundle)}などから、スレッド毎に作成する。
+     */
+    private BundleJSONSerializer() {
+    }
+
+    /**
+     * BundleをJSON文字列に変換する.
+     * @param bundle 変換するBundle
+     * @return JSON文字列
+     * @throws JSONException NaNや無限大など、JSONに変換できない値が含まれている場合に発生
+     */
+    public static String toJSONString(final Bundle bundle) throws JSONException {
+        BundleJSONSerializer serializer = SERIALIZERS.get();
+        try {
+            serializer.writeBundle(bundle, true);
+            return serializer.mBuffer.toString();
+        } finally {
+            serializer.reset();
+        }
+    }
+
+    /**
+     * BundleをUTF-8でエンコードしたJSONに変換する.
+     * <p>
+     * 中間のStringを作成せずに、バッファから直接エンコードする。
+     * </p>
+     * @param bundle 変換するBundle
+     * @return UTF-8でエンコードしたJSON
+     * @throws JSONException NaNや無限大など、JSONに変換できない値が含まれている場合に発生
+     */
+    public static byte[] toJSONBytes(final Bundle bundle) throws JSONException {
+        BundleJSONSerializer serializer = SERIALIZERS.get();
+        try {
+            serializer.writeBundle(bundle, true);
+            return serializer.encodeUTF8();
+        } finally {
+            serializer.reset();
+        }
+    }
+
+    /**
+     * 次の変換のためにバッファを空にする.
+     */
+    private void reset() {
+        if (mBuffer.capacity() > MAX_RETAINED_CAPACITY) {
+            mBuffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            mBuffer.setLength(0);
+        }
+        if (mChars.length > MAX_RETAINED_CAPACITY) {
+            mChars = new char[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * BundleをJSONオブジェクトとして書き込む.
+     * <p>
+     * uriの変換は、JSONオブジェクトの値として辿れるBundleのみに行い、配列の要素には行わない。
+     * </p>
+     * @param b 書き込むBundle。nullの場合は空のオブジェクトを書き込む
+     * @param convertUri content://から始まるuriを変換する場合はtrue
+     * @throws JSONException JSONに変換できない値が含まれている場合に発生
+     */
+    private void writeBundle(final Bundle b, final boolean convertUri) throws JSONException {
+        StringBuilder out = mBuffer;
+        out.append('{');
+        if (b != null) {
+            boolean first = true;
+            for (String key : b.keySet()) {
+                if (IntentDConnectMessage.EXTRA_REQUEST_CODE.equals(key)) {
+                    // request_codeはRESTfulにはいらないので削除しておく
+                    continue;
+                }
+                Object value = b.get(key);
+                if (value == null || !isSupported(value)) {
+                    continue;
+                }
+                if (key == null) {
+                    throw new JSONException("Names must be non-null");
+                }
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(key);
+                out.append(':');
+                writeValue(key, value, convertUri);
+            }
+        }
+        out.append('}');
+    }
+
+    /**
+     * Bundleの値として書き込む型かどうかを判定する.
+     * @param value 値
+     * @return 書き込む場合はtrue、無視する場合はfalse
+     */
+    private static boolean isSupported(final Object value) {
+        if (value instanceof Object[]) {
+            if (value instanceof Parcelable[] || value instanceof String[]) {
+                return true;
+            }
+            return isPrimitiveWrapperArray((Object[]) value);
+        }
+        return value instanceof String || isPrimitiveWrapper(value) || value instanceof Bundle || value instanceof List<?>
+                || value instanceof int[] || value instanceof long[] || value instanceof short[]
+                || value instanceof byte[] || value instanceof char[] || value instanceof float[]
+                || value instanceof double[] || value instanceof boolean[];
+    }
+
+    /**
+     * Bundleの値を書き込む.
+     * @param key キー
+     * @param value 値
+     * @param convertUri content://から始まるuriを変換する場合はtrue
+     * @throws JSONException JSONに変換できない値が含まれている場合に発生
+     */
+    private void writeValue(final String key, final Object value, final boolean convertUri)
+            throws JSONException {
+        StringBuilder out = mBuffer;
+        if (value instanceof String) {
+            String str = (String) value;
+            if (convertUri && KEY_URI.equals(key) && str.startsWith(CONTENT_SCHEME)) {
+                str = DConnectUtil.createUri(str);
+            }
+            writeString(str);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            out.append(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            // org.jsonはfloatもdoubleに変換して格納する
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Character) {
+            // org.jsonはcharをintとして格納する
+            out.append((int) ((Character) value).charValue());
+        } else if (value instanceof Bundle) {
+            writeBundle((Bundle) value, convertUri);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append((int) array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append((int) array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append((int) array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeDouble(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeDouble(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof Parcelable[]) {
+            // Bundle以外の要素は空のオブジェクトとして書き込む
+            Parcelable[] array = (Parcelable[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeBundle(array[i] instanceof Bundle ? (Bundle) array[i] : null, false);
+            }
+            out.append(']');
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeObject(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            out.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                Object v = list.get(i);
+                if (v instanceof Parcelable) {
+                    writeBundle((Bundle) v, false);
+                } else {
+                    writeObject(v);
+                }
+            }
+            out.append(']');
+        }
+    }
+
+    /**
+     * 配列やリストの要素を書き込む.
+     * <p>
+     * org.jsonのJSONArrayにそのまま格納した値と同じ書式で書き込む。
+     * </p>
+     * @param value 値
+     * @throws JSONException JSONに変換できない値の場合に発生
+     */
+    private void writeObject(final Object value) throws JSONException {
+        StringBuilder out = mBuffer;
+        if (value == null || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Number) {
+            writeNumber((Number) value);
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    /**
+     * 数値オブジェクトを書き込む.
+     * <p>
+     * org.jsonと同じく、整数で表せる値は小数点を付けずに書き込む。
+     * </p>
+     * @param number 数値
+     * @throws JSONException NaNや無限大の場合に発生
+     */
+    private void writeNumber(final Number number) throws JSONException {
+        StringBuilder out = mBuffer;
+        double doubleValue = number.doubleValue();
+        checkDouble(doubleValue);
+        if (number instanceof Double && isNegativeZero(doubleValue)) {
+            out.append("-0");
+            return;
+        }
+        long longValue = number.longValue();
+        if (doubleValue == (double) longValue) {
+            out.append(longValue);
+        } else if (number instanceof Float) {
+            out.append(number.floatValue());
+        } else if (number instanceof Double) {
+            out.append(doubleValue);
+        } else {
+            out.append(number.toString());
+        }
+    }
+
+    /**
+     * double型の値を書き込む.
+     * @param value 値
+     * @throws JSONException NaNや無限大の場合に発生
+     */
+    private void writeDouble(final double value) throws JSONException {
+        StringBuilder out = mBuffer;
+        checkDouble(value);
+        if (isNegativeZero(value)) {
+            out.append("-0");
+            return;
+        }
+        long longValue = (long) value;
+        if (value == (double) longValue) {
+            out.append(longValue);
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * JSONで表せる数値かチェックする.
+     * @param value 値
+     * @throws JSONException NaNや無限大の場合に発生
+     */
+    private static void checkDouble(final double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+    }
+
+    /**
+     * 負のゼロかどうかを判定する.
+     * @param value 値
+     * @return 負のゼロの場合はtrue
+     */
+    private static boolean isNegativeZero(final double value) {
+        return value == 0 && Double.doubleToRawLongBits(value) != 0;
+    }
+
+    /**
+     * 文字列をエスケープして書き込む.
+     * <p>
+     * エスケープが不要な範囲はまとめて書き込む。
+     * </p>
+     * @param value 文字列
+     */
+    private void writeString(final String value) {
+        StringBuilder out = mBuffer;
+        out.append('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c > '\\' || (c >= ' ' && c != '"' && c != '/' && c != '\\')) {
+                continue;
+            }
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                out.append('\\').append(c);
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            case '\b':
+                out.append("\\b");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\f':
+                out.append("\\f");
+                break;
+            default:
+                out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                break;
+            }
+        }
+        out.append(value, start, length);
+        out.append('"');
+    }
+
+    /**
+     * バッファの内容をUTF-8でエンコードする.
+     * <p>
+     * String#getBytes("UTF-8")と同じく、対になっていないサロゲートは'?'に置き換える。
+     * </p>
+     * @return UTF-8でエンコードしたバイト列
+     */
+    private byte[] encodeUTF8() {
+        int length = mBuffer.length();
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+        }
+        char[] chars = mChars;
+        mBuffer.getChars(0, length, chars, 0);
+
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (isSurrogatePair(chars, i, length)) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                size++;
+            } else {
+                size += 3;
+            }
+        }
+
+        byte[] bytes = new byte[size];
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(chars, i, length)) {
+                int codePoint = Character.toCodePoint(c, chars[++i]);
+                bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[pos++] = REPLACEMENT_BYTE;
+            } else {
+                bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 指定した位置からサロゲートペアが始まるかどうかを判定する.
+     * @param chars 文字の配列
+     * @param index 位置
+     * @param length 文字数
+     * @return サロゲートペアの場合はtrue
+     */
+    private static boolean isSurrogatePair(final char[] chars, final int index, final int length) {
+        return Character.isHighSurrogate(chars[index]) && index + 1 < length
+                && Character.isLowSurrogate(chars[index + 1]);
+    }
+
+    /**
+     * 指定したObject[]がプリミティブ型のラッパークラスの配列であるかどうかをチェックする.
+     * <p>
+     * 全ての要素が同じ型でない場合はfalseを返す。nullの要素は無視する。
+     * </p>
+     * @param array チェックするオブジェクト配列
+     * @return プリミティブ型のラッパークラスの配列である場合はtrue、そうでない場合はfalse
+     */
+    private static boolean isPrimitiveWrapperArray(final Object[] array) {
+        Class<?> type = null;
+        for (int i = 0; i < array.length; i++) {
+            Object obj = array[i];
+            if (obj != null) {
+                if (!isPrimitiveWrapper(obj)) {
+                    return false;
+                }
+                if (type == null) {
+                    type = obj.getClass();
+                } else if (type != obj.getClass()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 指定したObjectがプリミティブ型のラッパークラスであるかどうかをチェックする.
+     * @param obj チェックするオブジェクト
+     * @return プリミティブ型のラッパークラスである場合はtrue、そうでない場合はfalse
+     */
+    private static boolean isPrimitiveWrapper(final Object obj) {
+        return obj instanceof Byte || obj instanceof Short || obj instanceof Integer
+                || obj instanceof Long || obj instanceof Float || obj instanceof Double
+                || obj instanceof Character || obj instanceof Boolean;
+    }
+}
@@ -122,6 +122,9 @@ public final class DConnectUtil {
 
     /**
      * BundleからJSONObjectに変換する.
+     * <p>
+     * JSON文字列が必要な場合は、JSONObjectを作成しない{@link BundleJSONSerializer}を使用すること。
+     * </p>
      * @param root JSONObjectに変換したデータを格納するオブジェクト
      * @param b 変換するBundle
      * @throws JSONException JSONへの変換に失敗した場合に発生
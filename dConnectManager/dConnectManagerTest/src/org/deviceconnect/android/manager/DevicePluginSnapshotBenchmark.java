@@ -0,0 +1,99 @@
+/*
+ DevicePluginSnapshotBenchmark.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * 50個のデバイスプラグインを含む200個のパッケージから、デバイスプラグイン一覧を作成する時間を計測する.
+ * @author NTT DOCOMO, INC.
+ */
+public class DevicePluginSnapshotBenchmark extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "DevicePluginSnapshot";
+
+    /** Device Connect Managerのドメイン名. */
+    private static final String DOMAIN = "localhost.deviceconnect.org";
+
+    /** パッケージ数. */
+    private static final int PACKAGE_COUNT = 200;
+
+    /** デバイスプラグインを含むパッケージ数. */
+    private static final int PLUGIN_COUNT = 50;
+
+    /** パッケージ毎のレシーバ数. */
+    private static final int RECEIVER_COUNT = 3;
+
+    /** PackageManagerへの問い合わせ1回あたりの時間(μs). */
+    private static final long BINDER_COST = 300;
+
+    /** 計測する回数. */
+    private static final int ROUND_COUNT = 5;
+
+    /** テスト用のPackageManager. */
+    private PluginPackageManager mPackageManager;
+
+    /** テスト用のPackageManagerを返すコンテキスト. */
+    private Context mPluginContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPackageManager = new PluginPackageManager(getContext(), PACKAGE_COUNT, PLUGIN_COUNT,
+                RECEIVER_COUNT, BINDER_COST);
+        mPluginContext = new DevicePluginSnapshotTest.PluginContext(getContext(), mPackageManager,
+                "DevicePluginSnapshotBenchmark");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        DevicePluginSnapshotTest.deleteSnapshot(mPluginContext);
+        super.tearDown();
+    }
+
+    /**
+     * スナップショットの有無で、デバイスプラグイン一覧の作成時間を比較する.
+     * <pre>
+     * 【期待する動作】
+     * ・スナップショットの有無に関わらず、全てのデバイスプラグインが見つかること。
+     * ・パッケージが更新されていない場合には、スナップショットが無い場合よりも短い時間で作成できること。
+     * </pre>
+     */
+    public void testCreateDevicePluginList() {
+        long totalCold = 0;
+        long totalWarm = 0;
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            DevicePluginSnapshotTest.deleteSnapshot(mPluginContext);
+            long cold = createDevicePluginList();
+            long warm = createDevicePluginList();
+            mPackageManager.update(i);
+            mPackageManager.update(PLUGIN_COUNT + i);
+            long updated = createDevicePluginList();
+            Log.i(TAG, PACKAGE_COUNT + " packages, " + PLUGIN_COUNT + " plugins: no snapshot=" + cold
+                    + "ms, not changed=" + warm + "ms, 2 packages updated=" + updated + "ms");
+            totalCold += cold;
+            totalWarm += warm;
+        }
+        assertTrue("no snapshot=" + totalCold + "ms, not changed=" + totalWarm + "ms.", totalWarm < totalCold);
+    }
+
+    /**
+     * デバイスプラグイン一覧を作成する.
+     * @return かかった時間(ms)
+     */
+    private long createDevicePluginList() {
+        long start = System.nanoTime();
+        DevicePluginManager manager = new DevicePluginManager(mPluginContext, DOMAIN);
+        manager.createDevicePluginList();
+        long time = (System.nanoTime() - start) / 1000000;
+        assertEquals(PLUGIN_COUNT, manager.getDevicePlugins().size());
+        return time;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ DevicePluginSnapshotTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import java.io.File;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.PackageManager;
+import android.test.AndroidTestCase;
+
+/**
+ * デバイスプラグインのスナップショットが、パッケージの有効・無効の切り替えに追従することを確認するテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class DevicePluginSnapshotTest extends AndroidTestCase {
+
+    /** Device Connect Managerのドメイン名. */
+    private static final String DOMAIN = "localhost.deviceconnect.org";
+
+    /** パッケージ数. */
+    private static final int PACKAGE_COUNT = 3;
+
+    /** デバイスプラグインを含むパッケージ数. */
+    private static final int PLUGIN_COUNT = 2;
+
+    /** テスト用のPackageManager. */
+    private PluginPackageManager mPackageManager;
+
+    /** テスト用のPackageManagerを返すコンテキスト. */
+    private Context mPluginContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPackageManager = new PluginPackageManager(getContext(), PACKAGE_COUNT, PLUGIN_COUNT, 2, 0);
+        mPluginContext = new PluginContext(getContext(), mPackageManager, "DevicePluginSnapshotTest");
+        deleteSnapshot(mPluginContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteSnapshot(mPluginContext);
+        super.tearDown();
+    }
+
+    /**
+     * デバイスプラグインのレシーバの有効・無効を切り替える.
+     * <pre>
+     * 【期待する動作】
+     * ・PACKAGE_CHANGEDで検索し直すと、無効にしたデバイスプラグインが一覧から削除されること。
+     * ・次の起動時にスナップショットからも削除されていること。
+     * ・有効に戻すと、一覧とスナップショットに追加されること。
+     * </pre>
+     */
+    public void testReceiverEnabledSetting() {
+        DevicePluginManager manager = createManager();
+        assertEquals(PLUGIN_COUNT, manager.getDevicePlugins().size());
+
+        mPackageManager.setReceiverEnabled(0, 0, false);
+        manager.checkAndUpdateDevicePlugin(PluginPackageManager.getPackageName(0));
+        assertEquals(PLUGIN_COUNT - 1, manager.getDevicePlugins().size());
+        assertEquals(PLUGIN_COUNT - 1, createManager().getDevicePlugins().size());
+
+        mPackageManager.setReceiverEnabled(0, 0, true);
+        manager.checkAndUpdateDevicePlugin(PluginPackageManager.getPackageName(0));
+        assertEquals(PLUGIN_COUNT, manager.getDevicePlugins().size());
+        assertEquals(PLUGIN_COUNT, createManager().getDevicePlugins().size());
+    }
+
+    /**
+     * 起動していない間にデバイスプラグインのパッケージの有効・無効を切り替える.
+     * <pre>
+     * 【期待する動作】
+     * ・更新日時が変わらなくても、スナップショットを使用せずに検索し直すこと。
+     * ・無効にしたパッケージのデバイスプラグインが一覧に含まれないこと。
+     * ・有効に戻すと、一覧に含まれること。
+     * </pre>
+     */
+    public void testApplicationEnabledSetting() {
+        assertEquals(PLUGIN_COUNT, createManager().getDevicePlugins().size());
+
+        mPackageManager.setApplicationEnabled(1, false);
+        assertEquals(PLUGIN_COUNT - 1, createManager().getDevicePlugins().size());
+
+        mPackageManager.setApplicationEnabled(1, true);
+        assertEquals(PLUGIN_COUNT, createManager().getDevicePlugins().size());
+    }
+
+    /**
+     * デバイスプラグイン一覧を作成したDevicePluginManagerを作成する.
+     * @return DevicePluginManager
+     */
+    private DevicePluginManager createManager() {
+        DevicePluginManager manager = new DevicePluginManager(mPluginContext, DOMAIN);
+        manager.createDevicePluginList();
+        return manager;
+    }
+
+    /**
+     * スナップショットのファイルを削除する.
+     * @param context コンテキスト
+     */
+    static void deleteSnapshot(final Context context) {
+        File[] files = context.getFilesDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * テスト用のPackageManagerとファイル保存先を返すコンテキスト.
+     */
+    static class PluginContext extends ContextWrapper {
+        /** テスト用のPackageManager. */
+        private final PackageManager mPackageManager;
+        /** ファイル保存先. */
+        private final File mFilesDir;
+
+        /**
+         * コンストラクタ.
+         * @param base コンテキスト
+         * @param packageManager テスト用のPackageManager
+         * @param dirName ファイル保存先のディレクトリ名
+         */
+        PluginContext(final Context base, final PackageManager packageManager, final String dirName) {
+            super(base);
+            mPackageManager = packageManager;
+            mFilesDir = new File(base.getCacheDir(), dirName);
+            mFilesDir.mkdirs();
+        }
+
+        @Override
+        public PackageManager getPackageManager() {
+            return mPackageManager;
+        }
+
+        @Override
+        public File getFilesDir() {
+            return mFilesDir;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ PluginPackageManager.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.deviceconnect.android.test.R;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.ServiceInfo;
+import android.content.res.XmlResourceParser;
+import android.os.Bundle;
+import android.test.mock.MockPackageManager;
+
+/**
+ * デバイスプラグインを含むパッケージがインストールされている状態を再現するPackageManager.
+ * <p>
+ * 各パッケージには複数のレシーバがあり、デバイスプラグインのパッケージでは最初のレシーバがデバイスプラグインになる。<br>
+ * 実機のPackageManagerはBinder経由で呼び出すので、問い合わせ毎に指定された時間だけ待つことができる。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+class PluginPackageManager extends MockPackageManager {
+    /** デバイスプラグインを表すメタデータ名. */
+    private static final String PLUGIN_META_DATA = "org.deviceconnect.android.deviceplugin";
+    /** 起動用サービスを表すメタデータの値. */
+    private static final String VALUE_META_DATA = "enable";
+    /** パッケージ名の接頭辞. */
+    private static final String PACKAGE_PREFIX = "org.deviceconnect.android.test.app";
+
+    /** deviceplugin.xmlとして返却するXMLを読み込むコンテキスト. */
+    private final Context mContext;
+    /** 問い合わせ1回あたりの待ち時間(ns). */
+    private final long mCost;
+    /** パッケージ名をキーにしたパッケージ情報. */
+    private final Map<String, PackageInfo> mPackages = new LinkedHashMap<String, PackageInfo>();
+
+    /**
+     * コンストラクタ.
+     * @param context deviceplugin.xmlとして返却するXMLを読み込むコンテキスト
+     * @param packageCount パッケージ数
+     * @param pluginCount デバイスプラグインを含むパッケージ数
+     * @param receiverCount パッケージ毎のレシーバ数
+     * @param cost 問い合わせ1回あたりの待ち時間(μs)
+     */
+    PluginPackageManager(final Context context, final int packageCount, final int pluginCount,
+            final int receiverCount, final long cost) {
+        mContext = context;
+        mCost = cost * 1000;
+        for (int i = 0; i < packageCount; i++) {
+            PackageInfo pkg = new PackageInfo();
+            pkg.packageName = getPackageName(i);
+            pkg.lastUpdateTime = 1;
+            pkg.versionCode = 1;
+            pkg.applicationInfo = new ApplicationInfo();
+            pkg.applicationInfo.packageName = pkg.packageName;
+            pkg.applicationInfo.nonLocalizedLabel = "App" + i;
+
+            pkg.receivers = new ActivityInfo[receiverCount];
+            for (int j = 0; j < receiverCount; j++) {
+                ActivityInfo receiver = new ActivityInfo();
+                receiver.packageName = pkg.packageName;
+                receiver.name = pkg.packageName + ".Receiver" + j;
+                receiver.applicationInfo = pkg.applicationInfo;
+                if (i < pluginCount && j == 0) {
+                    receiver.metaData = new Bundle();
+                    receiver.metaData.putInt(PLUGIN_META_DATA, R.xml.deviceplugin);
+                }
+                pkg.receivers[j] = receiver;
+            }
+
+            ServiceInfo service = new ServiceInfo();
+            service.packageName = pkg.packageName;
+            service.name = pkg.packageName + ".Service";
+            service.applicationInfo = pkg.applicationInfo;
+            if (i < pluginCount) {
+                service.metaData = new Bundle();
+                service.metaData.putString(PLUGIN_META_DATA, VALUE_META_DATA);
+            }
+            pkg.services = new ServiceInfo[] {service};
+            mPackages.put(pkg.packageName, pkg);
+        }
+    }
+
+    /**
+     * パッケージ名を取得する.
+     * @param index パッケージの番号
+     * @return パッケージ名
+     */
+    static String getPackageName(final int index) {
+        return PACKAGE_PREFIX + index;
+    }
+
+    /**
+     * パッケージを更新した状態にする.
+     * @param index パッケージの番号
+     */
+    synchronized void update(final int index) {
+        mPackages.get(getPackageName(index)).lastUpdateTime++;
+    }
+
+    /**
+     * パッケージの有効・無効を切り替える.
+     * <p>
+     * パッケージの更新日時は変わらない。
+     * </p>
+     * @param index パッケージの番号
+     * @param enabled 有効にする場合はtrue、無効にする場合はfalse
+     */
+    synchronized void setApplicationEnabled(final int index, final boolean enabled) {
+        mPackages.get(getPackageName(index)).applicationInfo.enabled = enabled;
+    }
+
+    /**
+     * レシーバの有効・無効を切り替える.
+     * <p>
+     * パッケージの更新日時は変わらない。
+     * </p>
+     * @param index パッケージの番号
+     * @param receiver レシーバの番号
+     * @param enabled 有効にする場合はtrue、無効にする場合はfalse
+     */
+    synchronized void setReceiverEnabled(final int index, final int receiver, final boolean enabled) {
+        mPackages.get(getPackageName(index)).receivers[receiver].enabled = enabled;
+    }
+
+    @Override
+    public synchronized List<PackageInfo> getInstalledPackages(final int flags) {
+        List<PackageInfo> list = new ArrayList<PackageInfo>();
+        for (PackageInfo pkg : mPackages.values()) {
+            list.add(copy(pkg, flags));
+        }
+        spend();
+        return list;
+    }
+
+    @Override
+    public synchronized PackageInfo getPackageInfo(final String packageName, final int flags)
+            throws NameNotFoundException {
+        spend();
+        PackageInfo pkg = mPackages.get(packageName);
+        if (pkg == null) {
+            throw new NameNotFoundException(packageName);
+        }
+        return copy(pkg, flags);
+    }
+
+    @Override
+    public synchronized ActivityInfo getReceiverInfo(final ComponentName component, final int flags)
+            throws NameNotFoundException {
+        spend();
+        PackageInfo pkg = mPackages.get(component.getPackageName());
+        if (pkg != null) {
+            for (ActivityInfo receiver : pkg.receivers) {
+                if (receiver.name.equals(component.getClassName())) {
+                    return receiver;
+                }
+            }
+        }
+        throw new NameNotFoundException(component.toString());
+    }
+
+    @Override
+    public synchronized ServiceInfo getServiceInfo(final ComponentName component, final int flags)
+            throws NameNotFoundException {
+        spend();
+        PackageInfo pkg = mPackages.get(component.getPackageName());
+        if (pkg != null) {
+            for (ServiceInfo service : pkg.services) {
+                if (service.name.equals(component.getClassName())) {
+                    return service;
+                }
+            }
+        }
+        throw new NameNotFoundException(component.toString());
+    }
+
+    @Override
+    public XmlResourceParser getXml(final String packageName, final int resid, final ApplicationInfo appInfo) {
+        spend();
+        return mContext.getResources().getXml(resid);
+    }
+
+    /**
+     * 指定されたフラグで取得できる情報のみをコピーする.
+     * <p>
+     * 無効なパッケージや、無効なレシーバはレシーバ一覧に含めない。
+     * </p>
+     * @param pkg パッケージ情報
+     * @param flags フラグ
+     * @return パッケージ情報のコピー
+     */
+    private static PackageInfo copy(final PackageInfo pkg, final int flags) {
+        PackageInfo copy = new PackageInfo();
+        copy.packageName = pkg.packageName;
+        copy.lastUpdateTime = pkg.lastUpdateTime;
+        copy.versionCode = pkg.versionCode;
+        copy.applicationInfo = new ApplicationInfo(pkg.applicationInfo);
+        if ((flags & GET_RECEIVERS) != 0) {
+            List<ActivityInfo> receivers = new ArrayList<ActivityInfo>();
+            for (ActivityInfo receiver : pkg.receivers) {
+                if (pkg.applicationInfo.enabled && receiver.enabled) {
+                    receivers.add(receiver);
+                }
+            }
+            copy.receivers = receivers.toArray(new ActivityInfo[receivers.size()]);
+        }
+        if ((flags & GET_SERVICES) != 0) {
+            copy.services = pkg.services;
+        }
+        return copy;
+    }
+
+    /**
+     * 問い合わせ1回分の時間を待つ.
+     */
+    private void spend() {
+        long end = System.nanoTime() + mCost;
+        while (System.nanoTime() < end) {
+            // Binderの呼び出しにかかる時間を再現する
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ HmacManagerTest.java
+ Copyright (c) 2015 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.hmac;
+
+import org.deviceconnect.android.util.ProcessSharedCounter;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * HMACの鍵管理のテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class HmacManagerTest extends AndroidTestCase {
+
+    /** HMACの鍵のDBファイル名. */
+    private static final String DB_NAME = "__device_connect_hmac.db";
+
+    /** HMACの鍵のテーブル名. */
+    private static final String TABLE_NAME = "HmacKey";
+
+    /** テストで使用するオリジン. */
+    private static final String ORIGIN = "hmac.test.origin";
+
+    /** テストで使用する鍵. */
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+    @Override
+    protected void tearDown() throws Exception {
+        new HmacManager(getContext()).updateKey(ORIGIN, "");
+        super.tearDown();
+    }
+
+    /**
+     * 別のプロセスで鍵が更新された後に、新しい鍵が使われることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・鍵が無いことをキャッシュした後でも、別のプロセスで登録された鍵が使われること。
+     * ・別のプロセスで削除された後は、キャッシュ済みの鍵が使われないこと。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testUpdateFromAnotherProcess() throws Exception {
+        HmacManager manager = new HmacManager(getContext());
+        manager.updateKey(ORIGIN, "");
+        assertFalse(manager.usesHmac(ORIGIN));
+        assertFalse(manager.usesHmac(ORIGIN));
+
+        // DConnectLaunchActivityのプロセスと同じように、このプロセスのHmacManagerを経由せずに登録する
+        SQLiteDatabase db = openDB();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("origin", ORIGIN);
+            values.put("hmac_key", KEY);
+            assertTrue(db.insert(TABLE_NAME, null, values) != -1);
+        } finally {
+            db.close();
+        }
+        notifyFromAnotherProcess();
+
+        assertTrue(manager.usesHmac(ORIGIN));
+        assertNotNull(manager.generateHmac(ORIGIN, "0123"));
+
+        db = openDB();
+        try {
+            assertEquals(1, db.delete(TABLE_NAME, "origin=?", new String[] {ORIGIN}));
+        } finally {
+            db.close();
+        }
+        notifyFromAnotherProcess();
+
+        assertFalse(manager.usesHmac(ORIGIN));
+        assertNull(manager.generateHmac(ORIGIN, "0123"));
+    }
+
+    /**
+     * HMACの鍵のDBを直接開く.
+     * @return DB
+     */
+    private SQLiteDatabase openDB() {
+        return SQLiteDatabase.openDatabase(getContext().getDatabasePath(DB_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+    }
+
+    /**
+     * 別のプロセスと同じように、HmacManagerとは別にマップしたカウンタで更新回数を進める.
+     * @throws Exception 更新に失敗した場合
+     */
+    private void notifyFromAnotherProcess() throws Exception {
+        ProcessSharedCounter counter = ProcessSharedCounter.open(getContext(),
+                HmacManager.GENERATION_FILE_NAME);
+        try {
+            counter.increment();
+        } finally {
+            counter.close();
+        }
+    }
+}
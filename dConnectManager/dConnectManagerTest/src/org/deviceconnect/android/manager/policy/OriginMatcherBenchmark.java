@@ -0,0 +1,143 @@
+/*
+ OriginMatcherBenchmark.java
+ Copyright (c) 2015 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.policy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * 1,000件のホワイトリストでオリジンを確認する時間を計測する.
+ * @author NTT DOCOMO, INC.
+ */
+public class OriginMatcherBenchmark extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "OriginMatcher";
+
+    /** ホワイトリストに登録するWebアプリのオリジン数. */
+    private static final int WEB_APP_COUNT = 1000;
+
+    /** ホワイトリストに登録するリテラルのオリジン数. */
+    private static final int LITERAL_COUNT = 10;
+
+    /** 計測する確認回数. */
+    private static final int LOOKUP_COUNT = 100000;
+
+    /** 計測前に確認する回数. */
+    private static final int WARMUP_COUNT = 10000;
+
+    /**
+     * コンパイル済みのホワイトリストが全件走査と同じ結果を返し、より速いことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・登録済み、未登録のオリジンのどちらでも、全件走査と同じ結果になること。
+     * ・全件走査よりも短い時間で確認できること。
+     * </pre>
+     */
+    public void testLookup() {
+        List<OriginInfo> infos = new ArrayList<OriginInfo>();
+        for (int i = 0; i < WEB_APP_COUNT; i++) {
+            infos.add(createInfo(i, "http://host" + i + ".example.com:" + (8000 + i % 10)));
+        }
+        for (int i = 0; i < LITERAL_COUNT; i++) {
+            infos.add(createInfo(WEB_APP_COUNT + i, "org.deviceconnect.literal" + i));
+        }
+        OriginMatcher matcher = new OriginMatcher(infos);
+
+        // 半分は登録済み、半分は未登録のオリジン
+        List<Origin> requests = new ArrayList<Origin>();
+        for (int i = 0; i < WEB_APP_COUNT; i++) {
+            requests.add(OriginParser.parse("http://host" + i + ".example.com:" + (8000 + i % 10)));
+            requests.add(OriginParser.parse("http://unknown" + i + ".example.com"));
+        }
+        requests.add(OriginParser.parse("org.deviceconnect.literal0"));
+        requests.add(OriginParser.parse("org.deviceconnect.unknown"));
+
+        for (Origin origin : requests) {
+            assertEquals(origin.toString(), scan(infos, origin), matcher.matches(origin));
+        }
+
+        lookupByScan(infos, requests, WARMUP_COUNT);
+        lookupByMatcher(matcher, requests, WARMUP_COUNT);
+        long scanTime = lookupByScan(infos, requests, LOOKUP_COUNT);
+        long matcherTime = lookupByMatcher(matcher, requests, LOOKUP_COUNT);
+        Log.i(TAG, infos.size() + " entries: scan=" + scanTime / LOOKUP_COUNT
+                + "ns/op, matcher=" + matcherTime / LOOKUP_COUNT + "ns/op");
+
+        assertTrue("matcher=" + matcherTime + "ns, scan=" + scanTime + "ns.", matcherTime < scanTime);
+    }
+
+    /**
+     * ホワイトリストの1件を作成する.
+     * @param id 行ID
+     * @param originExp オリジン
+     * @return ホワイトリストの1件
+     */
+    private static OriginInfo createInfo(final long id, final String originExp) {
+        return new OriginInfo(id, OriginParser.parse(originExp), originExp, 0);
+    }
+
+    /**
+     * 全件を走査してオリジンを確認する.
+     * @param infos ホワイトリスト
+     * @param origin 確認するオリジン
+     * @return 許可される場合はtrue、それ以外はfalse
+     */
+    private static boolean scan(final List<OriginInfo> infos, final Origin origin) {
+        for (OriginInfo info : infos) {
+            if (info.matches(origin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 全件走査で指定回数確認する.
+     * @param infos ホワイトリスト
+     * @param requests 確認するオリジン
+     * @param count 確認回数
+     * @return かかった時間(ns)
+     */
+    private static long lookupByScan(final List<OriginInfo> infos, final List<Origin> requests,
+            final int count) {
+        int allowed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (scan(infos, requests.get(i % requests.size()))) {
+                allowed++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        assertTrue(allowed > 0);
+        return time;
+    }
+
+    /**
+     * コンパイル済みのホワイトリストで指定回数確認する.
+     * @param matcher コンパイル済みのホワイトリスト
+     * @param requests 確認するオリジン
+     * @param count 確認回数
+     * @return かかった時間(ns)
+     */
+    private static long lookupByMatcher(final OriginMatcher matcher, final List<Origin> requests,
+            final int count) {
+        int allowed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (matcher.matches(requests.get(i % requests.size()))) {
+                allowed++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        assertTrue(allowed > 0);
+        return time;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ WhitelistTest.java
+ Copyright (c) 2015 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.policy;
+
+import org.deviceconnect.android.util.ProcessSharedCounter;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * ホワイトリストのテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class WhitelistTest extends AndroidTestCase {
+
+    /** ホワイトリストのDBファイル名. */
+    private static final String DB_NAME = "__device_connect_whitelist.db";
+
+    /** ホワイトリストのテーブル名. */
+    private static final String TABLE_NAME = "Origins";
+
+    /** テストで登録するオリジン. */
+    private static final String ORIGIN = "http://whitelist-test.example.com";
+
+    /** テストで登録したオリジン. */
+    private OriginInfo mAdded;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mAdded != null) {
+            SQLiteDatabase db = openDB();
+            try {
+                db.delete(TABLE_NAME, "_id=" + mAdded.mId, null);
+            } finally {
+                db.close();
+            }
+            notifyFromAnotherProcess();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * 別のプロセスでオリジンが削除された後に、そのオリジンが拒否されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・追加したオリジンが許可されること。
+     * ・別のプロセスがDBから削除して更新回数を進めた後は、キャッシュ済みのオリジンでも拒否されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testRemoveFromAnotherProcess() throws Exception {
+        Whitelist whitelist = new Whitelist(getContext());
+        Origin origin = OriginParser.parse(ORIGIN);
+        mAdded = whitelist.addOrigin(origin, getName());
+        assertTrue(whitelist.allows(origin));
+        assertTrue(whitelist.allows(origin));
+
+        // 設定画面のプロセスと同じように、このプロセスのWhitelistを経由せずに削除する
+        SQLiteDatabase db = openDB();
+        try {
+            assertEquals(1, db.delete(TABLE_NAME, "_id=" + mAdded.mId, null));
+        } finally {
+            db.close();
+        }
+        notifyFromAnotherProcess();
+        mAdded = null;
+
+        assertFalse(whitelist.allows(origin));
+        assertFalse(new Whitelist(getContext()).allows(origin));
+    }
+
+    /**
+     * ホワイトリストのDBを直接開く.
+     * @return DB
+     */
+    private SQLiteDatabase openDB() {
+        return SQLiteDatabase.openDatabase(getContext().getDatabasePath(DB_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+    }
+
+    /**
+     * 別のプロセスと同じように、Whitelistとは別にマップしたカウンタで更新回数を進める.
+     * @throws Exception 更新に失敗した場合
+     */
+    private void notifyFromAnotherProcess() throws Exception {
+        ProcessSharedCounter counter = ProcessSharedCounter.open(getContext(),
+                Whitelist.GENERATION_FILE_NAME);
+        try {
+            counter.increment();
+        } finally {
+            counter.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ AccessTokenRevocationTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.android.localoauth.ClientData;
+import org.deviceconnect.android.localoauth.LocalOAuth2Main;
+import org.deviceconnect.android.localoauth.LocalOAuth2Settings;
+import org.deviceconnect.android.localoauth.oauthserver.SampleUser;
+import org.deviceconnect.android.localoauth.oauthserver.db.LocalOAuthOpenHelper;
+import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteClient;
+import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteToken;
+import org.deviceconnect.android.localoauth.oauthserver.db.SQLiteTokenManager;
+import org.deviceconnect.android.test.AccessTokenRevokeService;
+import org.restlet.ext.oauth.PackageInfoOAuth;
+import org.restlet.ext.oauth.internal.Scope;
+
+import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.ResultReceiver;
+import android.test.AndroidTestCase;
+
+/**
+ * 別のプロセスで破棄されたアクセストークンが使えなくなることを確認するテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class AccessTokenRevocationTest extends AndroidTestCase {
+
+    /** テストで使用するスコープ. */
+    private static final String SCOPE = "battery";
+
+    /** 別プロセスでの破棄を待つ時間(秒). */
+    private static final long REVOKE_TIMEOUT = 30;
+
+    /** テストで登録するクライアントのパッケージ情報. */
+    private PackageInfoOAuth mPackageInfo;
+
+    /** テストで登録したクライアントID. */
+    private String mClientId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LocalOAuth2Main.initialize(getContext());
+        mPackageInfo = new PackageInfoOAuth(getContext().getPackageName(), getClass().getSimpleName());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mClientId != null) {
+            LocalOAuth2Main.destroyClient(mClientId);
+        }
+        LocalOAuth2Main.destroy();
+        super.tearDown();
+    }
+
+    /**
+     * 別のプロセスでアクセストークンを破棄した後に、そのアクセストークンが拒否されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・破棄する前はアクセストークンの確認に成功すること。
+     * ・別のプロセスで破棄した後は、キャッシュ済みのアクセストークンでも確認に失敗すること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testRevokeFromAnotherProcess() throws Exception {
+        ClientData clientData = LocalOAuth2Main.createClient(mPackageInfo);
+        mClientId = clientData.getClientId();
+        SQLiteToken token = issueAccessToken(LocalOAuth2Main.findClientByClientId(mClientId));
+
+        // 2回確認して、キャッシュから確認される状態にする
+        assertTrue(LocalOAuth2Main.checkAccessToken(token.getAccessToken(), SCOPE, null).checkResult());
+        assertTrue(LocalOAuth2Main.checkAccessToken(token.getAccessToken(), SCOPE, null).checkResult());
+
+        int pid = revokeInAnotherProcess(token.getId());
+        assertTrue(pid != Process.myPid());
+
+        assertFalse(LocalOAuth2Main.checkAccessToken(token.getAccessToken(), SCOPE, null).checkResult());
+    }
+
+    /**
+     * 承認確認画面を経由せずに、DBへ直接アクセストークンを発行する.
+     * @param client クライアント
+     * @return 発行したアクセストークン
+     * @throws Exception 発行に失敗した場合
+     */
+    private SQLiteToken issueAccessToken(final SQLiteClient client) throws Exception {
+        LocalOAuthOpenHelper helper = new LocalOAuthOpenHelper(getContext());
+        SQLiteDatabase db = helper.getWritableDatabase();
+        try {
+            SQLiteTokenManager tokenManager = new SQLiteTokenManager();
+            tokenManager.setDb(db);
+            Scope[] scopes = {new Scope(SCOPE, 0, LocalOAuth2Settings.DEFAULT_TOKEN_EXPIRE_PERIOD)};
+            return (SQLiteToken) tokenManager.generateToken(client, SampleUser.USERNAME, scopes,
+                    getClass().getSimpleName());
+        } finally {
+            db.close();
+            helper.close();
+        }
+    }
+
+    /**
+     * 別のプロセスで動作する{@link AccessTokenRevokeService}でアクセストークンを破棄する.
+     * @param tokenId 破棄するトークンID
+     * @return 破棄したプロセスのID
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private int revokeInAnotherProcess(final long tokenId) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] pid = new int[1];
+        Intent intent = new Intent(getContext(), AccessTokenRevokeService.class);
+        intent.putExtra(AccessTokenRevokeService.EXTRA_TOKEN_ID, tokenId);
+        intent.putExtra(AccessTokenRevokeService.EXTRA_RECEIVER, new ResultReceiver(null) {
+            @Override
+            protected void onReceiveResult(final int resultCode, final Bundle resultData) {
+                pid[0] = resultData.getInt(AccessTokenRevokeService.EXTRA_PID);
+                latch.countDown();
+            }
+        });
+        getContext().startService(intent);
+        assertTrue("timeout", latch.await(REVOKE_TIMEOUT, TimeUnit.SECONDS));
+        return pid[0];
+    }
+}
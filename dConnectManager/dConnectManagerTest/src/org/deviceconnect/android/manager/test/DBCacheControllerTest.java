@@ -0,0 +1,118 @@
+/*
+ DBCacheControllerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventError;
+import org.deviceconnect.android.event.cache.db.DBCacheController;
+
+import android.test.AndroidTestCase;
+
+/**
+ * DBCacheControllerのキャッシュのテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class DBCacheControllerTest extends AndroidTestCase {
+
+    /** テストで使用するサービスID. */
+    private static final String SERVICE_ID = "test_service_id";
+
+    /** テストで使用するプロファイル名. */
+    private static final String PROFILE = "deviceorientation";
+
+    /** テストで使用する属性名. */
+    private static final String ATTRIBUTE = "ondeviceorientation";
+
+    /** テストで使用するセッションキー. */
+    private static final String SESSION_KEY = "DBCacheControllerTest";
+
+    /** テストで使用するレシーバー名. */
+    private static final String RECEIVER_NAME = "test.receiver";
+
+    /** テストで使用するアクセストークン. */
+    private static final String ACCESS_TOKEN = "test_access_token";
+
+    /** テスト対象のキャッシュ. */
+    private DBCacheController mController;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mController = new DBCacheController(getContext());
+        mController.removeEvents(SESSION_KEY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mController.removeEvents(SESSION_KEY);
+        super.tearDown();
+    }
+
+    /**
+     * 取得したイベントを変更しても、キャッシュ上のイベントが変わらないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・getEvent()で取得したイベントを変更しても、次に取得したイベントは変更されていないこと。
+     * ・getEvents()で取得した一覧とイベントを変更しても、次に取得した一覧は変更されていないこと。
+     * </pre>
+     */
+    public void testReturnedEventsAreCopies() {
+        assertEquals(EventError.NONE, mController.addEvent(createEvent()));
+
+        Event event = getEvent();
+        assertNotNull(event);
+        assertEquals(ACCESS_TOKEN, event.getAccessToken());
+        Timestamp createDate = event.getCreateDate();
+        event.setAccessToken("modified_access_token");
+        event.setReceiverName("modified.receiver");
+        if (createDate != null) {
+            event.getCreateDate().setTime(0);
+        }
+
+        event = getEvent();
+        assertNotNull(event);
+        assertEquals(ACCESS_TOKEN, event.getAccessToken());
+        assertEquals(RECEIVER_NAME, event.getReceiverName());
+        assertEquals(createDate, event.getCreateDate());
+
+        List<Event> events = mController.getEvents(SERVICE_ID, PROFILE, null, ATTRIBUTE);
+        assertEquals(1, events.size());
+        events.get(0).setSessionKey("modified_session_key");
+        events.clear();
+
+        events = mController.getEvents(SERVICE_ID, PROFILE, null, ATTRIBUTE);
+        assertEquals(1, events.size());
+        assertEquals(SESSION_KEY, events.get(0).getSessionKey());
+        assertNotNull(getEvent());
+    }
+
+    /**
+     * テストで使用するイベントを作成する.
+     * @return イベント
+     */
+    private static Event createEvent() {
+        Event event = new Event();
+        event.setServiceId(SERVICE_ID);
+        event.setProfile(PROFILE);
+        event.setAttribute(ATTRIBUTE);
+        event.setSessionKey(SESSION_KEY);
+        event.setReceiverName(RECEIVER_NAME);
+        event.setAccessToken(ACCESS_TOKEN);
+        return event;
+    }
+
+    /**
+     * キャッシュからテストで登録したイベントを取得する.
+     * @return イベント。登録されていない場合はnull
+     */
+    private Event getEvent() {
+        return mController.getEvent(SERVICE_ID, PROFILE, null, ATTRIBUTE, SESSION_KEY, RECEIVER_NAME);
+    }
+}
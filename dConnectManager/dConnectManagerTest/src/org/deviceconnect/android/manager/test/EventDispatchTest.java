@@ -0,0 +1,397 @@
+/*
+ EventDispatchTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.event.AbstractEventManager;
+import org.deviceconnect.message.event.EventHandler;
+import org.deviceconnect.message.event.EventMessage;
+import org.deviceconnect.message.event.EventMessageHandler;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * SDKのイベントをハンドラーに振り分ける処理のテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class EventDispatchTest extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "EventDispatch";
+
+    /** 再生するイベント数. */
+    private static final int EVENT_COUNT = 100000;
+
+    /** 計測前に処理するイベント数. */
+    private static final int WARMUP_COUNT = 10000;
+
+    /** イベントを記録する時の乱数のシード. */
+    private static final long SEED = 20141001L;
+
+    /** ハンドラーを登録するサービスID. */
+    private static final String[] REGISTERED_SERVICE_IDS = {"host.dconnect", "test_service_id.dconnect"};
+
+    /** ハンドラーを登録しないサービスID. */
+    private static final String[] UNREGISTERED_SERVICE_IDS = {"chromecast.dconnect", "sphero.dconnect"};
+
+    /** 1ミリ秒あたりのナノ秒. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * 最上位以外にある項目や、エスケープされた値でも正しいハンドラーに振り分けられることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・本文のオブジェクト内のserviceIdではなく、最上位のserviceIdでハンドラーが選ばれること。
+     * ・エスケープされたサービスIDでもハンドラーが選ばれること。
+     * ・interfaceを含むイベントが、interfaceを指定して登録したハンドラーに振り分けられること。
+     * ・EventMessageHandlerに、取り出した項目と受信した文字列がそのまま通知されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testRoutingFields() throws Exception {
+        TestEventManager manager = new TestEventManager();
+        final List<EventMessage> messages = new ArrayList<EventMessage>();
+        final List<JSONObject> events = new ArrayList<JSONObject>();
+        manager.registerEvent(createBuilder("a\"b", "deviceorientation", null, "ondeviceorientation"),
+                new EventMessageHandler() {
+                    @Override
+                    public void onEvent(final EventMessage message) {
+                        messages.add(message);
+                    }
+                });
+        manager.registerEvent(createBuilder("host", "mediastream_recording", "preview", "onstatuschange"),
+                new EventHandler() {
+                    @Override
+                    public void onEvent(final JSONObject event) {
+                        events.add(event);
+                    }
+                });
+
+        String nested = "{\"orientation\":{\"serviceId\":\"host\",\"values\":[1,{\"a\":\"}\"}]},"
+                + " \"profile\" : \"deviceorientation\", \"serviceId\":\"a\\\"b\","
+                + "\"attribute\":\"ondevice\\u006frientation\"}";
+        manager.receive(nested);
+        assertEquals(1, messages.size());
+        EventMessage message = messages.get(0);
+        assertEquals("a\"b", message.getServiceId());
+        assertEquals("deviceorientation", message.getProfile());
+        assertNull(message.getInterface());
+        assertEquals("ondeviceorientation", message.getAttribute());
+        assertSame(nested, message.getRawMessage());
+        assertEquals("host", message.getJSONObject().getJSONObject("orientation").getString("serviceId"));
+
+        manager.receive("{\"serviceId\":\"host\",\"profile\":\"mediastream_recording\","
+                + "\"interface\":\"preview\",\"attribute\":\"onstatuschange\",\"status\":\"start\"}");
+        assertEquals(1, events.size());
+        assertEquals("start", events.get(0).getString("status"));
+
+        // interfaceが異なるので振り分けない
+        manager.receive("{\"serviceId\":\"host\",\"profile\":\"mediastream_recording\","
+                + "\"attribute\":\"onstatuschange\"}");
+        assertEquals(1, events.size());
+    }
+
+    /**
+     * ハンドラーの特定に必要な項目が無いイベントを受信した場合にエラーになることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・JSONの形式が不正な場合にJSONExceptionが発生すること。
+     * ・attributeが無い場合にJSONExceptionが発生すること。
+     * </pre>
+     */
+    public void testInvalidEvent() {
+        TestEventManager manager = new TestEventManager();
+        try {
+            manager.receive("{\"serviceId\":\"host\",");
+            fail("JSONException is not thrown.");
+        } catch (JSONException e) {
+            // 期待通り
+        }
+        try {
+            manager.receive("{\"serviceId\":\"host\",\"profile\":\"battery\"}");
+            fail("JSONException is not thrown.");
+        } catch (JSONException e) {
+            // 期待通り
+        }
+    }
+
+    /**
+     * 記録した10万件のイベントを再生し、ハンドラーへの振り分けにかかる時間を計測する.
+     * <pre>
+     * 【期待する動作】
+     * ・全ての方法で、登録したサービスのイベントだけが同じ件数通知されること。
+     * ・EventMessageHandlerへの振り分けが、全てのイベントを解析してから振り分けるよりも速いこと。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testReplayRecordedEvents() throws Exception {
+        List<String> events = recordEvents(EVENT_COUNT);
+        int expected = 0;
+        for (String event : events) {
+            for (String serviceId : REGISTERED_SERVICE_IDS) {
+                if (event.contains("\"" + serviceId + "\"")) {
+                    expected++;
+                }
+            }
+        }
+
+        final int[] parsedCount = new int[1];
+        TestEventManager parsedManager = new TestEventManager();
+        registerAll(parsedManager, new EventHandler() {
+            @Override
+            public void onEvent(final JSONObject event) {
+                parsedCount[0]++;
+            }
+        });
+        final int[] lazyCount = new int[1];
+        TestEventManager lazyManager = new TestEventManager();
+        registerAll(lazyManager, new EventHandler() {
+            @Override
+            public void onEvent(final JSONObject event) {
+                lazyCount[0]++;
+            }
+        });
+        final int[] messageCount = new int[1];
+        TestEventManager messageManager = new TestEventManager();
+        registerAll(messageManager, new EventMessageHandler() {
+            @Override
+            public void onEvent(final EventMessage message) {
+                if (message.getServiceId() != null) {
+                    messageCount[0]++;
+                }
+            }
+        });
+
+        List<String> warmup = events.subList(0, WARMUP_COUNT);
+        replayParsed(parsedManager, warmup);
+        replay(lazyManager, warmup);
+        replay(messageManager, warmup);
+        parsedCount[0] = 0;
+        lazyCount[0] = 0;
+        messageCount[0] = 0;
+
+        long parsedTime = replayParsed(parsedManager, events);
+        long lazyTime = replay(lazyManager, events);
+        long messageTime = replay(messageManager, events);
+        Log.i(TAG, EVENT_COUNT + " events: parse all=" + parsedTime / NANOS_PER_MILLI
+                + "ms, parse matched=" + lazyTime / NANOS_PER_MILLI
+                + "ms, no parse=" + messageTime / NANOS_PER_MILLI + "ms");
+
+        assertEquals(expected, parsedCount[0]);
+        assertEquals(expected, lazyCount[0]);
+        assertEquals(expected, messageCount[0]);
+        assertTrue("no parse=" + messageTime + "ns, parse all=" + parsedTime + "ns.", messageTime < parsedTime);
+    }
+
+    /**
+     * イベントを全て解析してから振り分ける.
+     * @param manager イベント管理クラス
+     * @param events イベント
+     * @return かかった時間(ns)
+     * @throws JSONException JSONの解析に失敗した場合
+     */
+    private long replayParsed(final TestEventManager manager, final List<String> events) throws JSONException {
+        long start = System.nanoTime();
+        for (String event : events) {
+            manager.receive(new JSONObject(event));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * イベントを受信した文字列のまま振り分ける.
+     * @param manager イベント管理クラス
+     * @param events イベント
+     * @return かかった時間(ns)
+     * @throws JSONException JSONの解析に失敗した場合
+     */
+    private long replay(final TestEventManager manager, final List<String> events) throws JSONException {
+        long start = System.nanoTime();
+        for (String event : events) {
+            manager.receive(event);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 記録するイベントの全ての種類にハンドラーを登録する.
+     * @param manager イベント管理クラス
+     * @param handler ハンドラー
+     * @throws IOException 登録に失敗した場合
+     */
+    private void registerAll(final TestEventManager manager, final EventHandler handler) throws IOException {
+        for (String serviceId : REGISTERED_SERVICE_IDS) {
+            manager.registerEvent(createBuilder(serviceId, "deviceorientation", null, "ondeviceorientation"), handler);
+            manager.registerEvent(createBuilder(serviceId, "battery", null, "onchargingchange"), handler);
+            manager.registerEvent(createBuilder(serviceId, "proximity", null, "onuserproximity"), handler);
+            manager.registerEvent(createBuilder(serviceId, "mediastream_recording", "preview", "onstatuschange"),
+                    handler);
+        }
+    }
+
+    /**
+     * イベントの登録に使うURIビルダーを生成する.
+     * @param serviceId サービスID
+     * @param profile プロファイル名
+     * @param inter インターフェース名
+     * @param attribute アトリビュート名
+     * @return URIビルダー
+     */
+    private static URIBuilder createBuilder(final String serviceId, final String profile, final String inter,
+            final String attribute) {
+        URIBuilder builder = new URIBuilder();
+        builder.setScheme("http");
+        builder.setHost("localhost");
+        builder.setPort(4035);
+        builder.setProfile(profile);
+        builder.setInterface(inter);
+        builder.setAttribute(attribute);
+        builder.addParameter(DConnectMessage.EXTRA_SERVICE_ID, serviceId);
+        builder.addParameter(DConnectMessage.EXTRA_SESSION_KEY, "sessionKey");
+        return builder;
+    }
+
+    /**
+     * Device Connect Managerから受信するイベントを模擬して記録する.
+     * <p>
+     * Bundleから変換したJSONと同じく、項目の順番はイベント毎に異なる。
+     * </p>
+     * @param count イベント数
+     * @return イベントのJSON文字列
+     * @throws JSONException JSONの生成に失敗した場合
+     */
+    private static List<String> recordEvents(final int count) throws JSONException {
+        Random random = new Random(SEED);
+        List<String> events = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            String serviceId;
+            if (random.nextBoolean()) {
+                serviceId = REGISTERED_SERVICE_IDS[random.nextInt(REGISTERED_SERVICE_IDS.length)];
+            } else {
+                serviceId = UNREGISTERED_SERVICE_IDS[random.nextInt(UNREGISTERED_SERVICE_IDS.length)];
+            }
+
+            List<String[]> fields = new ArrayList<String[]>();
+            fields.add(new String[] {DConnectMessage.EXTRA_SERVICE_ID, JSONObject.quote(serviceId)});
+            fields.add(new String[] {DConnectMessage.EXTRA_SESSION_KEY, JSONObject.quote("sessionKey")});
+            switch (random.nextInt(4)) {
+            case 0:
+                fields.add(new String[] {DConnectMessage.EXTRA_PROFILE, JSONObject.quote("deviceorientation")});
+                fields.add(new String[] {DConnectMessage.EXTRA_ATTRIBUTE, JSONObject.quote("ondeviceorientation")});
+                fields.add(new String[] {"orientation", createOrientation(random).toString()});
+                break;
+            case 1:
+                fields.add(new String[] {DConnectMessage.EXTRA_PROFILE, JSONObject.quote("battery")});
+                fields.add(new String[] {DConnectMessage.EXTRA_ATTRIBUTE, JSONObject.quote("onchargingchange")});
+                fields.add(new String[] {"battery", new JSONObject().put("charging", random.nextBoolean()).toString()});
+                break;
+            case 2:
+                fields.add(new String[] {DConnectMessage.EXTRA_PROFILE, JSONObject.quote("proximity")});
+                fields.add(new String[] {DConnectMessage.EXTRA_ATTRIBUTE, JSONObject.quote("onuserproximity")});
+                fields.add(new String[] {"proximity", new JSONObject().put("near", random.nextBoolean()).toString()});
+                break;
+            default:
+                fields.add(new String[] {DConnectMessage.EXTRA_PROFILE, JSONObject.quote("mediastream_recording")});
+                fields.add(new String[] {DConnectMessage.EXTRA_INTERFACE, JSONObject.quote("preview")});
+                fields.add(new String[] {DConnectMessage.EXTRA_ATTRIBUTE, JSONObject.quote("onstatuschange")});
+                fields.add(new String[] {"media", new JSONObject().put("status", "recording")
+                        .put("path", "/storage/emulated/0/DCIM/" + i + ".mp4").toString()});
+                break;
+            }
+            Collections.shuffle(fields, random);
+
+            StringBuilder event = new StringBuilder("{");
+            for (String[] field : fields) {
+                if (event.length() > 1) {
+                    event.append(',');
+                }
+                event.append(JSONObject.quote(field[0])).append(':').append(field[1]);
+            }
+            events.add(event.append('}').toString());
+        }
+        return events;
+    }
+
+    /**
+     * deviceorientationのイベントの本文を生成する.
+     * @param random 乱数
+     * @return 本文
+     * @throws JSONException JSONの生成に失敗した場合
+     */
+    private static JSONObject createOrientation(final Random random) throws JSONException {
+        JSONObject acceleration = new JSONObject();
+        acceleration.put("x", random.nextDouble());
+        acceleration.put("y", random.nextDouble());
+        acceleration.put("z", random.nextDouble());
+        JSONObject gravity = new JSONObject();
+        gravity.put("x", random.nextDouble());
+        gravity.put("y", random.nextDouble());
+        gravity.put("z", random.nextDouble());
+        JSONObject rotationRate = new JSONObject();
+        rotationRate.put("alpha", random.nextDouble());
+        rotationRate.put("beta", random.nextDouble());
+        rotationRate.put("gamma", random.nextDouble());
+        JSONObject orientation = new JSONObject();
+        orientation.put("acceleration", acceleration);
+        orientation.put("accelerationIncludingGravity", gravity);
+        orientation.put("rotationRate", rotationRate);
+        orientation.put("interval", 0);
+        return orientation;
+    }
+
+    /**
+     * イベントの登録を常に受け付けるイベント管理クラス.
+     */
+    private static class TestEventManager extends AbstractEventManager {
+
+        /**
+         * JSON文字列のイベントを受信する.
+         * @param message イベントのJSON文字列
+         * @throws JSONException JSONの解析に失敗した場合
+         */
+        void receive(final String message) throws JSONException {
+            sendEvent(message);
+        }
+
+        /**
+         * 解析済みのイベントを受信する.
+         * @param message イベントのJSON
+         * @throws JSONException JSONの解析に失敗した場合
+         */
+        void receive(final JSONObject message) throws JSONException {
+            sendEvent(message);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        protected HttpResponse execute(final HttpUriRequest request) throws IOException {
+            HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+            response.setEntity(new StringEntity("{\"" + DConnectMessage.EXTRA_RESULT + "\":"
+                    + DConnectMessage.RESULT_OK + "}"));
+            return response;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ FileCacheControllerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventError;
+import org.deviceconnect.android.event.cache.FileCacheController;
+
+import android.test.AndroidTestCase;
+
+/**
+ * FileCacheControllerが書き込み途中で終了した後に、最後に記録した状態を復元できることを確認するテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class FileCacheControllerTest extends AndroidTestCase {
+
+    /** ジャーナルファイル名. */
+    private static final String JOURNAL_FILE_NAME = "org_deviceconnect_android_event_cache.journal";
+
+    /** ジャーナルファイルを作り直す時の一時ファイル名. */
+    private static final String TEMP_FILE_NAME = JOURNAL_FILE_NAME + ".tmp";
+
+    /** テストで使用するサービスID. */
+    private static final String SERVICE_ID = "test_service_id";
+
+    /** テストで使用するプロファイル名. */
+    private static final String PROFILE = "deviceorientation";
+
+    /** テストで使用するセッションキー. */
+    private static final String SESSION_KEY = "test_session_key";
+
+    /** テストで使用するレシーバー名. */
+    private static final String RECEIVER_NAME = "test.receiver";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteFiles();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteFiles();
+        super.tearDown();
+    }
+
+    /**
+     * ジャーナルの末尾のレコードを書き込み途中で終了した後に読み込む.
+     * <pre>
+     * 【期待する動作】
+     * ・書き込みが完了したイベントのみが復元されること。
+     * ・復元した後に追加したイベントも、次の読み込みで復元されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testTruncatedJournal() throws Exception {
+        FileCacheController controller = new FileCacheController(getContext(), true);
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("a")));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("b")));
+        File journal = getContext().getFileStreamPath(JOURNAL_FILE_NAME);
+        long committed = journal.length();
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("c")));
+        long written = journal.length();
+        assertTrue(written > committed);
+
+        // 3件目のレコードを書き込んでいる途中で終了した状態にする
+        truncate(journal, committed + (written - committed) / 2);
+
+        controller = new FileCacheController(getContext(), true);
+        assertNotNull(getEvent(controller, "a"));
+        assertNotNull(getEvent(controller, "b"));
+        assertNull(getEvent(controller, "c"));
+
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("d")));
+        controller = new FileCacheController(getContext(), true);
+        assertNotNull(getEvent(controller, "a"));
+        assertNotNull(getEvent(controller, "b"));
+        assertNull(getEvent(controller, "c"));
+        assertNotNull(getEvent(controller, "d"));
+    }
+
+    /**
+     * ジャーナルを作り直している途中で終了し、書きかけの一時ファイルが残った状態で読み込む.
+     * <pre>
+     * 【期待する動作】
+     * ・一時ファイルに関係なく、最後に作り直したジャーナルの状態が復元されること。
+     * ・次の作り直しが成功し、その状態が復元されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testTruncatedTempFile() throws Exception {
+        FileCacheController controller = new FileCacheController(getContext(), false);
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("a")));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent("b")));
+        controller.flush();
+
+        // 作り直しの一時ファイルを書いている途中で終了した状態にする
+        File journal = getContext().getFileStreamPath(JOURNAL_FILE_NAME);
+        File temp = getContext().getFileStreamPath(TEMP_FILE_NAME);
+        byte[] head = new byte[(int) journal.length() / 2];
+        RandomAccessFile in = new RandomAccessFile(journal, "r");
+        try {
+            in.readFully(head);
+        } finally {
+            in.close();
+        }
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(head);
+        } finally {
+            out.close();
+        }
+
+        controller = new FileCacheController(getContext(), false);
+        assertNotNull(getEvent(controller, "a"));
+        assertNotNull(getEvent(controller, "b"));
+
+        assertEquals(EventError.NONE, controller.removeEvent(createEvent("a")));
+        controller.flush();
+        assertFalse(temp.exists());
+        controller = new FileCacheController(getContext(), false);
+        assertNull(getEvent(controller, "a"));
+        assertNotNull(getEvent(controller, "b"));
+    }
+
+    /**
+     * テストで使用するイベントを作成する.
+     * @param attribute 属性名
+     * @return イベント
+     */
+    private static Event createEvent(final String attribute) {
+        Event event = new Event();
+        event.setServiceId(SERVICE_ID);
+        event.setProfile(PROFILE);
+        event.setAttribute(attribute);
+        event.setSessionKey(SESSION_KEY);
+        event.setReceiverName(RECEIVER_NAME);
+        event.setAccessToken("test_access_token");
+        return event;
+    }
+
+    /**
+     * キャッシュからイベントを取得する.
+     * @param controller キャッシュ
+     * @param attribute 属性名
+     * @return イベント。登録されていない場合はnull
+     */
+    private static Event getEvent(final FileCacheController controller, final String attribute) {
+        return controller.getEvent(SERVICE_ID, PROFILE, null, attribute, SESSION_KEY, RECEIVER_NAME);
+    }
+
+    /**
+     * ファイルを指定されたサイズに切り詰める.
+     * @param file ファイル
+     * @param length サイズ
+     * @throws Exception 切り詰めに失敗した場合
+     */
+    private static void truncate(final File file, final long length) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * テストで作成したファイルを削除する.
+     */
+    private void deleteFiles() {
+        getContext().deleteFile(JOURNAL_FILE_NAME);
+        getContext().deleteFile(TEMP_FILE_NAME);
+    }
+}
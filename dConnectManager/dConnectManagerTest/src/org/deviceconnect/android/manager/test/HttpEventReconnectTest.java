@@ -0,0 +1,479 @@
+/*
+ HttpEventReconnectTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.event.BackoffReconnectPolicy;
+import org.deviceconnect.message.event.EventHandler;
+import org.deviceconnect.message.http.event.HttpEventManager;
+import org.deviceconnect.utils.URIBuilder;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+
+import android.test.AndroidTestCase;
+
+/**
+ * SDKのイベント受信用のセッションの再接続のテスト.
+ * <p>
+ * Device Connect Managerの代わりに、テスト内でWebSocketサーバとHTTPサーバを起動する。<br>
+ * {@link WebSocketServer#stop()}ではポートが解放されないため、WebSocketサーバの手前に中継サーバを置き、
+ * 中継サーバを止めることでDevice Connect Managerの再起動を模擬する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class HttpEventReconnectTest extends AndroidTestCase {
+
+    /** ホスト名. */
+    private static final String HOST = "127.0.0.1";
+
+    /** セッションキー. */
+    private static final String SESSION_KEY = "reconnectTestSessionKey";
+
+    /** サービスID. */
+    private static final String SERVICE_ID = "reconnectTestServiceId";
+
+    /** 再起動する回数. */
+    private static final int RESTART_COUNT = 5;
+
+    /** 結果を待つ最大時間(ms). */
+    private static final long WAIT_TIMEOUT = 10000;
+
+    /** テスト用の再接続の待ち時間の基準値(ms). */
+    private static final long BASE_DELAY = 100;
+
+    /** テスト用の再接続の待ち時間の上限(ms). */
+    private static final long MAX_DELAY = 1000;
+
+    /** テスト用の再接続を諦めてから接続を試みない時間(ms). */
+    private static final long OPEN_DURATION = 1500;
+
+    /** テスト用のWebSocketの接続を待つ最大時間(ms). */
+    private static final long CONNECT_TIMEOUT = 500;
+
+    /** WebSocketサーバが受信したメッセージ. */
+    private final BlockingQueue<String> mMessages = new LinkedBlockingQueue<String>();
+
+    /** HTTPサーバが受信したPUTリクエストのパス. */
+    private final BlockingQueue<String> mPuts = new LinkedBlockingQueue<String>();
+
+    /** WebSocketサーバ. */
+    private TestWebSocketServer mWebSocketServer;
+
+    /** HTTPサーバ. */
+    private TestHttpServer mHttpServer;
+
+    /** 中継サーバ. */
+    private RelayServer mRelayServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mWebSocketServer = new TestWebSocketServer(findFreePort());
+        mWebSocketServer.start();
+        mHttpServer = new TestHttpServer();
+        mRelayServer = new RelayServer(findFreePort(), mWebSocketServer.getPort());
+
+        HttpEventManager manager = HttpEventManager.INSTANCE;
+        manager.setOrigin(getContext().getPackageName());
+        manager.setConnectTimeout(CONNECT_TIMEOUT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        HttpEventManager manager = HttpEventManager.INSTANCE;
+        manager.disconnect();
+        manager.setReconnectPolicy(new BackoffReconnectPolicy());
+        manager.setConnectTimeout(HttpEventManager.DEFAULT_CONNECT_TIMEOUT);
+        mRelayServer.close();
+        mHttpServer.close();
+        mWebSocketServer.stop();
+        super.tearDown();
+    }
+
+    /**
+     * WebSocketサーバを繰り返し再起動し、その都度再接続してイベントを受信し続けることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・再起動する毎に再接続し、セッションキーが送信されること。
+     * ・再接続する毎に、登録済みのイベントが登録し直されること。
+     * ・再接続後に送信したイベントを受信できること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testReconnectAfterRestart() throws Exception {
+        HttpEventManager manager = HttpEventManager.INSTANCE;
+        manager.setReconnectPolicy(new BackoffReconnectPolicy(BASE_DELAY, MAX_DELAY,
+                BackoffReconnectPolicy.DEFAULT_MAX_RETRIES, OPEN_DURATION));
+        assertTrue(manager.connect(HOST, mRelayServer.getPort(), false, SESSION_KEY, null));
+        assertNotNull(mMessages.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        final BlockingQueue<JSONObject> events = new LinkedBlockingQueue<JSONObject>();
+        URIBuilder builder = new URIBuilder();
+        builder.setScheme("http");
+        builder.setHost(HOST);
+        builder.setPort(mHttpServer.getPort());
+        builder.setProfile("deviceorientation");
+        builder.setAttribute("ondeviceorientation");
+        builder.addParameter(DConnectMessage.EXTRA_SERVICE_ID, SERVICE_ID);
+        builder.addParameter(DConnectMessage.EXTRA_SESSION_KEY, SESSION_KEY);
+        manager.registerEvent(builder, new EventHandler() {
+            @Override
+            public void onEvent(final JSONObject message) {
+                events.add(message);
+            }
+        });
+        String path = mPuts.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(path);
+
+        for (int i = 0; i < RESTART_COUNT; i++) {
+            mRelayServer.close();
+            mRelayServer = new RelayServer(mRelayServer.getPort(), mWebSocketServer.getPort());
+
+            String message = mMessages.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull("session key is not sent: " + i, message);
+            assertEquals(SESSION_KEY, new JSONObject(message).getString(DConnectMessage.EXTRA_SESSION_KEY));
+            assertEquals(path, mPuts.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS));
+
+            JSONObject event = new JSONObject();
+            event.put(DConnectMessage.EXTRA_SERVICE_ID, SERVICE_ID);
+            event.put(DConnectMessage.EXTRA_PROFILE, "deviceorientation");
+            event.put(DConnectMessage.EXTRA_ATTRIBUTE, "ondeviceorientation");
+            event.put("count", i);
+            mWebSocketServer.sendToAll(event.toString());
+            JSONObject received = events.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull("event is not received: " + i, received);
+            assertEquals(i, received.getInt("count"));
+        }
+    }
+
+    /**
+     * ハンドシェイクに応答しないサーバに接続し、指定した時間で接続を諦めることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・connectがfalseを返すこと。
+     * ・接続を待つ最大時間の2倍以内に処理が戻ること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testConnectTimeout() throws Exception {
+        ServerSocket silent = new ServerSocket(0);
+        try {
+            long start = System.currentTimeMillis();
+            boolean result = HttpEventManager.INSTANCE.connect(HOST, silent.getLocalPort(), false,
+                    SESSION_KEY, null);
+            long elapsed = System.currentTimeMillis() - start;
+            assertFalse(result);
+            assertTrue("elapsed time is " + elapsed + "ms.", elapsed < CONNECT_TIMEOUT * 2);
+        } finally {
+            silent.close();
+        }
+    }
+
+    /**
+     * 接続の失敗が続いた場合に接続を試みなくなり、一定時間後に再び接続を試みることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・2回失敗した後は、接続を試みずにconnectがfalseを返すこと。
+     * ・接続を試みない時間が過ぎた後は、接続に成功すること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testCircuitOpen() throws Exception {
+        BackoffReconnectPolicy policy = new BackoffReconnectPolicy(BASE_DELAY, MAX_DELAY, 2, OPEN_DURATION);
+        HttpEventManager manager = HttpEventManager.INSTANCE;
+        manager.setReconnectPolicy(policy);
+
+        int refusedPort = findFreePort();
+        assertFalse(manager.connect(HOST, refusedPort, false, SESSION_KEY, null));
+        assertEquals(BackoffReconnectPolicy.State.CLOSED, policy.getState());
+        assertFalse(manager.connect(HOST, refusedPort, false, SESSION_KEY, null));
+        assertEquals(BackoffReconnectPolicy.State.OPEN, policy.getState());
+
+        // 接続を試みないので、接続できるサーバでも失敗する
+        assertFalse(manager.connect(HOST, mRelayServer.getPort(), false, SESSION_KEY, null));
+
+        Thread.sleep(OPEN_DURATION);
+        assertTrue(manager.connect(HOST, mRelayServer.getPort(), false, SESSION_KEY, null));
+        assertEquals(BackoffReconnectPolicy.State.CLOSED, policy.getState());
+    }
+
+    /**
+     * 空いているポート番号を取得する.
+     * @return ポート番号
+     * @throws IOException ポート番号の取得に失敗した場合
+     */
+    private static int findFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * 受信したメッセージを記録するWebSocketサーバ.
+     */
+    private class TestWebSocketServer extends WebSocketServer {
+
+        /**
+         * コンストラクタ.
+         * @param port ポート番号
+         */
+        TestWebSocketServer(final int port) {
+            super(new InetSocketAddress(HOST, port));
+        }
+
+        /**
+         * 接続中の全てのクライアントにメッセージを送信する.
+         * @param message メッセージ
+         */
+        void sendToAll(final String message) {
+            synchronized (connections()) {
+                for (WebSocket conn : connections()) {
+                    if (conn.isOpen()) {
+                        conn.send(message);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onOpen(final WebSocket conn, final ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(final WebSocket conn, final int code, final String reason, final boolean remote) {
+        }
+
+        @Override
+        public void onMessage(final WebSocket conn, final String message) {
+            mMessages.add(message);
+        }
+
+        @Override
+        public void onError(final WebSocket conn, final Exception ex) {
+        }
+    }
+
+    /**
+     * 全てのリクエストに成功のレスポンスを返すHTTPサーバ.
+     */
+    private class TestHttpServer extends Thread {
+
+        /** サーバソケット. */
+        private final ServerSocket mServerSocket;
+
+        /**
+         * サーバを起動する.
+         * @throws IOException 起動に失敗した場合
+         */
+        TestHttpServer() throws IOException {
+            mServerSocket = new ServerSocket(0);
+            start();
+        }
+
+        /**
+         * ポート番号を取得する.
+         * @return ポート番号
+         */
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        /**
+         * サーバを停止する.
+         * @throws IOException 停止に失敗した場合
+         */
+        void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    try {
+                        handle(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    if (mServerSocket.isClosed()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 1つのリクエストを処理する.
+         * @param socket クライアントとのソケット
+         * @throws IOException 通信に失敗した場合
+         */
+        private void handle(final Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            int contentLength = 0;
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                if (line.toLowerCase().startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                }
+            }
+            for (int i = 0; i < contentLength; i++) {
+                reader.read();
+            }
+            String[] parts = requestLine.split(" ");
+            if ("PUT".equals(parts[0])) {
+                mPuts.add(parts[1]);
+            }
+
+            byte[] body = ("{\"" + DConnectMessage.EXTRA_RESULT + "\":" + DConnectMessage.RESULT_OK + "}")
+                    .getBytes("UTF-8");
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+                    + "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+        }
+    }
+
+    /**
+     * WebSocketサーバへの通信を中継するサーバ.
+     * <p>
+     * 停止すると中継中のコネクションも全て切断する。
+     * </p>
+     */
+    private static class RelayServer extends Thread {
+
+        /** 中継用のバッファサイズ. */
+        private static final int BUFFER_SIZE = 8192;
+
+        /** サーバソケット. */
+        private final ServerSocket mServerSocket;
+
+        /** 中継先のポート番号. */
+        private final int mTargetPort;
+
+        /** 中継中のソケット. */
+        private final List<Socket> mSockets = new ArrayList<Socket>();
+
+        /**
+         * サーバを起動する.
+         * @param port 待ち受けるポート番号
+         * @param targetPort 中継先のポート番号
+         * @throws IOException 起動に失敗した場合
+         */
+        RelayServer(final int port, final int targetPort) throws IOException {
+            mServerSocket = new ServerSocket();
+            mServerSocket.setReuseAddress(true);
+            mServerSocket.bind(new InetSocketAddress(HOST, port));
+            mTargetPort = targetPort;
+            start();
+        }
+
+        /**
+         * ポート番号を取得する.
+         * @return ポート番号
+         */
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        /**
+         * サーバを停止し、中継中のコネクションを全て切断する.
+         * <p>
+         * 同じポート番号で起動し直せるように、待ち受けを終えるまで待つ。
+         * </p>
+         * @throws IOException 停止に失敗した場合
+         * @throws InterruptedException 待ち受けを終えるのを待っている間に割り込まれた場合
+         */
+        void close() throws IOException, InterruptedException {
+            mServerSocket.close();
+            join();
+            synchronized (mSockets) {
+                for (Socket socket : mSockets) {
+                    socket.close();
+                }
+                mSockets.clear();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Socket client = mServerSocket.accept();
+                    Socket target = new Socket(HOST, mTargetPort);
+                    synchronized (mSockets) {
+                        mSockets.add(client);
+                        mSockets.add(target);
+                    }
+                    relay(client, target);
+                    relay(target, client);
+                } catch (IOException e) {
+                    if (mServerSocket.isClosed()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 一方向の中継を開始する.
+         * @param from 中継元のソケット
+         * @param to 中継先のソケット
+         */
+        private void relay(final Socket from, final Socket to) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    try {
+                        InputStream in = from.getInputStream();
+                        OutputStream out = to.getOutputStream();
+                        int len;
+                        while ((len = in.read(buf)) > 0) {
+                            out.write(buf, 0, len);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // 切断された
+                    } finally {
+                        try {
+                            from.close();
+                            to.close();
+                        } catch (IOException e) {
+                            // 既に閉じている
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ HttpResponseCacheTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.event.EventHandler;
+import org.deviceconnect.message.http.impl.client.HttpDConnectClient;
+import org.deviceconnect.message.http.impl.client.HttpResponseCache;
+import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.json.JSONObject;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * HttpDConnectClientのレスポンスキャッシュのテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class HttpResponseCacheTest extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "HttpResponseCache";
+
+    /** サービス検索のパス. */
+    private static final String PATH_SERVICE_DISCOVERY = "/gotapi/servicediscovery";
+
+    /** システム情報のパス. */
+    private static final String PATH_SYSTEM = "/gotapi/system";
+
+    /** サービス情報のパス. */
+    private static final String PATH_SERVICE_INFORMATION = "/gotapi/serviceinformation?serviceId=";
+
+    /** キャッシュしないプロファイルのパス. */
+    private static final String PATH_BATTERY = "/gotapi/battery?serviceId=host.dconnect";
+
+    /** 短い有効期間(ms). */
+    private static final long SHORT_TTL = 200;
+
+    /** スタブサーバ. */
+    private StubServer mServer;
+
+    /** テスト対象のクライアント. */
+    private HttpDConnectClient mClient;
+
+    /** テスト対象のキャッシュ. */
+    private HttpResponseCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubServer();
+        mCache = new HttpResponseCache();
+        mClient = new HttpDConnectClient();
+        mClient.setDefaultTarget(new HttpHost("localhost", mServer.getPort()));
+        mClient.setResponseCache(mCache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Log.i(TAG, getName() + ": " + mCache);
+        mServer.close();
+        super.tearDown();
+    }
+
+    /**
+     * 有効期間内のGETリクエストがキャッシュから返却されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・2回目のリクエストはスタブサーバに送信されないこと。
+     * ・2回目のレスポンスの本文とContent-Typeが1回目と同じであること。
+     * ・オリジンが異なるリクエストは別のレスポンスとして扱われること。
+     * ・ヒット数、ミス数、ヒット率が記録されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testCacheHit() throws Exception {
+        String first = get(PATH_SERVICE_DISCOVERY, "origin.a");
+        String second = get(PATH_SERVICE_DISCOVERY, "origin.a");
+        assertEquals(first, second);
+        assertEquals(1, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(0.5, mCache.getHitRatio(), 0.001);
+
+        HttpResponse response = mClient.execute(createGet(PATH_SERVICE_DISCOVERY, "origin.a"));
+        assertEquals("application/json", response.getEntity().getContentType().getValue());
+        EntityUtils.toString(response.getEntity());
+
+        get(PATH_SERVICE_DISCOVERY, "origin.b");
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(2, mCache.getEntryCount());
+    }
+
+    /**
+     * キャッシュを設定していないクライアントはキャッシュしないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・全てのリクエストがスタブサーバに送信されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testCacheDisabled() throws Exception {
+        mClient.setResponseCache(null);
+        get(PATH_SERVICE_DISCOVERY, null);
+        get(PATH_SERVICE_DISCOVERY, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(0, mCache.getMissCount());
+    }
+
+    /**
+     * 有効期間が切れたレスポンスが使われないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・ETagが無いレスポンスは、有効期間が切れた後のリクエストでスタブサーバから取得し直すこと。
+     * ・取得し直したレスポンスの本文が新しい内容であること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testTimeToLive() throws Exception {
+        mServer.setETagEnabled(false);
+        mCache.setTimeToLive(ServiceDiscoveryProfileConstants.PROFILE_NAME, SHORT_TTL);
+        String first = get(PATH_SERVICE_DISCOVERY, null);
+        mServer.update(PATH_SERVICE_DISCOVERY);
+        assertEquals(first, get(PATH_SERVICE_DISCOVERY, null));
+
+        Thread.sleep(SHORT_TTL * 2);
+        String second = get(PATH_SERVICE_DISCOVERY, null);
+        assertFalse(first.equals(second));
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(0, mServer.getNotModifiedCount());
+    }
+
+    /**
+     * 有効期間が切れたレスポンスがETagで再検証されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・内容が変わっていない場合は304 Not Modifiedを受け取り、保持しているレスポンスを返却すること。
+     * ・再検証したレスポンスの有効期間が延長されること。
+     * ・内容が変わった場合は新しいレスポンスを返却し、キャッシュを置き換えること。
+     * ・呼び出し元のリクエストにIf-None-Matchが残らないこと。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testRevalidation() throws Exception {
+        mCache.setTimeToLive(ServiceDiscoveryProfileConstants.PROFILE_NAME, SHORT_TTL);
+        String first = get(PATH_SERVICE_DISCOVERY, null);
+
+        Thread.sleep(SHORT_TTL * 2);
+        HttpGet request = createGet(PATH_SERVICE_DISCOVERY, null);
+        HttpResponse response = mClient.execute(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        assertEquals(first, EntityUtils.toString(response.getEntity()));
+        assertFalse(request.containsHeader("If-None-Match"));
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertEquals(1, mCache.getRevalidationCount());
+
+        assertEquals(first, get(PATH_SERVICE_DISCOVERY, null));
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+
+        mServer.update(PATH_SERVICE_DISCOVERY);
+        Thread.sleep(SHORT_TTL * 2);
+        String second = get(PATH_SERVICE_DISCOVERY, null);
+        assertFalse(first.equals(second));
+        assertEquals(second, get(PATH_SERVICE_DISCOVERY, null));
+        assertEquals(3, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(1, mServer.getNotModifiedCount());
+    }
+
+    /**
+     * リクエストを送信している間に破棄されたプロファイルのレスポンスがキャッシュされないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・破棄される前に送信したリクエストのレスポンスは呼び出し元に返却されるが、キャッシュされないこと。
+     * ・次のリクエストでスタブサーバから新しい内容を取得すること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testInvalidationDuringRequest() throws Exception {
+        mServer.setBeforeResponse(new Runnable() {
+            @Override
+            public void run() {
+                mServer.update(PATH_SERVICE_DISCOVERY);
+                mCache.invalidate(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+            }
+        });
+        String first = get(PATH_SERVICE_DISCOVERY, null);
+        assertEquals(0, mCache.getEntryCount());
+
+        String second = get(PATH_SERVICE_DISCOVERY, null);
+        assertFalse(first.equals(second));
+        assertEquals(second, get(PATH_SERVICE_DISCOVERY, null));
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+    }
+
+    /**
+     * 再検証している間に破棄されたレスポンスが、304 Not Modifiedで復活しないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・304 Not Modifiedを受け取っても、破棄されたレスポンスの有効期間を延長しないこと。
+     * ・If-None-Matchを付けずに送信し直して、受け取ったレスポンスを返却してキャッシュすること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testInvalidationDuringRevalidation() throws Exception {
+        mCache.setTimeToLive(ServiceDiscoveryProfileConstants.PROFILE_NAME, SHORT_TTL);
+        String first = get(PATH_SERVICE_DISCOVERY, null);
+
+        Thread.sleep(SHORT_TTL * 2);
+        mServer.setBeforeResponse(new Runnable() {
+            @Override
+            public void run() {
+                mCache.invalidate(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+            }
+        });
+        assertEquals(first, get(PATH_SERVICE_DISCOVERY, null));
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertEquals(0, mCache.getRevalidationCount());
+        assertEquals(3, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+
+        assertEquals(first, get(PATH_SERVICE_DISCOVERY, null));
+        assertEquals(3, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+    }
+
+    /**
+     * キャッシュの合計サイズが上限を超えないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・合計サイズが最大サイズ以下に保たれること。
+     * ・最も長く使われていないレスポンスから破棄されること。
+     * ・最後に取得したレスポンスはキャッシュに残っていること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testEviction() throws Exception {
+        final long maxSize = 2048;
+        final int count = 20;
+        mCache = new HttpResponseCache(maxSize);
+        mClient.setResponseCache(mCache);
+
+        get(PATH_SERVICE_INFORMATION + 0, null);
+        for (int i = 1; i < count; i++) {
+            get(PATH_SERVICE_INFORMATION + i, null);
+            // 使い続けているレスポンスは破棄されない
+            get(PATH_SERVICE_INFORMATION + 0, null);
+            assertTrue(mCache.getSize() <= maxSize);
+        }
+        assertTrue(mCache.getEvictionCount() > 0);
+        assertTrue(mCache.getEntryCount() < count);
+        assertEquals(1, mServer.getRequestCount(PATH_SERVICE_INFORMATION + 0));
+
+        get(PATH_SERVICE_INFORMATION + (count - 1), null);
+        assertEquals(1, mServer.getRequestCount(PATH_SERVICE_INFORMATION + (count - 1)));
+        get(PATH_SERVICE_INFORMATION + 1, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_INFORMATION + 1));
+    }
+
+    /**
+     * onservicechangeイベントでサービスに関するレスポンスが破棄されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・servicediscoveryのレスポンスが破棄され、次のリクエストでスタブサーバから取得し直すこと。
+     * ・systemのレスポンスは破棄されないこと。
+     * ・イベントがハンドラーに転送されること。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testServiceChangeInvalidation() throws Exception {
+        get(PATH_SERVICE_DISCOVERY, null);
+        get(PATH_SYSTEM, null);
+
+        final JSONObject[] received = new JSONObject[1];
+        EventHandler handler = mCache.createServiceChangeHandler(new EventHandler() {
+            @Override
+            public void onEvent(final JSONObject event) {
+                received[0] = event;
+            }
+        });
+        JSONObject event = new JSONObject();
+        event.put(DConnectMessage.EXTRA_PROFILE, ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        event.put(DConnectMessage.EXTRA_ATTRIBUTE, ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE);
+        event.put(DConnectMessage.EXTRA_SESSION_KEY, "session");
+        handler.onEvent(event);
+        assertNotNull(received[0]);
+        assertEquals(ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE,
+                received[0].getString(DConnectMessage.EXTRA_ATTRIBUTE));
+
+        get(PATH_SERVICE_DISCOVERY, null);
+        get(PATH_SYSTEM, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+        assertEquals(1, mServer.getRequestCount(PATH_SYSTEM));
+
+        mCache.invalidate(SystemProfileConstants.PROFILE_NAME);
+        get(PATH_SYSTEM, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SYSTEM));
+    }
+
+    /**
+     * キャッシュしてはならないレスポンスがキャッシュされないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・POSTリクエストはキャッシュしないこと。
+     * ・resultがエラーのレスポンスはキャッシュしないこと。
+     * ・有効期間が設定されていないプロファイルはキャッシュしないこと。
+     * ・Cache-Control: no-storeのレスポンスはキャッシュしないこと。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testNotCacheable() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = mClient.execute(new HttpPost(PATH_SERVICE_DISCOVERY));
+            EntityUtils.toString(response.getEntity());
+        }
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_DISCOVERY));
+
+        mServer.setResult(DConnectMessage.RESULT_ERROR);
+        get(PATH_SYSTEM, null);
+        mServer.setResult(DConnectMessage.RESULT_OK);
+        get(PATH_SYSTEM, null);
+        get(PATH_SYSTEM, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SYSTEM));
+
+        get(PATH_BATTERY, null);
+        get(PATH_BATTERY, null);
+        assertEquals(2, mServer.getRequestCount(PATH_BATTERY));
+
+        mServer.setNoStore(true);
+        get(PATH_SERVICE_INFORMATION + 0, null);
+        get(PATH_SERVICE_INFORMATION + 0, null);
+        assertEquals(2, mServer.getRequestCount(PATH_SERVICE_INFORMATION + 0));
+        assertEquals(1, mCache.getEntryCount());
+    }
+
+    /**
+     * GETリクエストを作成する.
+     * @param path パス
+     * @param origin オリジン。付けない場合はnull
+     * @return リクエスト
+     */
+    private HttpGet createGet(final String path, final String origin) {
+        HttpGet request = new HttpGet(path);
+        if (origin != null) {
+            request.setHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN, origin);
+        }
+        return request;
+    }
+
+    /**
+     * GETリクエストを送信して本文を取得する.
+     * @param path パス
+     * @param origin オリジン。付けない場合はnull
+     * @return 本文
+     * @throws IOException 通信に失敗した場合
+     */
+    private String get(final String path, final String origin) throws IOException {
+        HttpUriRequest request = createGet(path, origin);
+        HttpResponse response = mClient.execute(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    /**
+     * パス毎のリクエスト数を記録し、ETagによる再検証に応答するスタブサーバ.
+     */
+    private static class StubServer extends Thread {
+
+        /** サーバソケット. */
+        private final ServerSocket mServerSocket;
+
+        /** パス毎のリクエスト数. */
+        private final Map<String, Integer> mRequestCounts = new HashMap<String, Integer>();
+
+        /** パス毎の内容のバージョン. */
+        private final Map<String, Integer> mVersions = new HashMap<String, Integer>();
+
+        /** 304 Not Modifiedを返した回数. */
+        private int mNotModifiedCount;
+
+        /** ETagを返すかどうか. */
+        private boolean mETagEnabled = true;
+
+        /** Cache-Control: no-storeを返すかどうか. */
+        private boolean mNoStore;
+
+        /** レスポンスのresult. */
+        private int mResult = DConnectMessage.RESULT_OK;
+
+        /** 次のレスポンスを返す直前に1回だけ実行する処理. */
+        private Runnable mBeforeResponse;
+
+        /**
+         * サーバを起動する.
+         * @throws IOException 起動に失敗した場合
+         */
+        StubServer() throws IOException {
+            mServerSocket = new ServerSocket(0);
+            start();
+        }
+
+        /**
+         * ポート番号を取得する.
+         * @return ポート番号
+         */
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        /**
+         * サーバを停止する.
+         * @throws IOException 停止に失敗した場合
+         */
+        void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        /**
+         * パスへのリクエスト数を取得する.
+         * @param path パス
+         * @return リクエスト数
+         */
+        synchronized int getRequestCount(final String path) {
+            Integer count = mRequestCounts.get(path);
+            return count != null ? count : 0;
+        }
+
+        /**
+         * 304 Not Modifiedを返した回数を取得する.
+         * @return 回数
+         */
+        synchronized int getNotModifiedCount() {
+            return mNotModifiedCount;
+        }
+
+        /**
+         * パスの内容を更新する.
+         * @param path パス
+         */
+        synchronized void update(final String path) {
+            mVersions.put(path, getVersion(path) + 1);
+        }
+
+        /**
+         * ETagを返すかどうかを設定する.
+         * @param enabled ETagを返す場合はtrue
+         */
+        synchronized void setETagEnabled(final boolean enabled) {
+            mETagEnabled = enabled;
+        }
+
+        /**
+         * Cache-Control: no-storeを返すかどうかを設定する.
+         * @param noStore no-storeを返す場合はtrue
+         */
+        synchronized void setNoStore(final boolean noStore) {
+            mNoStore = noStore;
+        }
+
+        /**
+         * レスポンスのresultを設定する.
+         * @param result result
+         */
+        synchronized void setResult(final int result) {
+            mResult = result;
+        }
+
+        /**
+         * 次のレスポンスを返す直前に1回だけ実行する処理を設定する.
+         * <p>
+         * レスポンスの内容を決めた後に実行するので、リクエストを送信している間の操作を再現できる。
+         * </p>
+         * @param beforeResponse 実行する処理
+         */
+        synchronized void setBeforeResponse(final Runnable beforeResponse) {
+            mBeforeResponse = beforeResponse;
+        }
+
+        /**
+         * パスの内容のバージョンを取得する.
+         * @param path パス
+         * @return バージョン
+         */
+        private int getVersion(final String path) {
+            Integer version = mVersions.get(path);
+            return version != null ? version : 1;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    try {
+                        handle(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    if (mServerSocket.isClosed()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 1つのリクエストを処理する.
+         * @param socket クライアントとのソケット
+         * @throws IOException 通信に失敗した場合
+         */
+        private void handle(final Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            int contentLength = 0;
+            String ifNoneMatch = null;
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                String lower = line.toLowerCase();
+                if (lower.startsWith("content-length:")) {
+                    contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                } else if (lower.startsWith("if-none-match:")) {
+                    ifNoneMatch = line.substring("if-none-match:".length()).trim();
+                }
+            }
+            for (int i = 0; i < contentLength; i++) {
+                reader.read();
+            }
+            String path = requestLine.split(" ")[1];
+
+            StringBuilder head = new StringBuilder();
+            byte[] body;
+            Runnable beforeResponse;
+            synchronized (this) {
+                beforeResponse = mBeforeResponse;
+                mBeforeResponse = null;
+
+                Integer count = mRequestCounts.get(path);
+                mRequestCounts.put(path, count != null ? count + 1 : 1);
+
+                String etag = "\"" + getVersion(path) + "\"";
+                if (mETagEnabled && etag.equals(ifNoneMatch)) {
+                    mNotModifiedCount++;
+                    head.append("HTTP/1.1 304 Not Modified\r\nETag: ").append(etag).append("\r\n");
+                    body = new byte[0];
+                } else {
+                    JSONObject json = new JSONObject();
+                    try {
+                        json.put(DConnectMessage.EXTRA_RESULT, mResult);
+                        json.put("path", path);
+                        json.put("version", getVersion(path));
+                    } catch (Exception e) {
+                        throw new IOException(e.getMessage());
+                    }
+                    body = json.toString().getBytes("UTF-8");
+                    head.append("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n");
+                    if (mETagEnabled) {
+                        head.append("ETag: ").append(etag).append("\r\n");
+                    }
+                    if (mNoStore) {
+                        head.append("Cache-Control: no-store\r\n");
+                    }
+                }
+            }
+            head.append("Content-Length: ").append(body.length).append("\r\nConnection: close\r\n\r\n");
+            if (beforeResponse != null) {
+                beforeResponse.run();
+            }
+
+            OutputStream out = socket.getOutputStream();
+            out.write(head.toString().getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+        }
+    }
+}
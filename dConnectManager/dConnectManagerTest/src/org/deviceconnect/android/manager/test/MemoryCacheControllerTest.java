@@ -0,0 +1,114 @@
+/*
+ MemoryCacheControllerTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.test;
+
+import org.deviceconnect.android.event.Event;
+import org.deviceconnect.android.event.EventError;
+import org.deviceconnect.android.event.cache.MemoryCacheController;
+
+import android.test.AndroidTestCase;
+
+/**
+ * MemoryCacheControllerのイベントの登録・取得・解除のテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class MemoryCacheControllerTest extends AndroidTestCase {
+
+    /** テストで使用するサービスID. */
+    private static final String SERVICE_ID = "test_service_id";
+
+    /** サービスIDが無いイベントを表す文字列. */
+    private static final String NULL_SERVICE_ID = "__null";
+
+    /** テストで使用するプロファイル名. */
+    private static final String PROFILE = "deviceorientation";
+
+    /** テストで使用する属性名. */
+    private static final String ATTRIBUTE = "ondeviceorientation";
+
+    /** テストで使用するセッションキー. */
+    private static final String SESSION_KEY = "test_session_key";
+
+    /** テストで使用するレシーバー名. */
+    private static final String RECEIVER_NAME = "test.receiver";
+
+    /**
+     * サービスIDが無いイベントを登録・取得・解除する.
+     * <pre>
+     * 【期待する動作】
+     * ・サービスIDにnullを指定して取得できること。
+     * ・サービスIDに"__null"を指定しても同じイベントが取得できること。
+     * ・サービスIDを持つイベントとは区別されること。
+     * ・解除した後は取得できないこと。
+     * </pre>
+     */
+    public void testNullServiceId() {
+        MemoryCacheController controller = new MemoryCacheController();
+        assertEquals(EventError.NONE, controller.addEvent(createEvent(null)));
+
+        assertNotNull(getEvent(controller, null));
+        assertNotNull(getEvent(controller, NULL_SERVICE_ID));
+        assertEquals(1, controller.getEvents(null, PROFILE, null, ATTRIBUTE).size());
+        assertEquals(1, controller.getEvents(NULL_SERVICE_ID, PROFILE, null, ATTRIBUTE).size());
+        assertNull(getEvent(controller, SERVICE_ID));
+
+        assertEquals(EventError.NONE, controller.removeEvent(createEvent(null)));
+        assertNull(getEvent(controller, null));
+        assertEquals(0, controller.getEvents(null, PROFILE, null, ATTRIBUTE).size());
+        assertEquals(EventError.NOT_FOUND, controller.removeEvent(createEvent(null)));
+    }
+
+    /**
+     * サービスIDを持つイベントを登録・取得・解除する.
+     * <pre>
+     * 【期待する動作】
+     * ・サービスIDを指定して取得できること。
+     * ・サービスIDが無いイベントとは区別されること。
+     * ・解除した後は取得できないこと。
+     * </pre>
+     */
+    public void testServiceId() {
+        MemoryCacheController controller = new MemoryCacheController();
+        assertEquals(EventError.NONE, controller.addEvent(createEvent(SERVICE_ID)));
+        assertEquals(EventError.NONE, controller.addEvent(createEvent(null)));
+
+        Event event = getEvent(controller, SERVICE_ID);
+        assertNotNull(event);
+        assertEquals(SERVICE_ID, event.getServiceId());
+        assertEquals(1, controller.getEvents(SERVICE_ID, PROFILE, null, ATTRIBUTE).size());
+
+        assertEquals(EventError.NONE, controller.removeEvent(createEvent(SERVICE_ID)));
+        assertNull(getEvent(controller, SERVICE_ID));
+        assertNotNull(getEvent(controller, null));
+    }
+
+    /**
+     * テストで使用するイベントを作成する.
+     * @param serviceId サービスID
+     * @return イベント
+     */
+    private static Event createEvent(final String serviceId) {
+        Event event = new Event();
+        event.setServiceId(serviceId);
+        event.setProfile(PROFILE);
+        event.setAttribute(ATTRIBUTE);
+        event.setSessionKey(SESSION_KEY);
+        event.setReceiverName(RECEIVER_NAME);
+        event.setAccessToken("test_access_token");
+        return event;
+    }
+
+    /**
+     * キャッシュからイベントを取得する.
+     * @param controller キャッシュ
+     * @param serviceId サービスID
+     * @return イベント。登録されていない場合はnull
+     */
+    private static Event getEvent(final MemoryCacheController controller, final String serviceId) {
+        return controller.getEvent(serviceId, PROFILE, null, ATTRIBUTE, SESSION_KEY, RECEIVER_NAME);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ BundleJSONSerializerBenchmark.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.manager.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * レスポンスやイベントのBundleをJSONに変換する時間とアロケーション数を、JSONObjectを経由する変換と比較する.
+ * @author NTT DOCOMO, INC.
+ */
+public class BundleJSONSerializerBenchmark extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "BundleJSONSerializer";
+
+    /** 1回の計測時間(ms). */
+    private static final long MEASURE_TIME = 500;
+
+    /** 計測する回数. */
+    private static final int ROUND_COUNT = 5;
+
+    /** 計測前に変換し続ける時間(ms). */
+    private static final long WARMUP_TIME = 2000;
+
+    /** 経過時間を確認する間隔の変換回数. */
+    private static final int BATCH_COUNT = 100;
+
+    /** アロケーション数を計測する変換回数. */
+    private static final int ALLOC_CONVERSION_COUNT = 1000;
+
+    /**
+     * 20件のサービスを含むservicediscoveryのレスポンスを変換する.
+     * @throws JSONException 変換に失敗した場合
+     */
+    public void testServiceDiscovery() throws JSONException {
+        Bundle root = new Bundle();
+        root.putInt("result", 0);
+        Bundle[] services = new Bundle[20];
+        for (int i = 0; i < services.length; i++) {
+            Bundle service = new Bundle();
+            service.putString("id", "Host.dummy" + i + ".localhost.deviceconnect.org");
+            service.putString("name", "Host " + i);
+            service.putString("type", "WiFi");
+            service.putBoolean("online", true);
+            service.putString("config", "{\"key\":\"value\"}");
+            services[i] = service;
+        }
+        root.putParcelableArray("services", services);
+        root.putString("product", "Device Connect Manager");
+        root.putString("version", "1.0");
+        benchmark("servicediscovery", root);
+    }
+
+    /**
+     * batteryのレスポンスを変換する.
+     * @throws JSONException 変換に失敗した場合
+     */
+    public void testBattery() throws JSONException {
+        Bundle root = new Bundle();
+        root.putInt("result", 0);
+        root.putDouble("level", 0.87);
+        root.putBoolean("charging", false);
+        root.putDouble("chargingTime", 0.0);
+        root.putDouble("dischargingTime", 12345.0);
+        root.putString("product", "Device Connect Manager");
+        root.putString("version", "1.0");
+        benchmark("battery", root);
+    }
+
+    /**
+     * uriを含む50件のメディア一覧のレスポンスを変換する.
+     * @throws JSONException 変換に失敗した場合
+     */
+    public void testMediaList() throws JSONException {
+        Bundle root = new Bundle();
+        root.putInt("result", 0);
+        root.putInt("count", 50);
+        Bundle[] media = new Bundle[50];
+        for (int i = 0; i < media.length; i++) {
+            Bundle item = new Bundle();
+            item.putString("mediaId", "content://media/external/audio/media/" + i);
+            item.putString("mimeType", "audio/mpeg");
+            item.putString("title", "曲 " + i);
+            item.putInt("duration", 215000 + i);
+            item.putString("uri", "content://media/external/audio/media/" + i);
+            media[i] = item;
+        }
+        root.putParcelableArray("media", media);
+        root.putString("uri", "content://org.deviceconnect.android.provider.fileprovider/1");
+        benchmark("media list", root);
+    }
+
+    /**
+     * deviceorientationのイベントを変換する.
+     * @throws JSONException 変換に失敗した場合
+     */
+    public void testOrientationEvent() throws JSONException {
+        Bundle root = new Bundle();
+        root.putString("sessionKey", "abcdef0123456789.org.deviceconnect.android.manager");
+        root.putString("serviceId", "Host.dummy.localhost.deviceconnect.org");
+        root.putString("profile", "deviceorientation");
+        root.putString("attribute", "ondeviceorientation");
+        Bundle orientation = new Bundle();
+        orientation.putBundle("acceleration", createVector(0.12345678, -9.80665, 0.5));
+        orientation.putBundle("accelerationIncludingGravity", createVector(0.22345678, -9.70665, 0.6));
+        Bundle rotationRate = new Bundle();
+        rotationRate.putFloat("alpha", 1.25f);
+        rotationRate.putFloat("beta", -0.75f);
+        rotationRate.putFloat("gamma", 0.0f);
+        orientation.putBundle("rotationRate", rotationRate);
+        orientation.putLong("interval", 5L);
+        root.putBundle("orientation", orientation);
+        benchmark("orientation event", root);
+    }
+
+    /**
+     * x, y, zの値を持つBundleを作成する.
+     * @param x x
+     * @param y y
+     * @param z z
+     * @return Bundle
+     */
+    private static Bundle createVector(final double x, final double y, final double z) {
+        Bundle vector = new Bundle();
+        vector.putDouble("x", x);
+        vector.putDouble("y", y);
+        vector.putDouble("z", z);
+        return vector;
+    }
+
+    /**
+     * JSONObjectを経由する変換と同じ結果になり、より速く、アロケーションが少ないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・JSONObjectを経由する変換とバイト単位で同じ結果になること。
+     * ・JSONObjectを経由する変換よりも短い時間で変換できること。
+     * ・JSONObjectを経由する変換よりも1回あたりのアロケーション数が少ないこと。
+     * </pre>
+     * <p>
+     * 交互に計測して、それぞれ最も短かった時間で比較する。
+     * </p>
+     * @param name 計測結果に表示する名前
+     * @param bundle 変換するBundle
+     * @throws JSONException 変換に失敗した場合
+     */
+    private static void benchmark(final String name, final Bundle bundle) throws JSONException {
+        assertTrue(name, Arrays.equals(convertByJSONObject(bundle), BundleJSONSerializer.toJSONBytes(bundle)));
+
+        convertByJSONObject(bundle, WARMUP_TIME);
+        convertBySerializer(bundle, WARMUP_TIME);
+        long jsonObjectTime = Long.MAX_VALUE;
+        long serializerTime = Long.MAX_VALUE;
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            jsonObjectTime = Math.min(jsonObjectTime, convertByJSONObject(bundle, MEASURE_TIME));
+            serializerTime = Math.min(serializerTime, convertBySerializer(bundle, MEASURE_TIME));
+        }
+        long[] jsonObjectAllocs = countAllocations(bundle, false);
+        long[] serializerAllocs = countAllocations(bundle, true);
+        Log.i(TAG, name + ": JSONObject=" + jsonObjectTime + "ns/op, serializer=" + serializerTime + "ns/op");
+        Log.i(TAG, name + ": JSONObject=" + jsonObjectAllocs[0] + "allocs/op (" + jsonObjectAllocs[1] + "bytes/op), "
+                + "serializer=" + serializerAllocs[0] + "allocs/op (" + serializerAllocs[1] + "bytes/op)");
+
+        assertTrue(name + ": serializer=" + serializerTime + "ns/op, JSONObject=" + jsonObjectTime + "ns/op.",
+                serializerTime < jsonObjectTime);
+        assertTrue(name + ": serializer=" + serializerAllocs[0] + "allocs/op, JSONObject="
+                + jsonObjectAllocs[0] + "allocs/op.", serializerAllocs[0] < jsonObjectAllocs[0]);
+    }
+
+    /**
+     * 指定回数変換する間のアロケーション数とサイズを計測する.
+     * <p>
+     * {@link Debug}のアロケーション数はプロセス全体の値なので、他のスレッドのアロケーションも含まれる。
+     * </p>
+     * @param bundle 変換するBundle
+     * @param serializer BundleJSONSerializerで変換する場合はtrue、JSONObjectを経由する場合はfalse
+     * @return 1回あたりのアロケーション数とアロケーションサイズ(byte)
+     * @throws JSONException 変換に失敗した場合
+     */
+    @SuppressWarnings("deprecation")
+    private static long[] countAllocations(final Bundle bundle, final boolean serializer) throws JSONException {
+        long length = 0;
+        Debug.resetGlobalAllocCount();
+        Debug.resetGlobalAllocSize();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < ALLOC_CONVERSION_COUNT; i++) {
+                if (serializer) {
+                    length += BundleJSONSerializer.toJSONBytes(bundle).length;
+                } else {
+                    length += convertByJSONObject(bundle).length;
+                }
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertTrue(length > 0);
+        return new long[] {Debug.getGlobalAllocCount() / ALLOC_CONVERSION_COUNT,
+                Debug.getGlobalAllocSize() / ALLOC_CONVERSION_COUNT};
+    }
+
+    /**
+     * JSONObjectを経由してUTF-8のバイト列に変換する.
+     * @param bundle 変換するBundle
+     * @return UTF-8のバイト列
+     * @throws JSONException 変換に失敗した場合
+     */
+    private static byte[] convertByJSONObject(final Bundle bundle) throws JSONException {
+        JSONObject root = new JSONObject();
+        DConnectUtil.convertBundleToJSON(root, bundle);
+        try {
+            return root.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * JSONObjectを経由して指定時間変換し続ける.
+     * @param bundle 変換するBundle
+     * @param millis 変換し続ける時間(ms)
+     * @return 1回あたりの時間(ns)
+     * @throws JSONException 変換に失敗した場合
+     */
+    private static long convertByJSONObject(final Bundle bundle, final long millis) throws JSONException {
+        long count = 0;
+        long length = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < BATCH_COUNT; i++) {
+                length += convertByJSONObject(bundle).length;
+            }
+            count += BATCH_COUNT;
+            now = System.nanoTime();
+        } while (now < end);
+        assertTrue(length > 0);
+        return (now - start) / count;
+    }
+
+    /**
+     * BundleJSONSerializerで指定時間変換し続ける.
+     * @param bundle 変換するBundle
+     * @param millis 変換し続ける時間(ms)
+     * @return 1回あたりの時間(ns)
+     * @throws JSONException 変換に失敗した場合
+     */
+    private static long convertBySerializer(final Bundle bundle, final long millis) throws JSONException {
+        long count = 0;
+        long length = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do {
+            for (int i = 0; i < BATCH_COUNT; i++) {
+                length += BundleJSONSerializer.toJSONBytes(bundle).length;
+            }
+            count += BATCH_COUNT;
+            now = System.nanoTime();
+        } while (now < end);
+        assertTrue(length > 0);
+        return (now - start) / count;
+    }
+}
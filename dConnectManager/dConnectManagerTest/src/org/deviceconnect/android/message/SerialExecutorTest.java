@@ -0,0 +1,127 @@
+/*
+ SerialExecutorTest.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.message;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.test.AndroidTestCase;
+
+/**
+ * SerialExecutorが、タスクを受け付けられなかった後も実行を続けられることを確認するテスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class SerialExecutorTest extends AndroidTestCase {
+
+    /** テスト用のExecutor. */
+    private ManualExecutor mExecutor;
+
+    /** テスト対象のExecutor. */
+    private SerialExecutor mSerialExecutor;
+
+    /** 実行したタスクの名前. */
+    private List<String> mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = new ManualExecutor();
+        mSerialExecutor = new SerialExecutor(mExecutor);
+        mResults = new ArrayList<String>();
+    }
+
+    /**
+     * 最初のタスクが受け付けられなかった後に、次のタスクを追加する.
+     * <pre>
+     * 【期待する動作】
+     * ・受け付けられなかったタスクでRejectedExecutionExceptionが発生すること。
+     * ・受け付けられなかったタスクは実行されないこと。
+     * ・次に追加したタスクが実行されること。
+     * </pre>
+     */
+    public void testRejectedTask() {
+        mExecutor.mRejecting = true;
+        try {
+            mSerialExecutor.execute(createTask("a"));
+            fail("RejectedExecutionException was not thrown.");
+        } catch (RejectedExecutionException e) {
+            // 期待する動作
+        }
+
+        mExecutor.mRejecting = false;
+        mSerialExecutor.execute(createTask("b"));
+        mExecutor.runAll();
+        assertEquals("[b]", mResults.toString());
+    }
+
+    /**
+     * 実行中のタスクが終了した時に、次のタスクが受け付けられなかった場合.
+     * <pre>
+     * 【期待する動作】
+     * ・タスクを実行したスレッドに例外が投げられないこと。
+     * ・受け付けられなかったタスクは、次に追加したタスクより先に実行されること。
+     * </pre>
+     */
+    public void testRejectedNextTask() {
+        mSerialExecutor.execute(createTask("a"));
+        mSerialExecutor.execute(createTask("b"));
+
+        mExecutor.mRejecting = true;
+        mExecutor.runAll();
+        assertEquals("[a]", mResults.toString());
+
+        mExecutor.mRejecting = false;
+        mSerialExecutor.execute(createTask("c"));
+        mExecutor.runAll();
+        assertEquals("[a, b, c]", mResults.toString());
+    }
+
+    /**
+     * 実行した時に名前を記録するタスクを作成する.
+     * @param name タスクの名前
+     * @return タスク
+     */
+    private Runnable createTask(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mResults.add(name);
+            }
+        };
+    }
+
+    /**
+     * 受け付けたタスクを{@link #runAll()}で実行するExecutor.
+     */
+    private static class ManualExecutor implements Executor {
+        /** 受け付けたタスク. */
+        private final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+
+        /** タスクを受け付けない場合はtrue. */
+        private boolean mRejecting;
+
+        @Override
+        public void execute(final Runnable task) {
+            if (mRejecting) {
+                throw new RejectedExecutionException();
+            }
+            mTasks.add(task);
+        }
+
+        /**
+         * 受け付けたタスクを全て実行する.
+         */
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.removeFirst().run();
+            }
+        }
+    }
+}
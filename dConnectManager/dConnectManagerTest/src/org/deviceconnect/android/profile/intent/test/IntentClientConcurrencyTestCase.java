@@ -0,0 +1,198 @@
+/*
+ IntentClientConcurrencyTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.intent.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.intent.DConnectAndroidClientTask;
+import org.deviceconnect.message.intent.DConnectAndroidResponseReceiver;
+import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * SDKのIntent通信で、同時に送信したリクエストとレスポンスの対応付けのテスト.
+ * <p>
+ * Device Connect Managerの代わりに、受け取ったリクエストに対して送信順とは異なる順番でレスポンスを返却する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class IntentClientConcurrencyTestCase extends AndroidTestCase {
+
+    /** タグ. */
+    private static final String TAG = "IntentClientConcurrency";
+
+    /** 同時に送信するリクエスト数. */
+    private static final int CALL_COUNT = 100;
+
+    /** 1リクエストのタイムアウト時間(ms). */
+    private static final long CALL_TIMEOUT = 10000;
+
+    /** レスポンスを受け取ってから呼び出し元に戻るまでの時間の上限(ns). */
+    private static final long MAX_DISPATCH_TIME = 1000000;
+
+    /** リクエストを識別するためのパラメータ名. */
+    private static final String PARAM_TAG = "tag";
+
+    /** レスポンスを受信した時刻のパラメータ名. */
+    private static final String PARAM_RECEIVED_TIME = "receivedTime";
+
+    /**
+     * 100件のリクエストを同時に送信し、それぞれのリクエストに対応するレスポンスが返却されることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・全てのリクエストで、送信したタグと同じタグのレスポンスが返ってくること。
+     * ・レスポンスを受信してから呼び出し元に戻るまでの時間の中央値が1ms未満であること。
+     * ・全てのレスポンスを受け取った後に、処理中のリクエストが残っていないこと。
+     * </pre>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testConcurrentRequests() throws Exception {
+        final LinkedBlockingQueue<Intent> requests = new LinkedBlockingQueue<Intent>();
+        final Context context = new ContextWrapper(getContext()) {
+            @Override
+            public void sendBroadcast(final Intent intent) {
+                requests.add(new Intent(intent));
+            }
+        };
+
+        // Device Connect Managerの代わりに、全てのリクエストが揃ってから送信順とは異なるランダムな順番でレスポンスを返す
+        Thread responder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DConnectAndroidResponseReceiver receiver = new DConnectAndroidResponseReceiver();
+                List<Intent> received = new ArrayList<Intent>();
+                try {
+                    while (received.size() < CALL_COUNT) {
+                        Intent request = requests.poll(CALL_TIMEOUT, TimeUnit.MILLISECONDS);
+                        if (request == null) {
+                            return;
+                        }
+                        received.add(request);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Collections.shuffle(received);
+                for (Intent request : received) {
+                    Intent response = new Intent(IntentDConnectMessage.ACTION_RESPONSE);
+                    response.putExtra(DConnectMessage.EXTRA_REQUEST_CODE,
+                            request.getIntExtra(DConnectMessage.EXTRA_REQUEST_CODE, 0));
+                    response.putExtra(DConnectMessage.EXTRA_RESULT, DConnectMessage.RESULT_OK);
+                    response.putExtra(PARAM_TAG, request.getStringExtra(PARAM_TAG));
+                    response.putExtra(PARAM_RECEIVED_TIME, System.nanoTime());
+                    receiver.onReceive(getContext(), response);
+                }
+            }
+        });
+        responder.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALL_COUNT);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < CALL_COUNT; i++) {
+                final String tag = "request-" + i;
+                final TestClientTask task = new TestClientTask(context);
+                task.setEventTimeout(CALL_TIMEOUT);
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        Intent request = new Intent(IntentDConnectMessage.ACTION_GET);
+                        request.putExtra(PARAM_TAG, tag);
+                        Intent response = task.send(request);
+                        long returned = System.nanoTime();
+                        assertNotNull(response);
+                        assertEquals(DConnectMessage.RESULT_OK,
+                                response.getIntExtra(DConnectMessage.EXTRA_RESULT, -1));
+                        assertEquals(tag, response.getStringExtra(PARAM_TAG));
+                        return returned - response.getLongExtra(PARAM_RECEIVED_TIME, returned);
+                    }
+                }));
+            }
+
+            long[] dispatchTimes = new long[CALL_COUNT];
+            for (int i = 0; i < CALL_COUNT; i++) {
+                dispatchTimes[i] = futures.get(i).get(CALL_TIMEOUT * 2, TimeUnit.MILLISECONDS);
+            }
+            responder.join(CALL_TIMEOUT);
+
+            Arrays.sort(dispatchTimes);
+            long median = dispatchTimes[CALL_COUNT / 2];
+            Log.i(TAG, "dispatch time(ns): median=" + median
+                    + " max=" + dispatchTimes[CALL_COUNT - 1]);
+            assertTrue("median dispatch time is " + median + "ns.", median < MAX_DISPATCH_TIME);
+            assertEquals(0, IntentResponseCorrelator.INSTANCE.getPendingCount());
+        } finally {
+            executor.shutdownNow();
+            responder.interrupt();
+        }
+    }
+
+    /**
+     * タイムアウトした場合にタイムアウトのエラーが返却され、処理中のリクエストが残らないことを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・errorCodeにタイムアウトのエラーコードが返ってくること。
+     * ・処理中のリクエストが残っていないこと。
+     * </pre>
+     */
+    public void testTimeout() {
+        Context context = new ContextWrapper(getContext()) {
+            @Override
+            public void sendBroadcast(final Intent intent) {
+                // レスポンスを返却しない
+            }
+        };
+        TestClientTask task = new TestClientTask(context);
+        task.setEventTimeout(100);
+        Intent response = task.send(new Intent(IntentDConnectMessage.ACTION_GET));
+
+        assertEquals(DConnectMessage.RESULT_ERROR,
+                response.getIntExtra(DConnectMessage.EXTRA_RESULT, -1));
+        assertEquals(DConnectMessage.ErrorCode.TIMEOUT.getCode(),
+                response.getIntExtra(DConnectMessage.EXTRA_ERROR_CODE, -1));
+        assertEquals(0, IntentResponseCorrelator.INSTANCE.getPendingCount());
+    }
+
+    /**
+     * 呼び出し元のスレッドでリクエストを送信するタスク.
+     */
+    private static class TestClientTask extends DConnectAndroidClientTask {
+
+        /**
+         * コンストラクタ.
+         * @param context コンテキスト
+         */
+        TestClientTask(final Context context) {
+            super(context);
+        }
+
+        /**
+         * リクエストを送信し、レスポンスを受け取るまで待つ.
+         * @param request リクエスト
+         * @return レスポンス
+         */
+        Intent send(final Intent request) {
+            return doInBackground(request);
+        }
+    }
+}
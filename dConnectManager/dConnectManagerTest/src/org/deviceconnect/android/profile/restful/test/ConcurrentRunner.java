@@ -0,0 +1,118 @@
+/*
+ ConcurrentRunner.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.AssertionFailedError;
+
+/**
+ * 負荷テストで、複数のスレッドから同時に処理を実行するクラス.
+ * <p>
+ * 全てのスレッドが起動してから一斉に処理を開始し、全ての処理が終わるまで待つ。<br>
+ * 処理中に発生した例外やアサーションの失敗は、全ての処理が終わった後に呼び出し元のスレッドで報告する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+final class ConcurrentRunner {
+
+    /**
+     * 同時に実行する処理.
+     */
+    interface Task {
+        /**
+         * 処理を実行する.
+         * @param index 処理の番号。0から処理数-1まで
+         * @throws Exception 処理に失敗した場合
+         */
+        void run(int index) throws Exception;
+    }
+
+    /**
+     * ユーティリティクラスのためprivate.
+     */
+    private ConcurrentRunner() {
+    }
+
+    /**
+     * 処理毎にスレッドを用意して、全ての処理を同時に実行する.
+     * @param count 処理数
+     * @param task 処理
+     * @return 処理を開始してから全ての処理が終わるまでの時間(ms)
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    static long run(final int count, final Task task) throws InterruptedException {
+        return run(count, count, task);
+    }
+
+    /**
+     * 指定された数のスレッドで処理を分担して実行する.
+     * <p>
+     * 各スレッドは、処理が終わると次の番号の処理を実行する。
+     * </p>
+     * @param count 処理数
+     * @param threadCount スレッド数
+     * @param task 処理
+     * @return 処理を開始してから全ての処理が終わるまでの時間(ms)
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    static long run(final int count, final int threadCount, final Task task) throws InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+        final CountDownLatch ready = new CountDownLatch(threadCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    int index;
+                    while ((index = next.getAndIncrement()) < count) {
+                        try {
+                            task.run(index);
+                        } catch (Throwable e) {
+                            failures.incrementAndGet();
+                            firstFailure.compareAndSet(null, e);
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        long begin;
+        try {
+            ready.await();
+        } finally {
+            // 割り込まれた場合もスレッドが待ち続けないように開始させる
+            begin = System.currentTimeMillis();
+            start.countDown();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.currentTimeMillis() - begin;
+
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            AssertionFailedError error = new AssertionFailedError(failures.get() + "/" + count
+                    + " tasks failed. " + failure);
+            error.initCause(failure);
+            throw error;
+        }
+        return elapsed;
+    }
+}
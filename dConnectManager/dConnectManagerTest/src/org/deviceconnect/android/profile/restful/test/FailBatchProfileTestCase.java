@@ -0,0 +1,206 @@
+/*
+ FailBatchProfileTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.deviceconnect.message.DConnectMessage.ErrorCode;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.BatteryProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Batchプロファイルの異常系テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class FailBatchProfileTestCase extends RESTfulDConnectTestCase {
+
+    /** プロファイル名: {@value} . */
+    private static final String PROFILE_NAME = "batch";
+
+    /** パラメータ: {@value} . */
+    private static final String PARAM_REQUESTS = "requests";
+
+    /** パラメータ: {@value} . */
+    private static final String PARAM_RESPONSES = "responses";
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public FailBatchProfileTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 定義されていないメソッドでバッチリクエストを送信するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: GET
+     * Path: /batch
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに1が返ってくること。
+     * ・errorCodeに3が返ってくること。
+     * </pre>
+     */
+    public void testGetBatch() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            HttpUriRequest request = new HttpGet(builder.toString());
+            JSONObject root = sendRequest(request);
+            assertResultError(ErrorCode.NOT_SUPPORT_ACTION.getCode(), root);
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * リクエスト一覧を指定せずにバッチリクエストを送信するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: POST
+     * Path: /batch
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに1が返ってくること。
+     * ・errorCodeに10が返ってくること。
+     * </pre>
+     */
+    public void testPostBatchNoRequests() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            HttpUriRequest request = new HttpPost(builder.toString());
+            JSONObject root = sendRequest(request);
+            assertResultError(ErrorCode.INVALID_REQUEST_PARAMETER.getCode(), root);
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * JSONの配列ではないリクエスト一覧を指定してバッチリクエストを送信するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: POST
+     * Path: /batch?requests=abc
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに1が返ってくること。
+     * ・errorCodeに10が返ってくること。
+     * </pre>
+     */
+    public void testPostBatchInvalidRequests() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(PROFILE_NAME);
+        builder.addParameter(PARAM_REQUESTS, "abc");
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            HttpUriRequest request = new HttpPost(builder.toString());
+            JSONObject root = sendRequest(request);
+            assertResultError(ErrorCode.INVALID_REQUEST_PARAMETER.getCode(), root);
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * 同じプロファイルに対して、不正なアクセストークンを指定したリクエストをまとめて実行するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: POST
+     * Path: /batch
+     * Body: [GET /battery/level?serviceId=xxxx, GET /battery/level?serviceId=xxxx&accessToken=不正な値]
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・正しいアクセストークンのリクエストのresultに0が返ってくること。
+     * ・不正なアクセストークンのリクエストのresultに1が返ってくること。
+     * ・不正なアクセストークンのリクエストのerrorCodeに15が返ってくること。
+     * </pre>
+     */
+    public void testPostBatchInvalidAccessTokenItem() {
+        try {
+            String path = "/gotapi/" + BatteryProfileConstants.PROFILE_NAME + "/"
+                    + BatteryProfileConstants.ATTRIBUTE_LEVEL;
+            JSONObject params = new JSONObject();
+            params.put(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+            JSONObject invalidParams = new JSONObject();
+            invalidParams.put(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+            invalidParams.put(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, "invalid_access_token");
+
+            JSONArray requests = new JSONArray();
+            requests.put(createItem("GET", path, params));
+            requests.put(createItem("GET", path, invalidParams));
+
+            JSONObject root = postBatch(requests);
+            assertResultOK(root);
+            JSONArray responses = root.getJSONArray(PARAM_RESPONSES);
+            assertEquals(requests.length(), responses.length());
+            assertResultOK(responses.getJSONObject(0));
+            assertResultError(ErrorCode.NOT_FOUND_CLIENT_ID.getCode(), responses.getJSONObject(1));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * まとめるリクエストを作成する.
+     * @param method HTTPメソッド
+     * @param path パス
+     * @param params パラメータ
+     * @return まとめるリクエスト
+     * @throws JSONException JSONの作成に失敗した場合
+     */
+    private static JSONObject createItem(final String method, final String path, final JSONObject params)
+            throws JSONException {
+        JSONObject item = new JSONObject();
+        item.put("method", method);
+        item.put("path", path);
+        if (params != null) {
+            item.put("params", params);
+        }
+        return item;
+    }
+
+    /**
+     * バッチリクエストを送信する.
+     * @param requests まとめるリクエスト一覧
+     * @return レスポンス
+     */
+    private JSONObject postBatch(final JSONArray requests) {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            HttpPost request = new HttpPost(builder.toString());
+            StringEntity entity = new StringEntity(requests.toString(), "UTF-8");
+            entity.setContentType("application/json");
+            request.setEntity(entity);
+            return sendRequest(request);
+        } catch (UnsupportedEncodingException e) {
+            fail("Exception in StringEntity." + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ NormalBatchProfileTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.deviceconnect.android.test.plugin.profile.TestBatteryProfileConstants;
+import org.deviceconnect.message.DConnectMessage.ErrorCode;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.BatteryProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Batchプロファイルの正常系テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class NormalBatchProfileTestCase extends RESTfulDConnectTestCase {
+
+    /** プロファイル名: {@value} . */
+    private static final String PROFILE_NAME = "batch";
+
+    /** パラメータ: {@value} . */
+    private static final String PARAM_RESPONSES = "responses";
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public NormalBatchProfileTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 複数のリクエストをまとめて実行するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: POST
+     * Path: /batch
+     * Body: [GET /system, GET /battery/level?serviceId=xxxx, GET /battery/charging]
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・responsesにリクエストと同じ順番でレスポンスが返ってくること。
+     * ・各レスポンスのresultに0が返ってくること。
+     * </pre>
+     */
+    public void testPostBatch() {
+        try {
+            JSONArray requests = new JSONArray();
+            requests.put(createItem("GET", "/gotapi/" + SystemProfileConstants.PROFILE_NAME, null));
+            requests.put(createItem("GET", "/gotapi/" + BatteryProfileConstants.PROFILE_NAME + "/"
+                    + BatteryProfileConstants.ATTRIBUTE_LEVEL + "?"
+                    + DConnectProfileConstants.PARAM_SERVICE_ID + "=" + getServiceId(), null));
+            JSONObject params = new JSONObject();
+            params.put(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+            requests.put(createItem("GET", "/gotapi/" + BatteryProfileConstants.PROFILE_NAME + "/"
+                    + BatteryProfileConstants.ATTRIBUTE_CHARGING, params));
+
+            JSONObject root = postBatch(requests);
+            assertResultOK(root);
+            JSONArray responses = root.getJSONArray(PARAM_RESPONSES);
+            assertEquals(requests.length(), responses.length());
+            assertResultOK(responses.getJSONObject(0));
+            assertResultOK(responses.getJSONObject(1));
+            assertEquals(TestBatteryProfileConstants.LEVEL,
+                    responses.getJSONObject(1).getDouble(BatteryProfileConstants.ATTRIBUTE_LEVEL));
+            assertResultOK(responses.getJSONObject(2));
+            assertEquals(TestBatteryProfileConstants.CHARGING,
+                    responses.getJSONObject(2).getBoolean(BatteryProfileConstants.ATTRIBUTE_CHARGING));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * 不正なリクエストを含むリクエストをまとめて実行するテストを行う.
+     * <pre>
+     * 【HTTP通信】
+     * Method: POST
+     * Path: /batch
+     * Body: [GET /battery/level?serviceId=xxxx, GET /invalid]
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・正しいリクエストのresultに0が返ってくること。
+     * ・不正なリクエストのresultに1が返ってくること。
+     * </pre>
+     */
+    public void testPostBatchWithInvalidItem() {
+        try {
+            JSONArray requests = new JSONArray();
+            requests.put(createItem("GET", "/gotapi/" + BatteryProfileConstants.PROFILE_NAME + "/"
+                    + BatteryProfileConstants.ATTRIBUTE_LEVEL + "?"
+                    + DConnectProfileConstants.PARAM_SERVICE_ID + "=" + getServiceId(), null));
+            requests.put(createItem("GET", "/invalid", null));
+
+            JSONObject root = postBatch(requests);
+            assertResultOK(root);
+            JSONArray responses = root.getJSONArray(PARAM_RESPONSES);
+            assertEquals(requests.length(), responses.length());
+            assertResultOK(responses.getJSONObject(0));
+            assertResultError(ErrorCode.INVALID_REQUEST_PARAMETER.getCode(), responses.getJSONObject(1));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * まとめるリクエストを作成する.
+     * @param method HTTPメソッド
+     * @param path パス
+     * @param params パラメータ
+     * @return まとめるリクエスト
+     * @throws JSONException JSONの作成に失敗した場合
+     */
+    private static JSONObject createItem(final String method, final String path, final JSONObject params)
+            throws JSONException {
+        JSONObject item = new JSONObject();
+        item.put("method", method);
+        item.put("path", path);
+        if (params != null) {
+            item.put("params", params);
+        }
+        return item;
+    }
+
+    /**
+     * バッチリクエストを送信する.
+     * @param requests まとめるリクエスト一覧
+     * @return レスポンス
+     */
+    private JSONObject postBatch(final JSONArray requests) {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            HttpPost request = new HttpPost(builder.toString());
+            StringEntity entity = new StringEntity(requests.toString(), "UTF-8");
+            entity.setContentType("application/json");
+            request.setEntity(entity);
+            return sendRequest(request);
+        } catch (UnsupportedEncodingException e) {
+            fail("Exception in StringEntity." + e.getMessage());
+            return null;
+        }
+    }
+}
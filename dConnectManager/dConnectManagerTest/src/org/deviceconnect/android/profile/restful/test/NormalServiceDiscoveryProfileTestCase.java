@@ -6,10 +6,14 @@
  */
 package org.deviceconnect.android.profile.restful.test;
 
+import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.deviceconnect.android.test.plugin.profile.TestServiceDiscoveryProfileConstants;
+import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
 import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
 import org.deviceconnect.utils.URIBuilder;
 import org.json.JSONArray;
@@ -24,6 +28,21 @@ import org.json.JSONObject;
 public class NormalServiceDiscoveryProfileTestCase extends
         RESTfulDConnectTestCase {
 
+    /**
+     * キャッシュを使用せずに問い合わせる場合に指定するパラメータ.
+     */
+    private static final String PARAM_REFRESH = "refresh";
+
+    /**
+     * キャッシュの結果を即座に返却させる場合に指定するパラメータ.
+     */
+    private static final String PARAM_IMMEDIATE = "immediate";
+
+    /**
+     * テスト用デバイスプラグインのレスポンスを遅延させる時間(ミリ秒).
+     */
+    private static final int DELAY = 3000;
+
     /**
      * コンストラクタ.
      * @param string テストタグ
@@ -70,6 +89,137 @@ public class NormalServiceDiscoveryProfileTestCase extends
         }
     }
 
+    /**
+     * キャッシュを使用せずにデバイス一覧を取得するテスト.
+     * <pre>
+     * 【HTTP通信】
+     * Method: GET
+     * Path: /servicediscovery?refresh=true&amp;delay=3000
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・テスト用デバイスプラグインのレスポンスを待ってから返却されること。
+     * ・servicesの中に「Test Success Device」のnameを持ったサービスが存在すること。
+     * </pre>
+     */
+    public void testGetServicesRefresh() {
+        try {
+            long start = System.currentTimeMillis();
+            JSONObject response = getServices(true, false, DELAY);
+            long elapsed = System.currentTimeMillis() - start;
+            assertResultOK(response);
+            assertTrue("elapsed=" + elapsed, elapsed >= DELAY);
+            JSONArray services = response.getJSONArray(
+                    ServiceDiscoveryProfileConstants.PARAM_SERVICES);
+            assertNotNull(getServiceByName(services, TestServiceDiscoveryProfileConstants.DEVICE_NAME));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * キャッシュからデバイス一覧を取得するテスト.
+     * <pre>
+     * 【HTTP通信】
+     * Method: GET
+     * Path: /servicediscovery?refresh=true
+     * Path: /servicediscovery?delay=3000
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・2回目はテスト用デバイスプラグインのレスポンスを待たずに返却されること。
+     * ・servicesの中に「Test Success Device」のnameを持ったサービスが存在すること。
+     * </pre>
+     */
+    public void testGetServicesFromCache() {
+        try {
+            assertResultOK(getServices(true, false, 0));
+
+            long start = System.currentTimeMillis();
+            JSONObject response = getServices(false, false, DELAY);
+            long elapsed = System.currentTimeMillis() - start;
+            assertResultOK(response);
+            assertTrue("elapsed=" + elapsed, elapsed < DELAY);
+            JSONArray services = response.getJSONArray(
+                    ServiceDiscoveryProfileConstants.PARAM_SERVICES);
+            assertNotNull(getServiceByName(services, TestServiceDiscoveryProfileConstants.DEVICE_NAME));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+
+    /**
+     * 即時返却モードでデバイス一覧を取得するテスト.
+     * <pre>
+     * 【HTTP通信】
+     * Method: PUT
+     * Path: /servicediscovery/onservicechange?session_key=xxxx
+     * Method: GET
+     * Path: /servicediscovery?refresh=true&amp;immediate=true&amp;delay=3000
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・resultに0が返ってくること。
+     * ・テスト用デバイスプラグインのレスポンスを待たずに返却されること。
+     * ・遅れて見つかったサービスがonservicechangeイベントで通知されること。
+     * </pre>
+     */
+    public void testGetServicesImmediate() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        builder.setAttribute(ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE);
+        builder.addParameter(DConnectProfileConstants.PARAM_SESSION_KEY, getClientId());
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        try {
+            assertResultOK(sendRequest(new HttpPut(builder.toString())));
+
+            long start = System.currentTimeMillis();
+            JSONObject response = getServices(true, true, DELAY);
+            long elapsed = System.currentTimeMillis() - start;
+            assertResultOK(response);
+            assertTrue("elapsed=" + elapsed, elapsed < DELAY);
+
+            // 遅れて見つかったサービスを受け取る
+            JSONObject event = waitForEvent(DELAY * 2);
+            assertNotNull("event is null.", event);
+            assertEquals(ServiceDiscoveryProfileConstants.PROFILE_NAME,
+                    event.getString(DConnectMessage.EXTRA_PROFILE));
+            assertEquals(ServiceDiscoveryProfileConstants.ATTRIBUTE_ON_SERVICE_CHANGE,
+                    event.getString(DConnectMessage.EXTRA_ATTRIBUTE));
+            assertNotNull(event.getJSONObject(ServiceDiscoveryProfileConstants.PARAM_NETWORK_SERVICE));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        } finally {
+            sendRequest(new HttpDelete(builder.toString()));
+        }
+    }
+
+    /**
+     * デバイス一覧取得リクエストを送信する.
+     * 
+     * @param refresh キャッシュを使用しない場合はtrue
+     * @param immediate 即時返却モードの場合はtrue
+     * @param delay テスト用デバイスプラグインのレスポンスを遅延させる時間(ミリ秒)
+     * @return レスポンス
+     */
+    private JSONObject getServices(final boolean refresh, final boolean immediate, final int delay) {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        if (refresh) {
+            builder.addParameter(PARAM_REFRESH, "true");
+        }
+        if (immediate) {
+            builder.addParameter(PARAM_IMMEDIATE, "true");
+        }
+        if (delay > 0) {
+            builder.addParameter(TestServiceDiscoveryProfileConstants.PARAM_DELAY, String.valueOf(delay));
+        }
+        return sendRequest(new HttpGet(builder.toString()));
+    }
+
     /**
      * 指定した名前をもつサービスをJSON配列から検索する.
      * 
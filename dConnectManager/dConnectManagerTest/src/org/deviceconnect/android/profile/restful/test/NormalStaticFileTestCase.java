@@ -0,0 +1,366 @@
+/*
+ NormalStaticFileTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.profile.FileProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONException;
+
+import android.content.res.AssetManager;
+
+/**
+ * 静的コンテンツの部分取得、条件付き取得の正常系テスト.
+ * <p>
+ * file/sendで送信したファイルはDevice Connect Managerのドキュメントルート配下の
+ * tempフォルダに保存されるので、そのファイルに対して直接リクエストを行う。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class NormalStaticFileTestCase extends RESTfulDConnectTestCase {
+
+    /** バッファサイズを定義. */
+    private static final int BUF_SIZE = 4096;
+
+    /** テストに使用するファイル名. */
+    private static final String FILE_NAME = "test.png";
+
+    /** テストに使用するファイルのパス. */
+    private static final String FILE_PATH = "/temp/" + FILE_NAME;
+
+    /** テストに使用するファイルのデータ. */
+    private byte[] mFileData;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public NormalStaticFileTestCase(final String tag) {
+        super(tag);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFileData = readAsset(FILE_NAME);
+        sendFile(mFileData);
+    }
+
+    /**
+     * Rangeヘッダを指定せずに静的コンテンツを取得する.
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに200が返ってくること。
+     * ・Accept-Ranges、ETag、Last-Modifiedヘッダが返ってくること。
+     * ・ファイル全体が返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFile() throws IOException {
+        HttpResponse response = requestStaticFile(new HttpGet(createStaticFileUri()));
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        assertEquals("bytes", getHeader(response, "Accept-Ranges"));
+        assertNotNull(getHeader(response, "ETag"));
+        assertNotNull(getHeader(response, "Last-Modified"));
+        assertTrue(Arrays.equals(mFileData, readBody(response)));
+    }
+
+    /**
+     * 先頭の1バイトを取得する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=0-0
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに206が返ってくること。
+     * ・先頭の1バイトが返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileRangeFirstByte() throws IOException {
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=0-0");
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+        assertEquals("bytes 0-0/" + mFileData.length, getHeader(response, "Content-Range"));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mFileData, 0, 1), readBody(response)));
+    }
+
+    /**
+     * 末尾の1バイトを取得する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=-1
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに206が返ってくること。
+     * ・末尾の1バイトが返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileRangeSuffix() throws IOException {
+        final int last = mFileData.length - 1;
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=-1");
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+        assertEquals("bytes " + last + "-" + last + "/" + mFileData.length,
+                getHeader(response, "Content-Range"));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mFileData, last, mFileData.length), readBody(response)));
+    }
+
+    /**
+     * ファイルサイズを超える終了位置を指定して取得する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=(size-10)-(size+100)
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに206が返ってくること。
+     * ・終了位置がファイルの末尾に切り詰められること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileRangeOverEnd() throws IOException {
+        final int start = mFileData.length - 10;
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=" + start + "-" + (mFileData.length + 100));
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+        assertEquals("bytes " + start + "-" + (mFileData.length - 1) + "/" + mFileData.length,
+                getHeader(response, "Content-Range"));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mFileData, start, mFileData.length), readBody(response)));
+    }
+
+    /**
+     * 複数の範囲を指定して取得する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=0-9,20-29
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに206が返ってくること。
+     * ・Content-Typeにmultipart/byterangesが返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileMultipleRanges() throws IOException {
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=0-9,20-29");
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+        assertTrue(getHeader(response, "Content-Type").startsWith("multipart/byteranges"));
+        byte[] body = readBody(response);
+        assertEquals(response.getEntity().getContentLength(), body.length);
+    }
+
+    /**
+     * ファイルサイズ以降の範囲を指定して取得する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=(size)-
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに416が返ってくること。
+     * ・Content-Rangeにファイルサイズが返ってくること。
+     * </pre>
+     */
+    public void testGetStaticFileRangeNotSatisfiable() {
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=" + mFileData.length + "-");
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusLine().getStatusCode());
+        assertEquals("bytes */" + mFileData.length, getHeader(response, "Content-Range"));
+    }
+
+    /**
+     * If-RangeのETagが一致しない場合にRangeヘッダが無視されることを確認する.
+     * <pre>
+     * 【HTTP通信】
+     * Range: bytes=0-9
+     * If-Range: "invalid"
+     * </pre>
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに200が返ってくること。
+     * ・ファイル全体が返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileIfRangeMismatch() throws IOException {
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=0-9");
+        request.setHeader("If-Range", "\"invalid\"");
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        assertTrue(Arrays.equals(mFileData, readBody(response)));
+    }
+
+    /**
+     * If-RangeのETagが一致する場合に部分取得できることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに206が返ってくること。
+     * </pre>
+     * @throws IOException IO Exception
+     */
+    public void testGetStaticFileIfRangeMatch() throws IOException {
+        String etag = getHeader(requestStaticFile(new HttpGet(createStaticFileUri())), "ETag");
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("Range", "bytes=0-9");
+        request.setHeader("If-Range", etag);
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mFileData, 0, 10), readBody(response)));
+    }
+
+    /**
+     * If-None-MatchのETagが一致する場合に304が返ることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに304が返ってくること。
+     * </pre>
+     */
+    public void testGetStaticFileIfNoneMatch() {
+        String etag = getHeader(requestStaticFile(new HttpGet(createStaticFileUri())), "ETag");
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("If-None-Match", etag);
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine().getStatusCode());
+    }
+
+    /**
+     * If-Modified-Sinceに最終更新日時を指定した場合に304が返ることを確認する.
+     * <pre>
+     * 【期待する動作】
+     * ・ステータスコードに304が返ってくること。
+     * </pre>
+     */
+    public void testGetStaticFileIfModifiedSince() {
+        String lastModified = getHeader(requestStaticFile(new HttpGet(createStaticFileUri())), "Last-Modified");
+        HttpGet request = new HttpGet(createStaticFileUri());
+        request.setHeader("If-Modified-Since", lastModified);
+        HttpResponse response = requestStaticFile(request);
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatusLine().getStatusCode());
+    }
+
+    /**
+     * 静的コンテンツへのURIを作成する.
+     * @return URI
+     */
+    private String createStaticFileUri() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setPath(FILE_PATH);
+        return builder.toString();
+    }
+
+    /**
+     * 静的コンテンツを要求する.
+     * @param request HTTPリクエスト
+     * @return HTTPレスポンス
+     */
+    private HttpResponse requestStaticFile(final HttpGet request) {
+        HttpResponse response = requestHttpResponse(request);
+        assertNotNull(response);
+        return response;
+    }
+
+    /**
+     * レスポンスヘッダの値を取得する.
+     * @param response HTTPレスポンス
+     * @param name ヘッダ名
+     * @return ヘッダの値。存在しない場合はnull
+     */
+    private String getHeader(final HttpResponse response, final String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * レスポンスのボディを読み込む.
+     * @param response HTTPレスポンス
+     * @return ボディのデータ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private byte[] readBody(final HttpResponse response) throws IOException {
+        InputStream in = response.getEntity().getContent();
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * assetsからファイルを読み込む.
+     * @param name ファイル名
+     * @return ファイルのデータ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private byte[] readAsset(final String name) throws IOException {
+        AssetManager manager = getApplicationContext().getAssets();
+        InputStream in = manager.open(name);
+        try {
+            return readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * ストリームから全てのデータを読み込む.
+     * @param in ストリーム
+     * @return データ
+     * @throws IOException 読み込みに失敗した場合
+     */
+    private byte[] readAll(final InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[BUF_SIZE];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * file/sendでファイルを送信し、ドキュメントルート配下に保存させる.
+     * @param data ファイルのデータ
+     * @throws JSONException レスポンスの解析に失敗した場合
+     */
+    private void sendFile(final byte[] data) throws JSONException {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(FileProfileConstants.PROFILE_NAME);
+        builder.setAttribute(FileProfileConstants.ATTRIBUTE_SEND);
+        builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+        builder.addParameter(DConnectMessage.EXTRA_ACCESS_TOKEN, getAccessToken());
+        builder.addParameter(FileProfileConstants.PARAM_PATH, "/test/" + FILE_NAME);
+
+        MultipartEntity entity = new MultipartEntity();
+        entity.addPart(FileProfileConstants.PARAM_DATA, new BinaryBody(data, FILE_NAME));
+        HttpPost request = new HttpPost(builder.toString());
+        request.setEntity(entity);
+        assertResultOK(sendRequest(request));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ StressAccessTokenTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.deviceconnect.message.DConnectMessage.ErrorCode;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.BatteryProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * dConnectManagerのアクセストークンのチェックに対する負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressAccessTokenTestCase extends RESTfulDConnectTestCase {
+
+    /** リクエストの連続送信回数. */
+    private static final int REQUEST_COUNT = 1000;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressAccessTokenTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * アクセストークンのチェックのみを行って即座にエラーが返るリクエストを連続で送信し、
+     * アクセストークンのチェックのスループットを計測する.
+     * サービスIDを指定しないので、デバイスプラグインへは送信されない.
+     * </p>
+     */
+    public void testStressTestDConnectManagerCheckAccessTokenThroughput() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(BatteryProfileConstants.PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        HttpUriRequest request = new HttpGet(builder.toString());
+        try {
+            JSONObject[] responses = new JSONObject[REQUEST_COUNT];
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = sendRequest(request);
+            }
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            mLogger.info("checkAccessToken throughput=" + (REQUEST_COUNT * 1000L / elapsed) + "req/s");
+            for (int i = 0; i < responses.length; i++) {
+                // アクセストークンのチェックを通過していれば、サービスIDが無いエラーになる
+                assertResultError(ErrorCode.EMPTY_SERVICE_ID.getCode(), responses[i]);
+            }
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ StressBatchTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.UnsupportedEncodingException;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.BatteryProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * batchプロファイルでまとめて送信するリクエストの負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressBatchTestCase extends RESTfulDConnectTestCase {
+
+    /** バッチでまとめるリクエスト数. */
+    private static final int BATCH_SIZE = 10;
+
+    /** バッチのスループット計測時の繰り返し回数. */
+    private static final int BATCH_ROUNDS = 20;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressBatchTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 同じリクエストを1件ずつ送信した場合と、batchプロファイルでまとめて送信した場合の
+     * スループットを計測し、まとめて送信した方が速いことを確認する.
+     * </p>
+     */
+    public void testStressTestDConnectManagerBatchThroughput() {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(BatteryProfileConstants.PROFILE_NAME);
+        builder.setAttribute(BatteryProfileConstants.ATTRIBUTE_LEVEL);
+        builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        HttpUriRequest request = new HttpGet(builder.toString());
+
+        JSONArray items = new JSONArray();
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                JSONObject item = new JSONObject();
+                item.put("method", "GET");
+                item.put("path", "/gotapi/" + BatteryProfileConstants.PROFILE_NAME + "/"
+                        + BatteryProfileConstants.ATTRIBUTE_LEVEL + "?"
+                        + DConnectProfileConstants.PARAM_SERVICE_ID + "=" + getServiceId());
+                items.put(item);
+            }
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+        builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile("batch");
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        HttpPost batch = new HttpPost(builder.toString());
+        try {
+            StringEntity entity = new StringEntity(items.toString(), "UTF-8");
+            entity.setContentType("application/json");
+            batch.setEntity(entity);
+        } catch (UnsupportedEncodingException e) {
+            fail("Exception in StringEntity." + e.getMessage());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < BATCH_ROUNDS * BATCH_SIZE; i++) {
+                assertResultOK(sendRequest(request));
+            }
+            long single = Math.max(1, System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            for (int i = 0; i < BATCH_ROUNDS; i++) {
+                JSONObject root = sendRequest(batch);
+                assertResultOK(root);
+                JSONArray responses = root.getJSONArray("responses");
+                assertEquals(BATCH_SIZE, responses.length());
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    assertResultOK(responses.getJSONObject(j));
+                }
+            }
+            long batched = Math.max(1, System.currentTimeMillis() - start);
+
+            int total = BATCH_ROUNDS * BATCH_SIZE;
+            mLogger.info("single throughput=" + (total * 1000L / single) + "req/s, "
+                    + "batch throughput=" + (total * 1000L / batched) + "req/s");
+            assertTrue(batched < single);
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ StressConnectionLimitTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+
+/**
+ * dConnectManagerの最大コネクション数に対する負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressConnectionLimitTestCase extends RESTfulDConnectTestCase {
+
+    /** 同時リクエスト数. */
+    private static final int CONCURRENCY = 300;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressConnectionLimitTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 最大コネクション数を超える同時リクエストを行い、処理しきれないリクエストには
+     * Retry-Afterヘッダ付きの503が即座に返却されることを確認する.
+     * </p>
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    public void testStressTestDConnectManagerConnectionLimit() throws InterruptedException {
+        final HttpResponse[] responses = new HttpResponse[CONCURRENCY];
+        ConcurrentRunner.run(CONCURRENCY, new ConcurrentRunner.Task() {
+            @Override
+            public void run(final int index) {
+                URIBuilder builder = TestURIBuilder.createURIBuilder();
+                builder.setProfile("unique");
+                builder.setAttribute("heavy");
+                builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+                builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+                builder.addParameter("key", Integer.toString(index));
+                responses[index] = requestHttpResponse(new HttpGet(builder.toString()));
+            }
+        });
+        for (int i = 0; i < responses.length; i++) {
+            HttpResponse response = responses[i];
+            assertNotNull(response);
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                assertNotNull(response.getFirstHeader("Retry-After"));
+            } else {
+                assertEquals(HttpStatus.SC_OK, status);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ StressConnectionPoolTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.http.impl.client.HttpDConnectClient;
+import org.deviceconnect.profile.AvailabilityProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * SDKのコネクションプールを使用したHTTPクライアントの負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressConnectionPoolTestCase extends RESTfulDConnectTestCase {
+
+    /** リクエストの連続送信回数. */
+    private static final int REQUEST_COUNT = 1000;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressConnectionPoolTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * リクエスト毎にHTTPクライアントを生成した場合と、SDKのコネクションプールを共有する
+     * {@link HttpDConnectClient}でkeep-aliveのコネクションを使い回した場合のスループットを計測し、
+     * 使い回した方が速いことを確認する.
+     * </p>
+     * @throws IOException 通信に失敗した場合
+     */
+    public void testStressTestDConnectManagerPooledConnectionThroughput() throws IOException {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(AvailabilityProfileConstants.PROFILE_NAME);
+        String uri = builder.toString();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            DefaultHttpClient client = new DefaultHttpClient();
+            try {
+                assertAvailable(client, uri);
+            } finally {
+                client.getConnectionManager().shutdown();
+            }
+        }
+        long unpooled = Math.max(1, System.currentTimeMillis() - start);
+
+        HttpDConnectClient pooledClient = new HttpDConnectClient();
+        start = System.currentTimeMillis();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            assertAvailable(pooledClient, uri);
+        }
+        long pooled = Math.max(1, System.currentTimeMillis() - start);
+
+        mLogger.info("per-request client throughput=" + (REQUEST_COUNT * 1000L / unpooled) + "req/s, "
+                + "pooled client throughput=" + (REQUEST_COUNT * 1000L / pooled) + "req/s");
+        assertTrue(pooled < unpooled);
+    }
+
+    /**
+     * availabilityプロファイルにリクエストを送信し、正常に応答することを確認する.
+     * <p>
+     * レスポンスのボディは最後まで読み込み、コネクションを再利用できる状態にする.
+     * </p>
+     * @param client HTTPクライアント
+     * @param uri availabilityプロファイルのURI
+     * @throws IOException 通信に失敗した場合
+     */
+    private void assertAvailable(final HttpClient client, final String uri) throws IOException {
+        HttpUriRequest request = new HttpGet(uri);
+        request.setHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN, getOrigin());
+        HttpResponse response = client.execute(request);
+        assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        try {
+            assertResultOK(new JSONObject(EntityUtils.toString(response.getEntity(), "UTF-8")));
+        } catch (JSONException e) {
+            fail("Exception in JSONObject." + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ StressEventRateLimitTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPut;
+import org.deviceconnect.android.event.EventManager;
+
+/**
+ * 送信間隔を指定して登録したイベントの負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressEventRateLimitTestCase extends StressWebSocketTestCase {
+
+    /** 送信するイベント数. */
+    private static final int RATE_LIMIT_EVENT_COUNT = 200;
+
+    /** イベントを送信する周期(ms). 200Hzのセンサーを模擬する. */
+    private static final int RATE_LIMIT_EVENT_PERIOD = 5;
+
+    /** イベントの登録時に指定する送信間隔(ms). */
+    private static final int RATE_LIMIT_EVENT_INTERVAL = 100;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressEventRateLimitTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 送信間隔を指定してイベントを登録し、200Hzでイベントを送信した場合に、
+     * 送信間隔に応じた数までイベントがまとめられ、最後のイベントは必ず受信できることを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerEventRateLimit() throws Exception {
+        final String sessionKey = getClientId() + "_rate";
+        IndexedEventClient client = new IndexedEventClient(sessionKey);
+        client.connect();
+        try {
+            // セッションキーが登録されるのを待つ
+            Thread.sleep(SESSION_KEY_WAIT);
+            assertResultOK(sendRequest(new HttpPut(createUniqueEventUri(sessionKey)
+                    + "&" + EventManager.EXTRA_INTERVAL + "=" + RATE_LIMIT_EVENT_INTERVAL)));
+
+            long start = System.currentTimeMillis();
+            assertResultOK(sendRequest(createBurstRequest(RATE_LIMIT_EVENT_COUNT, 0, RATE_LIMIT_EVENT_PERIOD)));
+            int lastIndex = client.waitForIndex(RATE_LIMIT_EVENT_COUNT - 1, BURST_EVENT_TIMEOUT);
+            long elapsed = System.currentTimeMillis() - start;
+            int received = client.getReceivedCount();
+            mLogger.info("event rate limit test: received=" + received + "/" + RATE_LIMIT_EVENT_COUNT
+                    + " elapsed=" + elapsed + "ms");
+            assertEquals(RATE_LIMIT_EVENT_COUNT - 1, lastIndex);
+            // 送信にかかった時間を送信間隔で割った数に、最初と最後のイベントを加えた程度しか届かないこと
+            assertTrue("received=" + received, received <= elapsed / RATE_LIMIT_EVENT_INTERVAL + 2);
+        } finally {
+            sendRequest(new HttpDelete(createUniqueEventUri(sessionKey)));
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ StressHmacTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+
+/**
+ * dConnectManagerがレスポンスに付与するHMACの負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressHmacTestCase extends RESTfulDConnectTestCase {
+
+    /** HMACを検証するレスポンス数. */
+    private static final int HMAC_RESPONSE_COUNT = 100000;
+
+    /** HMACを検証する際の同時リクエスト数. */
+    private static final int HMAC_CONCURRENCY = 10;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressHmacTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 大量のレスポンスに付与されるHMACが全て正しいことを確認し、スループットを計測する.
+     * HMACの検証は{@link #sendRequest(HttpUriRequest)}の中で行われる.
+     * </p>
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    public void testStressTestDConnectManagerHmacThroughput() throws InterruptedException {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(SystemProfileConstants.PROFILE_NAME);
+        final String uri = builder.toString();
+        long elapsed = ConcurrentRunner.run(HMAC_RESPONSE_COUNT, HMAC_CONCURRENCY, new ConcurrentRunner.Task() {
+            @Override
+            public void run(final int index) throws Exception {
+                assertResultOK(sendRequest(new HttpGet(uri)));
+            }
+        });
+        mLogger.info("HMAC throughput=" + (HMAC_RESPONSE_COUNT * 1000L / Math.max(1, elapsed)) + "res/s");
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ StressLargeFileTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+
+/**
+ * filesプロファイルで大きなファイルを取得する負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressLargeFileTestCase extends RESTfulDConnectTestCase {
+
+    /** バッファサイズを定義. */
+    private static final int BUF_SIZE = 4096;
+
+    /** filesプロファイルで取得する大きなファイルの名前. */
+    private static final String LARGE_FILE_NAME = "large.dat";
+
+    /** filesプロファイルで取得する大きなファイルのサイズ. */
+    private static final long LARGE_FILE_SIZE = 200L * 1024 * 1024;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressLargeFileTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * filesプロファイルから200MBのファイルを取得する.
+     * ファイル全体がヒープに展開されると、Device Connect Managerのヒープサイズを超えるため失敗する.
+     * </p>
+     * @throws IOException IO Exception
+     */
+    public void testStressTestDConnectManagerProfileFilesLargeData() throws IOException {
+        File file = new File(getApplicationContext().getFilesDir(), LARGE_FILE_NAME);
+        createLargeFile(file, LARGE_FILE_SIZE);
+        try {
+            URIBuilder builder = TestURIBuilder.createURIBuilder();
+            builder.setProfile("files");
+            builder.addParameter(DConnectProfileConstants.PARAM_URI,
+                    "content://org.deviceconnect.android.test.file/" + LARGE_FILE_NAME);
+            builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+            HttpResponse response = requestHttpResponse(new HttpGet(builder.toString()));
+            assertNotNull(response);
+            assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+            assertEquals(LARGE_FILE_SIZE, response.getEntity().getContentLength());
+
+            long total = 0;
+            InputStream in = response.getEntity().getContent();
+            try {
+                byte[] buf = new byte[BUF_SIZE];
+                int len;
+                while ((len = in.read(buf)) > 0) {
+                    total += len;
+                }
+            } finally {
+                in.close();
+            }
+            assertEquals(LARGE_FILE_SIZE, total);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 指定されたサイズのファイルを作成する.
+     * @param file 作成するファイル
+     * @param size ファイルサイズ
+     * @throws IOException ファイルの書き込みに失敗した場合
+     */
+    private void createLargeFile(final File file, final long size) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buf = new byte[BUF_SIZE];
+            long remaining = size;
+            while (remaining > 0) {
+                int len = (int) Math.min(buf.length, remaining);
+                out.write(buf, 0, len);
+                remaining -= len;
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ StressLatencyTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.util.Arrays;
+
+import org.apache.http.client.methods.HttpGet;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONObject;
+
+/**
+ * 同時リクエスト数に対するdConnectManagerのレスポンス時間の負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressLatencyTestCase extends RESTfulDConnectTestCase {
+
+    /** レスポンス時間を計測する同時リクエスト数. */
+    private static final int[] CONCURRENCY_LEVELS = {10, 50, 100};
+
+    /** 同時リクエスト数毎に計測するレスポンス数. */
+    private static final int LATENCY_SAMPLES = 1000;
+
+    /** 計測前に送信するリクエスト数. */
+    private static final int WARMUP_COUNT = 100;
+
+    /** 計測するパーセンタイル. */
+    private static final double PERCENTILE = 0.99;
+
+    /** 基準とする99パーセンタイル値の下限値(ms). 数ミリ秒の揺らぎで倍率が大きくならないようにする. */
+    private static final long MIN_BASE_LATENCY = 100;
+
+    /** 同時リクエスト数を増やした時に許容する99パーセンタイル値の倍率. */
+    private static final int LATENCY_SCALE_LIMIT = 5;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressLatencyTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 最も少ない同時リクエスト数での99パーセンタイル値を基準とし、
+     * 同時リクエスト数を増やしても99パーセンタイル値が基準の数倍に収まることを確認する.
+     * </p>
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    public void testStressTestDConnectManagerLatencyScaling() throws InterruptedException {
+        measureLatencies(CONCURRENCY_LEVELS[0], WARMUP_COUNT);
+        long baseP99 = -1;
+        for (int concurrency : CONCURRENCY_LEVELS) {
+            long[] latencies = measureLatencies(concurrency, LATENCY_SAMPLES);
+            long median = latencies[latencies.length / 2];
+            long p99 = latencies[(int) Math.ceil(latencies.length * PERCENTILE) - 1];
+            mLogger.info("concurrency=" + concurrency + " median=" + median + "ms p99=" + p99 + "ms");
+            if (baseP99 < 0) {
+                baseP99 = Math.max(p99, MIN_BASE_LATENCY);
+            } else {
+                assertTrue("concurrency=" + concurrency + " p99 latency grew from " + baseP99 + "ms to " + p99 + "ms",
+                        p99 <= baseP99 * LATENCY_SCALE_LIMIT);
+            }
+        }
+    }
+
+    /**
+     * 指定された同時リクエスト数でリクエストを行い、レスポンス時間を計測する.
+     * <p>
+     * 各スレッドはレスポンスを受け取るとすぐに次のリクエストを送信する.
+     * </p>
+     * @param concurrency 同時リクエスト数
+     * @param count 計測するレスポンス数
+     * @return 昇順に並べたレスポンス時間(ms)
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    private long[] measureLatencies(final int concurrency, final int count) throws InterruptedException {
+        final long[] latencies = new long[count];
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile(SystemProfileConstants.PROFILE_NAME);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        final String uri = builder.toString();
+        ConcurrentRunner.run(count, concurrency, new ConcurrentRunner.Task() {
+            @Override
+            public void run(final int index) throws Exception {
+                long start = System.nanoTime();
+                JSONObject response = sendRequest(new HttpGet(uri));
+                latencies[index] = (System.nanoTime() - start) / 1000000;
+                assertResultOK(response);
+            }
+        });
+        Arrays.sort(latencies);
+        return latencies;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ StressSlowRequestTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import org.apache.http.client.methods.HttpGet;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.json.JSONObject;
+
+/**
+ * デバイスプラグインの時間のかかる処理に対する負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressSlowRequestTestCase extends RESTfulDConnectTestCase {
+
+    /** 時間のかかる処理を同時に要求するリクエスト数. */
+    private static final int SLOW_CONCURRENCY = 4;
+
+    /** テスト用デバイスプラグインの時間のかかる処理の時間(ms). */
+    private static final long SLOW_TIME = 1000;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressSlowRequestTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * デバイスプラグインがワーカースレッドで処理する時間のかかるリクエストを同時に行い、
+     * 並列に処理されることを確認する.
+     * </p>
+     * @throws InterruptedException スレッドに割り込みが発生した場合
+     */
+    public void testStressTestDevicePluginConcurrentSlowRequests() throws InterruptedException {
+        final int num = SLOW_CONCURRENCY;
+        long elapsed = ConcurrentRunner.run(num, new ConcurrentRunner.Task() {
+            @Override
+            public void run(final int index) throws Exception {
+                URIBuilder builder = TestURIBuilder.createURIBuilder();
+                builder.setProfile("unique");
+                builder.setAttribute("slow");
+                builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+                builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+                builder.addParameter("key", Integer.toString(index));
+                JSONObject response = sendRequest(new HttpGet(builder.toString()));
+                assertResultOK(response);
+                assertEquals(Integer.toString(index), response.getString("key"));
+            }
+        });
+        mLogger.info("concurrent slow requests: num=" + num + " elapsed=" + elapsed + "ms");
+        // 順番に処理された場合は num * SLOW_TIME 以上かかる
+        assertTrue("elapsed=" + elapsed + "ms", elapsed < num * SLOW_TIME / 2);
+    }
+}
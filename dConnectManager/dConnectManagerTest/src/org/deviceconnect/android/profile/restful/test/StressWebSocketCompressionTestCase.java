@@ -0,0 +1,193 @@
+/*
+ StressWebSocketCompressionTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpPut;
+import org.json.JSONObject;
+
+/**
+ * permessage-deflateで圧縮したWebSocketのイベント送信の負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressWebSocketCompressionTestCase extends StressWebSocketTestCase {
+
+    /** バッファサイズを定義. */
+    private static final int BUF_SIZE = 4096;
+
+    /** 送信するイベント数. */
+    private static final int BURST_EVENT_COUNT = 2000;
+
+    /** 送信するイベントのデータサイズ. */
+    private static final int BURST_EVENT_SIZE = 1024;
+
+    /** 展開後のサイズがサーバの上限を超える圧縮メッセージの展開後のサイズ. */
+    private static final int BOMB_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    /** Message Too Bigのクローズコード. */
+    private static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressWebSocketCompressionTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * permessage-deflateを要求したWebSocketクライアントに大量のイベントを送信し、
+     * 圧縮されたイベントを全て展開できることと、送信量が減ることを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerWebSocketCompression() throws Exception {
+        final String sessionKey = getClientId() + "_deflate";
+        Socket socket = new Socket("localhost", 4035);
+        try {
+            String header = handshakeWebSocket(socket, sessionKey, "permessage-deflate; client_max_window_bits");
+            assertTrue(header, header.toLowerCase().contains("sec-websocket-extensions: permessage-deflate"));
+            Thread.sleep(SESSION_KEY_WAIT);
+            assertResultOK(sendRequest(new HttpPut(createUniqueEventUri(sessionKey))));
+
+            long start = System.currentTimeMillis();
+            assertResultOK(sendRequest(createBurstRequest(BURST_EVENT_COUNT, BURST_EVENT_SIZE, 0)));
+
+            socket.setSoTimeout((int) BURST_EVENT_TIMEOUT);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Inflater inflater = new Inflater(true);
+            byte[] buf = new byte[BUF_SIZE];
+            long compressedBytes = 0;
+            long rawBytes = 0;
+            int lastIndex = -1;
+            try {
+                while (lastIndex < BURST_EVENT_COUNT - 1) {
+                    int head = in.readUnsignedByte();
+                    int length = in.readUnsignedByte() & 0x7F;
+                    if (length == 126) {
+                        length = in.readUnsignedShort();
+                    } else if (length == 127) {
+                        length = (int) in.readLong();
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if ((head & 0x0F) == 0x09) {
+                        // pingにはpongを返す
+                        writeMaskedFrame(socket.getOutputStream(), 0x8A, payload);
+                        continue;
+                    }
+                    String message;
+                    if ((head & 0x40) != 0) {
+                        // 送信時に削除された末尾の空ブロックを補って展開する
+                        byte[] input = Arrays.copyOf(payload, payload.length + 4);
+                        input[input.length - 2] = (byte) 0xFF;
+                        input[input.length - 1] = (byte) 0xFF;
+                        inflater.setInput(input);
+                        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                        while (!inflater.needsInput() && !inflater.finished()) {
+                            raw.write(buf, 0, inflater.inflate(buf));
+                        }
+                        if (inflater.finished()) {
+                            inflater.reset();
+                        }
+                        message = raw.toString("UTF-8");
+                    } else {
+                        message = new String(payload, "UTF-8");
+                    }
+                    compressedBytes += payload.length;
+                    rawBytes += message.getBytes("UTF-8").length;
+                    JSONObject event = new JSONObject(message);
+                    if (event.has("index")) {
+                        assertEquals(lastIndex + 1, event.getInt("index"));
+                        lastIndex = event.getInt("index");
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            mLogger.info("compression test: events=" + BURST_EVENT_COUNT + " raw=" + rawBytes
+                    + " compressed=" + compressedBytes + " elapsed=" + elapsed + "ms");
+            assertTrue("raw=" + rawBytes + " compressed=" + compressedBytes, compressedBytes < rawBytes);
+        } finally {
+            sendRequest(new HttpDelete(createUniqueEventUri(sessionKey)));
+            socket.close();
+        }
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 展開すると16MBになる圧縮メッセージ(decompression bomb)を送信し、
+     * サーバがメッセージを展開しきらずに1009(Message Too Big)でWebSocketを切断することを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerWebSocketDecompressionBomb() throws Exception {
+        Socket socket = new Socket("localhost", 4035);
+        try {
+            String header = handshakeWebSocket(socket, getClientId() + "_bomb", "permessage-deflate");
+            assertTrue(header, header.toLowerCase().contains("sec-websocket-extensions: permessage-deflate"));
+
+            // 0のみのデータは1000分の1程度に圧縮される
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            deflater.setInput(new byte[BOMB_INFLATED_SIZE]);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            byte[] buf = new byte[BUF_SIZE];
+            while (!deflater.finished()) {
+                compressed.write(buf, 0, deflater.deflate(buf));
+            }
+            deflater.end();
+            // 末尾に空ブロックを付けて、最終ブロックを含むメッセージにする
+            compressed.write(0);
+            byte[] payload = compressed.toByteArray();
+            assertTrue("compressed=" + payload.length, payload.length <= 0xFFFF);
+
+            // RSV1を立てたマスクキー0のバイナリフレームで送信する
+            OutputStream out = socket.getOutputStream();
+            out.write(0xC2);
+            out.write(0x80 | 126);
+            out.write(payload.length >> 8);
+            out.write(payload.length & 0xFF);
+            out.write(new byte[4]);
+            out.write(payload);
+            out.flush();
+
+            socket.setSoTimeout((int) BURST_EVENT_TIMEOUT);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (true) {
+                int head = in.readUnsignedByte();
+                int length = in.readUnsignedByte() & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = (int) in.readLong();
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                if ((head & 0x0F) == 0x08) {
+                    assertTrue("length=" + length, length >= 2);
+                    assertEquals(CLOSE_MESSAGE_TOO_BIG, (frame[0] & 0xFF) << 8 | (frame[1] & 0xFF));
+                    break;
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+}
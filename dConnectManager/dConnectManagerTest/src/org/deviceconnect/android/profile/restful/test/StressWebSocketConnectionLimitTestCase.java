@@ -0,0 +1,157 @@
+/*
+ StressWebSocketConnectionLimitTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.apache.http.HttpStatus;
+
+/**
+ * WebSocketの最大コネクション数に対する負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressWebSocketConnectionLimitTestCase extends StressWebSocketTestCase {
+
+    /** 同時に行うWebSocketのハンドシェイクの数. */
+    private static final int WEBSOCKET_HANDSHAKE_COUNT = 1000;
+
+    /** WebSocketのハンドシェイクを行うスレッド数. */
+    private static final int WEBSOCKET_HANDSHAKE_CONCURRENCY = 100;
+
+    /** ハンドシェイクのレスポンスを待つ時間(ms). */
+    private static final int WEBSOCKET_HANDSHAKE_TIMEOUT = 15000;
+
+    /** WebSocketの最大コネクション数. */
+    private static final int MAX_WEBSOCKET_CONNECTIONS = 128;
+
+    /** Origin毎のWebSocketの最大コネクション数. */
+    private static final int MAX_WEBSOCKET_CONNECTIONS_PER_ORIGIN = 64;
+
+    /** Too Many Requestsのステータスコード. */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /** WebSocketのハンドシェイクで使用するOriginの一覧. */
+    private static final String[] WEBSOCKET_ORIGINS = {"http://tenant-a.example", "http://tenant-b.example"};
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressWebSocketConnectionLimitTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 2つのOriginから最大コネクション数を大きく超えるWebSocketのハンドシェイクを同時に行い、
+     * 上限を超えたものには101以外に503または429が即座に返却され、
+     * どちらのOriginも接続できることを確認する.
+     * また、切断後には再び接続できることを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerWebSocketConnectionLimit() throws Exception {
+        final int num = WEBSOCKET_HANDSHAKE_COUNT;
+        final int[] statuses = new int[num];
+        final Socket[] sockets = new Socket[num];
+        try {
+            long elapsed = ConcurrentRunner.run(num, WEBSOCKET_HANDSHAKE_CONCURRENCY, new ConcurrentRunner.Task() {
+                @Override
+                public void run(final int index) {
+                    try {
+                        sockets[index] = new Socket("localhost", 4035);
+                        statuses[index] = requestWebSocketHandshake(sockets[index],
+                                WEBSOCKET_ORIGINS[index % WEBSOCKET_ORIGINS.length]);
+                    } catch (IOException e) {
+                        statuses[index] = -1;
+                    }
+                }
+            });
+
+            int[] accepted = new int[WEBSOCKET_ORIGINS.length];
+            int rejected = 0;
+            for (int i = 0; i < num; i++) {
+                switch (statuses[i]) {
+                case HttpStatus.SC_SWITCHING_PROTOCOLS:
+                    accepted[i % WEBSOCKET_ORIGINS.length]++;
+                    break;
+                case HttpStatus.SC_SERVICE_UNAVAILABLE:
+                case SC_TOO_MANY_REQUESTS:
+                    rejected++;
+                    break;
+                default:
+                    fail("Unexpected status: " + statuses[i]);
+                    break;
+                }
+            }
+            mLogger.info("websocket limit test: handshakes=" + num + " accepted=" + Arrays.toString(accepted)
+                    + " rejected=" + rejected + " elapsed=" + elapsed + "ms");
+            int total = 0;
+            for (int i = 0; i < accepted.length; i++) {
+                assertTrue("origin=" + WEBSOCKET_ORIGINS[i] + " accepted=" + accepted[i],
+                        accepted[i] > 0 && accepted[i] <= MAX_WEBSOCKET_CONNECTIONS_PER_ORIGIN);
+                total += accepted[i];
+            }
+            assertTrue("total=" + total, total <= MAX_WEBSOCKET_CONNECTIONS);
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+
+        // 切断されたWebSocketの分だけ、再び接続できること
+        Thread.sleep(SESSION_KEY_WAIT);
+        Socket socket = new Socket("localhost", 4035);
+        try {
+            assertEquals(HttpStatus.SC_SWITCHING_PROTOCOLS, requestWebSocketHandshake(socket, WEBSOCKET_ORIGINS[0]));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * WebSocketのハンドシェイクを送信し、レスポンスのステータスコードを取得する.
+     * @param socket 接続済みのソケット
+     * @param origin Originヘッダの値
+     * @return ステータスコード
+     * @throws IOException ハンドシェイクに失敗した場合
+     */
+    private int requestWebSocketHandshake(final Socket socket, final String origin) throws IOException {
+        socket.setSoTimeout(WEBSOCKET_HANDSHAKE_TIMEOUT);
+        OutputStream out = socket.getOutputStream();
+        String handshake = "GET /websocket HTTP/1.1\r\n"
+                + "Host: localhost:4035\r\n"
+                + "Origin: " + origin + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n\r\n";
+        out.write(handshake.getBytes("UTF-8"));
+        out.flush();
+
+        // ステータスラインだけを読み込む
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            line.write(b);
+        }
+        String[] status = line.toString("UTF-8").split(" ");
+        if (status.length < 2) {
+            throw new IOException("Invalid status line: " + line.toString("UTF-8"));
+        }
+        return Integer.parseInt(status[1]);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ StressWebSocketKeepAliveTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.deviceconnect.android.test.WebSocketServerService;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.ResultReceiver;
+
+/**
+ * 多数のWebSocketを接続した場合の、サーバのスレッド数とkeep-aliveの負荷テスト.
+ * <p>
+ * dConnectManagerのWebSocketの最大コネクション数は128なので、
+ * 最大コネクション数を上げたサーバを{@link WebSocketServerService}で別のプロセスに起動して接続する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class StressWebSocketKeepAliveTestCase extends StressWebSocketTestCase {
+
+    /** 同時に接続するWebSocketの数. */
+    private static final int KEEP_ALIVE_SOCKET_COUNT = 500;
+
+    /** WebSocketの接続で増えてもよい、受信スレッド以外のスレッド数. */
+    private static final int KEEP_ALIVE_THREAD_MARGIN = 4;
+
+    /** pongを返さないWebSocketが切断されるのを待つ時間(ms). */
+    private static final int KEEP_ALIVE_CLOSE_TIMEOUT = 15000;
+
+    /** テスト用サーバのポート番号. */
+    private static final int KEEP_ALIVE_SERVER_PORT = 4036;
+
+    /** テスト用サーバの起動を待つ時間(秒). */
+    private static final long KEEP_ALIVE_SERVER_TIMEOUT = 30;
+
+    /** テスト用サーバのプロセスID. */
+    private int mServerPid;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressWebSocketKeepAliveTestCase(final String tag) {
+        super(tag);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServerPid = startServer();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getApplicationContext().stopService(new Intent(getApplicationContext(), WebSocketServerService.class));
+        super.tearDown();
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * 500個のWebSocketを同時に接続しても、サーバのスレッドが
+     * WebSocketの受信スレッド以外に増えないことを確認する.
+     * また、pongを返さないクライアントが切断されることを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerWebSocketKeepAliveThreads() throws Exception {
+        int before = getThreadCount(mServerPid);
+        assertTrue("Server process is not found.", before > 0);
+
+        Socket[] sockets = new Socket[KEEP_ALIVE_SOCKET_COUNT];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = openStalledWebSocket(getClientId() + "_keepalive" + i, KEEP_ALIVE_SERVER_PORT);
+            }
+            Thread.sleep(SESSION_KEY_WAIT);
+            int after = getThreadCount(mServerPid);
+            mLogger.info("keep-alive threads: sockets=" + sockets.length + " before=" + before + " after=" + after);
+            // WebSocket毎に増えるのは受信スレッドのみ
+            assertTrue("before=" + before + " after=" + after,
+                    after - before <= sockets.length + KEEP_ALIVE_THREAD_MARGIN);
+
+            // pongを返さないクライアントはサーバーから切断される
+            for (Socket socket : sockets) {
+                socket.setSoTimeout(KEEP_ALIVE_CLOSE_TIMEOUT);
+                InputStream in = socket.getInputStream();
+                try {
+                    while (in.read() >= 0) {
+                        continue;
+                    }
+                } catch (SocketTimeoutException e) {
+                    fail("WebSocket is not closed.");
+                } catch (IOException e) {
+                    continue; // 切断された
+                }
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * WebSocketの最大コネクション数を上げたテスト用サーバを起動する.
+     * @return サーバを起動したプロセスのID
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    private int startServer() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] result = new int[2];
+        Intent intent = new Intent(getApplicationContext(), WebSocketServerService.class);
+        intent.putExtra(WebSocketServerService.EXTRA_PORT, KEEP_ALIVE_SERVER_PORT);
+        intent.putExtra(WebSocketServerService.EXTRA_MAX_WEBSOCKET_CONNECTIONS, KEEP_ALIVE_SOCKET_COUNT);
+        intent.putExtra(WebSocketServerService.EXTRA_RECEIVER, new ResultReceiver(null) {
+            @Override
+            protected void onReceiveResult(final int resultCode, final Bundle resultData) {
+                result[0] = resultCode;
+                result[1] = resultData.getInt(WebSocketServerService.EXTRA_PID);
+                latch.countDown();
+            }
+        });
+        getApplicationContext().startService(intent);
+        assertTrue("timeout", latch.await(KEEP_ALIVE_SERVER_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(WebSocketServerService.RESULT_LAUNCHED, result[0]);
+        return result[1];
+    }
+
+    /**
+     * 指定されたプロセスのスレッド数を取得する.
+     * @param pid プロセスID
+     * @return スレッド数。取得できない場合は-1
+     * @throws IOException スレッド数の取得に失敗した場合
+     */
+    private static int getThreadCount(final int pid) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/status"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Threads:")) {
+                    return Integer.parseInt(line.substring("Threads:".length()).trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ StressWebSocketStalledClientTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.net.Socket;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+
+/**
+ * イベントを受信しないWebSocketクライアントがいる場合の負荷テスト.
+ * @author NTT DOCOMO, INC.
+ */
+public class StressWebSocketStalledClientTestCase extends StressWebSocketTestCase {
+
+    /** 送信するイベント数. */
+    private static final int BURST_EVENT_COUNT = 2000;
+
+    /** 送信するイベントのデータサイズ. */
+    private static final int BURST_EVENT_SIZE = 1024;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressWebSocketStalledClientTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 負荷テストを実行する.
+     * <p>
+     * イベントを全く受信しないWebSocketクライアントと、すぐに受信するクライアントに
+     * 大量のイベントを送信し、受信するクライアントが待たされずに最後のイベントまで受信できることを確認する.
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    public void testStressTestDConnectManagerWebSocketStalledClient() throws Exception {
+        final String stalledKey = getClientId() + "_stalled";
+        final String fastKey = getClientId() + "_fast";
+
+        Socket stalled = openStalledWebSocket(stalledKey);
+        IndexedEventClient fast = new IndexedEventClient(fastKey);
+        fast.connect();
+        try {
+            // セッションキーが登録されるのを待つ
+            Thread.sleep(SESSION_KEY_WAIT);
+            assertResultOK(sendRequest(new HttpPut(createUniqueEventUri(stalledKey))));
+            assertResultOK(sendRequest(new HttpPut(createUniqueEventUri(fastKey))));
+
+            long start = System.currentTimeMillis();
+            assertResultOK(sendRequest(createBurstRequest(BURST_EVENT_COUNT, BURST_EVENT_SIZE, 0)));
+            int lastIndex = fast.waitForIndex(BURST_EVENT_COUNT - 1, BURST_EVENT_TIMEOUT);
+            long elapsed = System.currentTimeMillis() - start;
+            mLogger.info("stalled client test: received=" + fast.getReceivedCount() + "/" + BURST_EVENT_COUNT
+                    + " elapsed=" + elapsed + "ms");
+            assertEquals(BURST_EVENT_COUNT - 1, lastIndex);
+
+            // 受信しないクライアントがいても、他のリクエストは処理されること
+            URIBuilder system = TestURIBuilder.createURIBuilder();
+            system.setProfile(SystemProfileConstants.PROFILE_NAME);
+            assertResultOK(sendRequest(new HttpGet(system.toString())));
+        } finally {
+            sendRequest(new HttpDelete(createUniqueEventUri(stalledKey)));
+            sendRequest(new HttpDelete(createUniqueEventUri(fastKey)));
+            fast.close();
+            stalled.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ StressWebSocketTestCase.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.profile.restful.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.profile.AuthorizationProfileConstants;
+import org.deviceconnect.profile.DConnectProfileConstants;
+import org.deviceconnect.utils.URIBuilder;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * WebSocketを使用するdConnectManagerの負荷テストの基底クラス.
+ * <p>
+ * テスト用デバイスプラグインのuniqueプロファイルから大量のイベントを送信させ、
+ * WebSocketで受信するためのメソッドを提供する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public abstract class StressWebSocketTestCase extends RESTfulDConnectTestCase {
+
+    /** WebSocketのURI. */
+    protected static final String WEBSOCKET_URI = "ws://localhost:4035/websocket";
+
+    /** WebSocketのセッションキーが登録されるのを待つ時間(ms). */
+    protected static final long SESSION_KEY_WAIT = 1000;
+
+    /** 大量のイベントの受信を待つ時間(ms). */
+    protected static final long BURST_EVENT_TIMEOUT = 60000;
+
+    /** 受信しないクライアントのソケットの受信バッファサイズ. */
+    private static final int STALLED_RECEIVE_BUFFER_SIZE = 1024;
+
+    /**
+     * コンストラクタ.
+     * @param tag テストタグ
+     */
+    public StressWebSocketTestCase(final String tag) {
+        super(tag);
+    }
+
+    /**
+     * 受信を一切行わないWebSocketのクライアントを作成する.
+     * <p>
+     * 受信バッファを小さくしておき、サーバーからの送信がすぐに詰まるようにする.
+     * </p>
+     * @param sessionKey セッションキー
+     * @return クライアントのソケット
+     * @throws IOException 接続に失敗した場合
+     */
+    protected final Socket openStalledWebSocket(final String sessionKey) throws IOException {
+        return openStalledWebSocket(sessionKey, 4035);
+    }
+
+    /**
+     * 指定されたポートのサーバに、受信を一切行わないWebSocketのクライアントを作成する.
+     * @param sessionKey セッションキー
+     * @param port サーバのポート番号
+     * @return クライアントのソケット
+     * @throws IOException 接続に失敗した場合
+     */
+    protected final Socket openStalledWebSocket(final String sessionKey, final int port) throws IOException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(STALLED_RECEIVE_BUFFER_SIZE);
+        socket.connect(new InetSocketAddress("localhost", port));
+        handshakeWebSocket(socket, sessionKey, null);
+        return socket;
+    }
+
+    /**
+     * ソケットでWebSocketのハンドシェイクを行い、セッションキーを送信する.
+     * @param socket 接続済みのソケット
+     * @param sessionKey セッションキー
+     * @param extensions Sec-WebSocket-Extensionsヘッダの値。要求しない場合はnull
+     * @return ハンドシェイクのレスポンスヘッダ
+     * @throws IOException ハンドシェイクに失敗した場合
+     */
+    protected final String handshakeWebSocket(final Socket socket, final String sessionKey,
+            final String extensions) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        String handshake = "GET /websocket HTTP/1.1\r\n"
+                + "Host: localhost:4035\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+                + "Sec-WebSocket-Version: 13\r\n";
+        if (extensions != null) {
+            handshake += "Sec-WebSocket-Extensions: " + extensions + "\r\n";
+        }
+        out.write((handshake + "\r\n").getBytes("UTF-8"));
+        out.flush();
+
+        // ハンドシェイクのレスポンスヘッダだけを読み込む
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int matched = 0;
+        byte[] end = "\r\n\r\n".getBytes("UTF-8");
+        while (matched < end.length) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("WebSocket handshake failed.");
+            }
+            header.write(b);
+            matched = (b == end[matched]) ? matched + 1 : (b == end[0] ? 1 : 0);
+        }
+
+        // セッションキーをマスクキー0のテキストフレームで送信する
+        byte[] payload = ("{\"" + DConnectMessage.EXTRA_SESSION_KEY + "\":\"" + sessionKey + "\"}")
+                .getBytes("UTF-8");
+        writeMaskedFrame(out, 0x81, payload);
+        return header.toString("UTF-8");
+    }
+
+    /**
+     * マスクキー0のフレームを送信する.
+     * @param out 出力ストリーム
+     * @param head フレームの先頭バイト
+     * @param payload ペイロード。125バイト以下であること
+     * @throws IOException 送信に失敗した場合
+     */
+    protected static void writeMaskedFrame(final OutputStream out, final int head, final byte[] payload)
+            throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(head);
+        frame.write(0x80 | payload.length);
+        frame.write(new byte[4]);
+        frame.write(payload);
+        out.write(frame.toByteArray());
+        out.flush();
+    }
+
+    /**
+     * uniqueプロファイルのイベント登録・解除用のURIを作成する.
+     * @param sessionKey セッションキー
+     * @return URI
+     */
+    protected final String createUniqueEventUri(final String sessionKey) {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile("unique");
+        builder.setAttribute("event");
+        builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+        builder.addParameter(DConnectProfileConstants.PARAM_SESSION_KEY, sessionKey);
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        return builder.toString();
+    }
+
+    /**
+     * テスト用デバイスプラグインに大量のイベントを送信させるリクエストを作成する.
+     * <p>
+     * 各イベントには0から始まる番号(index)が付与される。
+     * </p>
+     * @param count イベント数
+     * @param size イベントに含めるデータのサイズ
+     * @param period イベントを送信する周期(ms)。0の場合は待たずに送信する
+     * @return HTTPリクエスト
+     */
+    protected final HttpUriRequest createBurstRequest(final int count, final int size, final int period) {
+        URIBuilder builder = TestURIBuilder.createURIBuilder();
+        builder.setProfile("unique");
+        builder.setAttribute("burst");
+        builder.addParameter(DConnectProfileConstants.PARAM_SERVICE_ID, getServiceId());
+        builder.addParameter(AuthorizationProfileConstants.PARAM_ACCESS_TOKEN, getAccessToken());
+        builder.addParameter("count", Integer.toString(count));
+        builder.addParameter("size", Integer.toString(size));
+        builder.addParameter("period", Integer.toString(period));
+        return new HttpPost(builder.toString());
+    }
+
+    /**
+     * 受信したイベントの番号(index)を記録するWebSocketのクライアント.
+     */
+    protected static class IndexedEventClient extends WebSocketClient {
+        /** セッションキー. */
+        private final String mSessionKey;
+        /** 最後に受信したイベントの番号. */
+        private int mLastIndex = -1;
+        /** 受信したイベント数. */
+        private int mReceived;
+
+        /**
+         * コンストラクタ.
+         * @param sessionKey 接続時に送信するセッションキー
+         */
+        public IndexedEventClient(final String sessionKey) {
+            super(URI.create(WEBSOCKET_URI));
+            mSessionKey = sessionKey;
+        }
+
+        @Override
+        public void onOpen(final ServerHandshake handshake) {
+            send("{\"" + DConnectMessage.EXTRA_SESSION_KEY + "\":\"" + mSessionKey + "\"}");
+        }
+
+        @Override
+        public void onMessage(final String message) {
+            try {
+                JSONObject event = new JSONObject(message);
+                if (event.has("index")) {
+                    synchronized (this) {
+                        mReceived++;
+                        mLastIndex = event.getInt("index");
+                        notifyAll();
+                    }
+                }
+            } catch (JSONException e) {
+                return; // do nothing.
+            }
+        }
+
+        @Override
+        public void onError(final Exception ex) {
+        }
+
+        @Override
+        public void onClose(final int code, final String reason, final boolean remote) {
+        }
+
+        /**
+         * 指定された番号のイベントを受信するまで待つ.
+         * @param index イベントの番号
+         * @param timeout タイムアウト(ms)
+         * @return 最後に受信したイベントの番号
+         * @throws InterruptedException スレッドに割り込みが発生した場合
+         */
+        public synchronized int waitForIndex(final int index, final long timeout) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeout;
+            while (mLastIndex < index) {
+                long rest = end - System.currentTimeMillis();
+                if (rest <= 0) {
+                    break;
+                }
+                wait(rest);
+            }
+            return mLastIndex;
+        }
+
+        /**
+         * 受信したイベント数を取得する.
+         * @return イベント数
+         */
+        public synchronized int getReceivedCount() {
+            return mReceived;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ AccessTokenRevokeService.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.test;
+
+import org.deviceconnect.android.localoauth.LocalOAuth2Main;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.ResultReceiver;
+
+/**
+ * テストプロセスとは別のプロセスでアクセストークンを破棄するサービス.
+ * <p>
+ * アクセストークン一覧画面のように、アクセストークンを確認するプロセスとは
+ * 別のプロセスからトークンを破棄する操作を再現する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class AccessTokenRevokeService extends IntentService {
+
+    /** 破棄するトークンID. */
+    public static final String EXTRA_TOKEN_ID = "tokenId";
+
+    /** 破棄が終わったことを通知するレシーバー. */
+    public static final String EXTRA_RECEIVER = "receiver";
+
+    /** 破棄したプロセスのID. */
+    public static final String EXTRA_PID = "pid";
+
+    /**
+     * コンストラクタ.
+     */
+    public AccessTokenRevokeService() {
+        super("AccessTokenRevokeService");
+    }
+
+    @Override
+    protected void onHandleIntent(final Intent intent) {
+        long tokenId = intent.getLongExtra(EXTRA_TOKEN_ID, -1);
+        ResultReceiver receiver = intent.getParcelableExtra(EXTRA_RECEIVER);
+
+        LocalOAuth2Main.initialize(getApplicationContext());
+        try {
+            LocalOAuth2Main.destroyAccessToken(tokenId);
+        } finally {
+            LocalOAuth2Main.destroy();
+        }
+
+        if (receiver != null) {
+            Bundle result = new Bundle();
+            result.putInt(EXTRA_PID, Process.myPid());
+            receiver.send(0, result);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ WebSocketServerService.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.android.test;
+
+import org.deviceconnect.server.DConnectServer;
+import org.deviceconnect.server.DConnectServerConfig;
+import org.deviceconnect.server.DConnectServerError;
+import org.deviceconnect.server.DConnectServerEventListener;
+import org.deviceconnect.server.http.HttpRequest;
+import org.deviceconnect.server.http.HttpResponse;
+import org.deviceconnect.server.nanohttpd.DConnectServerNanoHttpd;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.ResultReceiver;
+
+/**
+ * テストプロセスとは別のプロセスでHTTPサーバを起動するサービス.
+ * <p>
+ * dConnectManagerの設定を変えずに、WebSocketの最大コネクション数などを
+ * テスト用の値にしたサーバに対して負荷テストを行うために使用する。<br>
+ * サーバのソケットとクライアントのソケットを別のプロセスに分けて、
+ * 1プロセスあたりのファイルディスクリプタ数の上限に達しないようにする。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public class WebSocketServerService extends Service {
+
+    /** サーバのポート番号. */
+    public static final String EXTRA_PORT = "port";
+
+    /** WebSocketの最大コネクション数. */
+    public static final String EXTRA_MAX_WEBSOCKET_CONNECTIONS = "maxWebSocketConnections";
+
+    /** サーバの起動を通知するレシーバー. */
+    public static final String EXTRA_RECEIVER = "receiver";
+
+    /** サーバを起動したプロセスのID. */
+    public static final String EXTRA_PID = "pid";
+
+    /** サーバの起動に成功した場合の結果コード. */
+    public static final int RESULT_LAUNCHED = 0;
+
+    /** サーバの起動に失敗した場合の結果コード. */
+    public static final int RESULT_FAILED = 1;
+
+    /** HTTPサーバ. */
+    private DConnectServer mServer;
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return null;
+    }
+
+    @Override
+    public int onStartCommand(final Intent intent, final int flags, final int startId) {
+        final ResultReceiver receiver = intent.getParcelableExtra(EXTRA_RECEIVER);
+        if (mServer != null) {
+            sendResult(receiver, RESULT_FAILED);
+            return START_NOT_STICKY;
+        }
+
+        int maxConnections = intent.getIntExtra(EXTRA_MAX_WEBSOCKET_CONNECTIONS, 1);
+        DConnectServerConfig config = new DConnectServerConfig.Builder()
+                .port(intent.getIntExtra(EXTRA_PORT, -1))
+                .host("localhost")
+                .documentRootPath(getFilesDir().getAbsolutePath())
+                .maxWebSocketConnectionSize(maxConnections)
+                .maxWebSocketConnectionSizePerOrigin(0)
+                .build();
+        mServer = new DConnectServerNanoHttpd(config, this);
+        mServer.setServerEventListener(new DConnectServerEventListener() {
+            @Override
+            public boolean onReceivedHttpRequest(final HttpRequest req, final HttpResponse res) {
+                return false;
+            }
+
+            @Override
+            public void onError(final DConnectServerError errorCode) {
+                sendResult(receiver, RESULT_FAILED);
+            }
+
+            @Override
+            public void onServerLaunched() {
+                sendResult(receiver, RESULT_LAUNCHED);
+            }
+        });
+        mServer.start();
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mServer != null) {
+            mServer.shutdown();
+            mServer = null;
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * サーバの起動結果を通知する.
+     * @param receiver 通知先のレシーバー
+     * @param resultCode 結果コード
+     */
+    private static void sendResult(final ResultReceiver receiver, final int resultCode) {
+        if (receiver != null) {
+            Bundle result = new Bundle();
+            result.putInt(EXTRA_PID, Process.myPid());
+            receiver.send(resultCode, result);
+        }
+    }
+}
@@ -35,5 +35,11 @@ public interface TestServiceDiscoveryProfileConstants {
     /**
      * テスト用コンフィグ.
      */
+    String DEVICE_CONFIG = "test config";
+
+    /**
+     * レスポンスを遅延させる時間(ミリ秒)を指定するパラメータ.
+     */
+    String PARAM_DELAY = "delay";
 
 }
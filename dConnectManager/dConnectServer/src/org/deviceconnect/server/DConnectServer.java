@@ -106,8 +106,25 @@ public abstract class DConnectServer {
      * @throws IOException セッションが見つからない場合スローされる
      */
     public void sendEvent(final String sessionKey, final String event) throws IOException {
+        sendEvent(sessionKey, event, null);
+    }
+
+    /**
+     * 指定されたセッションキーを持つクライアントにWebSocketを通じてイベントメッセージを送る.
+     * <p>
+     * イベントは送信待ちに積まれ、クライアント毎に順番に送信される。<br>
+     * 送信が遅いクライアントの送信待ちが溢れた場合には、イベントキーが同じイベントを最新のものにまとめることがある。
+     * </p>
+     * 
+     * @param sessionKey クライアントを特定するためのセッションキー
+     * @param event 送信するイベントメッセージ
+     * @param eventKey イベントの種類を識別するキー。まとめない場合はnull
+     * 
+     * @throws IOException セッションが見つからない場合スローされる
+     */
+    public void sendEvent(final String sessionKey, final String event, final String eventKey) throws IOException {
 
-        mLogger.entering(getClass().getName(), "sendEvent", new Object[] {sessionKey, event });
+        mLogger.entering(getClass().getName(), "sendEvent", new Object[] {sessionKey, event, eventKey });
         if (!isRunning()) {
             throw new RuntimeException("DConnectServer is not running.");
         }
@@ -117,7 +134,7 @@ public abstract class DConnectServer {
             throw new IOException("Cannot found session's socket.");
         }
 
-        socket.sendEvent(event);
+        socket.sendEvent(event, eventKey);
         mLogger.exiting(getClass().getName(), "sendEvent");
     }
 }
@@ -8,6 +8,8 @@ package org.deviceconnect.server;
 
 import java.util.ArrayList;
 
+import org.deviceconnect.server.websocket.EventOverflowPolicy;
+
 /**
  * サーバーの設定情報.
  * 
@@ -24,6 +26,24 @@ public final class DConnectServerConfig {
     /** WebSocket最大コネクション数. */
     private int mMaxWebSocketConnectionSize;
 
+    /** Origin毎のWebSocket最大コネクション数. */
+    private int mMaxWebSocketConnectionSizePerOrigin;
+
+    /** WebSocket毎の送信待ちイベントの最大数. */
+    private int mWebSocketEventQueueSize;
+
+    /** WebSocketの送信待ちイベントが上限に達した場合の動作. */
+    private EventOverflowPolicy mWebSocketEventOverflowPolicy;
+
+    /** WebSocketの圧縮(permessage-deflate)を使うかのフラグ. */
+    private boolean mWebSocketCompressionEnabled;
+
+    /** WebSocketで圧縮するメッセージの最小サイズ. */
+    private int mWebSocketCompressionMinSize;
+
+    /** WebSocketの圧縮でメッセージ間の辞書を引き継ぐかのフラグ. */
+    private boolean mWebSocketCompressionContextTakeover;
+
     /** ドキュメントルートのパス. */
     private String mDocumentRootPath;
 
@@ -57,6 +77,60 @@ public final class DConnectServerConfig {
         return mMaxWebSocketConnectionSize;
     }
 
+    /**
+     * Origin毎のWebSocketの最大コネクション数を取得する.
+     * 
+     * @return Origin毎のWebSocketの最大コネクション数。0の場合はOrigin毎の上限なし
+     */
+    public int getMaxWebSocketConnectionSizePerOrigin() {
+        return mMaxWebSocketConnectionSizePerOrigin;
+    }
+
+    /**
+     * WebSocket毎の送信待ちイベントの最大数を取得する.
+     * 
+     * @return 送信待ちイベントの最大数
+     */
+    public int getWebSocketEventQueueSize() {
+        return mWebSocketEventQueueSize;
+    }
+
+    /**
+     * WebSocketの送信待ちイベントが上限に達した場合の動作を取得する.
+     * 
+     * @return 上限に達した場合の動作
+     */
+    public EventOverflowPolicy getWebSocketEventOverflowPolicy() {
+        return mWebSocketEventOverflowPolicy;
+    }
+
+    /**
+     * WebSocketの圧縮(permessage-deflate)を使うかを取得する.
+     * 
+     * @return 使う場合はtrue、使わない場合はfalse
+     */
+    public boolean isWebSocketCompressionEnabled() {
+        return mWebSocketCompressionEnabled;
+    }
+
+    /**
+     * WebSocketで圧縮するメッセージの最小サイズを取得する.
+     * 
+     * @return 最小サイズ(バイト)
+     */
+    public int getWebSocketCompressionMinSize() {
+        return mWebSocketCompressionMinSize;
+    }
+
+    /**
+     * WebSocketの圧縮でメッセージ間の辞書を引き継ぐかを取得する.
+     * 
+     * @return 引き継ぐ場合はtrue、メッセージ毎に初期化する場合はfalse
+     */
+    public boolean isWebSocketCompressionContextTakeover() {
+        return mWebSocketCompressionContextTakeover;
+    }
+
     /**
      * ドキュメントルートのパスを取得する.
      * 
@@ -112,6 +186,12 @@ public final class DConnectServerConfig {
         this.mDocumentRootPath = builder.mDocumentRootPath;
         this.mMaxConnectionSize = builder.mMaxConnectionSize;
         this.mMaxWebSocketConnectionSize = builder.mMaxWebSocketConnectionSize;
+        this.mMaxWebSocketConnectionSizePerOrigin = builder.mMaxWebSocketConnectionSizePerOrigin;
+        this.mWebSocketEventQueueSize = builder.mWebSocketEventQueueSize;
+        this.mWebSocketEventOverflowPolicy = builder.mWebSocketEventOverflowPolicy;
+        this.mWebSocketCompressionEnabled = builder.mWebSocketCompressionEnabled;
+        this.mWebSocketCompressionMinSize = builder.mWebSocketCompressionMinSize;
+        this.mWebSocketCompressionContextTakeover = builder.mWebSocketCompressionContextTakeover;
         this.mIsSsl = builder.mIsSsl;
         this.mPort = builder.mPort;
         this.mHost = builder.mHost;
@@ -130,7 +210,25 @@ public final class DConnectServerConfig {
         private int mMaxConnectionSize = 64;
 
         /** WebSocket最大コネクション数. */
-        private int mMaxWebSocketConnectionSize = 32;
+        private int mMaxWebSocketConnectionSize = 128;
+
+        /** Origin毎のWebSocket最大コネクション数. */
+        private int mMaxWebSocketConnectionSizePerOrigin = 64;
+
+        /** WebSocket毎の送信待ちイベントの最大数. */
+        private int mWebSocketEventQueueSize = 64;
+
+        /** WebSocketの送信待ちイベントが上限に達した場合の動作. */
+        private EventOverflowPolicy mWebSocketEventOverflowPolicy = EventOverflowPolicy.DROP_OLDEST;
+
+        /** WebSocketの圧縮(permessage-deflate)を使うかのフラグ. */
+        private boolean mWebSocketCompressionEnabled = true;
+
+        /** WebSocketで圧縮するメッセージの最小サイズ. */
+        private int mWebSocketCompressionMinSize = 256;
+
+        /** WebSocketの圧縮でメッセージ間の辞書を引き継ぐかのフラグ. */
+        private boolean mWebSocketCompressionContextTakeover = true;
 
         /** ドキュメントルートのパス. */
         private String mDocumentRootPath;
@@ -197,6 +295,111 @@ public final class DConnectServerConfig {
             return this;
         }
 
+        /**
+         * Origin毎のWebSocketの最大コネクション数を設定する.
+         * <p>
+         * 1つのOriginがWebSocketを使い切って、他のOriginが接続できなくなるのを防ぐ。<br>
+         * Originヘッダが無いクライアントは接続元のIPアドレス毎に数える。
+         * </p>
+         * 
+         * @param maxWebSocketConnectionSizePerOrigin Origin毎のWebSocketの最大コネクション数。0の場合は上限なし。
+         * 
+         * @return ビルダー
+         */
+        public Builder maxWebSocketConnectionSizePerOrigin(final int maxWebSocketConnectionSizePerOrigin) {
+
+            if (maxWebSocketConnectionSizePerOrigin < 0) {
+                throw new IllegalArgumentException("MaxWebSocketConnectionSizePerOrigin must be 0 or larger.");
+            }
+
+            this.mMaxWebSocketConnectionSizePerOrigin = maxWebSocketConnectionSizePerOrigin;
+            return this;
+        }
+
+        /**
+         * WebSocket毎の送信待ちイベントの最大数を設定する.
+         * 
+         * @param webSocketEventQueueSize 送信待ちイベントの最大数。1以上に設定すること。
+         * 
+         * @return ビルダー
+         */
+        public Builder webSocketEventQueueSize(final int webSocketEventQueueSize) {
+
+            if (webSocketEventQueueSize <= 0) {
+                throw new IllegalArgumentException("WebSocketEventQueueSize must be larger than 0.");
+            }
+
+            this.mWebSocketEventQueueSize = webSocketEventQueueSize;
+            return this;
+        }
+
+        /**
+         * WebSocketの送信待ちイベントが上限に達した場合の動作を設定する.
+         * 
+         * @param policy 上限に達した場合の動作
+         * 
+         * @return ビルダー
+         */
+        public Builder webSocketEventOverflowPolicy(final EventOverflowPolicy policy) {
+
+            if (policy == null) {
+                throw new IllegalArgumentException("WebSocketEventOverflowPolicy must be not null.");
+            }
+
+            this.mWebSocketEventOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * WebSocketの圧縮(permessage-deflate)を使うかを設定する.
+         * <p>
+         * 有効にした場合でも、クライアントが圧縮を要求しない場合は圧縮しない。
+         * </p>
+         * 
+         * @param enabled 使う場合はtrue、使わない場合はfalse
+         * 
+         * @return ビルダー
+         */
+        public Builder webSocketCompressionEnabled(final boolean enabled) {
+            this.mWebSocketCompressionEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * WebSocketで圧縮するメッセージの最小サイズを設定する.
+         * <p>
+         * これより小さいメッセージは圧縮しても小さくならないので、圧縮せずに送信する。
+         * </p>
+         * 
+         * @param minSize 最小サイズ(バイト)。0以上に設定すること。
+         * 
+         * @return ビルダー
+         */
+        public Builder webSocketCompressionMinSize(final int minSize) {
+
+            if (minSize < 0) {
+                throw new IllegalArgumentException("WebSocketCompressionMinSize must be 0 or larger.");
+            }
+
+            this.mWebSocketCompressionMinSize = minSize;
+            return this;
+        }
+
+        /**
+         * WebSocketの圧縮でメッセージ間の辞書を引き継ぐかを設定する.
+         * <p>
+         * 引き継ぐと同じ形式のイベントが続く場合に圧縮率が上がるが、接続毎に圧縮用のメモリを保持し続ける。
+         * </p>
+         * 
+         * @param contextTakeover 引き継ぐ場合はtrue、メッセージ毎に初期化する場合はfalse
+         * 
+         * @return ビルダー
+         */
+        public Builder webSocketCompressionContextTakeover(final boolean contextTakeover) {
+            this.mWebSocketCompressionContextTakeover = contextTakeover;
+            return this;
+        }
+
         /**
          * SSLの利用設定を行う.
          * 
@@ -6,6 +6,7 @@
  */
 package org.deviceconnect.server.http;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,12 +20,21 @@ import java.util.Map;
  */
 public final class HttpResponse {
 
+    /** Bodyのサイズが不明であることを示す定数. */
+    public static final long UNKNOWN_LENGTH = -1;
+
     /** Content-Type. */
     private String mContentType;
 
     /** body. */
     private byte[] mBody;
 
+    /** Bodyのストリーム. */
+    private InputStream mBodyStream;
+
+    /** Bodyのストリームのサイズ. */
+    private long mBodyLength = UNKNOWN_LENGTH;
+
     /** ヘッダー群. */
     private Map<String, String> mHeaders;
 
@@ -181,6 +191,43 @@ public final class HttpResponse {
      */
     public void setBody(final byte[] body) {
         this.mBody = body;
+        this.mBodyStream = null;
+        this.mBodyLength = UNKNOWN_LENGTH;
+    }
+
+    /**
+     * Bodyをストリームで設定する.
+     * <p>
+     * ストリームはレスポンス送信時に読み込まれ、送信完了後に閉じられる。
+     * そのため、Body全体をメモリ上に展開せずに送信することができる。<br>
+     * サイズが不明な場合は{@link #UNKNOWN_LENGTH}を指定すること。その場合はchunked形式で送信される。
+     * </p>
+     * 
+     * @param body Bodyのストリーム
+     * @param length Bodyのサイズ
+     */
+    public void setBody(final InputStream body, final long length) {
+        this.mBody = null;
+        this.mBodyStream = body;
+        this.mBodyLength = length;
+    }
+
+    /**
+     * Bodyのストリームを取得する.
+     * 
+     * @return Bodyのストリーム。ストリームが設定されていない場合はnullを返す。
+     */
+    public InputStream getBodyStream() {
+        return mBodyStream;
+    }
+
+    /**
+     * Bodyのストリームのサイズを取得する.
+     * 
+     * @return Bodyのストリームのサイズ。不明な場合は{@link #UNKNOWN_LENGTH}を返す。
+     */
+    public long getBodyLength() {
+        return mBodyLength;
     }
 
     /**
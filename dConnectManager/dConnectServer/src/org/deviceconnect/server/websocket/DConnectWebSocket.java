@@ -19,5 +19,17 @@ public interface DConnectWebSocket {
 	 * @param event イベントメッセージ
 	 */
 	void sendEvent(String event);
+
+	/**
+	 * クライアントにイベントメッセージを送信します.
+	 * <p>
+	 * 送信待ちのイベントが溢れた場合に、同じイベントキーを持つイベントを
+	 * 最新のものにまとめることができます。
+	 * </p>
+	 * 
+	 * @param event イベントメッセージ
+	 * @param eventKey イベントの種類を識別するキー。まとめない場合はnull
+	 */
+	void sendEvent(String event, String eventKey);
 	
 }
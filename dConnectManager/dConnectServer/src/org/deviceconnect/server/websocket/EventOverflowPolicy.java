@@ -0,0 +1,24 @@
+/*
+ EventOverflowPolicy.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.websocket;
+
+/**
+ * WebSocketの送信待ちのイベントが上限に達した場合の動作.
+ * 
+ * @author NTT DOCOMO, INC.
+ */
+public enum EventOverflowPolicy {
+    /** 最も古いイベントを破棄する. */
+    DROP_OLDEST,
+    /**
+     * 同じイベントキーを持つ送信待ちのイベントを最新のものに置き換える.
+     * 置き換えるイベントが無い場合は、最も古いイベントを破棄する。
+     */
+    COALESCE_LATEST,
+    /** クライアントとの接続を切断する. */
+    DISCONNECT,
+}
@@ -37,6 +37,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -118,6 +126,33 @@ public abstract class NanoHTTPD {
      */
     public static final String MIME_DEFAULT_BINARY = "application/octet-stream";
 
+    /**
+     * Value of the Retry-After header (in seconds) sent when the AsyncRunner
+     * refuses a connection because it is saturated.
+     */
+    public static final int SERVICE_UNAVAILABLE_RETRY_AFTER = 1;
+
+    /**
+     * Maximum time to wait on Socket.getInputStream().read() (in milliseconds)
+     * while sending "503 Service Unavailable" to a refused connection. With
+     * HTTPS the TLS handshake is done at that time, so a slow client must not
+     * hold the sending thread for long.
+     */
+    public static final int REJECT_SOCKET_TIMEOUT = 1000;
+
+    /**
+     * Number of threads sending "503 Service Unavailable" to refused
+     * connections, so that a few slow clients do not delay the others.
+     */
+    private static final int REJECT_THREADS = 4;
+
+    /**
+     * Maximum number of refused connections waiting for their "503 Service
+     * Unavailable" response. Any further connection is closed without a
+     * response.
+     */
+    private static final int REJECT_QUEUE_SIZE = 16;
+
     private final String hostname;
     private final int myPort;
     private ServerSocket myServerSocket;
@@ -138,6 +173,11 @@ public abstract class NanoHTTPD {
      * Pluggable strategy for asynchronously executing requests.
      */
     private AsyncRunner asyncRunner;
+    /**
+     * Sends "503 Service Unavailable" to refused connections, so that the
+     * listener thread never writes to a client by itself.
+     */
+    private ThreadPoolExecutor rejectExecutor;
     /**
      * Pluggable strategy for creating and cleaning up temporary files.
      */
@@ -247,6 +287,18 @@ public abstract class NanoHTTPD {
         myServerSocket.bind((hostname != null) ? new InetSocketAddress(hostname, myPort)
                 : new InetSocketAddress(myPort));
 
+        rejectExecutor = new ThreadPoolExecutor(REJECT_THREADS, REJECT_THREADS,
+                BoundedAsyncRunner.DEFAULT_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(REJECT_QUEUE_SIZE), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setName("NanoHttpd Connection Rejector");
+                        return t;
+                    }
+                });
+        rejectExecutor.allowCoreThreadTimeOut(true);
+
         myThread = new Thread(new Runnable() {
             @Override
             public void run() {
@@ -260,39 +312,48 @@ public abstract class NanoHTTPD {
 
                         registerConnection(finalAccept);
                         finalAccept.setSoTimeout(SOCKET_READ_TIMEOUT);
+                        // The header and the body of a response are written separately.
+                        // Without this, the body of every response on a keep-alive
+                        // connection waits for the delayed ACK of the header (Nagle).
+                        finalAccept.setTcpNoDelay(true);
                         final InputStream inputStream = finalAccept.getInputStream();
                         if (inputStream == null) {
                             safeClose(finalAccept);
                         } else {
-                            asyncRunner.exec(new Runnable() {
-                                @Override
-                                public void run() {
-                                    OutputStream outputStream = null;
-                                    try {
-                                        outputStream = finalAccept.getOutputStream();
-                                        TempFileManager tempFileManager = tempFileManagerFactory.create();
-                                        HTTPSession session = new HTTPSession(tempFileManager, inputStream,
-                                                outputStream);
-                                        while (!finalAccept.isClosed()) {
-                                            session.execute();
+                            try {
+                                asyncRunner.exec(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        OutputStream outputStream = null;
+                                        try {
+                                            outputStream = finalAccept.getOutputStream();
+                                            TempFileManager tempFileManager = tempFileManagerFactory.create();
+                                            HTTPSession session = new HTTPSession(tempFileManager, inputStream,
+                                                    outputStream);
+                                            while (!finalAccept.isClosed()) {
+                                                session.execute();
+                                            }
+                                        } catch (Exception e) {
+                                            // When the socket is closed by the
+                                            // client, we throw our own
+                                            // SocketException
+                                            // to break the "keep alive" loop above.
+                                            if (!(e instanceof SocketException && "NanoHttpd Shutdown".equals(e
+                                                    .getMessage()))) {
+                                                e.printStackTrace();
+                                            }
+                                        } finally {
+                                            safeClose(outputStream);
+                                            safeClose(inputStream);
+                                            safeClose(finalAccept);
+                                            unRegisterConnection(finalAccept);
                                         }
-                                    } catch (Exception e) {
-                                        // When the socket is closed by the
-                                        // client, we throw our own
-                                        // SocketException
-                                        // to break the "keep alive" loop above.
-                                        if (!(e instanceof SocketException && "NanoHttpd Shutdown".equals(e
-                                                .getMessage()))) {
-                                            e.printStackTrace();
-                                        }
-                                    } finally {
-                                        safeClose(outputStream);
-                                        safeClose(inputStream);
-                                        safeClose(finalAccept);
-                                        unRegisterConnection(finalAccept);
                                     }
-                                }
-                            });
+                                });
+                            } catch (RejectedExecutionException e) {
+                                // No worker thread is free, so answer 503 right away and close the connection
+                                rejectConnection(finalAccept);
+                            }
                         }
                     } catch (IOException e) {
                     }
@@ -305,6 +366,57 @@ public abstract class NanoHTTPD {
         myThread.start();
     }
 
+    /**
+     * Refuses a connection that could not be handed to the AsyncRunner.
+     * <p/>
+     * <p>
+     * The response is sent on another thread, because with HTTPS it needs the
+     * TLS handshake, and a slow client would otherwise stall the listener
+     * thread. If too many refused connections are already waiting, the
+     * connection is closed without a response.
+     * </p>
+     * 
+     * @param socket the {@link Socket} for the connection.
+     */
+    private void rejectConnection(final Socket socket) {
+        try {
+            rejectExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendServiceUnavailable(socket);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            safeClose(socket);
+            unRegisterConnection(socket);
+        }
+    }
+
+    /**
+     * Sends a "503 Service Unavailable" response with a Retry-After header to
+     * a refused connection, and closes it.
+     * 
+     * @param socket the {@link Socket} for the connection.
+     */
+    private void sendServiceUnavailable(Socket socket) {
+        OutputStream outputStream = null;
+        try {
+            socket.setSoTimeout(REJECT_SOCKET_TIMEOUT);
+            outputStream = socket.getOutputStream();
+            Response r = new Response(Response.Status.SERVICE_UNAVAILABLE, MIME_PLAINTEXT,
+                    "Server can't accept more connections.");
+            r.addHeader("Retry-After", String.valueOf(SERVICE_UNAVAILABLE_RETRY_AFTER));
+            r.addHeader("Connection", "close");
+            r.send(outputStream);
+        } catch (IOException e) {
+            // Couldn't write? No can do.
+        } finally {
+            safeClose(outputStream);
+            safeClose(socket);
+            unRegisterConnection(socket);
+        }
+    }
+
     /**
      * Stop the server.
      */
@@ -313,6 +425,9 @@ public abstract class NanoHTTPD {
             safeClose(myServerSocket);
             closeAllConnections();
             myThread.join();
+            if (rejectExecutor != null) {
+                rejectExecutor.shutdownNow();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -585,6 +700,95 @@ public abstract class NanoHTTPD {
         }
     }
 
+    /**
+     * Threading strategy backed by a bounded thread pool.
+     * <p/>
+     * <p>
+     * At most <code>maxThreads</code> connections are processed at the same
+     * time, and at most <code>queueSize</code> connections wait for a free
+     * thread. Any further connection is refused with a
+     * {@link RejectedExecutionException}, which the server answers with
+     * "503 Service Unavailable". Idle threads are terminated after
+     * <code>keepAliveTime</code> milliseconds.
+     * </p>
+     */
+    public static class BoundedAsyncRunner implements AsyncRunner {
+        /** Default time (in milliseconds) an idle thread is kept alive. */
+        public static final long DEFAULT_KEEP_ALIVE_TIME = 60000;
+
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong rejectedCount = new AtomicLong();
+
+        public BoundedAsyncRunner(int maxThreads, int queueSize) {
+            this(maxThreads, queueSize, DEFAULT_KEEP_ALIVE_TIME);
+        }
+
+        public BoundedAsyncRunner(int maxThreads, int queueSize, long keepAliveTime) {
+            if (maxThreads <= 0) {
+                throw new IllegalArgumentException("maxThreads must be larger than 0.");
+            }
+            if (queueSize < 0) {
+                throw new IllegalArgumentException("queueSize must not be negative.");
+            }
+            BlockingQueue<Runnable> queue;
+            if (queueSize == 0) {
+                queue = new SynchronousQueue<Runnable>();
+            } else {
+                queue = new ArrayBlockingQueue<Runnable>(queueSize);
+            }
+            executor = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveTime, TimeUnit.MILLISECONDS, queue,
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r);
+                            t.setName("NanoHttpd Request Processor (#" + requestCount.incrementAndGet() + ")");
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void exec(Runnable code) {
+            try {
+                executor.execute(code);
+            } catch (RejectedExecutionException e) {
+                rejectedCount.incrementAndGet();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the number of connections being processed.
+         */
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        /**
+         * @return the number of connections waiting for a free thread.
+         */
+        public int getQueuedCount() {
+            return executor.getQueue().size();
+        }
+
+        /**
+         * @return the number of connections refused since this runner was
+         *         created.
+         */
+        public long getRejectedCount() {
+            return rejectedCount.get();
+        }
+
+        /**
+         * Stops accepting new connections and lets running ones finish.
+         */
+        public void shutdown() {
+            executor.shutdown();
+        }
+    }
+
     /**
      * Default strategy for creating and cleaning up temporary files.
      * <p/>
@@ -685,6 +889,10 @@ public abstract class NanoHTTPD {
          * Use chunkedTransfer
          */
         private boolean chunkedTransfer;
+        /**
+         * Length of the data, or -1 to use data.available().
+         */
+        private long contentLength = -1;
 
         /**
          * Default constructor: response = HTTP_OK, mime = MIME_HTML and your
@@ -797,11 +1005,18 @@ public abstract class NanoHTTPD {
         }
 
         private void sendAsFixedLength(OutputStream outputStream, PrintWriter pw) throws IOException {
-            int pending = data != null ? data.available() : 0; // This is to
+            long pending;
+            if (contentLength >= 0) {
+                // The length is known in advance, so the data is streamed
+                // without asking the stream how much is left.
+                pending = data != null ? contentLength : 0;
+            } else {
+                pending = data != null ? data.available() : 0; // This is to
                                                                // support
                                                                // partial
                                                                // sends, see
                                                                // serveFile()
+            }
             pw.print("Content-Length: " + pending + "\r\n");
 
             pw.print("\r\n");
@@ -811,7 +1026,7 @@ public abstract class NanoHTTPD {
                 int BUFFER_SIZE = 16 * 1024;
                 byte[] buff = new byte[BUFFER_SIZE];
                 while (pending > 0) {
-                    int read = data.read(buff, 0, ((pending > BUFFER_SIZE) ? BUFFER_SIZE : pending));
+                    int read = data.read(buff, 0, (int) ((pending > BUFFER_SIZE) ? BUFFER_SIZE : pending));
                     if (read <= 0) {
                         break;
                     }
@@ -858,6 +1073,15 @@ public abstract class NanoHTTPD {
             this.chunkedTransfer = chunkedTransfer;
         }
 
+        /**
+         * Sets the length of the data sent as Content-Length. Use this for
+         * streams whose available() does not report the whole remaining size
+         * (e.g. files larger than 2GB or streams from a ParcelFileDescriptor).
+         */
+        public void setContentLength(long contentLength) {
+            this.contentLength = contentLength;
+        }
+
         /**
          * Some HTTP response status codes
          */
@@ -867,8 +1091,8 @@ public abstract class NanoHTTPD {
                     "Moved Permanently"), NOT_MODIFIED(304, "Not Modified"), BAD_REQUEST(400, "Bad Request"), UNAUTHORIZED(
                     401, "Unauthorized"), FORBIDDEN(403, "Forbidden"), NOT_FOUND(404, "Not Found"), METHOD_NOT_ALLOWED(
                     405, "Method Not Allowed"), REQUEST_ENTITY_TOO_LARGE(413, "Request Entity Too Large"), RANGE_NOT_SATISFIABLE(
-                    416, "Requested Range Not Satisfiable"), INTERNAL_ERROR(500, "Internal Server Error"), NOT_IMPLEMENTED(
-                    501, "Not Implemented");
+                    416, "Requested Range Not Satisfiable"), TOO_MANY_REQUESTS(429, "Too Many Requests"), INTERNAL_ERROR(500, "Internal Server Error"), NOT_IMPLEMENTED(
+                    501, "Not Implemented"), SERVICE_UNAVAILABLE(503, "Service Unavailable");
             private final int requestStatus;
             private final String description;
 
@@ -16,6 +16,7 @@ public abstract class NanoWSD extends NanoHTTPD {
     public static final String HEADER_WEBSOCKET_KEY = "sec-websocket-key";
     public static final String HEADER_WEBSOCKET_ACCEPT = "sec-websocket-accept";
     public static final String HEADER_WEBSOCKET_PROTOCOL = "sec-websocket-protocol";
+    public static final String HEADER_WEBSOCKET_EXTENSIONS = "sec-websocket-extensions";
 
     public final static String WEBSOCKET_KEY_MAGIC = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
 
@@ -0,0 +1,298 @@
+package fi.iki.elonen;
+
+import fi.iki.elonen.WebSocketFrame.CloseCode;
+import fi.iki.elonen.WebSocketFrame.OpCode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.CharacterCodingException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The permessage-deflate extension (RFC 7692) for a single WebSocket connection.
+ * <p>
+ * {@link #negotiate(String, int, boolean)} picks the first acceptable offer of the
+ * client's Sec-WebSocket-Extensions header. The returned instance compresses outgoing
+ * messages and inflates incoming ones. Compression has to be called in the order the
+ * messages are sent when context takeover is used, so callers must hold the send lock.
+ * All methods may be called from the reader, the writers and the closing thread.
+ * </p>
+ * <p>
+ * {@link Deflater} cannot limit its window, so offers with server_max_window_bits below
+ * 15 are declined. On platforms without {@link Deflater#SYNC_FLUSH} every message is
+ * compressed as a final block and server_no_context_takeover is always negotiated.
+ * </p>
+ * <p>
+ * A few kilobytes of DEFLATE data can inflate to gigabytes, so an incoming message is
+ * rejected with 1009 (Message Too Big) as soon as its inflated size exceeds the maximum.
+ * </p>
+ */
+public class PerMessageDeflate {
+    public static final String EXTENSION_NAME = "permessage-deflate";
+
+    /** The default maximum size of an inflated incoming message in bytes. */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+    private static final int MAX_WINDOW_BITS = 15;
+
+    /** The empty stored block that ends a flushed message (RFC 7692 section 7.2.1). */
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private static final boolean SYNC_FLUSH_SUPPORTED = isSyncFlushSupported();
+
+    private final boolean serverContextTakeover;
+    private final boolean clientContextTakeover;
+    private final int minSize;
+    private final int maxMessageSize;
+    private final String responseHeader;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] buffer = new byte[8192];
+
+    private boolean ended;
+    private long uncompressedBytes;
+    private long compressedBytes;
+
+    private PerMessageDeflate(boolean serverContextTakeover, boolean clientContextTakeover, int minSize,
+            int maxMessageSize, String responseHeader) {
+        this.serverContextTakeover = serverContextTakeover;
+        this.clientContextTakeover = clientContextTakeover;
+        this.minSize = minSize;
+        this.maxMessageSize = maxMessageSize;
+        this.responseHeader = responseHeader;
+    }
+
+    /**
+     * Negotiates permessage-deflate with the offers of a client. Incoming messages may
+     * inflate to at most {@link #DEFAULT_MAX_MESSAGE_SIZE} bytes.
+     *
+     * @param offers the value of the Sec-WebSocket-Extensions request header, may be null
+     * @param minSize messages shorter than this (in bytes) are sent uncompressed
+     * @param contextTakeover false to reset the compressor after every message, which saves
+     *            memory per connection at the cost of compression ratio
+     * @return the extension, or null if the client did not offer an acceptable permessage-deflate
+     */
+    public static PerMessageDeflate negotiate(String offers, int minSize, boolean contextTakeover) {
+        return negotiate(offers, minSize, contextTakeover, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * Negotiates permessage-deflate with the offers of a client.
+     *
+     * @param offers the value of the Sec-WebSocket-Extensions request header, may be null
+     * @param minSize messages shorter than this (in bytes) are sent uncompressed
+     * @param contextTakeover false to reset the compressor after every message, which saves
+     *            memory per connection at the cost of compression ratio
+     * @param maxMessageSize the maximum size (in bytes) an incoming message may inflate to
+     * @return the extension, or null if the client did not offer an acceptable permessage-deflate
+     */
+    public static PerMessageDeflate negotiate(String offers, int minSize, boolean contextTakeover,
+            int maxMessageSize) {
+        if (offers == null) {
+            return null;
+        }
+        for (String offer : offers.split(",")) {
+            String[] params = offer.split(";");
+            if (!EXTENSION_NAME.equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            boolean serverNoContextTakeover = !contextTakeover || !SYNC_FLUSH_SUPPORTED;
+            boolean clientNoContextTakeover = false;
+            boolean acceptable = true;
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String param = params[i].trim();
+                String value = null;
+                int eq = param.indexOf('=');
+                if (eq >= 0) {
+                    value = param.substring(eq + 1).trim().replace("\"", "");
+                    param = param.substring(0, eq).trim();
+                }
+                if (SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(param)) {
+                    serverNoContextTakeover = true;
+                } else if (CLIENT_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(param)) {
+                    clientNoContextTakeover = true;
+                } else if (SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(param)) {
+                    acceptable = parseWindowBits(value) == MAX_WINDOW_BITS;
+                } else if (CLIENT_MAX_WINDOW_BITS.equalsIgnoreCase(param)) {
+                    // The inflater accepts any window size, so the hint is simply not used.
+                    acceptable = value == null || parseWindowBits(value) > 0;
+                } else {
+                    acceptable = false;
+                }
+            }
+            if (!acceptable) {
+                continue;
+            }
+            StringBuilder header = new StringBuilder(EXTENSION_NAME);
+            if (serverNoContextTakeover) {
+                header.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+            }
+            if (clientNoContextTakeover) {
+                header.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+            }
+            return new PerMessageDeflate(!serverNoContextTakeover, !clientNoContextTakeover, minSize,
+                    maxMessageSize, header.toString());
+        }
+        return null;
+    }
+
+    private static int parseWindowBits(String value) {
+        try {
+            int bits = Integer.parseInt(value);
+            return (bits >= 8 && bits <= MAX_WINDOW_BITS) ? bits : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isSyncFlushSupported() {
+        try {
+            Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the value of the Sec-WebSocket-Extensions response header
+     */
+    public String getResponseHeader() {
+        return responseHeader;
+    }
+
+    /**
+     * Compresses an unfragmented data frame.
+     *
+     * @param frame the frame to send
+     * @return a compressed frame with RSV1 set, or the frame itself if it is a control
+     *         frame, a fragment or shorter than the minimum size
+     */
+    public synchronized WebSocketFrame compress(WebSocketFrame frame) {
+        OpCode opCode = frame.getOpCode();
+        byte[] payload = frame.getBinaryPayload();
+        if (ended || opCode.isControlFrame() || opCode == OpCode.Continuation || !frame.isFin() || frame.isRsv1()
+                || payload.length < minSize) {
+            return frame;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + TAIL.length);
+        deflater.setInput(payload);
+        byte[] compressed;
+        if (SYNC_FLUSH_SUPPORTED) {
+            int len;
+            do {
+                len = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, len);
+            } while (len == buffer.length);
+            if (!serverContextTakeover) {
+                deflater.reset();
+            }
+            compressed = out.toByteArray();
+            // Remove the 0x00 0x00 0xFF 0xFF written by the sync flush.
+            compressed = copyOf(compressed, compressed.length - TAIL.length);
+        } else {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(buffer);
+                out.write(buffer, 0, len);
+            }
+            deflater.reset();
+            // A final block followed by an empty stored block without its last 4 bytes
+            // (RFC 7692 section 7.2.3.4).
+            out.write(0);
+            compressed = out.toByteArray();
+        }
+
+        WebSocketFrame result = new WebSocketFrame(opCode, true, compressed);
+        result.setRsv1(true);
+        uncompressedBytes += payload.length;
+        compressedBytes += compressed.length;
+        return result;
+    }
+
+    /**
+     * Inflates a complete (possibly reassembled) message whose first frame had RSV1 set.
+     *
+     * @param frame the compressed message
+     * @return the uncompressed message
+     * @throws WebSocketException if the payload is not valid DEFLATE data or inflates to more
+     *             than the maximum message size
+     * @throws CharacterCodingException if an inflated text message is not valid UTF-8
+     */
+    public synchronized WebSocketFrame decompress(WebSocketFrame frame) throws WebSocketException, CharacterCodingException {
+        if (!frame.isRsv1()) {
+            return frame;
+        }
+        if (ended) {
+            throw new WebSocketException(CloseCode.GoingAway, "The connection has been closed.");
+        }
+        byte[] payload = frame.getBinaryPayload();
+        byte[] input = copyOf(payload, payload.length + TAIL.length);
+        System.arraycopy(TAIL, 0, input, payload.length, TAIL.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(payload.length * 4L, maxMessageSize));
+        inflater.setInput(input);
+        try {
+            while (!inflater.needsInput() && !inflater.finished()) {
+                int len = inflater.inflate(buffer);
+                if (len == 0 && inflater.needsDictionary()) {
+                    throw new WebSocketException(CloseCode.InvalidFramePayloadData, "Invalid compressed message.");
+                }
+                if (out.size() + len > maxMessageSize) {
+                    // Stop before a decompression bomb fills the heap; the connection is closed anyway.
+                    inflater.reset();
+                    throw new WebSocketException(CloseCode.MessageTooBig,
+                            "Max inflated message size has been exceeded.");
+                }
+                out.write(buffer, 0, len);
+            }
+        } catch (DataFormatException e) {
+            throw new WebSocketException(CloseCode.InvalidFramePayloadData, e.getMessage());
+        }
+        if (!clientContextTakeover || inflater.finished()) {
+            inflater.reset();
+        }
+        byte[] inflated = out.toByteArray();
+        if (frame.getOpCode() == OpCode.Text) {
+            WebSocketFrame.binary2Text(inflated);
+        }
+        return new WebSocketFrame(frame.getOpCode(), true, inflated);
+    }
+
+    /**
+     * Releases the native resources of the compressor and decompressor.
+     * Frames compressed afterwards are sent uncompressed.
+     */
+    public synchronized void end() {
+        ended = true;
+        deflater.end();
+        inflater.end();
+    }
+
+    /**
+     * @return the total size of the messages before compression
+     */
+    public synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return the total size of the messages after compression
+     */
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    private static byte[] copyOf(byte[] src, int length) {
+        byte[] dst = new byte[length];
+        System.arraycopy(src, 0, dst, 0, Math.min(src.length, length));
+        return dst;
+    }
+}
@@ -18,7 +18,10 @@ public abstract class WebSocket {
     protected WebSocketFrame.OpCode continuousOpCode = null;
     protected List<WebSocketFrame> continuousFrames = new LinkedList<WebSocketFrame>();
 
-    protected State state = State.UNCONNECTED;
+    protected volatile State state = State.UNCONNECTED;
+
+    /** The negotiated permessage-deflate extension, or null. */
+    protected PerMessageDeflate deflate;
 
     public static enum State {
         UNCONNECTED, CONNECTING, OPEN, CLOSING, CLOSED
@@ -49,7 +52,7 @@ public abstract class WebSocket {
     protected void readWebsocket() {
         try {
             while (state == State.OPEN) {
-                handleWebsocketFrame(WebSocketFrame.read(in));
+                handleWebsocketFrame(WebSocketFrame.read(in, deflate != null));
             }
         } catch (CharacterCodingException e) {
             onException(e);
@@ -57,13 +60,30 @@ public abstract class WebSocket {
         } catch (IOException e) {
             onException(e);
             if (e instanceof WebSocketException) {
-                doClose(((WebSocketException) e).getCode(), ((WebSocketException) e).getReason(), false);
+                failConnection((WebSocketException) e);
             }
         } finally {
             doClose(CloseCode.InternalServerError, "Handler terminated without closing the connection.", false);
         }
     }
 
+    /**
+     * Sends a close frame with the code of the error, e.g. 1009 for a message that is too big,
+     * and closes the connection without waiting for the answer of the other endpoint.
+     */
+    private void failConnection(WebSocketException e) {
+        if (state == State.OPEN) {
+            state = State.CLOSING;
+            try {
+                // The reason is left out since it may exceed the 123 bytes a close frame can carry.
+                sendFrame(new CloseFrame(e.getCode(), ""));
+            } catch (IOException ignored) {
+                // The connection is closed below anyway.
+            }
+        }
+        doClose(e.getCode(), e.getReason(), false);
+    }
+
     protected void handleWebsocketFrame(WebSocketFrame frame) throws IOException {
         if (frame.getOpCode() == OpCode.Close) {
             handleCloseFrame(frame);
@@ -76,7 +96,7 @@ public abstract class WebSocket {
         } else if (continuousOpCode != null) {
             throw new WebSocketException(CloseCode.ProtocolError, "Continuous frame sequence not completed.");
         } else if (frame.getOpCode() == OpCode.Text || frame.getOpCode() == OpCode.Binary) {
-            onMessage(frame);
+            onMessage(inflate(frame));
         } else {
             throw new WebSocketException(CloseCode.ProtocolError, "Non control or continuous frame expected.");
         }
@@ -117,7 +137,10 @@ public abstract class WebSocket {
             if (continuousOpCode == null) {
                 throw new WebSocketException(CloseCode.ProtocolError, "Continuous frame sequence was not started.");
             }
-            onMessage(new WebSocketFrame(continuousOpCode, continuousFrames));
+            continuousFrames.add(frame);
+            WebSocketFrame message = new WebSocketFrame(continuousOpCode, continuousFrames);
+            message.setRsv1(continuousFrames.get(0).isRsv1());
+            onMessage(inflate(message));
             continuousOpCode = null;
             continuousFrames.clear();
         } else if (continuousOpCode == null) {
@@ -129,7 +152,18 @@ public abstract class WebSocket {
         }
     }
 
+    protected WebSocketFrame inflate(WebSocketFrame frame) throws IOException {
+        if (deflate != null && frame.isRsv1()) {
+            return deflate.decompress(frame);
+        }
+        return frame;
+    }
+
     public synchronized void sendFrame(WebSocketFrame frame) throws IOException {
+        if (deflate != null) {
+            // Compressed under the lock so the shared compression context follows the send order.
+            frame = deflate.compress(frame);
+        }
         frame.write(out);
     }
 
@@ -154,6 +188,9 @@ public abstract class WebSocket {
             }
         }
         state = State.CLOSED;
+        if (deflate != null) {
+            deflate.end();
+        }
         onClose(code, reason, initiatedByRemote);
     }
 
@@ -191,8 +228,25 @@ public abstract class WebSocket {
         }
     }
 
+    /**
+     * Enables permessage-deflate for this connection and adds the negotiated
+     * parameters to the handshake response. Must be called before the handshake is sent.
+     *
+     * @param deflate the result of {@link PerMessageDeflate#negotiate(String, int, boolean)}
+     */
+    public void setPerMessageDeflate(PerMessageDeflate deflate) {
+        this.deflate = deflate;
+        if (deflate != null) {
+            handshakeResponse.addHeader(NanoWSD.HEADER_WEBSOCKET_EXTENSIONS, deflate.getResponseHeader());
+        }
+    }
+
     // --------------------------------Getters---------------------------------
 
+    public PerMessageDeflate getPerMessageDeflate() {
+        return deflate;
+    }
+
     public NanoHTTPD.IHTTPSession getHandshakeRequest() {
         return handshakeRequest;
     }
@@ -16,6 +16,7 @@ import java.util.List;
 public class WebSocketFrame {
     private OpCode opCode;
     private boolean fin;
+    private boolean rsv1;
     private byte[] maskingKey;
 
     private byte[] payload;
@@ -51,6 +52,7 @@ public class WebSocketFrame {
     public WebSocketFrame(WebSocketFrame clone) {
         setOpCode(clone.getOpCode());
         setFin(clone.isFin());
+        setRsv1(clone.isRsv1());
         setBinaryPayload(clone.getBinaryPayload());
         setMaskingKey(clone.getMaskingKey());
     }
@@ -94,6 +96,18 @@ public class WebSocketFrame {
         this.fin = fin;
     }
 
+    /**
+     * @return true if the RSV1 bit is set. With permessage-deflate it marks
+     *         the first frame of a compressed message.
+     */
+    public boolean isRsv1() {
+        return rsv1;
+    }
+
+    public void setRsv1(boolean rsv1) {
+        this.rsv1 = rsv1;
+    }
+
     public boolean isMasked() {
         return maskingKey != null && maskingKey.length == 4;
     }
@@ -143,19 +157,36 @@ public class WebSocketFrame {
     // --------------------------------SERIALIZATION---------------------------
 
     public static WebSocketFrame read(InputStream in) throws IOException {
+        return read(in, false);
+    }
+
+    /**
+     * Reads a frame.
+     *
+     * @param in the stream to read from
+     * @param allowRsv1 true if an extension that uses the RSV1 bit (permessage-deflate) was negotiated
+     * @return the frame
+     * @throws IOException if the frame could not be read or is invalid
+     */
+    public static WebSocketFrame read(InputStream in, boolean allowRsv1) throws IOException {
         byte head = (byte) checkedRead(in.read());
         boolean fin = ((head & 0x80) != 0);
+        boolean rsv1 = ((head & 0x40) != 0);
         OpCode opCode = OpCode.find((byte) (head & 0x0F));
-        if ((head & 0x70) != 0) {
-            throw new WebSocketException(CloseCode.ProtocolError, "The reserved bits (" + Integer.toBinaryString(head & 0x70) + ") must be 0.");
+        int reserved = head & (allowRsv1 ? 0x30 : 0x70);
+        if (reserved != 0) {
+            throw new WebSocketException(CloseCode.ProtocolError, "The reserved bits (" + Integer.toBinaryString(reserved) + ") must be 0.");
         }
         if (opCode == null) {
             throw new WebSocketException(CloseCode.ProtocolError, "Received frame with reserved/unknown opcode " + (head & 0x0F) + ".");
         } else if (opCode.isControlFrame() && !fin) {
             throw new WebSocketException(CloseCode.ProtocolError, "Fragmented control frame.");
+        } else if (rsv1 && (opCode.isControlFrame() || opCode == OpCode.Continuation)) {
+            throw new WebSocketException(CloseCode.ProtocolError, "RSV1 must only be set on the first frame of a data message.");
         }
 
         WebSocketFrame frame = new WebSocketFrame(opCode, fin);
+        frame.setRsv1(rsv1);
         frame.readPayloadInfo(in);
         frame.readPayload(in);
         if (frame.getOpCode() == OpCode.Close) {
@@ -231,8 +262,8 @@ public class WebSocketFrame {
             }
         }
 
-        //Test for Unicode errors
-        if (getOpCode() == OpCode.Text) {
+        //Test for Unicode errors (compressed payloads are checked after inflating)
+        if (getOpCode() == OpCode.Text && !isRsv1()) {
             _payloadString = binary2Text(getBinaryPayload());
         }
     }
@@ -242,6 +273,9 @@ public class WebSocketFrame {
         if (fin) {
             header |= 0x80;
         }
+        if (rsv1) {
+            header |= 0x40;
+        }
         header |= opCode.getValue() & 0x0F;
         out.write(header);
 
@@ -13,14 +13,30 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.SimpleFormatter;
@@ -34,7 +50,11 @@ import org.deviceconnect.server.http.HttpRequest;
 import org.deviceconnect.server.http.HttpResponse;
 import org.deviceconnect.server.nanohttpd.logger.AndroidHandler;
 import org.deviceconnect.server.nanohttpd.security.Firewall;
+import org.deviceconnect.server.nanohttpd.util.ByteRange;
+import org.deviceconnect.server.nanohttpd.util.FileRangeInputStream;
 import org.deviceconnect.server.nanohttpd.util.KeyStoreManager;
+import org.deviceconnect.server.nanohttpd.util.WebSocketConnectionLimiter;
+import org.deviceconnect.server.nanohttpd.util.WebSocketEventQueue;
 import org.deviceconnect.server.websocket.DConnectWebSocket;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -44,6 +64,7 @@ import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.NanoHTTPD.IHTTPSession;
 import fi.iki.elonen.NanoHTTPD.Response.Status;
 import fi.iki.elonen.NanoWSD;
+import fi.iki.elonen.PerMessageDeflate;
 import fi.iki.elonen.WebSocket;
 import fi.iki.elonen.WebSocketFrame;
 import fi.iki.elonen.WebSocketFrame.CloseCode;
@@ -64,6 +85,30 @@ public class DConnectServerNanoHttpd extends DConnectServer {
     /** WebSocketのKeepAlive処理のインターバル. */
     private static final int WEBSOCKET_KEEP_ALIVE_INTERVAL = 3000;
 
+    /** WebSocketのpongを待つ時間. この時間pongが返ってこない場合は切断する. */
+    private static final int WEBSOCKET_PONG_TIMEOUT = WEBSOCKET_KEEP_ALIVE_INTERVAL * 2;
+
+    /** 空のpingのペイロード. */
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    /** イベント送信用スレッドが待機する時間(ミリ秒). */
+    private static final long EVENT_WRITER_KEEP_ALIVE_TIME = 60000;
+
+    /** 1リクエストで受け付けるRangeの最大数. */
+    private static final int MAX_BYTE_RANGES = 16;
+
+    /** 1秒あたりのミリ秒. */
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /** Originヘッダ. */
+    private static final String HEADER_ORIGIN = "origin";
+
+    /** 接続元のIPアドレスを格納したヘッダ. */
+    private static final String HEADER_REMOTE_ADDR = "remote-addr";
+
+    /** HTTPの日付形式. */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
     /** 対応するMIME_TYPE群. */
     private static final Map<String, String> MIME_TYPES;
 
@@ -76,21 +121,6 @@ public class DConnectServerNanoHttpd extends DConnectServer {
     /** コンテキストオブジェクト. */
     private Context mContext;
 
-    /**
-     * Keep-Aliveの状態定数.
-     * 
-     * @author NTT DOCOMO, INC.
-     * 
-     */
-    private enum KeepAliveState {
-        /** クライアントの返事待ち状態. */
-        WAITING_PONG,
-
-        /** pong受信完了状態. */
-        GOT_PONG,
-
-    }
-
     /**
      * 設定値を元にサーバーを構築します.
      * 
@@ -210,6 +240,9 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
 
         mServer.stop();
+        mServer.shutdownAsyncRunner();
+        mServer.shutdownEventWriter();
+        mServer.shutdownKeepAliveScheduler();
         mServer = null;
         mLogger.exiting(getClass().getName(), "shutdown");
     }
@@ -219,6 +252,51 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         return (mServer == null) ? false : mServer.isAlive();
     }
 
+    /**
+     * 処理中のコネクション数を取得する.
+     * 
+     * @return 処理中のコネクション数。サーバーが起動していない場合は0を返す。
+     */
+    public synchronized int getActiveConnectionCount() {
+        return (mServer == null) ? 0 : mServer.mAsyncRunner.getActiveCount();
+    }
+
+    /**
+     * 処理待ちのコネクション数を取得する.
+     * 
+     * @return 処理待ちのコネクション数。サーバーが起動していない場合は0を返す。
+     */
+    public synchronized int getQueuedConnectionCount() {
+        return (mServer == null) ? 0 : mServer.mAsyncRunner.getQueuedCount();
+    }
+
+    /**
+     * 上限に達したために拒否したコネクション数を取得する.
+     * 
+     * @return 拒否したコネクション数。サーバーが起動していない場合は0を返す。
+     */
+    public synchronized long getRejectedConnectionCount() {
+        return (mServer == null) ? 0 : mServer.mAsyncRunner.getRejectedCount();
+    }
+
+    /**
+     * WebSocketの送信待ちに積んだイベントの総数を取得する.
+     * 
+     * @return 積んだイベントの総数。サーバーが起動していない場合は0を返す。
+     */
+    public synchronized long getQueuedEventCount() {
+        return (mServer == null) ? 0 : mServer.getQueuedEventCount();
+    }
+
+    /**
+     * WebSocketの送信待ちが溢れたために破棄したイベントの総数を取得する.
+     * 
+     * @return 破棄したイベントの総数。サーバーが起動していない場合は0を返す。
+     */
+    public synchronized long getDroppedEventCount() {
+        return (mServer == null) ? 0 : mServer.getDroppedEventCount();
+    }
+
     /**
      * 証明書を読み込みFactoryクラスを生成する.
      * 
@@ -275,8 +353,23 @@ public class DConnectServerNanoHttpd extends DConnectServer {
      */
     private class NanoServer extends NanoWSD {
 
-        /** WebSocketのコネクションカウンター. */
-        private int mWebSocketCount;
+        /** WebSocketのコネクション数の制限. */
+        private final WebSocketConnectionLimiter mWebSocketLimiter;
+
+        /** コネクションを処理するスレッドプール. */
+        private final BoundedAsyncRunner mAsyncRunner;
+
+        /** WebSocketのイベントを送信するスレッドプール. */
+        private final ThreadPoolExecutor mEventWriter;
+
+        /** 全てのWebSocketのKeep-Aliveを処理するスケジューラ. */
+        private final ScheduledThreadPoolExecutor mKeepAliveScheduler;
+
+        /** 閉じたWebSocketで送信待ちに積んだイベントの総数. */
+        private final AtomicLong mClosedQueuedEventCount = new AtomicLong();
+
+        /** 閉じたWebSocketで破棄したイベントの総数. */
+        private final AtomicLong mClosedDroppedEventCount = new AtomicLong();
 
         /**
          * コンストラクタ.
@@ -290,8 +383,45 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             Firewall firewall = new Firewall(mConfig.getIPWhiteList());
             setFirewall(firewall);
 
+            // コネクション毎にスレッドを生成すると、大量のアクセスがあった場合に
+            // スレッドが際限なく増えてしまうため、最大コネクション数で上限をかける。
+            // 上限を超えたコネクションは待ち行列に入れ、待ち行列も溢れた場合は503を返す。
+            // WebSocketは接続中ずっとスレッドを使うので、HTTPのリクエストを処理するスレッドが
+            // WebSocketで埋まらないように、WebSocketの最大コネクション数の分だけ上限を増やす。
+            mAsyncRunner = new BoundedAsyncRunner(
+                    mConfig.getMaxConnectionSize() + mConfig.getMaxWebSocketConnectionSize(),
+                    mConfig.getMaxConnectionSize());
+            setAsyncRunner(mAsyncRunner);
+
+            // イベントとpingの送信はそれぞれWebSocket毎に1スレッドまでしか使わないので、
+            // WebSocketの最大コネクション数の2倍を上限にする。
+            // 空いているスレッドを使い回し、足りない場合にだけスレッドを増やす。
+            final AtomicLong threadCount = new AtomicLong();
+            int maxThreads = mConfig.getMaxWebSocketConnectionSize() * 2;
+            mEventWriter = new ThreadPoolExecutor(0, maxThreads, EVENT_WRITER_KEEP_ALIVE_TIME,
+                    TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            Thread t = new Thread(r);
+                            t.setName("WebSocket Event Writer (#" + threadCount.incrementAndGet() + ")");
+                            return t;
+                        }
+                    });
+
+            // WebSocket毎にタイマーのスレッドを作らず、1スレッドで全てのWebSocketのKeep-Aliveを処理する。
+            mKeepAliveScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("WebSocket Keep-Alive");
+                    return t;
+                }
+            });
+
+            mWebSocketLimiter = new WebSocketConnectionLimiter(mConfig.getMaxWebSocketConnectionSize(),
+                    mConfig.getMaxWebSocketConnectionSizePerOrigin());
+
             mLogger.exiting(getClass().getName(), "NanoServer");
-            mWebSocketCount = 0;
         }
 
         @Override
@@ -302,21 +432,9 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             do {
 
                 if (isWebsocketRequested(session)) {
-
-                    if (!countupWebSocket()) {
-                        nanoRes = new Response(Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT,
-                                "Server can't create more connections.");
-                        break;
-                    }
-
                     // WebSocketを開く処理&レスポンスはNanoWSDに任せ、セッションキーが送られてから
                     // 独自のセッション管理を行う。
                     nanoRes = parseWebSocketRequest(session);
-                    if (nanoRes.getStatus() != Status.SWITCH_PROTOCOL) {
-                        // 不正なWebSocketのリクエストの場合はカウントを取り消す
-                        countdownWebSocket();
-                    }
-
                     break;
                 }
 
@@ -338,18 +456,23 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                 HttpResponse res = new HttpResponse();
                 if (mListener != null && mListener.onReceivedHttpRequest(req, res)) {
 
-                    ByteArrayInputStream stream;
+                    nanoRes.setStatus(getStatus(res.getCode()));
+                    nanoRes.setMimeType(res.getContentType());
 
-                    if (res.getBody() != null) {
-                        stream = new ByteArrayInputStream(res.getBody());
+                    if (res.getBodyStream() != null) {
+                        // ストリームの場合はBody全体をメモリに展開せずに、送信しながら読み込む
+                        nanoRes.setData(res.getBodyStream());
+                        if (res.getBodyLength() == HttpResponse.UNKNOWN_LENGTH) {
+                            nanoRes.setChunkedTransfer(true);
+                        } else {
+                            nanoRes.setContentLength(res.getBodyLength());
+                        }
+                    } else if (res.getBody() != null) {
+                        nanoRes.setData(new ByteArrayInputStream(res.getBody()));
                     } else {
-                        stream = new ByteArrayInputStream("".getBytes());
+                        nanoRes.setData(new ByteArrayInputStream("".getBytes()));
                     }
 
-                    nanoRes.setStatus(getStatus(res.getCode()));
-                    nanoRes.setMimeType(res.getContentType());
-                    nanoRes.setData(stream);
-
                     Map<String, String> headers = res.getHeaders();
                     for (Entry<String, String> head : headers.entrySet()) {
                         nanoRes.addHeader(head.getKey(), head.getValue());
@@ -380,6 +503,57 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             return nanoRes;
         }
 
+        /**
+         * コネクションを処理するスレッドプールを終了する.
+         */
+        private void shutdownAsyncRunner() {
+            mAsyncRunner.shutdown();
+        }
+
+        /**
+         * WebSocketのイベントを送信するスレッドプールを終了する.
+         */
+        private void shutdownEventWriter() {
+            mEventWriter.shutdown();
+        }
+
+        /**
+         * 全てのWebSocketのKeep-Aliveを処理するスケジューラを終了する.
+         */
+        private void shutdownKeepAliveScheduler() {
+            mKeepAliveScheduler.shutdownNow();
+        }
+
+        /**
+         * WebSocketの送信待ちに積んだイベントの総数を取得する.
+         * 
+         * @return 積んだイベントの総数
+         */
+        private long getQueuedEventCount() {
+            long count = mClosedQueuedEventCount.get();
+            for (DConnectWebSocket socket : mSockets.values()) {
+                if (socket instanceof NanoWebSocket) {
+                    count += ((NanoWebSocket) socket).mEventQueue.getQueuedCount();
+                }
+            }
+            return count;
+        }
+
+        /**
+         * WebSocketの送信待ちが溢れたために破棄したイベントの総数を取得する.
+         * 
+         * @return 破棄したイベントの総数
+         */
+        private long getDroppedEventCount() {
+            long count = mClosedDroppedEventCount.get();
+            for (DConnectWebSocket socket : mSockets.values()) {
+                if (socket instanceof NanoWebSocket) {
+                    count += ((NanoWebSocket) socket).mEventQueue.getDroppedCount();
+                }
+            }
+            return count;
+        }
+
         /**
          * リクエストがWebSocket用かどうか判断する.
          * NanoWSDの当メソッドはFireFoxのリクエストに対応していないため、オーバーライドして修正する。
@@ -422,12 +596,20 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                 return new Response(Response.Status.BAD_REQUEST, NanoHTTPD.MIME_PLAINTEXT, "Missing Websocket-Key");
             }
 
+            // WebSocketを生成する前に上限を確認し、超えている場合はすぐに断る
+            String origin = getWebSocketOrigin(session);
+            Response rejected = acquireWebSocket(origin);
+            if (rejected != null) {
+                return rejected;
+            }
+
             WebSocket webSocket = openWebSocket(session);
 
             try {
                 webSocket.getHandshakeResponse().addHeader(HEADER_WEBSOCKET_ACCEPT,
                         makeAcceptKey(headers.get(HEADER_WEBSOCKET_KEY)));
             } catch (NoSuchAlgorithmException e) {
+                mWebSocketLimiter.release(origin);
                 return new Response(Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT,
                         "The SHA-1 Algorithm required for websockets is not available on the server.");
             }
@@ -435,6 +617,11 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                 webSocket.getHandshakeResponse().addHeader(HEADER_WEBSOCKET_PROTOCOL,
                         headers.get(HEADER_WEBSOCKET_PROTOCOL).split(",")[0]);
             }
+            if (mConfig.isWebSocketCompressionEnabled()) {
+                // クライアントが要求した場合のみイベントを圧縮して送信する
+                webSocket.setPerMessageDeflate(PerMessageDeflate.negotiate(headers.get(HEADER_WEBSOCKET_EXTENSIONS),
+                        mConfig.getWebSocketCompressionMinSize(), mConfig.isWebSocketCompressionContextTakeover()));
+            }
             return webSocket.getHandshakeResponse();
         }
 
@@ -461,7 +648,7 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         protected WebSocket openWebSocket(final IHTTPSession handshake) {
             // ここでコネクション数制限をかけてnullを返しても、呼び出しもとで
             // nullチェックをしていないため、更に上位の場所で制限をかける。
-            return new NanoWebSocket(handshake);
+            return new NanoWebSocket(handshake, mEventWriter, mKeepAliveScheduler);
         }
 
         /**
@@ -499,34 +686,186 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                     break;
                 } else if (!isReadableFile(file)) {
                     retval = new Response(Status.FORBIDDEN, MIME_PLAINTEXT, Status.FORBIDDEN.getDescription());
+                    break;
                 }
 
-                // If-None-Match対応
-                String etag = Integer.toHexString((file.getAbsolutePath() + file.lastModified() + "" + file.length())
-                        .hashCode());
-                if (etag.equals(session.getHeaders().get("if-none-match"))) {
-                    retval = new Response(Status.NOT_MODIFIED, mime, "");
-                } else {
+                retval = createStaticFileResponse(session, file, mime);
+
+            } while (false);
+
+            mLogger.exiting(getClass().getName(), "checkStaticFile", retval);
+            return retval;
+        }
+
+        /**
+         * 静的コンテンツのレスポンスを作成する.
+         * <p>
+         * If-None-Match、If-Modified-Sinceによる条件付きリクエストと、
+         * Range、If-Rangeによる部分取得に対応する。
+         * </p>
+         * 
+         * @param session HTTPリクエストデータ
+         * @param file 静的コンテンツのファイル
+         * @param mime MIMEタイプ
+         * @return レスポンス
+         */
+        private Response createStaticFileResponse(final IHTTPSession session, final File file, final String mime) {
+            Map<String, String> headers = session.getHeaders();
+            long length = file.length();
+            long lastModified = file.lastModified();
+            String etag = "\"" + Integer.toHexString((file.getAbsolutePath() + lastModified + "" + length)
+                    .hashCode()) + "\"";
+
+            Response retval;
+            if (isNotModified(headers, etag, lastModified)) {
+                retval = new Response(Status.NOT_MODIFIED, mime, "");
+            } else {
+                List<ByteRange> ranges = null;
+                if (isRangeValid(headers.get("if-range"), etag, lastModified)) {
+                    ranges = ByteRange.parse(headers.get("range"), length);
+                    if (ranges != null && ranges.size() > MAX_BYTE_RANGES) {
+                        // 大量の範囲指定は負荷が高いので、Rangeヘッダを無視して全体を返す
+                        ranges = null;
+                    }
+                }
+
+                if (ranges == null) {
                     try {
                         retval = new Response(Status.OK, mime, new FileInputStream(file));
-                        retval.addHeader("Content-Length", "" + file.length());
-                        retval.addHeader("ETag", etag);
+                        retval.setContentLength(length);
                     } catch (FileNotFoundException e) {
-                        retval = new Response(Status.NOT_FOUND, MIME_PLAINTEXT, Status.NOT_FOUND.getDescription());
-                        break;
+                        return new Response(Status.NOT_FOUND, MIME_PLAINTEXT, Status.NOT_FOUND.getDescription());
                     }
+                } else if (ranges.isEmpty()) {
+                    retval = new Response(Status.RANGE_NOT_SATISFIABLE, MIME_PLAINTEXT,
+                            Status.RANGE_NOT_SATISFIABLE.getDescription());
+                    retval.addHeader("Content-Range", "bytes */" + length);
+                } else if (ranges.size() == 1) {
+                    ByteRange range = ranges.get(0);
+                    retval = new Response(Status.PARTIAL_CONTENT, mime, new FileRangeInputStream(file, range));
+                    retval.setContentLength(range.getLength());
+                    retval.addHeader("Content-Range", range.toContentRange(length));
+                } else {
+                    retval = createMultipleRangesResponse(file, mime, ranges, length);
                 }
+            }
 
-                // ByteRangeへの対応は必須ではないため、noneを指定して対応しないことを伝える。
-                // 対応が必要な場合はbyteを設定して実装すること。
-                retval.addHeader("Accept-Ranges", "none");
+            retval.addHeader("ETag", etag);
+            retval.addHeader("Last-Modified", formatHttpDate(lastModified));
+            retval.addHeader("Accept-Ranges", "bytes");
+            return retval;
+        }
 
-            } while (false);
+        /**
+         * 複数の範囲が指定された場合のmultipart/byterangesのレスポンスを作成する.
+         * 
+         * @param file 静的コンテンツのファイル
+         * @param mime MIMEタイプ
+         * @param ranges 範囲のリスト
+         * @param length ファイルのサイズ
+         * @return レスポンス
+         */
+        private Response createMultipleRangesResponse(final File file, final String mime,
+                final List<ByteRange> ranges, final long length) {
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            Vector<InputStream> parts = new Vector<InputStream>();
+            long contentLength = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                StringBuilder sb = new StringBuilder();
+                if (i > 0) {
+                    sb.append("\r\n");
+                }
+                sb.append("--").append(boundary).append("\r\n");
+                sb.append("Content-Type: ").append(mime).append("\r\n");
+                sb.append("Content-Range: ").append(range.toContentRange(length)).append("\r\n");
+                sb.append("\r\n");
+                byte[] header = getAsciiBytes(sb.toString());
+                parts.add(new ByteArrayInputStream(header));
+                parts.add(new FileRangeInputStream(file, range));
+                contentLength += header.length + range.getLength();
+            }
+            byte[] trailer = getAsciiBytes("\r\n--" + boundary + "--\r\n");
+            parts.add(new ByteArrayInputStream(trailer));
+            contentLength += trailer.length;
 
-            mLogger.exiting(getClass().getName(), "checkStaticFile", retval);
+            Response retval = new Response(Status.PARTIAL_CONTENT, "multipart/byteranges; boundary=" + boundary,
+                    new SequenceInputStream(parts.elements()));
+            retval.setContentLength(contentLength);
             return retval;
         }
 
+        /**
+         * If-None-Match、If-Modified-Sinceヘッダから、コンテンツが更新されていないか判断する.
+         * 
+         * @param headers リクエストヘッダ
+         * @param etag コンテンツのETag
+         * @param lastModified コンテンツの最終更新日時
+         * @return 更新されていない(304を返す)場合true、その他はfalseを返す。
+         */
+        private boolean isNotModified(final Map<String, String> headers, final String etag,
+                final long lastModified) {
+            String ifNoneMatch = headers.get("if-none-match");
+            if (ifNoneMatch != null) {
+                // If-None-Matchがある場合はIf-Modified-Sinceは無視する
+                return matchesEntityTag(ifNoneMatch, etag, false);
+            }
+            Date ifModifiedSince = parseHttpDate(headers.get("if-modified-since"));
+            if (ifModifiedSince != null) {
+                // HTTPの日付は秒単位なので、ミリ秒は切り捨てて比較する
+                return lastModified / MILLIS_PER_SECOND <= ifModifiedSince.getTime() / MILLIS_PER_SECOND;
+            }
+            return false;
+        }
+
+        /**
+         * If-Rangeヘッダから、Rangeヘッダを有効にするか判断する.
+         * 
+         * @param ifRange If-Rangeヘッダの値
+         * @param etag コンテンツのETag
+         * @param lastModified コンテンツの最終更新日時
+         * @return Rangeヘッダを有効にする場合true、コンテンツ全体を返す場合はfalseを返す。
+         */
+        private boolean isRangeValid(final String ifRange, final String etag, final long lastModified) {
+            if (ifRange == null) {
+                return true;
+            }
+            String value = ifRange.trim();
+            if (value.startsWith("\"") || value.startsWith("W/")) {
+                return matchesEntityTag(value, etag, true);
+            }
+            Date date = parseHttpDate(value);
+            return date != null && lastModified / MILLIS_PER_SECOND == date.getTime() / MILLIS_PER_SECOND;
+        }
+
+        /**
+         * ETagのリストに指定されたETagが含まれるかチェックする.
+         * 
+         * @param list カンマ区切りのETagのリスト
+         * @param etag コンテンツのETag
+         * @param strong 強い比較を行う場合true、弱い比較を行う場合はfalse
+         * @return 含まれる場合true、その他はfalseを返す。
+         */
+        private boolean matchesEntityTag(final String list, final String etag, final boolean strong) {
+            for (String tag : list.split(",")) {
+                String value = tag.trim();
+                if (!strong && "*".equals(value)) {
+                    return true;
+                }
+                if (value.startsWith("W/")) {
+                    if (strong) {
+                        continue;
+                    }
+                    value = value.substring(2);
+                }
+                // 以前のバージョンではダブルクォートで囲まずにETagを返していたため、囲まれていない値も許容する
+                if (etag.equals(value) || etag.equals("\"" + value + "\"")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * URIからMIMEタイプを推測する.
          * 
@@ -545,32 +884,35 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
 
         /**
-         * WebSocketのコネクションカウンタを1増やす.
+         * WebSocketのコネクションを1つ確保する.
+         * <p>
+         * 全体の上限に達している場合は503、Originの上限に達している場合は429のレスポンスを返す。
+         * </p>
          * 
-         * @return コネクション数が上限に達していない場合true、上限に達した場合はfalseを返す
+         * @param origin 接続元のOrigin
+         * @return 確保できた場合はnull、上限に達している場合はエラーのレスポンス
          */
-        private synchronized boolean countupWebSocket() {
-
-            mLogger.entering(getClass().getName(), "countupWebSocket");
-            if (mConfig.getMaxWebSocketConnectionSize() <= mWebSocketCount) {
-                mLogger.exiting(getClass().getName(), "countupWebSocket", false);
-                return false;
+        private Response acquireWebSocket(final String origin) {
+            mLogger.entering(getClass().getName(), "acquireWebSocket", origin);
+            Response res = null;
+            switch (mWebSocketLimiter.tryAcquire(origin)) {
+            case TOTAL_LIMIT_EXCEEDED:
+                res = new Response(Status.SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT,
+                        "Server can't create more connections.");
+                break;
+            case ORIGIN_LIMIT_EXCEEDED:
+                res = new Response(Status.TOO_MANY_REQUESTS, NanoHTTPD.MIME_PLAINTEXT,
+                        "Too many connections from " + origin + ".");
+                break;
+            default:
+                break;
             }
-
-            mWebSocketCount++;
-            mLogger.exiting(getClass().getName(), "countupWebSocket", true);
-            return true;
-        }
-
-        /**
-         * WebSocketのコネクションカウンタを1減らす.
-         */
-        private synchronized void countdownWebSocket() {
-            mLogger.entering(getClass().getName(), "countdownWebSocket");
-            if (mWebSocketCount > 0) {
-                mWebSocketCount--;
+            if (res != null) {
+                res.addHeader("Retry-After", String.valueOf(SERVICE_UNAVAILABLE_RETRY_AFTER));
+                mLogger.warning("WebSocket connection is rejected. origin=" + origin + " status=" + res.getStatus());
             }
-            mLogger.exiting(getClass().getName(), "countdownWebSocket");
+            mLogger.exiting(getClass().getName(), "acquireWebSocket", res);
+            return res;
         }
 
         /**
@@ -700,6 +1042,59 @@ public class DConnectServerNanoHttpd extends DConnectServer {
             return retval;
         }
 
+        /**
+         * 日時をHTTPの日付形式に変換する.
+         * 
+         * @param time 日時
+         * @return HTTPの日付形式の文字列
+         */
+        private String formatHttpDate(final long time) {
+            return createHttpDateFormat().format(new Date(time));
+        }
+
+        /**
+         * HTTPの日付形式の文字列を解析する.
+         * 
+         * @param value HTTPの日付形式の文字列
+         * @return 日時。解析できない場合はnullを返す。
+         */
+        private Date parseHttpDate(final String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return createHttpDateFormat().parse(value.trim());
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+
+        /**
+         * HTTPの日付形式のフォーマッタを作成する.
+         * SimpleDateFormatはスレッドセーフではないので、都度作成する。
+         * 
+         * @return フォーマッタ
+         */
+        private SimpleDateFormat createHttpDateFormat() {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+
+        /**
+         * 文字列をUS-ASCIIのバイト列に変換する.
+         * 
+         * @param text 文字列
+         * @return バイト列
+         */
+        private byte[] getAsciiBytes(final String text) {
+            try {
+                return text.getBytes("US-ASCII");
+            } catch (UnsupportedEncodingException e) {
+                return text.getBytes();
+            }
+        }
+
         /**
          * ファイルが読み込み可能なファイルかチェックする.
          * 
@@ -727,6 +1122,24 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         }
     }
 
+    /**
+     * WebSocketの接続数を数えるOriginを取得する.
+     * <p>
+     * Originヘッダが無いブラウザ以外のクライアントは、接続元のIPアドレス毎に数える。
+     * </p>
+     * 
+     * @param session ハンドシェイクのリクエスト
+     * @return Origin
+     */
+    private static String getWebSocketOrigin(final IHTTPSession session) {
+        Map<String, String> headers = session.getHeaders();
+        String origin = headers.get(HEADER_ORIGIN);
+        if (origin == null || origin.length() == 0) {
+            origin = headers.get(HEADER_REMOTE_ADDR);
+        }
+        return (origin != null) ? origin : "";
+    }
+
     /**
      * WebSocket.
      * 
@@ -735,36 +1148,149 @@ public class DConnectServerNanoHttpd extends DConnectServer {
      */
     private class NanoWebSocket extends WebSocket implements DConnectWebSocket {
 
-        /** KeepAlive実行用のタイマー. */
-        private Timer mKeepAliveTimer;
+        /** イベントとpingを送信するスレッドプール. */
+        private final ThreadPoolExecutor mEventWriter;
 
         /** Keep-Aliveのタスク. */
-        private KeepAliveTask mKeepAliveTask;
+        private final ScheduledFuture<?> mKeepAliveFuture;
+
+        /** 最後にpongを受信した時刻. 接続前は生成した時刻. */
+        private volatile long mLastPongTime;
+
+        /** pingの送信中はtrue. */
+        private final AtomicBoolean mPinging = new AtomicBoolean();
 
         /** セッションキー. */
         private String mSessionKey;
 
+        /** 送信待ちのイベント. */
+        private final WebSocketEventQueue mEventQueue;
+
+        /** 接続数を数えるOrigin. */
+        private final String mOrigin;
+
+        /** 接続数を解放済みの場合はtrue. */
+        private final AtomicBoolean mReleased = new AtomicBoolean();
+
         /**
          * コンストラクタ.
          * @param handshakeRequest リクエスト
+         * @param eventWriter イベントを送信するスレッドプール
+         * @param keepAliveScheduler Keep-Aliveを処理するスケジューラ
          */
-        public NanoWebSocket(final IHTTPSession handshakeRequest) {
+        public NanoWebSocket(final IHTTPSession handshakeRequest, final ThreadPoolExecutor eventWriter,
+                final ScheduledThreadPoolExecutor keepAliveScheduler) {
             super(handshakeRequest);
-            mKeepAliveTask = new KeepAliveTask();
-            mKeepAliveTimer = new Timer();
-            mKeepAliveTimer.scheduleAtFixedRate(mKeepAliveTask, WEBSOCKET_KEEP_ALIVE_INTERVAL,
-                    WEBSOCKET_KEEP_ALIVE_INTERVAL);
+            mEventWriter = eventWriter;
+            mOrigin = getWebSocketOrigin(handshakeRequest);
+            mEventQueue = new WebSocketEventQueue(new WebSocketEventQueue.Writer() {
+                @Override
+                public void write(final String event) throws IOException {
+                    send(event);
+                }
+
+                @Override
+                public void onError(final IOException e) {
+                    mLogger.warning("Exception in the NanoWebSocket#sendEvent() method. " + e.toString());
+                    if (mListener != null) {
+                        mListener.onError(DConnectServerError.SEND_EVENT_FAILED);
+                    }
+                }
+
+                @Override
+                public void onRejected(final int dropped) {
+                    mLogger.warning("All event writer threads are busy. Dropped " + dropped
+                            + " pending events. Session Key : " + mSessionKey);
+                }
+
+                @Override
+                public void onOverflow() {
+                    mLogger.warning("Too many pending events. Session Key : " + mSessionKey);
+                    abort();
+                }
+            }, eventWriter, mConfig.getWebSocketEventQueueSize(), mConfig.getWebSocketEventOverflowPolicy());
+            mLastPongTime = System.currentTimeMillis();
+            mKeepAliveFuture = keepAliveScheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    keepAlive();
+                }
+            }, WEBSOCKET_KEEP_ALIVE_INTERVAL, WEBSOCKET_KEEP_ALIVE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Keep-Aliveの処理を行う.
+         * <p>
+         * スケジューラのスレッドは全てのWebSocketで共有しているため、ここではブロックする処理を行わない。<br>
+         * pongの期限を過ぎている場合は、相手が応答していないとみなして切断する。<br>
+         * pingはイベントと同じスレッドプールで送信し、前のpingの送信が終わっていない場合は送信しない。
+         * </p>
+         */
+        private void keepAlive() {
+            long elapsed = System.currentTimeMillis() - mLastPongTime;
+            if (state == State.CLOSED) {
+                mKeepAliveFuture.cancel(false);
+                return;
+            }
+            if (state != State.OPEN) {
+                // ハンドシェイクが完了しないまま期限を過ぎたものは、使われていないので監視をやめる
+                if (elapsed > WEBSOCKET_PONG_TIMEOUT) {
+                    mKeepAliveFuture.cancel(false);
+                }
+                return;
+            }
+            if (elapsed > WEBSOCKET_PONG_TIMEOUT) {
+                mLogger.warning("Client is dead. Session Key : " + mSessionKey);
+                mKeepAliveFuture.cancel(false);
+                abort();
+                return;
+            }
+            if (mPinging.compareAndSet(false, true)) {
+                try {
+                    mEventWriter.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                ping(EMPTY_PAYLOAD);
+                            } catch (IOException e) {
+                                // 送信に失敗した場合は、pongの期限切れで切断する
+                                mLogger.fine("Failed to send ping. " + e.toString());
+                            } finally {
+                                mPinging.set(false);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    mPinging.set(false);
+                }
+            }
         }
 
         @Override
         public void sendEvent(final String event) {
+            sendEvent(event, null);
+        }
+
+        @Override
+        public void sendEvent(final String event, final String eventKey) {
+            // 送信が遅いクライアントに呼び出し元が待たされないように、送信待ちに積むだけにする
+            if (!mEventQueue.offer(event, eventKey)) {
+                mLogger.fine("Event was not queued. Session Key : " + mSessionKey);
+            }
+        }
+
+        /**
+         * 送信が詰まっているクライアントとの接続を強制的に切断する.
+         * <p>
+         * Closeフレームは送信中のフレームの後ろで待たされてしまうため送信しない。<br>
+         * 入力ストリームを閉じることで受信スレッドが終了し、{@link #onClose(CloseCode, String, boolean)}が呼び出される。
+         * </p>
+         */
+        private void abort() {
             try {
-                send(event);
+                in.close();
             } catch (IOException e) {
-                mLogger.warning("Exception in the NanoWebSocket#sendEvent() method. " + e.toString());
-                if (mListener != null) {
-                    mListener.onError(DConnectServerError.SEND_EVENT_FAILED);
-                }
+                mLogger.warning("Exception in the NanoWebSocket#abort() method. " + e.toString());
             }
         }
 
@@ -772,11 +1298,7 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         protected void onPong(final WebSocketFrame pongFrame) {
             mLogger.entering(getClass().getName(), "onPong", pongFrame);
             mLogger.fine(pongFrame.toString());
-            synchronized (mKeepAliveTask) {
-                if (mKeepAliveTask.getState() == KeepAliveState.WAITING_PONG) {
-                    mKeepAliveTask.setState(KeepAliveState.GOT_PONG);
-                }
-            }
+            mLastPongTime = System.currentTimeMillis();
 
             mLogger.exiting(getClass().getName(), "onPong");
         }
@@ -821,11 +1343,16 @@ public class DConnectServerNanoHttpd extends DConnectServer {
                 mLogger.fine("WebSocket closed. Session Key : " + mSessionKey);
                 mSessionKey = null;
             }
+            mEventQueue.close();
             if (mServer != null) {
-                mServer.countdownWebSocket();
+                if (mReleased.compareAndSet(false, true)) {
+                    mServer.mWebSocketLimiter.release(mOrigin);
+                }
+                mServer.mClosedQueuedEventCount.addAndGet(mEventQueue.getQueuedCount());
+                mServer.mClosedDroppedEventCount.addAndGet(mEventQueue.getDroppedCount());
             }
 
-            mKeepAliveTimer.cancel();
+            mKeepAliveFuture.cancel(false);
             mLogger.exiting(getClass().getName(), "onClose");
         }
 
@@ -833,62 +1360,6 @@ public class DConnectServerNanoHttpd extends DConnectServer {
         protected void onException(final IOException e) {
             mLogger.warning("Exception in the NanoWebSocket#onException() method. " + e.toString());
         }
-
-        /**
-         * Keep-Alive用タイマータスク.
-         * 
-         * @author NTT DOCOMO, INC.
-         * 
-         */
-        private class KeepAliveTask extends TimerTask {
-
-            /** 処理状態. */
-            private KeepAliveState mState;
-
-            /**
-             * コンストラクタ.
-             */
-            public KeepAliveTask() {
-                setState(KeepAliveState.GOT_PONG);
-            }
-
-            /**
-             * 状態を変更する.
-             * 
-             * @param state 状態
-             */
-            public void setState(final KeepAliveState state) {
-                mState = state;
-            }
-
-            /**
-             * 状態を取得する.
-             * 
-             * @return 状態
-             */
-            public KeepAliveState getState() {
-                return mState;
-            }
-
-            @Override
-            public void run() {
-                try {
-
-                    synchronized (this) {
-                        if (mState == KeepAliveState.GOT_PONG) {
-                            setState(KeepAliveState.WAITING_PONG);
-                            ping("".getBytes());
-                        } else {
-                            close(CloseCode.GoingAway, "Client is dead.");
-                        }
-                    }
-
-                } catch (IOException e) {
-                    // 例外が発生したらタスクを終了し、タイムアウトに任せる
-                    cancel();
-                }
-            }
-        }
     }
 
     @Override
@@ -0,0 +1,168 @@
+/*
+ ByteRange.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * HTTPのRangeヘッダで指定されたバイト範囲.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7233">RFC 7233</a>
+ * @author NTT DOCOMO, INC.
+ */
+public final class ByteRange {
+
+    /** Rangeヘッダの単位. */
+    private static final String BYTES_UNIT = "bytes=";
+
+    /** 開始位置. */
+    private final long mStart;
+
+    /** 終了位置(この位置を含む). */
+    private final long mEnd;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param start 開始位置
+     * @param end 終了位置(この位置を含む)
+     */
+    public ByteRange(final long start, final long end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+        }
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * 開始位置を取得する.
+     *
+     * @return 開始位置
+     */
+    public long getStart() {
+        return mStart;
+    }
+
+    /**
+     * 終了位置を取得する.
+     *
+     * @return 終了位置(この位置を含む)
+     */
+    public long getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * 範囲のバイト数を取得する.
+     *
+     * @return バイト数
+     */
+    public long getLength() {
+        return mEnd - mStart + 1;
+    }
+
+    /**
+     * Content-Rangeヘッダの値を作成する.
+     *
+     * @param total コンテンツ全体のサイズ
+     * @return Content-Rangeヘッダの値
+     */
+    public String toContentRange(final long total) {
+        return "bytes " + mStart + "-" + mEnd + "/" + total;
+    }
+
+    @Override
+    public String toString() {
+        return mStart + "-" + mEnd;
+    }
+
+    /**
+     * Rangeヘッダを解析する.
+     * <p>
+     * 範囲はコンテンツのサイズに収まるように切り詰められる。<br>
+     * 書式が不正な場合はnullを返す。この場合、Rangeヘッダは無視してコンテンツ全体を返すこと。<br>
+     * 書式は正しいが、満たせる範囲が1つも無い場合は空のリストを返す。この場合は416を返すこと。
+     * </p>
+     *
+     * @param header Rangeヘッダの値
+     * @param length コンテンツのサイズ
+     * @return バイト範囲のリスト
+     */
+    public static List<ByteRange> parse(final String header, final long length) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (!value.toLowerCase(Locale.ENGLISH).startsWith(BYTES_UNIT)) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<ByteRange>();
+        String[] specs = value.substring(BYTES_UNIT.length()).split(",");
+        for (String s : specs) {
+            String spec = s.trim();
+            if (spec.length() == 0) {
+                // "bytes=0-1, , 3-4" のような空要素は無視する
+                continue;
+            }
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            try {
+                if (first.length() == 0) {
+                    // suffix-byte-range-spec: 末尾から指定されたバイト数
+                    if (last.length() == 0) {
+                        return null;
+                    }
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = (last.length() == 0) ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    if (start < length) {
+                        ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (specs.length > 0 && ranges.isEmpty() && isAllEmpty(specs)) {
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * 全ての要素が空文字列かチェックする.
+     *
+     * @param specs チェックする要素
+     * @return 全て空の場合true、その他はfalseを返す
+     */
+    private static boolean isAllEmpty(final String[] specs) {
+        for (String spec : specs) {
+            if (spec.trim().length() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
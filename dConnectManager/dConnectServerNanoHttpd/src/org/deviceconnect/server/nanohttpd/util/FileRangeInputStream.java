@@ -0,0 +1,101 @@
+/*
+ FileRangeInputStream.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * ファイルの指定された範囲だけを読み込むストリーム.
+ * <p>
+ * ファイルは最初に読み込まれた時に開く。
+ * multipart/byteranges のように複数の範囲を連結して送信する場合でも、
+ * 同時に開いているファイルは1つで済む。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class FileRangeInputStream extends InputStream {
+
+    /** 読み込むファイル. */
+    private final File mFile;
+
+    /** 読み込みを開始する位置. */
+    private final long mStart;
+
+    /** 残りのバイト数. */
+    private long mRemaining;
+
+    /** ファイル. */
+    private RandomAccessFile mRaf;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param file 読み込むファイル
+     * @param range 読み込む範囲
+     */
+    public FileRangeInputStream(final File file, final ByteRange range) {
+        mFile = file;
+        mStart = range.getStart();
+        mRemaining = range.getLength();
+    }
+
+    /**
+     * ファイルを開いていない場合は開く.
+     *
+     * @throws IOException ファイルが開けなかった場合
+     */
+    private void open() throws IOException {
+        if (mRaf == null) {
+            mRaf = new RandomAccessFile(mFile, "r");
+            mRaf.seek(mStart);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (mRemaining <= 0) {
+            return -1;
+        }
+        open();
+        int b = mRaf.read();
+        if (b >= 0) {
+            mRemaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (mRemaining <= 0) {
+            return -1;
+        }
+        open();
+        int read = mRaf.read(buffer, offset, (int) Math.min(length, mRemaining));
+        if (read > 0) {
+            mRemaining -= read;
+        }
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(mRemaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRemaining = 0;
+        if (mRaf != null) {
+            mRaf.close();
+            mRaf = null;
+        }
+    }
+}
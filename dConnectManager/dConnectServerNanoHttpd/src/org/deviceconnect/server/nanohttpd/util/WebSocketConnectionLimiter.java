@@ -0,0 +1,165 @@
+/*
+ WebSocketConnectionLimiter.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocketの同時接続数を制限するクラス.
+ * <p>
+ * 全体の接続数と、Origin毎の接続数をそれぞれ上限以下に保つ。<br>
+ * 接続数はロックを使わずにCASで更新するので、同時に大量のハンドシェイクが来ても待たされない。<br>
+ * 接続が無くなったOriginのカウンタは破棄するので、Originの数だけメモリが増え続けることはない。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class WebSocketConnectionLimiter {
+
+    /** 破棄済みのカウンタを表す値. */
+    private static final int DISCARDED = -1;
+
+    /** 全体の最大接続数. */
+    private final int mMaxConnections;
+
+    /** Origin毎の最大接続数. */
+    private final int mMaxConnectionsPerOrigin;
+
+    /** 全体の接続数. */
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    /** Originをキーにした接続数. */
+    private final ConcurrentMap<String, AtomicInteger> mOriginCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * 接続数の確保の結果.
+     */
+    public enum Result {
+        /** 確保できた. */
+        ACCEPTED,
+
+        /** 全体の接続数が上限に達している. */
+        TOTAL_LIMIT_EXCEEDED,
+
+        /** Originの接続数が上限に達している. */
+        ORIGIN_LIMIT_EXCEEDED
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param maxConnections 全体の最大接続数
+     * @param maxConnectionsPerOrigin Origin毎の最大接続数。0以下の場合は全体の最大接続数と同じ
+     */
+    public WebSocketConnectionLimiter(final int maxConnections, final int maxConnectionsPerOrigin) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be larger than 0.");
+        }
+        mMaxConnections = maxConnections;
+        if (maxConnectionsPerOrigin <= 0 || maxConnectionsPerOrigin > maxConnections) {
+            mMaxConnectionsPerOrigin = maxConnections;
+        } else {
+            mMaxConnectionsPerOrigin = maxConnectionsPerOrigin;
+        }
+    }
+
+    /**
+     * 接続を1つ確保する.
+     * <p>
+     * {@link Result#ACCEPTED}が返却された場合は、切断時に必ず{@link #release(String)}を呼び出すこと。
+     * </p>
+     *
+     * @param origin 接続元のOrigin
+     * @return 確保の結果
+     */
+    public Result tryAcquire(final String origin) {
+        if (!increment(mCount, mMaxConnections)) {
+            return Result.TOTAL_LIMIT_EXCEEDED;
+        }
+        while (true) {
+            AtomicInteger counter = mOriginCounts.get(origin);
+            if (counter == null) {
+                AtomicInteger created = new AtomicInteger();
+                counter = mOriginCounts.putIfAbsent(origin, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            int current = counter.get();
+            if (current == DISCARDED) {
+                // 破棄済みのカウンタなので、マップから外して作り直す
+                mOriginCounts.remove(origin, counter);
+                continue;
+            }
+            if (current >= mMaxConnectionsPerOrigin) {
+                mCount.decrementAndGet();
+                return Result.ORIGIN_LIMIT_EXCEEDED;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return Result.ACCEPTED;
+            }
+        }
+    }
+
+    /**
+     * {@link #tryAcquire(String)}で確保した接続を解放する.
+     *
+     * @param origin 接続元のOrigin
+     */
+    public void release(final String origin) {
+        AtomicInteger counter = mOriginCounts.get(origin);
+        if (counter == null) {
+            return;
+        }
+        if (counter.decrementAndGet() == 0 && counter.compareAndSet(0, DISCARDED)) {
+            // 同時に確保しようとしているスレッドは、破棄済みの値を見て新しいカウンタを作る
+            mOriginCounts.remove(origin, counter);
+        }
+        mCount.decrementAndGet();
+    }
+
+    /**
+     * 全体の接続数を取得する.
+     *
+     * @return 接続数
+     */
+    public int getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * 指定したOriginの接続数を取得する.
+     *
+     * @param origin Origin
+     * @return 接続数
+     */
+    public int getCount(final String origin) {
+        AtomicInteger counter = mOriginCounts.get(origin);
+        return (counter == null) ? 0 : Math.max(counter.get(), 0);
+    }
+
+    /**
+     * 上限を超えない場合にだけカウンタを1増やす.
+     *
+     * @param counter カウンタ
+     * @param max 上限
+     * @return 増やした場合はtrue、上限に達している場合はfalse
+     */
+    private static boolean increment(final AtomicInteger counter, final int max) {
+        while (true) {
+            int current = counter.get();
+            if (current >= max) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+}
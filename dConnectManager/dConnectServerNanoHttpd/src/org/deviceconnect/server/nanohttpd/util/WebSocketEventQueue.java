@@ -0,0 +1,301 @@
+/*
+ WebSocketEventQueue.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.server.nanohttpd.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.deviceconnect.server.websocket.EventOverflowPolicy;
+
+/**
+ * WebSocket毎の送信待ちイベントのキュー.
+ * <p>
+ * イベントを積んだスレッドでは送信せず、指定されたExecutorで1件ずつ順番に送信する。<br>
+ * そのため、送信が遅いクライアントがいても、イベントを送信するスレッドや他のクライアントは待たされない。<br>
+ * 送信待ちが上限に達した場合には、{@link EventOverflowPolicy}に従ってイベントを破棄するか切断する。<br>
+ * Executorのスレッドが全て使用中で送信を開始できない場合には、送信待ちのイベントを全て破棄し、
+ * {@link EventOverflowPolicy#DISCONNECT}の場合は切断する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class WebSocketEventQueue {
+
+    /** イベントの送信先. */
+    private final Writer mWriter;
+
+    /** イベントを送信するExecutor. */
+    private final Executor mExecutor;
+
+    /** 送信待ちイベントの最大数. */
+    private final int mCapacity;
+
+    /** 送信待ちが上限に達した場合の動作. */
+    private final EventOverflowPolicy mPolicy;
+
+    /** 送信待ちのイベント. */
+    private final LinkedList<Item> mQueue = new LinkedList<Item>();
+
+    /** イベントキーをキーにした、そのキーを持つ最新の送信待ちのイベント. */
+    private final Map<String, Item> mKeys = new HashMap<String, Item>();
+
+    /** 送信待ちに積んだイベントの総数. */
+    private final AtomicLong mQueuedCount = new AtomicLong();
+
+    /** 破棄したイベントの総数. */
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /** 送信待ちのイベントを1件ずつ送信するタスク. */
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                String event;
+                synchronized (WebSocketEventQueue.this) {
+                    if (mClosed || mQueue.isEmpty()) {
+                        mDraining = false;
+                        return;
+                    }
+                    Item item = mQueue.removeFirst();
+                    removeKey(item);
+                    event = item.mEvent;
+                }
+                try {
+                    mWriter.write(event);
+                } catch (IOException e) {
+                    synchronized (WebSocketEventQueue.this) {
+                        mDroppedCount.addAndGet(mQueue.size());
+                        clear();
+                        mDraining = false;
+                    }
+                    mWriter.onError(e);
+                    return;
+                }
+            }
+        }
+    };
+
+    /** 送信処理を実行中の場合はtrue. */
+    private boolean mDraining;
+
+    /** キューが閉じられている場合はtrue. */
+    private boolean mClosed;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param writer イベントの送信先
+     * @param executor イベントを送信するExecutor
+     * @param capacity 送信待ちイベントの最大数
+     * @param policy 送信待ちが上限に達した場合の動作
+     */
+    public WebSocketEventQueue(final Writer writer, final Executor executor, final int capacity,
+            final EventOverflowPolicy policy) {
+        if (writer == null || executor == null || policy == null) {
+            throw new IllegalArgumentException("writer, executor and policy must not be null.");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be larger than 0.");
+        }
+        mWriter = writer;
+        mExecutor = executor;
+        mCapacity = capacity;
+        mPolicy = policy;
+    }
+
+    /**
+     * イベントを送信待ちに積む.
+     *
+     * @param event イベントメッセージ
+     * @param eventKey イベントの種類を識別するキー。まとめない場合はnull
+     * @return 積んだ場合はtrue、キューが閉じられている場合や上限に達して切断した場合、
+     *         送信を開始できずに破棄した場合はfalse
+     */
+    public boolean offer(final String event, final String eventKey) {
+        boolean overflow = false;
+        int rejected = 0;
+        synchronized (this) {
+            if (mClosed) {
+                return false;
+            }
+            mQueuedCount.incrementAndGet();
+
+            if (mQueue.size() >= mCapacity) {
+                Item item = (eventKey != null) ? mKeys.get(eventKey) : null;
+                if (mPolicy == EventOverflowPolicy.COALESCE_LATEST && item != null) {
+                    // 送信待ちの位置はそのままで、最新のイベントに置き換える
+                    item.mEvent = event;
+                    mDroppedCount.incrementAndGet();
+                    return true;
+                } else if (mPolicy == EventOverflowPolicy.DISCONNECT) {
+                    mDroppedCount.addAndGet(mQueue.size() + 1);
+                    clear();
+                    mClosed = true;
+                    overflow = true;
+                } else {
+                    Item oldest = mQueue.removeFirst();
+                    removeKey(oldest);
+                    mDroppedCount.incrementAndGet();
+                }
+            }
+
+            if (!overflow) {
+                Item item = new Item(event, eventKey);
+                mQueue.addLast(item);
+                if (eventKey != null && mPolicy == EventOverflowPolicy.COALESCE_LATEST) {
+                    mKeys.put(eventKey, item);
+                }
+                if (!mDraining) {
+                    mDraining = true;
+                    try {
+                        mExecutor.execute(mDrainTask);
+                    } catch (RejectedExecutionException e) {
+                        mDraining = false;
+                        rejected = mQueue.size();
+                        mDroppedCount.addAndGet(rejected);
+                        clear();
+                        if (mPolicy == EventOverflowPolicy.DISCONNECT) {
+                            mClosed = true;
+                            overflow = true;
+                        }
+                    }
+                }
+                if (rejected == 0) {
+                    return true;
+                }
+            }
+        }
+        // ロックの外で通知して、通知先から呼び出されるclose()と競合しないようにする
+        if (rejected > 0) {
+            mWriter.onRejected(rejected);
+        }
+        if (overflow) {
+            mWriter.onOverflow();
+        }
+        return false;
+    }
+
+    /**
+     * キューを閉じて、送信待ちのイベントを破棄する.
+     */
+    public synchronized void close() {
+        mClosed = true;
+        clear();
+    }
+
+    /**
+     * 送信待ちのイベント数を取得する.
+     *
+     * @return 送信待ちのイベント数
+     */
+    public synchronized int size() {
+        return mQueue.size();
+    }
+
+    /**
+     * 送信待ちに積んだイベントの総数を取得する.
+     *
+     * @return 積んだイベントの総数
+     */
+    public long getQueuedCount() {
+        return mQueuedCount.get();
+    }
+
+    /**
+     * 送信せずに破棄したイベントの総数を取得する.
+     * <p>
+     * 最新のイベントにまとめられたイベントも含む。
+     * </p>
+     *
+     * @return 破棄したイベントの総数
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * 送信待ちのイベントを全て破棄する.
+     */
+    private void clear() {
+        mQueue.clear();
+        mKeys.clear();
+    }
+
+    /**
+     * まとめるために保持しているイベントキーを削除する.
+     *
+     * @param item 送信待ちから取り出したイベント
+     */
+    private void removeKey(final Item item) {
+        if (item.mEventKey != null && mKeys.get(item.mEventKey) == item) {
+            mKeys.remove(item.mEventKey);
+        }
+    }
+
+    /**
+     * 送信待ちのイベント.
+     */
+    private static final class Item {
+        /** イベントメッセージ. */
+        private String mEvent;
+
+        /** イベントの種類を識別するキー. */
+        private final String mEventKey;
+
+        /**
+         * コンストラクタ.
+         *
+         * @param event イベントメッセージ
+         * @param eventKey イベントの種類を識別するキー
+         */
+        Item(final String event, final String eventKey) {
+            mEvent = event;
+            mEventKey = eventKey;
+        }
+    }
+
+    /**
+     * イベントの送信先.
+     */
+    public interface Writer {
+
+        /**
+         * イベントを送信する.
+         * <p>
+         * Executorのスレッドから呼び出されるので、送信が終わるまでブロックしてよい。
+         * </p>
+         *
+         * @param event イベントメッセージ
+         * @throws IOException 送信に失敗した場合
+         */
+        void write(String event) throws IOException;
+
+        /**
+         * イベントの送信に失敗したことを通知する.
+         *
+         * @param e 発生した例外
+         */
+        void onError(IOException e);
+
+        /**
+         * Executorのスレッドが全て使用中のため、送信待ちのイベントを破棄したことを通知する.
+         *
+         * @param dropped 破棄したイベント数
+         */
+        void onRejected(int dropped);
+
+        /**
+         * {@link EventOverflowPolicy#DISCONNECT}で送信待ちが上限に達したか、送信を開始できなかったことを通知する.
+         */
+        void onOverflow();
+    }
+}
@@ -26,11 +26,6 @@ import org.deviceconnect.message.conn.HttpConnection;
  */
 public class SingleConnectionRequestExecutor extends ConnectionRequestExecutor {
 
-    /**
-     * リクエストコード.
-     */
-    private UUID mRequestCode = UUID.randomUUID();
-
     /**
      * ロガー.
      */
@@ -59,13 +54,25 @@ public class SingleConnectionRequestExecutor extends ConnectionRequestExecutor {
                     throws IOException, HttpException {
         mLogger.entering(getClass().getName(), "doSendRequest");
 
-        request.addHeader(HttpHeaders.X_REQUEST_CODE, Integer.toString(mRequestCode.hashCode()));
+        // リトライ時に前回のリクエストコードが残らないように置き換える
+        request.setHeader(HttpHeaders.X_REQUEST_CODE, Integer.toString(createRequestCode()));
         HttpResponse response = super.doSendRequest(request, conn, context);
 
         mLogger.exiting(getClass().getName(), "doSendRequest", response);
         return response;
     }
 
+    /**
+     * リクエストコードを作成する.
+     * <p>
+     * レスポンスをリクエストと対応付けるために使うので、リクエスト毎に異なる値を返すこと。
+     * </p>
+     * @return リクエストコード
+     */
+    protected int createRequestCode() {
+        return UUID.randomUUID().hashCode();
+    }
+
     @Override
     protected HttpResponse doReceiveResponse(
             final HttpRequest request,
@@ -7,7 +7,9 @@
 package org.deviceconnect.message.event;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,9 +40,9 @@ import org.json.JSONObject;
 public abstract class AbstractEventManager {
 
     /**
-     * イベント受信ハンドラーマップ. リクエストコードをキーにし、ハンドラーを保持する。
+     * イベント登録情報マップ. イベントを特定するキーをキーにし、ハンドラーと登録時のリクエストを保持する。
      */
-    private Map<String, EventHandler> mHandlers;
+    private Map<EventKey, Registration> mRegistrations;
     
     /**
      * ロガー.
@@ -61,7 +63,7 @@ public abstract class AbstractEventManager {
      * EventManagerを生成する.
      */
     public AbstractEventManager() {
-        mHandlers = new ConcurrentHashMap<String, EventHandler>();
+        mRegistrations = new ConcurrentHashMap<EventKey, Registration>();
     }
 
     /**
@@ -69,14 +71,17 @@ public abstract class AbstractEventManager {
      * 
      * @param key キー
      * @param handler ハンドラー
+     * @param uri 登録時のリクエストのURI
+     * @param params 登録時のリクエストのパラメータ
      */
-    private void addHandler(final String key, final EventHandler handler) {
+    private void addHandler(final EventKey key, final EventHandler handler, final URI uri,
+            final List<NameValuePair> params) {
         if (key == null) {
             throw new IllegalArgumentException("requestCode must no be null.");
         } else if (handler == null) {
             throw new IllegalArgumentException("handler must no be null.");
         }
-        mHandlers.put(key, handler);
+        mRegistrations.put(key, new Registration(handler, uri, params));
     }
 
     /**
@@ -84,11 +89,11 @@ public abstract class AbstractEventManager {
      * 
      * @param key キー
      */
-    private void removeHandler(final String key) {
+    private void removeHandler(final EventKey key) {
         if (key == null) {
             throw new IllegalArgumentException("requestCode must no be null.");
         }
-        mHandlers.remove(key);
+        mRegistrations.remove(key);
     }
 
     /**
@@ -141,16 +146,48 @@ public abstract class AbstractEventManager {
             inter = message.getString(DConnectMessage.EXTRA_INTERFACE);
         }
         String attribute = message.getString(DConnectMessage.EXTRA_ATTRIBUTE);
-        String key = getKey(profile, inter, attribute, serviceId);
-        EventHandler handler = null;
-        synchronized (this) {
-            handler = mHandlers.get(key);
+        EventKey key = getKey(profile, inter, attribute, serviceId);
+        Registration registration = mRegistrations.get(key);
+        if (registration == null) {
+            return;
         }
-        if (handler != null) {
+        EventHandler handler = registration.mHandler;
+        if (handler instanceof EventMessageHandler) {
+            ((EventMessageHandler) handler).onEvent(new EventMessage(key, message));
+        } else {
             handler.onEvent(message);
         }
     }
 
+    /**
+     * 受信したJSON文字列のイベントデータをハンドラに送信する.
+     * <p>
+     * ハンドラーの特定に必要な項目だけを取り出してから、ハンドラーが登録されている場合だけJSONを解析する。
+     * ハンドラーが{@link EventMessageHandler}の場合は解析せずに通知する。
+     * </p>
+     * 
+     * @param message イベントデータのJSON文字列
+     * @throws JSONException JSONの解析に失敗した場合スローされる
+     */
+    protected void sendEvent(final String message) throws JSONException {
+        EventKey key = EventHeaderScanner.scan(message);
+        if (key == null) {
+            // 項目を取り出せない形式の場合は、JSONを解析してエラーを通知する
+            sendEvent(new JSONObject(message));
+            return;
+        }
+        Registration registration = mRegistrations.get(key);
+        if (registration == null) {
+            return;
+        }
+        EventHandler handler = registration.mHandler;
+        if (handler instanceof EventMessageHandler) {
+            ((EventMessageHandler) handler).onEvent(new EventMessage(key, message));
+        } else {
+            handler.onEvent(new JSONObject(message));
+        }
+    }
+
     /**
      * 指定されたURIBuilderで生成されるイベントAPIへの登録を行う. イベントの登録が正常に受理された場合、指定されたハンドラにイベント通知が
      * 送信されるようになる。
@@ -171,9 +208,10 @@ public abstract class AbstractEventManager {
         }
         
         HttpPut request;
-        String key;
+        EventKey key;
+        List<NameValuePair> params;
         try {
-            List<NameValuePair> params = builder.getQueryParams();
+            params = builder.getQueryParams();
             key = getKey(builder);
             // クエリストリングを消すためにnullを設定。パラメータはbodyで送る。
             builder.setParameters(null);
@@ -185,21 +223,8 @@ public abstract class AbstractEventManager {
         }
         
         HttpResponse response = execute(request);
-        int statusCode = response.getStatusLine().getStatusCode();
-        if (statusCode == HttpStatus.SC_OK) {
-            String entity = EntityUtils.toString(response.getEntity(), "UTF-8");
-            try {
-                JSONObject json = new JSONObject(entity);
-                if (json != null) {
-                    int result = json.getInt(DConnectMessage.EXTRA_RESULT);
-                    if (result == DConnectMessage.RESULT_OK) {
-                        addHandler(key, handler);
-                    }
-                }
-            } catch (JSONException e) {
-                // JSONのパースに失敗した場合はresponseをそのまま返し、処理は呼び出し元に任せる
-                mLogger.warning("AbstractEventManager#registerEvent. Invalid response. : " + e.getMessage());
-            }
+        if (isResultOK(response)) {
+            addHandler(key, handler, request.getURI(), params);
         }
         
         return response;
@@ -220,7 +245,7 @@ public abstract class AbstractEventManager {
         }
         
         HttpDelete request;
-        String key;
+        EventKey key;
         try {
             List<NameValuePair> params = builder.getQueryParams();
             key = getKey(builder);
@@ -232,24 +257,64 @@ public abstract class AbstractEventManager {
         }
         
         HttpResponse response = execute(request);
-        int statusCode = response.getStatusLine().getStatusCode();
-        if (statusCode == HttpStatus.SC_OK) {
-            String entity = EntityUtils.toString(response.getEntity(), "UTF-8");
+        if (isResultOK(response)) {
+            removeHandler(key);
+        }
+        
+        return response;
+    }
+
+    /**
+     * 登録済みのイベントを全て登録し直す.
+     * <p>
+     * イベント受信用のセッションを再接続した後に呼び出す。
+     * Device Connect Managerが再起動した場合でも、アプリケーションが登録し直さずにイベントを受信し続けられる。
+     * 登録し直せなかったイベントのハンドラーは、次の再接続で登録し直すために残しておく。
+     * </p>
+     * 
+     * @return 登録し直したイベントの数
+     */
+    protected int restoreEvents() {
+        int count = 0;
+        for (Registration registration : mRegistrations.values()) {
+            HttpPut request = new HttpPut(registration.mUri);
+            request.addHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN, getOrigin());
             try {
-                JSONObject json = new JSONObject(entity);
-                if (json != null) {
-                    int result = json.getInt(DConnectMessage.EXTRA_RESULT);
-                    if (result == DConnectMessage.RESULT_OK) {
-                        removeHandler(key);
-                    }
+                request.setEntity(new UrlEncodedFormEntity(registration.mParams));
+                if (isResultOK(execute(request))) {
+                    count++;
+                } else {
+                    mLogger.warning("AbstractEventManager#restoreEvents. Failed to register: " + registration.mUri);
                 }
-            } catch (JSONException e) {
-                // JSONのパースに失敗した場合はresponseをそのまま返し、処理は呼び出し元に任せる
-                mLogger.warning("AbstractEventManager#unregisterEvent. Invalid response. : " + e.getMessage());
+            } catch (IOException e) {
+                mLogger.warning("AbstractEventManager#restoreEvents. Failed to register: " + registration.mUri
+                        + " : " + e.getMessage());
             }
         }
-        
-        return response;
+        return count;
+    }
+
+    /**
+     * レスポンスが正常終了を示しているかをチェックする.
+     * 
+     * @param response レスポンス
+     * @return 正常終了の場合はtrue、それ以外はfalse
+     * @throws IOException レスポンスの読み込みに失敗した場合スローされる
+     */
+    private boolean isResultOK(final HttpResponse response) throws IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_OK) {
+            return false;
+        }
+        String entity = EntityUtils.toString(response.getEntity(), "UTF-8");
+        try {
+            JSONObject json = new JSONObject(entity);
+            return json.getInt(DConnectMessage.EXTRA_RESULT) == DConnectMessage.RESULT_OK;
+        } catch (JSONException e) {
+            // JSONのパースに失敗した場合はresponseをそのまま返し、処理は呼び出し元に任せる
+            mLogger.warning("AbstractEventManager. Invalid response. : " + e.getMessage());
+            return false;
+        }
     }
     
     /**
@@ -283,7 +348,7 @@ public abstract class AbstractEventManager {
      * @param builder URIビルダー
      * @return キー
      */
-    private String getKey(final URIBuilder builder) {
+    private EventKey getKey(final URIBuilder builder) {
         String serviceId = getServiceId(builder.getQueryParams());
         return getKey(builder.getProfile(), builder.getInterface(), builder.getAttribute(), serviceId);
     }
@@ -297,10 +362,9 @@ public abstract class AbstractEventManager {
      * @param serviceId サービスID
      * @return キー
      */
-    private String getKey(final String profile, final String inter, final String attribute, 
+    private EventKey getKey(final String profile, final String inter, final String attribute, 
             final String serviceId) {
-        String tmpInter = inter != null ? inter : "";
-        return serviceId + "/" + profile + "/" + tmpInter + "/" + attribute;
+        return new EventKey(serviceId, profile, inter, attribute);
     }
 
     /**
@@ -334,4 +398,31 @@ public abstract class AbstractEventManager {
         return retRes;
     }
 
+    /**
+     * イベントの登録情報.
+     */
+    private static final class Registration {
+
+        /** イベントを受信するハンドラー. */
+        private final EventHandler mHandler;
+
+        /** 登録時のリクエストのURI. */
+        private final URI mUri;
+
+        /** 登録時のリクエストのパラメータ. */
+        private final List<NameValuePair> mParams;
+
+        /**
+         * コンストラクタ.
+         * 
+         * @param handler イベントを受信するハンドラー
+         * @param uri 登録時のリクエストのURI
+         * @param params 登録時のリクエストのパラメータ
+         */
+        Registration(final EventHandler handler, final URI uri, final List<NameValuePair> params) {
+            mHandler = handler;
+            mUri = uri;
+            mParams = new ArrayList<NameValuePair>(params);
+        }
+    }
 }
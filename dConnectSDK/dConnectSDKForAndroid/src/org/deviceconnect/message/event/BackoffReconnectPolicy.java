@@ -0,0 +1,171 @@
+/*
+ BackoffReconnectPolicy.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+import java.util.Random;
+
+/**
+ * 指数バックオフで再接続する方針.
+ * <p>
+ * 再接続までの待ち時間は、失敗する毎に倍になる上限の範囲内で乱数で決める(フルジッター)。
+ * Device Connect Managerが再起動した時に、全てのクライアントが同時に再接続しないようにするためである。<br>
+ * 連続して{@code maxRetries}回失敗した場合は再接続を諦め、{@code openDuration}が経過するまでは
+ * 接続を試みない。経過後は1回だけ接続を試み、失敗した場合は再び同じ時間だけ接続を試みない。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class BackoffReconnectPolicy implements ReconnectPolicy {
+
+    /** デフォルトの待ち時間の基準値(ms). */
+    public static final long DEFAULT_BASE_DELAY = 1000;
+
+    /** デフォルトの待ち時間の上限(ms). */
+    public static final long DEFAULT_MAX_DELAY = 60 * 1000;
+
+    /** デフォルトの再接続を諦めるまでの回数. */
+    public static final int DEFAULT_MAX_RETRIES = 10;
+
+    /** デフォルトの再接続を諦めてから接続を試みない時間(ms). */
+    public static final long DEFAULT_OPEN_DURATION = 60 * 1000;
+
+    /** 待ち時間を倍にする最大回数. これ以上シフトすると桁あふれする. */
+    private static final int MAX_SHIFT = 30;
+
+    /** 1ミリ秒あたりのナノ秒. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * 接続の状態.
+     */
+    public enum State {
+        /** 接続を試みてよい. */
+        CLOSED,
+
+        /** 再接続を諦めたので、接続を試みない. */
+        OPEN,
+
+        /** 再接続を諦めた後、1回だけ接続を試みている. */
+        HALF_OPEN
+    }
+
+    /** 待ち時間の基準値(ms). */
+    private final long mBaseDelay;
+
+    /** 待ち時間の上限(ms). */
+    private final long mMaxDelay;
+
+    /** 再接続を諦めるまでの回数. */
+    private final int mMaxRetries;
+
+    /** 再接続を諦めてから接続を試みない時間(ms). */
+    private final long mOpenDuration;
+
+    /** 待ち時間を決める乱数. */
+    private final Random mRandom = new Random();
+
+    /** 連続して失敗した回数. */
+    private int mFailures;
+
+    /** 接続の状態. */
+    private State mState = State.CLOSED;
+
+    /** 再接続を諦めた時刻(ms). */
+    private long mOpenedTime;
+
+    /**
+     * デフォルトの設定で生成する.
+     */
+    public BackoffReconnectPolicy() {
+        this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_RETRIES, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * 設定を指定して生成する.
+     *
+     * @param baseDelay 待ち時間の基準値(ms)
+     * @param maxDelay 待ち時間の上限(ms)
+     * @param maxRetries 再接続を諦めるまでの回数
+     * @param openDuration 再接続を諦めてから接続を試みない時間(ms)
+     */
+    public BackoffReconnectPolicy(final long baseDelay, final long maxDelay, final int maxRetries,
+            final long openDuration) {
+        if (baseDelay <= 0) {
+            throw new IllegalArgumentException("baseDelay must be larger than 0.");
+        } else if (maxDelay < baseDelay) {
+            throw new IllegalArgumentException("maxDelay must not be smaller than baseDelay.");
+        } else if (maxRetries <= 0) {
+            throw new IllegalArgumentException("maxRetries must be larger than 0.");
+        } else if (openDuration < 0) {
+            throw new IllegalArgumentException("openDuration must not be negative.");
+        }
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        mMaxRetries = maxRetries;
+        mOpenDuration = openDuration;
+    }
+
+    /**
+     * 接続の状態を取得する.
+     *
+     * @return 接続の状態
+     */
+    public synchronized State getState() {
+        return mState;
+    }
+
+    @Override
+    public synchronized boolean canConnect() {
+        if (mState == State.OPEN) {
+            if (now() - mOpenedTime < mOpenDuration) {
+                return false;
+            }
+            mState = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized long nextDelay() {
+        if (mState != State.CLOSED) {
+            return -1;
+        }
+        long ceiling = Math.min(mMaxDelay, mBaseDelay << Math.min(mFailures, MAX_SHIFT));
+        return (long) (mRandom.nextDouble() * ceiling);
+    }
+
+    @Override
+    public synchronized void onConnected() {
+        mFailures = 0;
+        mState = State.CLOSED;
+    }
+
+    @Override
+    public synchronized void onConnectFailed() {
+        mFailures++;
+        if (mState == State.HALF_OPEN || mFailures >= mMaxRetries) {
+            open();
+        }
+    }
+
+    /**
+     * 再接続を諦める.
+     */
+    private void open() {
+        mState = State.OPEN;
+        mOpenedTime = now();
+    }
+
+    /**
+     * 現在時刻を取得する.
+     *
+     * @return 現在時刻(ms)
+     */
+    private static long now() {
+        return System.nanoTime() / NANOS_PER_MILLI;
+    }
+}
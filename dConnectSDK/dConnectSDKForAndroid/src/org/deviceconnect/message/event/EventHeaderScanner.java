@@ -0,0 +1,295 @@
+/*
+ EventHeaderScanner.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+import org.deviceconnect.message.DConnectMessage;
+
+/**
+ * イベントメッセージのJSONから、ハンドラーの特定に必要な項目だけを取り出すスキャナ.
+ * <p>
+ * JSONObjectのツリーを作らずに文字列を先頭から走査し、最上位のserviceId、profile、interface、attributeを取り出す。
+ * それ以外の値は読み飛ばすので、センサー値などの本文が大きくてもオブジェクトを生成しない。<br>
+ * 必要な項目が揃った時点で走査を終えるので、本文の構文チェックは行わない。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class EventHeaderScanner {
+
+    /** 16進数の基数. */
+    private static final int HEX_RADIX = 16;
+
+    /** unicodeエスケープの桁数. */
+    private static final int UNICODE_ESCAPE_LENGTH = 4;
+
+    /** 走査するJSON文字列. */
+    private final String mJson;
+
+    /** 走査している位置. */
+    private int mPos;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param json 走査するJSON文字列
+     */
+    private EventHeaderScanner(final String json) {
+        mJson = json;
+    }
+
+    /**
+     * イベントメッセージのJSONからイベントのキーを取り出す.
+     *
+     * @param json イベントメッセージのJSON文字列
+     * @return イベントのキー。JSONの形式が不正な場合や、必要な項目が無い場合はnull
+     */
+    static EventKey scan(final String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return new EventHeaderScanner(json).scanObject();
+        } catch (IllegalStateException e) {
+            return null;
+        } catch (StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 最上位のオブジェクトを走査する.
+     *
+     * @return イベントのキー。必要な項目が無い場合はnull
+     */
+    private EventKey scanObject() {
+        String serviceId = null;
+        String profile = null;
+        String inter = null;
+        String attribute = null;
+        boolean hasInterface = false;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            return null;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (peek() == '"' && isHeaderName(name)) {
+                mPos++;
+                String value = readString();
+                if (DConnectMessage.EXTRA_SERVICE_ID.equals(name)) {
+                    serviceId = value;
+                } else if (DConnectMessage.EXTRA_PROFILE.equals(name)) {
+                    profile = value;
+                } else if (DConnectMessage.EXTRA_INTERFACE.equals(name)) {
+                    inter = value;
+                    hasInterface = true;
+                } else {
+                    attribute = value;
+                }
+                if (hasInterface && serviceId != null && profile != null && attribute != null) {
+                    break;
+                }
+            } else {
+                skipValue();
+            }
+
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                break;
+            } else if (c != ',') {
+                throw new IllegalStateException();
+            }
+        }
+
+        if (serviceId == null || profile == null || attribute == null) {
+            return null;
+        }
+        return new EventKey(serviceId, profile, inter, attribute);
+    }
+
+    /**
+     * ハンドラーの特定に使う項目名かを判定する.
+     *
+     * @param name 項目名
+     * @return ハンドラーの特定に使う場合はtrue
+     */
+    private static boolean isHeaderName(final String name) {
+        return DConnectMessage.EXTRA_SERVICE_ID.equals(name)
+                || DConnectMessage.EXTRA_PROFILE.equals(name)
+                || DConnectMessage.EXTRA_INTERFACE.equals(name)
+                || DConnectMessage.EXTRA_ATTRIBUTE.equals(name);
+    }
+
+    /**
+     * 開始の引用符の次の位置から文字列を読み込む.
+     * <p>
+     * エスケープが無い場合は部分文字列をそのまま返す。
+     * </p>
+     *
+     * @return 文字列
+     */
+    private String readString() {
+        int start = mPos;
+        while (true) {
+            char c = mJson.charAt(mPos);
+            if (c == '"') {
+                String value = mJson.substring(start, mPos);
+                mPos++;
+                return value;
+            } else if (c == '\\') {
+                break;
+            }
+            mPos++;
+        }
+
+        StringBuilder builder = new StringBuilder(mJson.substring(start, mPos));
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return builder.toString();
+            } else if (c == '\\') {
+                char escaped = next();
+                switch (escaped) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    String hex = mJson.substring(mPos, mPos + UNICODE_ESCAPE_LENGTH);
+                    mPos += UNICODE_ESCAPE_LENGTH;
+                    try {
+                        builder.append((char) Integer.parseInt(hex, HEX_RADIX));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalStateException();
+                    }
+                    break;
+                default:
+                    builder.append(escaped);
+                    break;
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    /**
+     * 値を1つ読み飛ばす.
+     */
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            mPos++;
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            // 数値、true、false、null
+            int start = mPos;
+            while (mPos < mJson.length()) {
+                c = mJson.charAt(mPos);
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    break;
+                }
+                mPos++;
+            }
+            if (mPos == start) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * 開始の引用符の次の位置から文字列を読み飛ばす.
+     */
+    private void skipString() {
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                mPos++;
+            }
+        }
+    }
+
+    /**
+     * オブジェクトまたは配列を、対応する閉じ括弧まで読み飛ばす.
+     */
+    private void skipContainer() {
+        int depth = 0;
+        do {
+            char c = next();
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * 空白文字を読み飛ばす.
+     */
+    private void skipWhitespace() {
+        while (mPos < mJson.length() && Character.isWhitespace(mJson.charAt(mPos))) {
+            mPos++;
+        }
+    }
+
+    /**
+     * 指定された文字を読み込む.
+     *
+     * @param expected 期待する文字
+     */
+    private void expect(final char expected) {
+        if (next() != expected) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * 現在の位置の文字を取得する.
+     *
+     * @return 文字
+     */
+    private char peek() {
+        return mJson.charAt(mPos);
+    }
+
+    /**
+     * 現在の位置の文字を取得し、次の位置に進む.
+     *
+     * @return 文字
+     */
+    private char next() {
+        return mJson.charAt(mPos++);
+    }
+}
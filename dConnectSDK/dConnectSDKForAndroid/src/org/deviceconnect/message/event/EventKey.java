@@ -0,0 +1,120 @@
+/*
+ EventKey.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+/**
+ * イベントのハンドラーを特定するキー.
+ * <p>
+ * サービスID、プロファイル名、インターフェース名、アトリビュート名の組み合わせでイベントを特定する。<br>
+ * 文字列を連結せずに比較できるように、各要素をそのまま保持してハッシュ値を事前に計算しておく。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+final class EventKey {
+
+    /** ハッシュ値の計算に使う乗数. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** サービスID. */
+    private final String mServiceId;
+
+    /** プロファイル名. */
+    private final String mProfile;
+
+    /** インターフェース名. 無い場合は空文字. */
+    private final String mInterface;
+
+    /** アトリビュート名. */
+    private final String mAttribute;
+
+    /** ハッシュ値. */
+    private final int mHashCode;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param serviceId サービスID
+     * @param profile プロファイル名
+     * @param inter インターフェース名。無い場合はnull
+     * @param attribute アトリビュート名
+     */
+    EventKey(final String serviceId, final String profile, final String inter, final String attribute) {
+        mServiceId = String.valueOf(serviceId);
+        mProfile = String.valueOf(profile);
+        mInterface = inter != null ? inter : "";
+        mAttribute = String.valueOf(attribute);
+
+        int hash = mServiceId.hashCode();
+        hash = hash * HASH_MULTIPLIER + mProfile.hashCode();
+        hash = hash * HASH_MULTIPLIER + mInterface.hashCode();
+        hash = hash * HASH_MULTIPLIER + mAttribute.hashCode();
+        mHashCode = hash;
+    }
+
+    /**
+     * サービスIDを取得する.
+     *
+     * @return サービスID
+     */
+    String getServiceId() {
+        return mServiceId;
+    }
+
+    /**
+     * プロファイル名を取得する.
+     *
+     * @return プロファイル名
+     */
+    String getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * インターフェース名を取得する.
+     *
+     * @return インターフェース名。無い場合はnull
+     */
+    String getInterface() {
+        return mInterface.length() > 0 ? mInterface : null;
+    }
+
+    /**
+     * アトリビュート名を取得する.
+     *
+     * @return アトリビュート名
+     */
+    String getAttribute() {
+        return mAttribute;
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EventKey)) {
+            return false;
+        }
+        EventKey other = (EventKey) o;
+        return mHashCode == other.mHashCode
+                && mServiceId.equals(other.mServiceId)
+                && mProfile.equals(other.mProfile)
+                && mInterface.equals(other.mInterface)
+                && mAttribute.equals(other.mAttribute);
+    }
+
+    @Override
+    public String toString() {
+        return mServiceId + "/" + mProfile + "/" + mInterface + "/" + mAttribute;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ EventMessage.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+import org.deviceconnect.message.DConnectMessage;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 受信したイベントメッセージ.
+ * <p>
+ * サービスID、プロファイル名、インターフェース名、アトリビュート名は受信時に取り出し済みなので、すぐに取得できる。<br>
+ * 本文のJSONは{@link #getJSONObject()}が初めて呼び出された時に解析する。
+ * イベントの種類だけで処理が決まるハンドラーや、本文を文字列のまま転送するハンドラーは解析の負荷を省ける。
+ * </p>
+ * <p>
+ * このクラスはスレッドセーフではない。ハンドラーの外で使う場合は呼び出し側で同期すること。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public final class EventMessage {
+
+    /** イベントのキー. */
+    private final EventKey mKey;
+
+    /** 受信したJSON文字列. JSONObjectから生成した場合は必要になるまでnull. */
+    private String mRawMessage;
+
+    /** 解析済みのJSON. 解析するまではnull. */
+    private JSONObject mJSONObject;
+
+    /**
+     * 受信したJSON文字列からイベントメッセージを生成する.
+     *
+     * @param key イベントのキー
+     * @param rawMessage 受信したJSON文字列
+     */
+    EventMessage(final EventKey key, final String rawMessage) {
+        mKey = key;
+        mRawMessage = rawMessage;
+    }
+
+    /**
+     * 解析済みのJSONからイベントメッセージを生成する.
+     *
+     * @param key イベントのキー
+     * @param json 解析済みのJSON
+     */
+    EventMessage(final EventKey key, final JSONObject json) {
+        mKey = key;
+        mJSONObject = json;
+    }
+
+    /**
+     * 解析済みのJSONからイベントメッセージを生成する.
+     *
+     * @param json 解析済みのJSON
+     * @return イベントメッセージ
+     */
+    static EventMessage fromJSONObject(final JSONObject json) {
+        String inter = null;
+        if (json.has(DConnectMessage.EXTRA_INTERFACE)) {
+            inter = json.optString(DConnectMessage.EXTRA_INTERFACE);
+        }
+        EventKey key = new EventKey(json.optString(DConnectMessage.EXTRA_SERVICE_ID),
+                json.optString(DConnectMessage.EXTRA_PROFILE), inter,
+                json.optString(DConnectMessage.EXTRA_ATTRIBUTE));
+        return new EventMessage(key, json);
+    }
+
+    /**
+     * サービスIDを取得する.
+     *
+     * @return サービスID
+     */
+    public String getServiceId() {
+        return mKey.getServiceId();
+    }
+
+    /**
+     * プロファイル名を取得する.
+     *
+     * @return プロファイル名
+     */
+    public String getProfile() {
+        return mKey.getProfile();
+    }
+
+    /**
+     * インターフェース名を取得する.
+     *
+     * @return インターフェース名。無い場合はnull
+     */
+    public String getInterface() {
+        return mKey.getInterface();
+    }
+
+    /**
+     * アトリビュート名を取得する.
+     *
+     * @return アトリビュート名
+     */
+    public String getAttribute() {
+        return mKey.getAttribute();
+    }
+
+    /**
+     * 受信したJSON文字列を取得する.
+     * <p>
+     * 解析せずにそのまま返すので、他のプロセスやWebViewに転送する場合に使う。
+     * </p>
+     *
+     * @return JSON文字列
+     */
+    public String getRawMessage() {
+        if (mRawMessage == null) {
+            mRawMessage = mJSONObject.toString();
+        }
+        return mRawMessage;
+    }
+
+    /**
+     * 本文を解析したJSONを取得する.
+     * <p>
+     * 初めて呼び出された時に解析し、以降は同じインスタンスを返す。
+     * </p>
+     *
+     * @return JSON
+     * @throws JSONException JSONの解析に失敗した場合
+     */
+    public JSONObject getJSONObject() throws JSONException {
+        if (mJSONObject == null) {
+            mJSONObject = new JSONObject(mRawMessage);
+        }
+        return mJSONObject;
+    }
+
+    @Override
+    public String toString() {
+        return getRawMessage();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ EventMessageHandler.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+import org.json.JSONObject;
+
+/**
+ * 本文を解析せずにイベントメッセージを受け取るハンドラー.
+ * <p>
+ * {@link EventHandler}と同じく{@link AbstractEventManager#registerEvent(org.deviceconnect.utils.URIBuilder, EventHandler)}
+ * で登録する。<br>
+ * {@link EventHandler}ではイベント毎にJSONを解析してから通知するが、このハンドラーには解析前のメッセージを通知する。
+ * 本文が必要な場合は{@link EventMessage#getJSONObject()}で取得する。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public abstract class EventMessageHandler implements EventHandler {
+
+    /**
+     * イベントメッセージの受信を通知します.
+     *
+     * @param message イベントメッセージ
+     */
+    public abstract void onEvent(EventMessage message);
+
+    @Override
+    public void onEvent(final JSONObject event) {
+        onEvent(EventMessage.fromJSONObject(event));
+    }
+}
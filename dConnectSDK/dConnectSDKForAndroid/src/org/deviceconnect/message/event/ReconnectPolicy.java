@@ -0,0 +1,46 @@
+/*
+ ReconnectPolicy.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.event;
+
+/**
+ * イベント受信用のセッションの再接続方針を決めるインターフェース.
+ * <p>
+ * 再接続までの待ち時間と、接続を諦めるかどうかを決める。<br>
+ * 接続の成否は{@link #onConnected()}、{@link #onConnectFailed()}で通知される。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public interface ReconnectPolicy {
+
+    /**
+     * 接続を試みてよいかを返します.
+     * <p>
+     * 接続の失敗が続いて再接続を諦めた直後など、接続を試みても無駄な場合はfalseを返す。
+     * </p>
+     *
+     * @return 接続を試みてよい場合はtrue、それ以外はfalse
+     */
+    boolean canConnect();
+
+    /**
+     * 次に再接続を試みるまでの待ち時間を返します.
+     *
+     * @return 待ち時間(ms)。再接続を諦める場合は負の値
+     */
+    long nextDelay();
+
+    /**
+     * 接続に成功したことを通知します.
+     */
+    void onConnected();
+
+    /**
+     * 接続に失敗したことを通知します.
+     */
+    void onConnectFailed();
+}
@@ -9,44 +9,45 @@ package org.deviceconnect.message.http.event;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.event.AbstractEventManager;
+import org.deviceconnect.message.event.BackoffReconnectPolicy;
+import org.deviceconnect.message.event.ReconnectPolicy;
+import org.deviceconnect.message.http.impl.client.HttpConnectionPool;
 import org.deviceconnect.utils.URIBuilder;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
- * イベント管理クラス. 
+ * イベント管理クラス.
  * イベントの登録、解除、WebSocketの開閉等のユーティリティ機能を提供する。
- * 
- * 
+ * <p>
+ * WebSocketが異常終了した場合は、{@link ReconnectPolicy}に従って再接続を試みる。
+ * 再接続できた場合は、登録済みのイベントを全て登録し直す。
+ * </p>
+ *
  * @author NTT DOCOMO, INC.
  */
 public final class HttpEventManager extends AbstractEventManager {
-    
-    /** 
+
+    /**
      * WebSocket通常終了コード.
      */
     private static final int NORMAL_CLOSE_CODE = 1000;
-    
-    /** 
-     * リトライする回数.
-     */
-    private static final int RETRY_TIMES = 5;
-    
-    /** 
-     * リトライ時に待つ時間.
-     * 回数を重ねるたびにこの時間分だけ増えていく。
-     * ex. 1回目 {@value} ミリ秒、2回目 {@value} * 2ミリ秒。
+
+    /**
+     * WebSocketの接続を待つデフォルトの最大時間(ms).
      */
-    private static final long RETRY_WAIT = 30 * 1000;
+    public static final long DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
 
     /**
      * シングルトンなEventManagerのインスタンス.
@@ -56,36 +57,61 @@ public final class HttpEventManager extends AbstractEventManager {
     /**
      * WebSocketクライアント.
      */
-    private EventWebSocketClient mWSClient;
-    
-    /** 
+    private volatile EventWebSocketClient mWSClient;
+
+    /**
      * コネクションハンドラ.
      */
     private CloseHandler mCloseHandler;
 
+    /**
+     * イベントの登録・解除に使うHTTPクライアント.
+     * コネクションはSDK内で共有するプールから取得する。
+     */
+    private final DefaultHttpClient mHttpClient = HttpConnectionPool.createHttpClient();
+
     /**
      * ロガー.
      */
     private Logger mLogger = Logger.getLogger("org.deviceconnect.sdk");
 
     /**
-     * ロックオブジェクト.
+     * 再接続の方針.
+     */
+    private volatile ReconnectPolicy mReconnectPolicy = new BackoffReconnectPolicy();
+
+    /**
+     * WebSocketの接続を待つ最大時間(ms).
      */
-    private Object mLock;
+    private volatile long mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * 再接続を行っているスレッド. 再接続していない場合はnull.
+     */
+    private Thread mRetryThread;
+
+    /**
+     * WebSocketの状態を更新するためのロック.
+     * <p>
+     * WebSocketのコールバックはWebSocketのロックを持った状態で呼ばれるので、
+     * このロックを持った状態でWebSocketのメソッドを呼び出してはならない。
+     * </p>
+     */
+    private final Object mStateLock = new Object();
 
     /**
      * WebSocketステータス.
-     * 
+     *
      * @author NTT DOCOMO, INC.
-     * 
+     *
      */
     private enum Status {
-        
-        /** 
+
+        /**
          * オープン待ち状態.
          */
         WAITING_OPEN,
-        
+
         /**
          * 開いている.
          */
@@ -95,7 +121,7 @@ public final class HttpEventManager extends AbstractEventManager {
          * 閉じている.
          */
         CLOSE,
-        
+
         /**
          * リトライ中.
          */
@@ -105,22 +131,70 @@ public final class HttpEventManager extends AbstractEventManager {
     /**
      * WebSocketステータス.
      */
-    private Status mStatus;
+    private volatile Status mStatus;
 
     /**
      * シングルトンのためprivate.
      */
     private HttpEventManager() {
-        mLock = new Object();
         mStatus = Status.CLOSE;
     }
-    
+
+    /**
+     * 再接続の方針を設定する.
+     * <p>
+     * デフォルトでは{@link BackoffReconnectPolicy}を使用する。
+     * </p>
+     *
+     * @param policy 再接続の方針
+     */
+    public void setReconnectPolicy(final ReconnectPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null.");
+        }
+        mReconnectPolicy = policy;
+    }
+
+    /**
+     * 再接続の方針を取得する.
+     *
+     * @return 再接続の方針
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return mReconnectPolicy;
+    }
+
+    /**
+     * WebSocketの接続を待つ最大時間を設定する.
+     *
+     * @param timeout 最大時間(ms)
+     */
+    public void setConnectTimeout(final long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be larger than 0.");
+        }
+        mConnectTimeout = timeout;
+    }
+
+    /**
+     * WebSocketの接続を待つ最大時間を取得する.
+     *
+     * @return 最大時間(ms)
+     */
+    public long getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
     /**
      * イベントの受信用のコネクションを張る. <br/>
      * このメソッドでコネクションを張り、イベント登録をすることでイベントを受信できるようになる。<br/>
      * イベントの受信が不必要になった場合は{@link #disconnect()}を呼び出し、コネクションを破棄すること。
      * 一つのコネクションを使い回すため、コネクションを破棄すると全てのイベント受信が遮断されるので注意すること。
-     * 
+     * <p>
+     * 接続を待つ時間は{@link #setConnectTimeout(long)}で指定した時間までとする。
+     * 再接続を諦めた直後など、{@link ReconnectPolicy#canConnect()}がfalseを返す場合は接続を試みずにfalseを返す。
+     * </p>
+     *
      * @param host ホスト名
      * @param port ポート番号
      * @param isSSL サーバーがSSLになっているかのフラグ
@@ -139,15 +213,22 @@ public final class HttpEventManager extends AbstractEventManager {
             throw new IllegalArgumentException("sessionKey must not be null.");
         }
 
-        if (mStatus == Status.OPEN || mStatus == Status.RETRYING) {
-
-            if (!sessionKey.equals(getSessionKey())) {
-                setSessionKey(sessionKey);
-                if (mStatus == Status.OPEN) {
-                    mWSClient.sendSessionKey(sessionKey);
+        EventWebSocketClient current = null;
+        synchronized (mStateLock) {
+            if (mStatus == Status.OPEN || mStatus == Status.RETRYING) {
+                if (!sessionKey.equals(getSessionKey())) {
+                    setSessionKey(sessionKey);
+                    if (mStatus == Status.OPEN) {
+                        current = mWSClient;
+                    }
+                }
+                if (current == null) {
+                    return true;
                 }
             }
-
+        }
+        if (current != null) {
+            current.sendSessionKey(sessionKey);
             return true;
         }
 
@@ -167,94 +248,152 @@ public final class HttpEventManager extends AbstractEventManager {
             throw new IllegalArgumentException("Can not create uri. Do check the parameters.");
         }
 
-        setSessionKey(sessionKey);
-        mStatus = Status.WAITING_OPEN;
-        mWSClient = new EventWebSocketClient(webSocketUri);
-        mWSClient.connect();
-
-        waitConnect();
+        ReconnectPolicy policy = mReconnectPolicy;
+        if (!policy.canConnect()) {
+            mLogger.fine("HttpEventManager#connect. Reconnection is suspended by the policy.");
+            return false;
+        }
 
-        if (mWSClient.isOpen()) {
+        EventWebSocketClient client = new EventWebSocketClient(webSocketUri);
+        synchronized (mStateLock) {
+            setSessionKey(sessionKey);
+            mStatus = Status.WAITING_OPEN;
             mCloseHandler = handler;
+            mWSClient = client;
+        }
+        if (client.connectAndWait(mConnectTimeout)) {
+            policy.onConnected();
             return true;
         }
 
-        setSessionKey(null);
+        policy.onConnectFailed();
+        synchronized (mStateLock) {
+            if (mWSClient == client) {
+                mWSClient = null;
+                mStatus = Status.CLOSE;
+                mCloseHandler = null;
+                setSessionKey(null);
+            }
+        }
         return false;
     }
-    
+
     @Override
     public synchronized void disconnect() {
-        if (mWSClient != null && mWSClient.isOpen()) {
-            mWSClient.close();
-            mWSClient = null;
+        EventWebSocketClient client;
+        synchronized (mStateLock) {
+            if (mRetryThread != null) {
+                mRetryThread.interrupt();
+                mRetryThread = null;
+            }
             mStatus = Status.CLOSE;
+            client = mWSClient;
+            mWSClient = null;
+        }
+        if (client != null) {
+            client.close();
         }
     }
-    
+
     /**
      * 再接続を試みる.
+     * <p>
+     * {@link #mStateLock}を取得した状態で呼び出すこと。
+     * </p>
+     *
+     * @param uri 接続先のURI
      */
-    private synchronized void retry() {
+    private void retry(final URI uri) {
         mStatus = Status.RETRYING;
-        new Thread(new RetryProcess()).start();
-    }
-    
-    /**
-     * WebSocketの接続を待つ.
-     */
-    private void waitConnect() {
-        synchronized (mLock) {
-            try {
-                mLock.wait();
-            } catch (InterruptedException e) {
-                mWSClient.close();
-            }
-        }
+        mRetryThread = new Thread(new RetryProcess(uri));
+        mRetryThread.setName("HttpEventManager Retry");
+        mRetryThread.start();
     }
-    
+
     @Override
     protected HttpResponse execute(final HttpUriRequest request) throws IOException {
         request.setHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN, getOrigin());
 
-        DefaultHttpClient client = new DefaultHttpClient();
-        HttpResponse response = client.execute(request);
-        HttpResponse retRes = copyResponse(response);
-        client.getConnectionManager().shutdown();
-        return retRes;
+        HttpResponse response = mHttpClient.execute(request);
+        try {
+            return copyResponse(response);
+        } finally {
+            // コネクションをプールに返却する
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                entity.consumeContent();
+            }
+        }
     }
 
     /**
      * Event受信用のWebSocketのクライアントクラス.
-     * 
+     *
      * @author NTT DOCOMO, INC.
-     * 
+     *
      */
     private class EventWebSocketClient extends WebSocketClient {
 
+        /**
+         * 接続の成否が決まるまで待つためのラッチ.
+         */
+        private final CountDownLatch mConnectLatch = new CountDownLatch(1);
+
         /**
          * WebSocketクライアントを生成する.
-         * 
+         *
          * @param serverURI サーバーのURI
          */
         public EventWebSocketClient(final URI serverURI) {
             super(serverURI);
         }
 
+        /**
+         * 接続を開始し、接続の成否が決まるまで待つ.
+         * <p>
+         * 指定した時間が経過しても接続できない場合は、接続を中止してfalseを返す。
+         * </p>
+         *
+         * @param timeout 最大で待つ時間(ms)
+         * @return 接続できた場合はtrue、それ以外はfalse
+         */
+        public boolean connectAndWait(final long timeout) {
+            connect();
+            try {
+                if (mConnectLatch.await(timeout, TimeUnit.MILLISECONDS) && isOpen()) {
+                    return true;
+                }
+                mLogger.fine("EventWebSocketClient#connectAndWait. Failed to connect: " + getURI());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+            return false;
+        }
+
         @Override
         public void onOpen(final ServerHandshake handshakedata) {
-            mStatus = Status.OPEN;
-            sendSessionKey(getSessionKey());
-            synchronized (mLock) {
-                mLock.notifyAll();
+            boolean current;
+            synchronized (mStateLock) {
+                current = mWSClient == this;
+                if (current) {
+                    mStatus = Status.OPEN;
+                }
+            }
+            if (current) {
+                sendSessionKey(getSessionKey());
+            } else {
+                // 接続を待つ時間が過ぎた後に接続できた
+                close();
             }
+            mConnectLatch.countDown();
         }
 
         @Override
         public void onMessage(final String message) {
 
             try {
-                sendEvent(new JSONObject(message));
+                sendEvent(message);
             } catch (JSONException e) {
                 mLogger.warning("EventWebSocketClient#onMessage Invalid message. : " + e.getMessage());
             }
@@ -263,26 +402,24 @@ public final class HttpEventManager extends AbstractEventManager {
 
         @Override
         public void onClose(final int code, final String reason, final boolean remote) {
-            
-            synchronized (HttpEventManager.this) {
-                if (mStatus == Status.WAITING_OPEN 
-                        || mStatus == Status.RETRYING) {
-                    synchronized (mLock) {
-                        mLock.notifyAll();
-                    }
-                } else if (mStatus == Status.OPEN) {
-                    if (code != NORMAL_CLOSE_CODE) {
-                        // 異常終了の場合はリトライし、自動的に回復を図る
-                        retry();
-                        return;
-                    } else if (mCloseHandler != null) {
-                        mCloseHandler.onClosed();
-                    }
+            mConnectLatch.countDown();
+
+            CloseHandler handler;
+            synchronized (mStateLock) {
+                if (mWSClient != this || mStatus != Status.OPEN) {
+                    // 接続待ち・リトライ中の失敗はそれぞれの呼び出し元で処理する
+                    return;
                 }
-                
-                if (mStatus != Status.RETRYING) {
-                    mStatus = Status.CLOSE;
+                if (code != NORMAL_CLOSE_CODE) {
+                    // 異常終了の場合はリトライし、自動的に回復を図る
+                    retry(getURI());
+                    return;
                 }
+                mStatus = Status.CLOSE;
+                handler = mCloseHandler;
+            }
+            if (handler != null) {
+                handler.onClosed();
             }
         }
 
@@ -293,62 +430,115 @@ public final class HttpEventManager extends AbstractEventManager {
 
         /**
          * セッションキーを送信する.
-         * 
+         *
          * @param sessionKey セッションキー
          */
         public void sendSessionKey(final String sessionKey) {
-            send("{\"" + DConnectMessage.EXTRA_SESSION_KEY + "\":\"" + sessionKey + "\"}");                
+            send("{\"" + DConnectMessage.EXTRA_SESSION_KEY + "\":\"" + sessionKey + "\"}");
         }
     }
-    
+
     /**
      * リトライ処理をするランナブルクラス.
-     * 
+     *
      * @author NTT DOCOMO, INC.
      *
      */
     private class RetryProcess implements Runnable {
-        
+
+        /**
+         * 接続先のURI.
+         */
+        private final URI mUri;
+
+        /**
+         * コンストラクタ.
+         *
+         * @param uri 接続先のURI
+         */
+        RetryProcess(final URI uri) {
+            mUri = uri;
+        }
+
         @Override
         public void run() {
             mLogger.fine("RetryProcess#run. Retrying...");
-            for (int i = 0; i < RETRY_TIMES; i++) {
-                long wait = RETRY_WAIT * (i + 1);
-                if (retry(wait)) {
-                    mLogger.fine("RetryProcess#run. Successed to retry.");
+            ReconnectPolicy policy = mReconnectPolicy;
+            long delay;
+            while ((delay = policy.nextDelay()) >= 0) {
+                // 全てのクライアントが同時に再接続しないように、方針が決めた時間だけ待つ
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    mLogger.fine("RetryProcess#run. Canceled.");
+                    return;
+                }
+
+                if (reconnect()) {
+                    policy.onConnected();
+                    int count = restoreEvents();
+                    mLogger.fine("RetryProcess#run. Successed to retry. Restored " + count + " events.");
+                    return;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    mLogger.fine("RetryProcess#run. Canceled.");
+                    return;
+                }
+                policy.onConnectFailed();
+            }
+
+            CloseHandler handler;
+            synchronized (mStateLock) {
+                if (mRetryThread != Thread.currentThread()) {
                     return;
                 }
+                mRetryThread = null;
+                mWSClient = null;
+                mStatus = Status.CLOSE;
+                handler = mCloseHandler;
             }
-            
-            disconnect();
-            if (mCloseHandler != null) {
+            if (handler != null) {
                 mLogger.fine("RetryProcess#run. Failed to retry.");
-                mCloseHandler.onClosed();
+                handler.onClosed();
             }
         }
-        
+
         /**
-         * リトライ処理を実行する.
-         * 
-         * @param wait 接続前の待ち時間。すぐに再接続を試みてもサーバーが落ちている可能性もあるので少し待つ。
+         * 再接続を実行する.
+         *
          * @return 接続できたらtrue、失敗したらfalseを返す
          */
-        private boolean retry(final long wait) {
-            
-            try {
-                Thread.sleep(wait);
-            } catch (InterruptedException e) {
-                mLogger.warning("RetryProcess#retry Interrupted. : " + e.getMessage());
+        private boolean reconnect() {
+            EventWebSocketClient client = new EventWebSocketClient(mUri);
+            synchronized (mStateLock) {
+                if (mRetryThread != Thread.currentThread()) {
+                    // disconnect()で中止された
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                mWSClient = client;
             }
-            
-            mWSClient = new EventWebSocketClient(mWSClient.getURI());
-            mWSClient.connect();
-            waitConnect();
-            if (mWSClient.isOpen()) {
-                return true;
+            if (!client.connectAndWait(mConnectTimeout)) {
+                synchronized (mStateLock) {
+                    if (mWSClient == client) {
+                        mWSClient = null;
+                    }
+                }
+                return false;
             }
-            
-            return false;
+            boolean canceled;
+            synchronized (mStateLock) {
+                canceled = mRetryThread != Thread.currentThread();
+                if (!canceled) {
+                    mRetryThread = null;
+                }
+            }
+            if (canceled) {
+                client.close();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
         }
     }
 }
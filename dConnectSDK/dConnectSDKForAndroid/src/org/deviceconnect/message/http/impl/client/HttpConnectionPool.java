@@ -0,0 +1,228 @@
+/*
+ HttpConnectionPool.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.http.impl.client;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * SDK内のHTTPクライアントで共有するコネクションプール.
+ * <p>
+ * Device Connect Managerとのコネクションをkeep-aliveで使い回し、リクエスト毎のTCP接続やSSLのハンドシェイクを省く。<br>
+ * 接続先毎のコネクション数と全体のコネクション数に上限を設ける。
+ * keep-aliveの期限が切れたコネクションは、プールにコネクションが残っている間だけ動くスレッドで閉じる。
+ * </p>
+ * <p>
+ * プールは全てのクライアントで共有するので、{@link ClientConnectionManager#shutdown()}を呼び出しても閉じない。
+ * レスポンスのエンティティを最後まで読むか{@link org.apache.http.HttpEntity#consumeContent()}を呼び出して、
+ * コネクションをプールに返却すること。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class HttpConnectionPool {
+
+    /** 全体の最大コネクション数. */
+    public static final int MAX_TOTAL_CONNECTIONS = 20;
+
+    /** 接続先毎の最大コネクション数. */
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+
+    /**
+     * コネクションを使い回す最大時間(ms).
+     * Device Connect Managerはアイドル状態のkeep-aliveのコネクションを5秒で閉じるので、
+     * 期限切れのコネクションを閉じる間隔を足しても5秒より短くなるようにする。
+     */
+    public static final long KEEP_ALIVE_TIME = 3000;
+
+    /**
+     * 期限切れのコネクションを閉じる間隔(ms).
+     * コネクションがDevice Connect Managerに閉じられる前にプールから外す。
+     */
+    private static final long EVICTION_INTERVAL = 1000;
+
+    /** プールからコネクションを取得するまで待つ最大時間(ms). */
+    public static final long CONNECTION_REQUEST_TIMEOUT = 30000;
+
+    /** HTTPのデフォルトポート番号. */
+    private static final int HTTP_PORT = 80;
+
+    /** HTTPSのデフォルトポート番号. */
+    private static final int HTTPS_PORT = 443;
+
+    /** 共有するコネクションマネージャ. */
+    private static SharedConnectionManager sConnectionManager;
+
+    /** アイドル状態のコネクションを閉じるスケジューラ. */
+    private static ScheduledThreadPoolExecutor sEvictor;
+
+    /** アイドル状態のコネクションを閉じる処理. 動いていない場合はnull. */
+    private static ScheduledFuture<?> sEvictionTask;
+
+    /** keep-aliveの時間を{@link #KEEP_ALIVE_TIME}以下に抑えるストラテジ. */
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = new DefaultConnectionKeepAliveStrategy() {
+        @Override
+        public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+            long duration = super.getKeepAliveDuration(response, context);
+            if (duration <= 0 || duration > KEEP_ALIVE_TIME) {
+                duration = KEEP_ALIVE_TIME;
+            }
+            return duration;
+        }
+    };
+
+    /**
+     * ユーティリティクラスのためprivate.
+     */
+    private HttpConnectionPool() {
+    }
+
+    /**
+     * 共有するコネクションマネージャを取得する.
+     * @return コネクションマネージャ
+     */
+    public static synchronized ClientConnectionManager getConnectionManager() {
+        if (sConnectionManager == null) {
+            HttpParams params = new BasicHttpParams();
+            ConnManagerParams.setMaxTotalConnections(params, MAX_TOTAL_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), HTTP_PORT));
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), HTTPS_PORT));
+
+            sConnectionManager = new SharedConnectionManager(params, registry);
+        }
+        return sConnectionManager;
+    }
+
+    /**
+     * コネクションを使い回す時間を決めるストラテジを取得する.
+     * @return ストラテジ
+     */
+    static ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+        return KEEP_ALIVE_STRATEGY;
+    }
+
+    /**
+     * 共有するコネクションプールを使うHTTPクライアントを生成する.
+     * <p>
+     * 生成したクライアントは複数のスレッドから同時に使ってよい。
+     * </p>
+     * @return HTTPクライアント
+     */
+    public static DefaultHttpClient createHttpClient() {
+        DefaultHttpClient client = new DefaultHttpClient(getConnectionManager(), null);
+        configure(client.getParams());
+        client.setKeepAliveStrategy(KEEP_ALIVE_STRATEGY);
+        return client;
+    }
+
+    /**
+     * 共有するコネクションプールを使うためのHTTPパラメータを設定する.
+     * @param params HTTPパラメータ
+     */
+    static void configure(final HttpParams params) {
+        ConnManagerParams.setTimeout(params, CONNECTION_REQUEST_TIMEOUT);
+        // Device Connect Managerが再起動した場合などは、期限内のコネクションも閉じられているので、
+        // 使い回す前に古いコネクションでないかをチェックする。
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+    }
+
+    /**
+     * アイドル状態のコネクションを閉じる処理を開始する.
+     * <p>
+     * 既に動いている場合は何もしない。
+     * </p>
+     */
+    private static synchronized void startEviction() {
+        if (sEvictionTask != null) {
+            return;
+        }
+        if (sEvictor == null) {
+            sEvictor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName("HTTP Connection Evictor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        sEvictionTask = sEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+            }
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 期限切れとアイドル状態のコネクションを閉じる.
+     * <p>
+     * プールにコネクションが残っていない場合は、次にコネクションが返却されるまで処理を止める。
+     * </p>
+     */
+    private static synchronized void evict() {
+        sConnectionManager.closeExpiredConnections();
+        sConnectionManager.closeIdleConnections(KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+        if (sConnectionManager.getConnectionsInPool() == 0 && sEvictionTask != null) {
+            sEvictionTask.cancel(false);
+            sEvictionTask = null;
+        }
+    }
+
+    /**
+     * 共有するコネクションマネージャ.
+     * <p>
+     * 各クライアントから閉じられないように{@link #shutdown()}を無効にしている。
+     * </p>
+     */
+    private static final class SharedConnectionManager extends ThreadSafeClientConnManager {
+
+        /**
+         * コンストラクタ.
+         * @param params HTTPパラメータ
+         * @param registry スキームレジストリ
+         */
+        SharedConnectionManager(final HttpParams params, final SchemeRegistry registry) {
+            super(params, registry);
+        }
+
+        @Override
+        public void releaseConnection(final ManagedClientConnection conn,
+                final long validDuration, final TimeUnit timeUnit) {
+            super.releaseConnection(conn, validDuration, timeUnit);
+            startEviction();
+        }
+
+        @Override
+        public void shutdown() {
+            // 共有しているので閉じない
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.AuthenticationHandler;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.RedirectHandler;
@@ -32,6 +33,8 @@ import org.deviceconnect.message.basic.client.AbstractDConnectClient;
 /**
  * HTTP Device Connectクライアント.
  * DConnectMessage及びHttpRequestを実行する機能を提供する。
+ * コネクションは{@link HttpConnectionPool}で全てのクライアントと共有し、keep-aliveで使い回す。
+ * {@link #setResponseCache(HttpResponseCache)}でキャッシュを設定した場合は、GETリクエストのレスポンスをキャッシュする。
  * @author NTT DOCOMO, INC.
  */
 public class HttpDConnectClient extends AbstractDConnectClient {
@@ -46,6 +49,11 @@ public class HttpDConnectClient extends AbstractDConnectClient {
      */
     private Logger mLogger = Logger.getLogger("org.deviceconnect.sdk");
 
+    /**
+     * レスポンスキャッシュ. キャッシュしない場合はnull.
+     */
+    private volatile HttpResponseCache mResponseCache;
+
     /**
      * ターゲットを設定する.
      * @param target ターゲット
@@ -62,6 +70,43 @@ public class HttpDConnectClient extends AbstractDConnectClient {
         return mTarget;
     }
 
+    /**
+     * レスポンスキャッシュを設定する.
+     * <p>
+     * nullを設定した場合はキャッシュしない。デフォルトはnull。<br>
+     * 同じキャッシュを複数のクライアントで共有してもよい。
+     * </p>
+     * @param cache レスポンスキャッシュ
+     */
+    public void setResponseCache(final HttpResponseCache cache) {
+        mResponseCache = cache;
+    }
+
+    /**
+     * レスポンスキャッシュを取得する.
+     * @return レスポンスキャッシュ。キャッシュしない場合はnull
+     */
+    public HttpResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    @Override
+    protected ClientConnectionManager createClientConnectionManager() {
+        return HttpConnectionPool.getConnectionManager();
+    }
+
+    @Override
+    protected ConnectionKeepAliveStrategy createConnectionKeepAliveStrategy() {
+        return HttpConnectionPool.getKeepAliveStrategy();
+    }
+
+    @Override
+    protected HttpParams createHttpParams() {
+        HttpParams params = super.createHttpParams();
+        HttpConnectionPool.configure(params);
+        return params;
+    }
+
     @Override
     protected HttpRequestExecutor createRequestExecutor() {
         return super.createRequestExecutor();
@@ -138,11 +183,78 @@ public class HttpDConnectClient extends AbstractDConnectClient {
                 host = target;
             }
 
-            HttpResponse response = super.execute(host, request, context);
+            HttpResponse response;
+            HttpResponseCache cache = mResponseCache;
+            String profile = cache != null ? cache.getCacheableProfile(request) : null;
+            if (profile != null) {
+                response = executeWithCache(cache, profile, host, request, context);
+            } else {
+                response = super.execute(host, request, context);
+            }
 
             mLogger.entering(getClass().getName(), "execute");
             return response;
         }
+
+        /**
+         * キャッシュを使用してリクエストを実行する.
+         * <p>
+         * 有効期間内のレスポンスがあればそれを返し、無ければDevice Connect Managerに送信する。
+         * 有効期間が切れたレスポンスにETagがある場合はIf-None-Matchを付けて再検証する。
+         * 再検証している間にレスポンスが破棄された場合は、If-None-Matchを付けずに送信し直す。
+         * </p>
+         * @param cache レスポンスキャッシュ
+         * @param profile プロファイル名
+         * @param host ホスト
+         * @param request リクエスト
+         * @param context コンテキスト
+         * @return レスポンス
+         * @throws HttpException HTTPプロトコルエラーが発生した場合
+         * @throws IOException 通信に失敗した場合
+         */
+        private HttpResponse executeWithCache(final HttpResponseCache cache, final String profile,
+                final HttpHost host, final HttpRequest request, final HttpContext context)
+                        throws HttpException, IOException {
+            long start = System.nanoTime();
+            long generation = cache.getGeneration(profile);
+            String key = cache.createKey(host, request);
+            HttpResponseCache.Entry entry = cache.get(key);
+            if (entry != null && entry.isFresh()) {
+                HttpResponse response = entry.toResponse();
+                cache.recordHit(System.nanoTime() - start);
+                return response;
+            }
+
+            String etag = entry != null ? entry.getETag() : null;
+            HttpResponse response;
+            if (etag != null) {
+                request.setHeader(HttpResponseCache.HEADER_IF_NONE_MATCH, etag);
+                try {
+                    response = super.execute(host, request, context);
+                } finally {
+                    request.removeHeaders(HttpResponseCache.HEADER_IF_NONE_MATCH);
+                }
+            } else {
+                response = super.execute(host, request, context);
+            }
+
+            if (etag != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                HttpResponse revalidated = cache.revalidated(key, entry, response);
+                if (revalidated == null) {
+                    if (response.getEntity() != null) {
+                        response.getEntity().consumeContent();
+                    }
+                    generation = cache.getGeneration(profile);
+                    response = cache.put(key, profile, generation, super.execute(host, request, context));
+                } else {
+                    response = revalidated;
+                }
+            } else {
+                response = cache.put(key, profile, generation, response);
+            }
+            cache.recordMiss(System.nanoTime() - start);
+            return response;
+        }
     }
 
 }
@@ -0,0 +1,767 @@
+/*
+ HttpResponseCache.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.http.impl.client;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.event.EventHandler;
+import org.deviceconnect.message.event.EventMessage;
+import org.deviceconnect.message.event.EventMessageHandler;
+import org.deviceconnect.profile.ServiceDiscoveryProfileConstants;
+import org.deviceconnect.profile.ServiceInformationProfileConstants;
+import org.deviceconnect.profile.SystemProfileConstants;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * {@link HttpDConnectClient}で使用するGETリクエストのレスポンスのキャッシュ.
+ * <p>
+ * サービス検索やサービス情報など、結果が滅多に変わらないAPIのレスポンスをメモリ上に保持し、
+ * 有効期間内はDevice Connect Managerにリクエストを送信せずに返却する。<br>
+ * 有効期間はプロファイル毎に設定し、有効期間が設定されていないプロファイルはキャッシュしない。
+ * キャッシュするのは、HTTPステータスが200で、resultが{@link DConnectMessage#RESULT_OK}のレスポンスだけとする。
+ * </p>
+ * <p>
+ * キャッシュ全体のサイズ(バイト)に上限を設け、上限を超えた場合は最も長く使われていないレスポンスから破棄する。<br>
+ * レスポンスにETagが含まれている場合は、有効期間が切れた後にIf-None-Matchで再検証し、
+ * 304 Not Modifiedが返ってきた場合は保持しているレスポンスを使い続ける。
+ * </p>
+ * <p>
+ * サービスの増減はonservicechangeイベントで通知されるので、
+ * {@link #createServiceChangeHandler(EventHandler)}で生成したハンドラーをイベントに登録して破棄すること。
+ * </p>
+ *
+ * @author NTT DOCOMO, INC.
+ */
+public class HttpResponseCache {
+
+    /** デフォルトのキャッシュの最大サイズ(バイト). */
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    /** servicediscoveryプロファイルのデフォルトの有効期間(ms). */
+    public static final long DEFAULT_SERVICE_DISCOVERY_TTL = 30 * 1000;
+
+    /** serviceinformationプロファイルのデフォルトの有効期間(ms). */
+    public static final long DEFAULT_SERVICE_INFORMATION_TTL = 60 * 1000;
+
+    /** systemプロファイルのデフォルトの有効期間(ms). */
+    public static final long DEFAULT_SYSTEM_TTL = 60 * 1000;
+
+    /**
+     * 1つのレスポンスが占めてよいキャッシュの最大サイズに対する割合の逆数.
+     * 大きなレスポンス1つでキャッシュ全体が破棄されないようにする。
+     */
+    private static final int MAX_ENTRY_DIVISOR = 4;
+
+    /** 1ミリ秒あたりのナノ秒. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** ヘッダ名: ETag. */
+    static final String HEADER_ETAG = "ETag";
+
+    /** ヘッダ名: If-None-Match. */
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    /** ヘッダ名: If-Modified-Since. */
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /** ヘッダ名: Cache-Control. */
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    /** キャッシュしてはならないことを示すCache-Controlの値. */
+    private static final String[] NO_CACHE_DIRECTIVES = {"no-store", "no-cache"};
+
+    /** キャッシュしたレスポンスに含めないホップバイホップのヘッダ. */
+    private static final String[] HOP_BY_HOP_HEADERS = {HTTP.CONN_DIRECTIVE, HTTP.CONN_KEEP_ALIVE,
+            HTTP.TRANSFER_ENCODING};
+
+    /** ロガー. */
+    private Logger mLogger = Logger.getLogger("org.deviceconnect.sdk");
+
+    /** キャッシュの最大サイズ(バイト). */
+    private final long mMaxSize;
+
+    /** プロファイル毎の有効期間(ms). */
+    private final Map<String, Long> mTimeToLives = new HashMap<String, Long>();
+
+    /** キャッシュしたレスポンス. アクセス順に並べる. */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** キャッシュしたレスポンスの合計サイズ(バイト). */
+    private long mSize;
+
+    /**
+     * プロファイル毎のレスポンスを破棄した回数.
+     * リクエストを送信している間に破棄された場合に、古いレスポンスをキャッシュしないために使用する。
+     */
+    private final Map<String, Long> mGenerations = new HashMap<String, Long>();
+
+    /** 全てのレスポンスを破棄した回数. */
+    private long mGenerationAll;
+
+    /** キャッシュから返却した回数. */
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    /** Device Connect Managerにリクエストを送信した回数. */
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /** 再検証で304 Not Modifiedが返ってきた回数. */
+    private final AtomicLong mRevalidationCount = new AtomicLong();
+
+    /** サイズの上限を超えたために破棄した回数. */
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    /** キャッシュから返却するまでにかかった時間の合計(ns). */
+    private final AtomicLong mHitLatency = new AtomicLong();
+
+    /** Device Connect Managerにリクエストを送信して返却するまでにかかった時間の合計(ns). */
+    private final AtomicLong mMissLatency = new AtomicLong();
+
+    /**
+     * デフォルトの最大サイズでキャッシュを生成する.
+     */
+    public HttpResponseCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 最大サイズを指定してキャッシュを生成する.
+     * <p>
+     * servicediscovery、serviceinformation、systemプロファイルにはデフォルトの有効期間を設定する。
+     * </p>
+     *
+     * @param maxSize キャッシュの最大サイズ(バイト)
+     */
+    public HttpResponseCache(final long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be larger than 0.");
+        }
+        mMaxSize = maxSize;
+        mTimeToLives.put(ServiceDiscoveryProfileConstants.PROFILE_NAME, DEFAULT_SERVICE_DISCOVERY_TTL);
+        mTimeToLives.put(ServiceInformationProfileConstants.PROFILE_NAME, DEFAULT_SERVICE_INFORMATION_TTL);
+        mTimeToLives.put(SystemProfileConstants.PROFILE_NAME, DEFAULT_SYSTEM_TTL);
+    }
+
+    /**
+     * プロファイルのレスポンスの有効期間を設定する.
+     *
+     * @param profile プロファイル名
+     * @param ttl 有効期間(ms)。0以下の場合はキャッシュしない
+     */
+    public synchronized void setTimeToLive(final String profile, final long ttl) {
+        if (profile == null) {
+            throw new IllegalArgumentException("profile must not be null.");
+        }
+        String name = profile.toLowerCase();
+        if (ttl > 0) {
+            mTimeToLives.put(name, ttl);
+        } else {
+            mTimeToLives.remove(name);
+            invalidate(name);
+        }
+    }
+
+    /**
+     * プロファイルのレスポンスの有効期間を取得する.
+     *
+     * @param profile プロファイル名
+     * @return 有効期間(ms)。キャッシュしない場合は0
+     */
+    public synchronized long getTimeToLive(final String profile) {
+        if (profile == null) {
+            return 0;
+        }
+        Long ttl = mTimeToLives.get(profile.toLowerCase());
+        return ttl != null ? ttl : 0;
+    }
+
+    /**
+     * 指定したプロファイルのレスポンスを全て破棄する.
+     *
+     * @param profile プロファイル名
+     */
+    public synchronized void invalidate(final String profile) {
+        if (profile == null) {
+            return;
+        }
+        String name = profile.toLowerCase();
+        Long generation = mGenerations.get(name);
+        mGenerations.put(name, generation != null ? generation + 1 : 1);
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.mProfile.equals(name)) {
+                mSize -= entry.mSize;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 全てのレスポンスを破棄する.
+     */
+    public synchronized void invalidateAll() {
+        mGenerationAll++;
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * onservicechangeイベントを受け取った時にサービスに関するレスポンスを破棄するハンドラーを生成する.
+     * <p>
+     * servicediscoveryとserviceinformationプロファイルのレスポンスを破棄してから、指定されたハンドラーにイベントを通知する。
+     * </p>
+     *
+     * @param delegate イベントを通知するハンドラー。不要な場合はnull
+     * @return イベントハンドラー
+     */
+    public EventHandler createServiceChangeHandler(final EventHandler delegate) {
+        return new EventMessageHandler() {
+            @Override
+            public void onEvent(final EventMessage message) {
+                invalidate(ServiceDiscoveryProfileConstants.PROFILE_NAME);
+                invalidate(ServiceInformationProfileConstants.PROFILE_NAME);
+                if (delegate instanceof EventMessageHandler) {
+                    ((EventMessageHandler) delegate).onEvent(message);
+                } else if (delegate != null) {
+                    try {
+                        delegate.onEvent(message.getJSONObject());
+                    } catch (JSONException e) {
+                        mLogger.warning("HttpResponseCache. Invalid event. : " + e.getMessage());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * キャッシュの最大サイズを取得する.
+     *
+     * @return 最大サイズ(バイト)
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * キャッシュしているレスポンスの合計サイズを取得する.
+     *
+     * @return 合計サイズ(バイト)
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * キャッシュしているレスポンスの数を取得する.
+     *
+     * @return レスポンスの数
+     */
+    public synchronized int getEntryCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * キャッシュから返却した回数を取得する.
+     *
+     * @return 回数
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Device Connect Managerにリクエストを送信した回数を取得する.
+     * <p>
+     * 再検証のために送信した回数も含む。
+     * </p>
+     *
+     * @return 回数
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * 再検証で304 Not Modifiedが返ってきた回数を取得する.
+     *
+     * @return 回数
+     */
+    public long getRevalidationCount() {
+        return mRevalidationCount.get();
+    }
+
+    /**
+     * サイズの上限を超えたためにレスポンスを破棄した回数を取得する.
+     *
+     * @return 回数
+     */
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    /**
+     * キャッシュ可能なリクエストのうち、キャッシュから返却した割合を取得する.
+     *
+     * @return 割合(0.0〜1.0)。リクエストが無い場合は0.0
+     */
+    public double getHitRatio() {
+        long hit = mHitCount.get();
+        long total = hit + mMissCount.get();
+        return total > 0 ? (double) hit / total : 0.0;
+    }
+
+    /**
+     * キャッシュから返却するまでにかかった平均時間を取得する.
+     *
+     * @return 平均時間(ns)
+     */
+    public long getAverageHitLatency() {
+        long count = mHitCount.get();
+        return count > 0 ? mHitLatency.get() / count : 0;
+    }
+
+    /**
+     * Device Connect Managerにリクエストを送信して返却するまでにかかった平均時間を取得する.
+     *
+     * @return 平均時間(ns)
+     */
+    public long getAverageMissLatency() {
+        long count = mMissCount.get();
+        return count > 0 ? mMissLatency.get() / count : 0;
+    }
+
+    /**
+     * 統計情報をリセットする.
+     */
+    public void resetStatistics() {
+        mHitCount.set(0);
+        mMissCount.set(0);
+        mRevalidationCount.set(0);
+        mEvictionCount.set(0);
+        mHitLatency.set(0);
+        mMissLatency.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "HttpResponseCache[entries=" + getEntryCount() + ", size=" + getSize() + "/" + mMaxSize
+                + ", hit=" + getHitCount() + ", miss=" + getMissCount()
+                + ", revalidation=" + getRevalidationCount() + ", eviction=" + getEvictionCount()
+                + ", hitLatency=" + getAverageHitLatency() / NANOS_PER_MILLI
+                + "ms, missLatency=" + getAverageMissLatency() / NANOS_PER_MILLI + "ms]";
+    }
+
+    /**
+     * リクエストのプロファイル名を取得する.
+     * <p>
+     * キャッシュするリクエストでない場合はnullを返す。
+     * </p>
+     *
+     * @param request リクエスト
+     * @return プロファイル名。キャッシュしない場合はnull
+     */
+    synchronized String getCacheableProfile(final HttpRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+            return null;
+        }
+        if (request.containsHeader(HEADER_IF_NONE_MATCH) || request.containsHeader(HEADER_IF_MODIFIED_SINCE)) {
+            // 呼び出し元が条件付きリクエストを送信する場合は任せる
+            return null;
+        }
+        String path = getPath(request);
+        if (path == null) {
+            return null;
+        }
+        String[] segments = path.split("/");
+        String profile = null;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].length() == 0) {
+                continue;
+            }
+            if (segments[i].equalsIgnoreCase(DConnectMessage.DEFAULT_API) && i + 1 < segments.length) {
+                profile = segments[i + 1].toLowerCase();
+            } else {
+                profile = segments[i].toLowerCase();
+            }
+            break;
+        }
+        if (profile == null || !mTimeToLives.containsKey(profile)) {
+            return null;
+        }
+        return profile;
+    }
+
+    /**
+     * リクエストを識別するキーを生成する.
+     * <p>
+     * オリジン毎にアクセスできるAPIが異なるので、オリジンもキーに含める。
+     * </p>
+     *
+     * @param target 送信先のホスト
+     * @param request リクエスト
+     * @return キー
+     */
+    String createKey(final HttpHost target, final HttpRequest request) {
+        StringBuilder key = new StringBuilder();
+        if (target != null) {
+            key.append(target.toURI());
+        }
+        String uri = request.getRequestLine().getUri();
+        try {
+            URI parsed = new URI(uri);
+            key.append(parsed.getRawPath());
+            if (parsed.getRawQuery() != null) {
+                key.append('?').append(parsed.getRawQuery());
+            }
+        } catch (URISyntaxException e) {
+            key.append(uri);
+        }
+        Header origin = request.getFirstHeader(DConnectMessage.HEADER_GOTAPI_ORIGIN);
+        key.append('\n');
+        if (origin != null) {
+            key.append(origin.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * プロファイルのレスポンスを破棄した回数を取得する.
+     * <p>
+     * リクエストを送信する前に取得しておき、{@link #put(String, String, long, HttpResponse)}に渡すこと。
+     * </p>
+     *
+     * @param profile プロファイル名
+     * @return 破棄した回数
+     */
+    synchronized long getGeneration(final String profile) {
+        Long generation = mGenerations.get(profile);
+        return mGenerationAll + (generation != null ? generation : 0);
+    }
+
+    /**
+     * キャッシュしているレスポンスを取得する.
+     * <p>
+     * 有効期間が切れていても、再検証できるレスポンスは返却する。
+     * </p>
+     *
+     * @param key キー
+     * @return レスポンス。無い場合はnull
+     */
+    synchronized Entry get(final String key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && !entry.isFresh() && entry.mETag == null) {
+            mEntries.remove(key);
+            mSize -= entry.mSize;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Device Connect Managerから受け取ったレスポンスをキャッシュする.
+     * <p>
+     * キャッシュできる場合はエンティティを読み込んでコネクションを返却し、読み込んだ内容から作り直したレスポンスを返す。
+     * キャッシュできない場合は受け取ったレスポンスをそのまま返す。
+     * </p>
+     * <p>
+     * リクエストを送信している間にプロファイルのレスポンスが破棄された場合は、
+     * 破棄される前の内容の可能性があるのでキャッシュしない。
+     * </p>
+     *
+     * @param key キー
+     * @param profile プロファイル名
+     * @param generation リクエストを送信する前に{@link #getGeneration(String)}で取得した値
+     * @param response レスポンス
+     * @return 呼び出し元に返却するレスポンス
+     * @throws IOException エンティティの読み込みに失敗した場合
+     */
+    HttpResponse put(final String key, final String profile, final long generation,
+            final HttpResponse response) throws IOException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || !isCacheControlAllowed(response)) {
+            return response;
+        }
+        HttpEntity entity = response.getEntity();
+        long maxEntrySize = mMaxSize / MAX_ENTRY_DIVISOR;
+        if (entity == null || entity.getContentLength() > maxEntrySize) {
+            return response;
+        }
+        byte[] body = EntityUtils.toByteArray(entity);
+        Entry entry = new Entry(key, profile, response, body);
+        if (entry.mSize <= maxEntrySize && isResultOK(entity, body)) {
+            synchronized (this) {
+                if (getGeneration(profile) != generation) {
+                    return entry.toResponse();
+                }
+                entry.mExpiresAt = now() + getTimeToLive(profile);
+                Entry old = mEntries.put(key, entry);
+                if (old != null) {
+                    mSize -= old.mSize;
+                }
+                mSize += entry.mSize;
+                trimToSize();
+            }
+        }
+        return entry.toResponse();
+    }
+
+    /**
+     * 再検証で304 Not Modifiedが返ってきたレスポンスの有効期間を延長する.
+     * <p>
+     * 再検証している間にレスポンスが破棄または置き換えられていた場合は、
+     * 破棄された内容を返さないように延長せずにnullを返す。
+     * </p>
+     *
+     * @param key キー
+     * @param entry 再検証したレスポンス
+     * @param response 304 Not Modifiedのレスポンス
+     * @return 呼び出し元に返却するレスポンス。再検証したレスポンスがキャッシュに無い場合はnull
+     */
+    synchronized HttpResponse revalidated(final String key, final Entry entry, final HttpResponse response) {
+        if (mEntries.get(key) != entry) {
+            return null;
+        }
+        Header etag = response.getFirstHeader(HEADER_ETAG);
+        if (etag != null) {
+            entry.mETag = etag.getValue();
+        }
+        entry.mExpiresAt = now() + getTimeToLive(entry.mProfile);
+        mRevalidationCount.incrementAndGet();
+        return entry.toResponse();
+    }
+
+    /**
+     * キャッシュから返却したことを記録する.
+     *
+     * @param latency かかった時間(ns)
+     */
+    void recordHit(final long latency) {
+        mHitCount.incrementAndGet();
+        mHitLatency.addAndGet(latency);
+    }
+
+    /**
+     * Device Connect Managerにリクエストを送信したことを記録する.
+     *
+     * @param latency かかった時間(ns)
+     */
+    void recordMiss(final long latency) {
+        mMissCount.incrementAndGet();
+        mMissLatency.addAndGet(latency);
+    }
+
+    /**
+     * 合計サイズが最大サイズ以下になるまで、最も長く使われていないレスポンスから破棄する.
+     */
+    private void trimToSize() {
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (mSize > mMaxSize && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            mSize -= entry.mSize;
+            mEvictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * レスポンスのCache-Controlがキャッシュを許可しているかを判定する.
+     *
+     * @param response レスポンス
+     * @return キャッシュしてよい場合はtrue
+     */
+    private static boolean isCacheControlAllowed(final HttpResponse response) {
+        for (Header header : response.getHeaders(HEADER_CACHE_CONTROL)) {
+            String value = header.getValue().toLowerCase();
+            for (String directive : NO_CACHE_DIRECTIVES) {
+                if (value.contains(directive)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * レスポンスのresultが正常終了を示しているかを判定する.
+     *
+     * @param entity エンティティ
+     * @param body 本文
+     * @return 正常終了の場合はtrue
+     */
+    private boolean isResultOK(final HttpEntity entity, final byte[] body) {
+        String charset = EntityUtils.getContentCharSet(entity);
+        try {
+            String json = new String(body, charset != null ? charset : HTTP.UTF_8);
+            return new JSONObject(json).optInt(DConnectMessage.EXTRA_RESULT, DConnectMessage.RESULT_ERROR)
+                    == DConnectMessage.RESULT_OK;
+        } catch (UnsupportedEncodingException e) {
+            return false;
+        } catch (JSONException e) {
+            mLogger.fine("HttpResponseCache. The response is not JSON. : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * リクエストのパスを取得する.
+     *
+     * @param request リクエスト
+     * @return パス。取得できない場合はnull
+     */
+    private static String getPath(final HttpRequest request) {
+        try {
+            return new URI(request.getRequestLine().getUri()).getPath();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 現在時刻を取得する.
+     *
+     * @return 現在時刻(ms)
+     */
+    private static long now() {
+        return System.nanoTime() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * キャッシュしたレスポンス.
+     */
+    static final class Entry {
+
+        /** プロファイル名. */
+        private final String mProfile;
+
+        /** ステータスライン. */
+        private final StatusLine mStatusLine;
+
+        /** ヘッダ. */
+        private final Header[] mHeaders;
+
+        /** 本文. */
+        private final byte[] mBody;
+
+        /** Content-Typeヘッダ. */
+        private final Header mContentType;
+
+        /** Content-Encodingヘッダ. */
+        private final Header mContentEncoding;
+
+        /** 占有するサイズ(バイト). */
+        private final long mSize;
+
+        /** ETag. 無い場合はnull. */
+        private volatile String mETag;
+
+        /** 有効期限(ms). */
+        private volatile long mExpiresAt;
+
+        /**
+         * コンストラクタ.
+         *
+         * @param key キー
+         * @param profile プロファイル名
+         * @param response レスポンス
+         * @param body 本文
+         */
+        Entry(final String key, final String profile, final HttpResponse response, final byte[] body) {
+            mProfile = profile;
+            mStatusLine = response.getStatusLine();
+            mBody = body;
+            HttpEntity entity = response.getEntity();
+            mContentType = entity.getContentType();
+            mContentEncoding = entity.getContentEncoding();
+
+            List<Header> headers = new ArrayList<Header>();
+            long size = key.length() + body.length;
+            for (Header header : response.getAllHeaders()) {
+                if (isHopByHop(header.getName())) {
+                    continue;
+                }
+                headers.add(header);
+                size += header.getName().length() + header.getValue().length();
+            }
+            mHeaders = headers.toArray(new Header[headers.size()]);
+            mSize = size;
+
+            Header etag = response.getFirstHeader(HEADER_ETAG);
+            mETag = etag != null ? etag.getValue() : null;
+        }
+
+        /**
+         * ETagを取得する.
+         *
+         * @return ETag。無い場合はnull
+         */
+        String getETag() {
+            return mETag;
+        }
+
+        /**
+         * 有効期間内かを判定する.
+         *
+         * @return 有効期間内の場合はtrue
+         */
+        boolean isFresh() {
+            return now() < mExpiresAt;
+        }
+
+        /**
+         * 呼び出し元に返却するレスポンスを生成する.
+         *
+         * @return レスポンス
+         */
+        HttpResponse toResponse() {
+            HttpResponse response = new BasicHttpResponse(mStatusLine);
+            response.setHeaders(mHeaders);
+            ByteArrayEntity entity = new ByteArrayEntity(mBody);
+            entity.setContentType(mContentType);
+            entity.setContentEncoding(mContentEncoding);
+            response.setEntity(entity);
+            return response;
+        }
+
+        /**
+         * ホップバイホップのヘッダかを判定する.
+         *
+         * @param name ヘッダ名
+         * @return ホップバイホップのヘッダの場合はtrue
+         */
+        private static boolean isHopByHop(final String name) {
+            for (String hopByHop : HOP_BY_HOP_HEADERS) {
+                if (hopByHop.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -166,6 +166,13 @@ public abstract class AbstractHttpMessageFactory<M extends HttpMessage>
             } catch (IOException e) {
                 mLogger.log(Level.FINE, e.toString(), e);
                 mLogger.warning(e.toString());
+            } finally {
+                // 解析に失敗した場合でも最後まで読み切り、コネクションをプールに返却する
+                try {
+                    entity.consumeContent();
+                } catch (IOException e) {
+                    mLogger.log(Level.FINE, e.toString(), e);
+                }
             }
         }
 
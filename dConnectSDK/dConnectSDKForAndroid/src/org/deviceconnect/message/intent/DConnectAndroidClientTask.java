@@ -6,17 +6,17 @@
  */
 package org.deviceconnect.message.intent;
 
-import java.util.UUID;
 import java.util.logging.Logger;
 
 import org.deviceconnect.message.DConnectMessage;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
+import org.deviceconnect.utils.ResponseCorrelator;
 
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.util.SparseArray;
 
 /**
  * メッセージ実行タスク.
@@ -26,6 +26,7 @@ import android.util.SparseArray;
  * レスポンスメッセージを {@link AsyncTask#onPostExecute(Intent)} の引数で受ける。
  * リクエストメッセージを受けてからレスポンスメッセージを受けるまでに {@link #DEFAULT_MESSAGE_TIMEOUT} の時間を越えた場合
  * レスポンスとしてエラーレスポンスメッセージを返却する。
+ * レスポンスはリクエストコードで対応付けるので、複数のタスクを同時に実行してもよい。
  * @author NTT DOCOMO, INC.
  */
 public class DConnectAndroidClientTask extends AsyncTask<Intent, Integer, Intent> {
@@ -35,24 +36,11 @@ public class DConnectAndroidClientTask extends AsyncTask<Intent, Integer, Intent
      */
     public static final long DEFAULT_MESSAGE_TIMEOUT = 30000;
 
-    /**
-     * イベントレシーバー待機時間.
-     *
-     * イベントレシーバーの応答をポーリングで待っている時のウェイト時間。
-     * この時間 {@link Thread#sleep(long)} して、イベントを受け取っているかどうかを待つ。
-     */
-    private static final int POLLING_WAIT_TIME = 50;
-
     /**
      * ロガー.
      */
     private Logger mLogger = Logger.getLogger("org.deviceconnect.sdk.android");
 
-    /**
-     * イベントマップ.
-     */
-    private static SparseArray<Intent> sEventMap = new SparseArray<Intent>();
-
     /**
      * コンテキスト.
      */
@@ -114,35 +102,32 @@ public class DConnectAndroidClientTask extends AsyncTask<Intent, Integer, Intent
         // get request intent
         Intent request = args[0];
 
+        // register request before sending it, so that the response is not missed
+        ResponseCorrelator.Pending<Intent> pending = IntentResponseCorrelator.INSTANCE.register(mTimeout);
+
         // put intent optional extras
-        int requestCode = UUID.randomUUID().hashCode();
-        request.putExtra(DConnectMessage.EXTRA_REQUEST_CODE, requestCode);
+        request.putExtra(DConnectMessage.EXTRA_REQUEST_CODE, pending.getRequestCode());
         request.putExtra(DConnectMessage.EXTRA_RECEIVER,
                 new ComponentName(mContext, DConnectAndroidResponseReceiver.class));
 
         // send broadcast
         mLogger.fine("send request broadcast: " + request);
         mLogger.fine("send request extra: " + request.getExtras());
-        mContext.sendBroadcast(request);
-
-        // store request into event map
-        sEventMap.put(requestCode, null);
+        try {
+            mContext.sendBroadcast(request);
+        } catch (RuntimeException e) {
+            IntentResponseCorrelator.INSTANCE.cancel(pending);
+            throw e;
+        }
 
         // wait response
-        long now = System.currentTimeMillis();
+        Intent response = null;
         try {
-            do {
-                Thread.sleep(POLLING_WAIT_TIME);
-            } while (sEventMap.get(requestCode) == null
-                    && System.currentTimeMillis() - now < mTimeout);
+            response = IntentResponseCorrelator.INSTANCE.await(pending);
         } catch (InterruptedException e) {
             mLogger.fine(e.toString());
         }
 
-        // get result intent
-        Intent response = sEventMap.get(requestCode);
-        sEventMap.remove(requestCode);
-
         // response is timeout
         if (response == null) {
             Bundle bundle = new Bundle();
@@ -159,12 +144,4 @@ public class DConnectAndroidClientTask extends AsyncTask<Intent, Integer, Intent
         return response;
     }
 
-    /**
-     * イベントマップを取得する.
-     * @return イベントマップ
-     */
-    static SparseArray<Intent> getEventMap() {
-        return sEventMap;
-    }
-
 }
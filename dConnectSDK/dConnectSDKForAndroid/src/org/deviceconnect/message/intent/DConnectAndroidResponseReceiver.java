@@ -10,6 +10,7 @@ import java.util.logging.Logger;
 
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -67,10 +68,9 @@ public class DConnectAndroidResponseReceiver extends BroadcastReceiver {
 				&& action.equals(IntentDConnectMessage.ACTION_RESPONSE)) {
 			int reqCode = intent.getIntExtra(
 					DConnectMessage.EXTRA_REQUEST_CODE, ERROR_CODE);
-			if (reqCode != ERROR_CODE
-					&& DConnectAndroidClientTask.getEventMap().indexOfKey(
-							reqCode) >= 0) {
-				DConnectAndroidClientTask.getEventMap().put(reqCode, intent);
+			if (reqCode != ERROR_CODE) {
+				// 待機中のタスクがある場合のみ、そのタスクを再開する
+				IntentResponseCorrelator.INSTANCE.complete(reqCode, intent);
 			}
 		}
 
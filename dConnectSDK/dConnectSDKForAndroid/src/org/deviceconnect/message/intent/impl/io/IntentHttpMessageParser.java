@@ -7,8 +7,6 @@
 package org.deviceconnect.message.intent.impl.io;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,11 +14,12 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpMessage;
 import org.apache.http.HttpResponse;
 import org.apache.http.io.HttpMessageParser;
-import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.http.impl.factory.HttpMessageFactory;
 import org.deviceconnect.message.intent.impl.factory.IntentMessageFactory;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
+import org.deviceconnect.utils.ResponseCorrelator;
 
 import android.content.Intent;
 
@@ -30,25 +29,20 @@ import android.content.Intent;
  */
 public class IntentHttpMessageParser implements HttpMessageParser {
 
-    /**
-     * ウェイトタイム.
-     */
-    public static final int WAIT_TIME = 50;
-
-    /**
-     * タイムアウト.
-     */
-    private int mSoTimeout;
-
     /**
      * ロガー.
      */
     private Logger mLogger = Logger.getLogger("org.deviceconnect.sdk.android");
 
     /**
-     * レスポンスバッファ.
+     * 送信したリクエストの待機用ハンドル.
+     * <p>
+     * HttpClientはリクエストの送信とレスポンスの受信を同じスレッドで行うので、
+     * {@link IntentHttpMessageWriter}が登録したハンドルをスレッド毎に受け渡す。
+     * </p>
      */
-    private static List<Intent> sResponseList = new ArrayList<Intent>();
+    private static final ThreadLocal<ResponseCorrelator.Pending<Intent>> PENDING
+            = new ThreadLocal<ResponseCorrelator.Pending<Intent>>();
 
     /**
      * コンストラクタ.
@@ -56,35 +50,30 @@ public class IntentHttpMessageParser implements HttpMessageParser {
      */
     public IntentHttpMessageParser(final HttpParams params) {
         mLogger.entering(this.getClass().getName(), "IntentHttpMessageParser");
-
-        mSoTimeout = HttpConnectionParams.getSoTimeout(params);
-
         mLogger.exiting(this.getClass().getName(), "IntentHttpMessageParser");
     }
 
     @Override
     public HttpMessage parse() throws IOException, HttpException {
 
-        long parseStart = System.currentTimeMillis();
-
-        // wait for response, or response timeout
-        // if SoTimeout is 0, infinite wait
-        while (sResponseList.size() == 0 && (mSoTimeout == 0
-                || mSoTimeout > System.currentTimeMillis() - parseStart)) {
-            try {
-                Thread.sleep(WAIT_TIME);
-            } catch (InterruptedException e) {
-                mLogger.log(Level.FINE, e.toString(), e);
-                throw new IOException(e);
-            }
+        ResponseCorrelator.Pending<Intent> pending = PENDING.get();
+        if (pending == null) {
+            throw new IOException("no request is waiting for a response");
         }
-
-        if (sResponseList.size() <= 0 && mSoTimeout <= System.currentTimeMillis() - parseStart) {
+        PENDING.remove();
+
+        // wait for the response to this request, or response timeout
+        Intent intent;
+        try {
+            intent = IntentResponseCorrelator.INSTANCE.await(pending);
+        } catch (InterruptedException e) {
+            mLogger.log(Level.FINE, e.toString(), e);
+            throw new IOException(e);
+        }
+        if (intent == null) {
             throw new IOException("response timeout");
         }
 
-        Intent intent = sResponseList.remove(0);
-
         DConnectMessage dmessage =
                 IntentMessageFactory.getMessageFactory().newDConnectMessage(intent);
         HttpMessage message =
@@ -96,11 +85,18 @@ public class IntentHttpMessageParser implements HttpMessageParser {
     }
 
     /**
-     * レスポンスを追加する.
-     * @param intent レスポンスインテント
+     * このスレッドで送信したリクエストの待機用ハンドルを設定する.
+     * <p>
+     * 前のリクエストのレスポンスを受け取らずに次のリクエストを送信した場合は、前のリクエストの登録を解除する。
+     * </p>
+     * @param pending 待機用のハンドル
      */
-    static void addResponse(final Intent intent) {
-        sResponseList.add(intent);
+    static void setPending(final ResponseCorrelator.Pending<Intent> pending) {
+        ResponseCorrelator.Pending<Intent> old = PENDING.get();
+        if (old != null) {
+            IntentResponseCorrelator.INSTANCE.cancel(old);
+        }
+        PENDING.set(pending);
     }
 
 }
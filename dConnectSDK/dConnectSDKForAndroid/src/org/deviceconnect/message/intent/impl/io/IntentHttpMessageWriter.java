@@ -13,11 +13,15 @@ import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpMessage;
 import org.apache.http.io.HttpMessageWriter;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.HttpHeaders;
 import org.deviceconnect.message.http.impl.factory.HttpMessageFactory;
 import org.deviceconnect.message.intent.impl.factory.IntentMessageFactory;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
+import org.deviceconnect.sdk.BuildConfig;
+import org.deviceconnect.utils.ResponseCorrelator;
 
 import android.content.ComponentName;
 import android.content.Context;
@@ -39,6 +43,11 @@ public class IntentHttpMessageWriter implements HttpMessageWriter {
      */
     private Context mContext;
 
+    /**
+     * レスポンスのタイムアウト時間(ms).
+     */
+    private int mSoTimeout;
+
     /**
      * コンストラクタ.
      * @param context コンテキスト
@@ -49,6 +58,7 @@ public class IntentHttpMessageWriter implements HttpMessageWriter {
             final HttpParams params) {
         mLogger.entering(getClass().getName(), "IntentHttpMessageWriter");
         mContext = context;
+        mSoTimeout = HttpConnectionParams.getSoTimeout(params);
         mLogger.exiting(getClass().getName(), "IntentHttpMessageWriter");
     }
 
@@ -69,10 +79,31 @@ public class IntentHttpMessageWriter implements HttpMessageWriter {
         intent.putExtra(DConnectMessage.EXTRA_RECEIVER,
                 new ComponentName(mContext, IntentResponseReceiver.class));
 
+        // register request before sending it, so that the response is not missed
+        ResponseCorrelator.Pending<Intent> pending;
+        if (intent.hasExtra(DConnectMessage.EXTRA_REQUEST_CODE)) {
+            int requestCode = intent.getIntExtra(DConnectMessage.EXTRA_REQUEST_CODE, 0);
+            pending = IntentResponseCorrelator.INSTANCE.register(requestCode, mSoTimeout);
+            if (pending == null) {
+                throw new HttpException("request code is already in use: " + requestCode);
+            }
+        } else {
+            pending = IntentResponseCorrelator.INSTANCE.register(mSoTimeout);
+            intent.putExtra(DConnectMessage.EXTRA_REQUEST_CODE, pending.getRequestCode());
+        }
+
         // send broadcast
-        mLogger.fine("send request broadcast: " + intent);
-        mLogger.fine("send request extra: " + intent.getExtras());
-        mContext.sendBroadcast(intent);
+        if (BuildConfig.DEBUG) {
+            mLogger.fine("send request broadcast: " + intent);
+            mLogger.fine("send request extra: " + intent.getExtras());
+        }
+        try {
+            mContext.sendBroadcast(intent);
+        } catch (RuntimeException e) {
+            IntentResponseCorrelator.INSTANCE.cancel(pending);
+            throw e;
+        }
+        IntentHttpMessageParser.setPending(pending);
 
         mLogger.exiting(getClass().getName(), "write");
     }
@@ -8,8 +8,10 @@ package org.deviceconnect.message.intent.impl.io;
 
 import java.util.logging.Logger;
 
+import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.intent.event.IntentEventManager;
 import org.deviceconnect.message.intent.message.IntentDConnectMessage;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
 import org.deviceconnect.sdk.BuildConfig;
 
 import android.content.BroadcastReceiver;
@@ -89,15 +91,19 @@ public class IntentResponseReceiver extends BroadcastReceiver {
             return;
         }
 
-        mLogger.fine("response: " + intent);
-        mLogger.fine("response extra: " + extra);
-        if (extra != null) {
+        if (BuildConfig.DEBUG) {
+            mLogger.fine("response: " + intent);
+            mLogger.fine("response extra: " + extra);
             for (String key : extra.keySet()) {
                 mLogger.fine(key + ": " + extra.get(key));
             }
         }
 
-        IntentHttpMessageParser.addResponse(intent);
+        // 待機中のリクエストがある場合のみ、そのリクエストを送信したスレッドを再開する
+        int requestCode = intent.getIntExtra(DConnectMessage.EXTRA_REQUEST_CODE, 0);
+        if (!IntentResponseCorrelator.INSTANCE.complete(requestCode, intent)) {
+            mLogger.warning("no request is waiting for the response: requestCode=" + requestCode);
+        }
 
         mLogger.exiting(this.getClass().getName(), "onResponseRecieve");
     }
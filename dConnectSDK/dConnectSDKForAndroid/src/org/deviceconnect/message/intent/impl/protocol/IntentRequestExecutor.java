@@ -8,6 +8,7 @@ package org.deviceconnect.message.intent.impl.protocol;
 
 import org.deviceconnect.message.basic.protocol.SingleConnectionRequestExecutor;
 import org.deviceconnect.message.conn.HttpConnection;
+import org.deviceconnect.message.intent.util.IntentResponseCorrelator;
 
 /**
  * Intentリクエストエグゼキュータ.
@@ -23,4 +24,15 @@ public class IntentRequestExecutor extends SingleConnectionRequestExecutor {
         super(conn);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 処理中の他のリクエストと重ならないように、{@link IntentResponseCorrelator}から払い出す。
+     * </p>
+     */
+    @Override
+    protected int createRequestCode() {
+        return IntentResponseCorrelator.INSTANCE.nextRequestCode();
+    }
+
 }
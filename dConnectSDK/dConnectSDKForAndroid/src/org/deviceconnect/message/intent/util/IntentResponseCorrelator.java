@@ -0,0 +1,32 @@
+/*
+ IntentResponseCorrelator.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.message.intent.util;
+
+import org.deviceconnect.utils.ResponseCorrelator;
+
+import android.content.Intent;
+
+/**
+ * リクエストコードをキーにしてIntentのリクエストとレスポンスを対応付けるクラス.
+ * <p>
+ * Intentで送信したリクエストのレスポンスは、アプリ内の共通のレシーバーで受信するため、
+ * プロセスで1つのインスタンスを共有する。
+ * </p>
+ * @author NTT DOCOMO, INC.
+ */
+public final class IntentResponseCorrelator extends ResponseCorrelator<Intent> {
+
+    /** 唯一のインスタンス. */
+    public static final IntentResponseCorrelator INSTANCE = new IntentResponseCorrelator();
+
+    /**
+     * コンストラクタ.
+     * {@link #INSTANCE}を使用すること。
+     */
+    private IntentResponseCorrelator() {
+    }
+}
@@ -9,15 +9,16 @@ package org.deviceconnect.utils;
 import java.io.IOException;
 import java.net.URISyntaxException;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.util.EntityUtils;
 import org.deviceconnect.message.DConnectMessage;
 import org.deviceconnect.message.DConnectMessage.ErrorCode;
+import org.deviceconnect.message.http.impl.client.HttpConnectionPool;
 import org.deviceconnect.profile.AuthorizationProfileConstants;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -130,7 +131,7 @@ public final class AuthProcesser {
             throw new IllegalArgumentException("Invalid URI. Check parameters.");
         }
 
-        DefaultHttpClient client = new DefaultHttpClient();
+        HttpClient client = HttpConnectionPool.createHttpClient();
         try {
             JSONObject json = execute(client, request);
             ErrorCode error = checkResponse(json);
@@ -146,8 +147,6 @@ public final class AuthProcesser {
             callback.onAuthFailed(ErrorCode.UNKNOWN);
         } catch (JSONException e) {
             callback.onAuthFailed(ErrorCode.UNKNOWN);
-        } finally {
-            client.getConnectionManager().shutdown();
         }
     }
 
@@ -237,7 +236,7 @@ public final class AuthProcesser {
             throw new IllegalArgumentException("Invalid URI. Check parameters.");
         }
         
-        DefaultHttpClient client = new DefaultHttpClient();
+        HttpClient client = HttpConnectionPool.createHttpClient();
         try {
             JSONObject json = execute(client, request);
             ErrorCode error = checkResponse(json);
@@ -251,8 +250,6 @@ public final class AuthProcesser {
             callback.onAuthFailed(ErrorCode.UNKNOWN);
         } catch (JSONException e) {
             callback.onAuthFailed(ErrorCode.UNKNOWN);
-        } finally {
-            client.getConnectionManager().shutdown();
         }
     }
 
@@ -286,13 +283,20 @@ public final class AuthProcesser {
             throws IOException, JSONException {
 
         HttpResponse response = client.execute(request);
-        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            return null;
-        }
+        HttpEntity entity = response.getEntity();
+        try {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                return null;
+            }
 
-        String entity = EntityUtils.toString(response.getEntity(), "UTF-8");
-        JSONObject json = new JSONObject(entity);
-        return json;
+            JSONObject json = new JSONObject(EntityUtils.toString(entity, "UTF-8"));
+            return json;
+        } finally {
+            // コネクションをプールに返却する
+            if (entity != null) {
+                entity.consumeContent();
+            }
+        }
     }
 
     /**
@@ -0,0 +1,203 @@
+/*
+ ResponseCorrelator.java
+ Copyright (c) 2014 NTT DOCOMO,INC.
+ Released under the MIT license
+ http://opensource.org/licenses/mit-license.php
+ */
+package org.deviceconnect.utils;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * リクエストコードをキーにしてリクエストとレスポンスを対応付けるクラス.
+ * <p>
+ * 送信したリクエスト毎に待機用のハンドルを登録しておき、レスポンスを受信したスレッドから
+ * 同じリクエストコードのハンドルを完了させる。<br>
+ * レスポンスを待っているスレッドはポーリングせずに待機し、自分宛てのレスポンスを受け取った時点で再開する。
+ * 待機中のリクエストが存在しないレスポンスは破棄する。
+ * </p>
+ * @param <T> レスポンスの型
+ * @author NTT DOCOMO, INC.
+ */
+public class ResponseCorrelator<T> {
+
+    /** レスポンスレシーバーがリクエストコード無しとして扱う値. */
+    private static final int INVALID_REQUEST_CODE = Integer.MIN_VALUE;
+
+    /** 処理中のリクエスト一覧. */
+    private final ConcurrentHashMap<Integer, Pending<T>> mPendingMap = new ConcurrentHashMap<Integer, Pending<T>>();
+
+    /**
+     * 次に払い出すリクエストコード.
+     * 以前のプロセスが送信したリクエストのレスポンスと重ならないように、乱数から始める。
+     */
+    private final AtomicInteger mNextRequestCode = new AtomicInteger(new Random().nextInt());
+
+    /**
+     * 処理中のリクエストと重ならないリクエストコードを払い出す.
+     * @return リクエストコード
+     */
+    public int nextRequestCode() {
+        while (true) {
+            int requestCode = mNextRequestCode.incrementAndGet();
+            if (requestCode != 0 && requestCode != INVALID_REQUEST_CODE
+                    && !mPendingMap.containsKey(requestCode)) {
+                return requestCode;
+            }
+        }
+    }
+
+    /**
+     * 新しいリクエストコードを払い出して、レスポンスを待つリクエストを登録する.
+     * <p>
+     * リクエストを送信する前に登録しておくこと。
+     * 送信前に登録しておかないと、レスポンスを取りこぼす可能性がある。
+     * </p>
+     * @param timeout タイムアウト時間(ms)。0以下の場合はタイムアウトしない
+     * @return 待機用のハンドル
+     */
+    public Pending<T> register(final long timeout) {
+        while (true) {
+            Pending<T> pending = register(nextRequestCode(), timeout);
+            if (pending != null) {
+                return pending;
+            }
+        }
+    }
+
+    /**
+     * 指定したリクエストコードでレスポンスを待つリクエストを登録する.
+     * <p>
+     * リクエストを送信する前に登録しておくこと。
+     * </p>
+     * @param requestCode リクエストコード
+     * @param timeout タイムアウト時間(ms)。0以下の場合はタイムアウトしない
+     * @return 待機用のハンドル。同じリクエストコードが処理中の場合はnull
+     */
+    public Pending<T> register(final int requestCode, final long timeout) {
+        long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        Pending<T> pending = new Pending<T>(requestCode, deadline);
+        if (mPendingMap.putIfAbsent(requestCode, pending) != null) {
+            return null;
+        }
+        return pending;
+    }
+
+    /**
+     * レスポンスを対応するリクエストに渡す.
+     * <p>
+     * 対応するリクエストを待っているスレッドのみを再開する。
+     * </p>
+     * @param requestCode リクエストコード
+     * @param response レスポンス
+     * @return 対応するリクエストが存在した場合はtrue、それ以外はfalse
+     */
+    public boolean complete(final int requestCode, final T response) {
+        Pending<T> pending = mPendingMap.remove(requestCode);
+        if (pending == null) {
+            return false;
+        }
+        pending.complete(response);
+        return true;
+    }
+
+    /**
+     * レスポンスが返ってくるまで待つ.
+     * <p>
+     * 登録時に指定したタイムアウト時間を過ぎた場合には、nullを返却する。
+     * 戻った時点で登録は解除される。
+     * </p>
+     * @param pending 待機用のハンドル
+     * @return レスポンス
+     * @throws InterruptedException 待機中に割り込みが発生した場合
+     */
+    public T await(final Pending<T> pending) throws InterruptedException {
+        try {
+            return pending.await();
+        } finally {
+            cancel(pending);
+        }
+    }
+
+    /**
+     * レスポンスを待たずに登録を解除する.
+     * <p>
+     * リクエストの送信に失敗した場合などに呼び出す。
+     * </p>
+     * @param pending 待機用のハンドル
+     */
+    public void cancel(final Pending<T> pending) {
+        mPendingMap.remove(pending.getRequestCode(), pending);
+    }
+
+    /**
+     * 処理中のリクエスト数を取得する.
+     * @return 処理中のリクエスト数
+     */
+    public int getPendingCount() {
+        return mPendingMap.size();
+    }
+
+    /**
+     * 処理中のリクエスト1件分の待機用ハンドル.
+     * @param <T> レスポンスの型
+     */
+    public static final class Pending<T> {
+        /** リクエストコード. */
+        private final int mRequestCode;
+        /** タイムアウトする時刻(ms). */
+        private final long mDeadline;
+        /** レスポンスを受け取るまで待機するためのラッチ. */
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        /** レスポンス. */
+        private volatile T mResponse;
+
+        /**
+         * コンストラクタ.
+         * @param requestCode リクエストコード
+         * @param deadline タイムアウトする時刻(ms)
+         */
+        private Pending(final int requestCode, final long deadline) {
+            mRequestCode = requestCode;
+            mDeadline = deadline;
+        }
+
+        /**
+         * リクエストコードを取得する.
+         * @return リクエストコード
+         */
+        public int getRequestCode() {
+            return mRequestCode;
+        }
+
+        /**
+         * レスポンスを設定し、待機中のスレッドを再開する.
+         * @param response レスポンス
+         */
+        private void complete(final T response) {
+            mResponse = response;
+            mLatch.countDown();
+        }
+
+        /**
+         * タイムアウトする時刻までレスポンスを待つ.
+         * @return レスポンス。タイムアウトした場合はnull
+         * @throws InterruptedException 待機中に割り込みが発生した場合
+         */
+        private T await() throws InterruptedException {
+            if (mDeadline == Long.MAX_VALUE) {
+                mLatch.await();
+            } else {
+                long remaining = mDeadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    mLatch.await(remaining, TimeUnit.MILLISECONDS);
+                }
+            }
+            return mResponse;
+        }
+    }
+}